@@ -0,0 +1,444 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import components.map.Map.Pair;
+import components.program.Program;
+import components.statement.Statement;
+import components.statement.StatementKernel.Condition;
+
+/**
+ * Executor that runs a BL program straight from its abstract syntax tree,
+ * without generating code. The tree is converted once into a graph of linked
+ * nodes: every node knows the node that follows it, each CALL of a user
+ * instruction is resolved against the context (and its body linked in place)
+ * when the graph is built, and each condition is bound to its
+ * {@code BugWorld} query. The state of a bug is simply the node it will
+ * execute next, so running a step involves no name lookup and no tree
+ * traversal through the kernel methods.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class AstExecutor {
+
+    /**
+     * A condition bound to its {@code BugWorld} query.
+     */
+    private interface Query {
+
+        /**
+         * Evaluates the condition for {@code bug}.
+         *
+         * @param world
+         *            the world the bug lives in
+         * @param bug
+         *            the bug
+         * @return the value of the condition
+         */
+        boolean test(BugWorld world, int bug);
+
+    }
+
+    /**
+     * A primitive instruction bound to its {@code BugWorld} action.
+     */
+    private interface Action {
+
+        /**
+         * Performs the primitive instruction for {@code bug}.
+         *
+         * @param world
+         *            the world the bug lives in
+         * @param bug
+         *            the bug
+         */
+        void perform(BugWorld world, int bug);
+
+    }
+
+    /**
+     * A node of the executable graph. Instances are immutable once the graph
+     * is built and can be shared by any number of bugs and threads.
+     */
+    public abstract static class Node {
+
+        /**
+         * Whether executing this node ends a step: it performs a primitive
+         * instruction or halts.
+         */
+        private final boolean endsStep;
+
+        /**
+         * Constructor.
+         *
+         * @param endsStep
+         *            whether executing this node ends a step
+         */
+        private Node(boolean endsStep) {
+            this.endsStep = endsStep;
+        }
+
+        /**
+         * Executes this node for {@code bug} and returns the node to execute
+         * next.
+         *
+         * @param bug
+         *            the bug
+         * @param world
+         *            the world the bug lives in
+         * @return the next node
+         */
+        abstract Node exec(int bug, BugWorld world);
+
+    }
+
+    /**
+     * Node performing a primitive instruction.
+     */
+    private static final class ActionNode extends Node {
+
+        /**
+         * The primitive instruction.
+         */
+        private final Action action;
+
+        /**
+         * The next node.
+         */
+        private final Node next;
+
+        /**
+         * Constructor.
+         *
+         * @param a
+         *            the primitive instruction
+         * @param n
+         *            the next node
+         */
+        private ActionNode(Action a, Node n) {
+            super(true);
+            this.action = a;
+            this.next = n;
+        }
+
+        @Override
+        Node exec(int bug, BugWorld world) {
+            this.action.perform(world, bug);
+            return this.next;
+        }
+
+    }
+
+    /**
+     * Node choosing between two successors: IF, IF_ELSE and WHILE.
+     */
+    private static final class BranchNode extends Node {
+
+        /**
+         * The condition.
+         */
+        private final Query query;
+
+        /**
+         * The node executed when the condition is true; set once, while the
+         * graph is built, so that a WHILE can link its body back to itself.
+         */
+        private Node whenTrue;
+
+        /**
+         * The node executed when the condition is false.
+         */
+        private final Node whenFalse;
+
+        /**
+         * Constructor.
+         *
+         * @param q
+         *            the condition
+         * @param f
+         *            the node executed when the condition is false
+         */
+        private BranchNode(Query q, Node f) {
+            super(false);
+            this.query = q;
+            this.whenFalse = f;
+        }
+
+        @Override
+        Node exec(int bug, BugWorld world) {
+            Node next = this.whenFalse;
+            if (this.query.test(world, bug)) {
+                next = this.whenTrue;
+            }
+            return next;
+        }
+
+    }
+
+    /**
+     * Node at the end of the program body.
+     */
+    private static final class HaltNode extends Node {
+
+        /**
+         * Constructor.
+         */
+        private HaltNode() {
+            super(true);
+        }
+
+        @Override
+        Node exec(int bug, BugWorld world) {
+            return this;
+        }
+
+    }
+
+    /**
+     * The queries, indexed by condition ordinal.
+     */
+    private static final Query[] QUERIES = new Query[Condition.values().length];
+
+    static {
+        QUERIES[Condition.NEXT_IS_EMPTY.ordinal()] = BugWorld::nextIsEmpty;
+        QUERIES[Condition.NEXT_IS_NOT_EMPTY.ordinal()] = (w, b) -> !w
+                .nextIsEmpty(b);
+        QUERIES[Condition.NEXT_IS_WALL.ordinal()] = BugWorld::nextIsWall;
+        QUERIES[Condition.NEXT_IS_NOT_WALL.ordinal()] = (w, b) -> !w
+                .nextIsWall(b);
+        QUERIES[Condition.NEXT_IS_FRIEND.ordinal()] = BugWorld::nextIsFriend;
+        QUERIES[Condition.NEXT_IS_NOT_FRIEND.ordinal()] = (w, b) -> !w
+                .nextIsFriend(b);
+        QUERIES[Condition.NEXT_IS_ENEMY.ordinal()] = BugWorld::nextIsEnemy;
+        QUERIES[Condition.NEXT_IS_NOT_ENEMY.ordinal()] = (w, b) -> !w
+                .nextIsEnemy(b);
+        QUERIES[Condition.RANDOM.ordinal()] = BugWorld::random;
+        QUERIES[Condition.TRUE.ordinal()] = (w, b) -> true;
+    }
+
+    /**
+     * The primitive instructions, by id in {@code InstructionNames}.
+     */
+    private static final Action[] PRIMITIVES =
+            new Action[InstructionNames.SKIP + 1];
+
+    static {
+        PRIMITIVES[InstructionNames.MOVE] = BugWorld::move;
+        PRIMITIVES[InstructionNames.TURNLEFT] = BugWorld::turnLeft;
+        PRIMITIVES[InstructionNames.TURNRIGHT] = BugWorld::turnRight;
+        PRIMITIVES[InstructionNames.INFECT] = BugWorld::infect;
+        PRIMITIVES[InstructionNames.SKIP] = BugWorld::skip;
+    }
+
+    /**
+     * The program name.
+     */
+    private final String name;
+
+    /**
+     * The first node of the program body.
+     */
+    private final Node start;
+
+    /**
+     * Constructor.
+     *
+     * @param n
+     *            the program name
+     * @param s
+     *            the first node of the program body
+     */
+    private AstExecutor(String n, Node s) {
+        this.name = n;
+        this.start = s;
+    }
+
+    /**
+     * Returns an executor for {@code p}, built from its abstract syntax tree.
+     * The kernel methods of {@code p} are used to read it, so {@code p} must
+     * not be used by another thread during the call.
+     *
+     * @param p
+     *            the program
+     * @return the executor for p
+     * @throws IllegalArgumentException
+     *             if p calls an instruction that is neither primitive nor in
+     *             its context, or if its instructions call each other
+     *             recursively
+     */
+    public static AstExecutor of(Program p) {
+        assert p != null : "Violation of: p is not null";
+
+        components.map.Map<String, Statement> c = p.newContext();
+        p.swapContext(c);
+        List<String> names = new ArrayList<>();
+        for (Pair<String, Statement> pair : c) {
+            names.add(pair.key());
+        }
+        Map<InstructionNames.Name, FrozenStatement> context = new HashMap<>();
+        for (String n : names) {
+            context.put(InstructionNames.intern(n),
+                    FrozenStatement.copyOf(c.value(n)));
+        }
+        p.swapContext(c);
+        Statement b = p.newBody();
+        p.swapBody(b);
+        FrozenStatement body = FrozenStatement.copyOf(b);
+        p.swapBody(b);
+        return new AstExecutor(p.name(),
+                build(body, new HaltNode(), context::get, new HashSet<>()));
+    }
+
+    /**
+     * Returns an executor for {@code p}, built from its abstract syntax tree.
+     *
+     * @param p
+     *            the program
+     * @return the executor for p
+     * @throws IllegalArgumentException
+     *             if p calls an instruction that is neither primitive nor in
+     *             its context, or if its instructions call each other
+     *             recursively
+     */
+    public static AstExecutor of(FrozenProgram p) {
+        assert p != null : "Violation of: p is not null";
+
+        return new AstExecutor(p.name(), build(p.body(), new HaltNode(),
+                n -> p.instruction(n.id()), new HashSet<>()));
+    }
+
+    /**
+     * Returns the first node of the graph for {@code s}, followed by
+     * {@code next}.
+     *
+     * @param s
+     *            the statement
+     * @param next
+     *            the node to execute after s
+     * @param context
+     *            the instruction bodies, by instruction name; null for an
+     *            undefined instruction
+     * @param active
+     *            the ids of the user instructions whose bodies are being
+     *            built, to detect recursion
+     * @return the first node for s
+     */
+    private static Node build(FrozenStatement s, Node next,
+            Function<InstructionNames.Name, FrozenStatement> context,
+            Set<Integer> active) {
+        Node first;
+        switch (s.kind()) {
+            case BLOCK:
+                first = next;
+                for (int i = s.numberOfChildren() - 1; i >= 0; i--) {
+                    first = build(s.child(i), first, context, active);
+                }
+                break;
+            case IF: {
+                BranchNode branch = new BranchNode(
+                        QUERIES[s.condition().ordinal()], next);
+                branch.whenTrue = build(s.child(0), next, context, active);
+                first = branch;
+                break;
+            }
+            case IF_ELSE: {
+                BranchNode branch = new BranchNode(
+                        QUERIES[s.condition().ordinal()],
+                        build(s.child(1), next, context, active));
+                branch.whenTrue = build(s.child(0), next, context, active);
+                first = branch;
+                break;
+            }
+            case WHILE: {
+                BranchNode branch = new BranchNode(
+                        QUERIES[s.condition().ordinal()], next);
+                branch.whenTrue = build(s.child(0), branch, context, active);
+                first = branch;
+                break;
+            }
+            default: {
+                int instruction = s.instructionId();
+                if (InstructionNames.isPrimitive(instruction)) {
+                    first = new ActionNode(PRIMITIVES[instruction], next);
+                } else {
+                    FrozenStatement callee = context
+                            .apply(s.instructionName());
+                    if (callee == null) {
+                        throw new IllegalArgumentException(
+                                "Undefined instruction: " + s.instruction());
+                    }
+                    if (!active.add(instruction)) {
+                        throw new IllegalArgumentException(
+                                "Recursive instruction: " + s.instruction());
+                    }
+                    first = build(callee, next, context, active);
+                    active.remove(instruction);
+                }
+                break;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Reports the name of the program.
+     *
+     * @return the program name
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Returns the node a bug starts at.
+     *
+     * @return the first node of the program body
+     */
+    public Node start() {
+        return this.start;
+    }
+
+    /**
+     * Executes the program for {@code bug}, starting at node {@code current},
+     * until one primitive instruction has been performed or the end of the
+     * program body is reached, and returns the node to execute next. A bug
+     * that has reached the end of the program body stays there.
+     *
+     * @param current
+     *            the node to execute next, from start() or a previous call
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @return the node to execute next
+     * @updates world
+     */
+    public static Node nextAction(Node current, int bug, BugWorld world) {
+        assert current != null : "Violation of: current is not null";
+
+        Node n = current;
+        boolean done = false;
+        while (!done) {
+            done = n.endsStep;
+            n = n.exec(bug, world);
+        }
+        return n;
+    }
+
+    /**
+     * Reports whether {@code current} is the end of the program body.
+     *
+     * @param current
+     *            a node of the graph
+     * @return true iff a bug at current has halted
+     */
+    public static boolean isHalted(Node current) {
+        return current instanceof HaltNode;
+    }
+
+}
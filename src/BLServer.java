@@ -0,0 +1,441 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import components.program.Program.Instruction;
+
+/**
+ * Long-lived local server that compiles, pretty prints and runs BL programs,
+ * so that tools do not pay for a JVM launch per request. It listens on a
+ * loopback TCP port or on a Unix domain socket and handles each connection on
+ * its own virtual thread (or, on runtimes without virtual threads, on a
+ * pooled platform thread). Compiled programs are shared by all connections
+ * through a {@code ProgramRegistry}.
+ *
+ * <p>
+ * A connection carries any number of requests. A request is a command line,
+ * followed by the lines of the BL source, followed by a line holding a single
+ * period; source lines starting with a period get one more period in front,
+ * which the server removes. The commands are:
+ * <ul>
+ * <li>{@code CHECK}: compile and report errors only;</li>
+ * <li>{@code PRETTY}: reply with the pretty-printed program;</li>
+ * <li>{@code CODE}: reply with the compiled code on one line;</li>
+ * <li>{@code RUN n}: run the program for one bug for {@code n} primitive
+ * instructions, at most 100000, or until it halts, in an open world (the
+ * next cell is always empty, and {@code random} is drawn from a fixed seed so
+ * that the reply is reproducible) and reply with the instructions performed,
+ * one per line.</li>
+ * </ul>
+ * The reply is {@code OK} followed by the source hash, or {@code ERROR}
+ * followed by the diagnostic, then the reply lines, then a line holding a
+ * single period. A request that fails with an error, e.g., a program nested
+ * too deeply to compile, gets an {@code ERROR} reply, and the connection
+ * stays open. The command {@code QUIT} closes the connection.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class BLServer implements AutoCloseable {
+
+    /**
+     * Default maximum total length of the compiled code of the cached
+     * programs.
+     */
+    private static final long DEFAULT_CACHE_WEIGHT = 1L << 24;
+
+    /**
+     * Maximum number of instructions executed per primitive instruction by
+     * {@code RUN}, so that a loop without primitive instructions cannot hold
+     * a handler forever.
+     */
+    private static final int RUN_BUDGET = 1 << 20;
+
+    /**
+     * Maximum number of primitive instructions {@code RUN} may be asked for,
+     * which bounds the length of its reply.
+     */
+    private static final int MAX_RUN_STEPS = 100_000;
+
+    /**
+     * Seed of the condition {@code random} in {@code RUN}.
+     */
+    private static final long RUN_SEED = 0;
+
+    /**
+     * Line ending a request or a reply.
+     */
+    private static final String END = ".";
+
+    /**
+     * World used by {@code RUN}: the next cell is always empty, and the
+     * primitive instructions performed are recorded.
+     */
+    private static final class OpenWorld implements BugWorld {
+
+        /**
+         * The primitive instructions performed, in order.
+         */
+        private final List<String> actions = new ArrayList<>();
+
+        /**
+         * The source of the condition random.
+         */
+        private final BugRandom random = new BugRandom(RUN_SEED, 1);
+
+        @Override
+        public boolean nextIsEmpty(int bug) {
+            return true;
+        }
+
+        @Override
+        public boolean nextIsWall(int bug) {
+            return false;
+        }
+
+        @Override
+        public boolean nextIsFriend(int bug) {
+            return false;
+        }
+
+        @Override
+        public boolean nextIsEnemy(int bug) {
+            return false;
+        }
+
+        @Override
+        public boolean random(int bug) {
+            return this.random.nextBoolean(bug);
+        }
+
+        @Override
+        public void move(int bug) {
+            this.actions.add("move");
+        }
+
+        @Override
+        public void turnLeft(int bug) {
+            this.actions.add("turnleft");
+        }
+
+        @Override
+        public void turnRight(int bug) {
+            this.actions.add("turnright");
+        }
+
+        @Override
+        public void infect(int bug) {
+            this.actions.add("infect");
+        }
+
+        @Override
+        public void skip(int bug) {
+            this.actions.add("skip");
+        }
+
+    }
+
+    /**
+     * The listening channel.
+     */
+    private final ServerSocketChannel server;
+
+    /**
+     * The address the server listens on.
+     */
+    private final SocketAddress address;
+
+    /**
+     * Runs the connection handlers.
+     */
+    private final ExecutorService handlers;
+
+    /**
+     * The compiled programs shared by all connections.
+     */
+    private final ProgramRegistry registry;
+
+    /**
+     * Constructor; starts listening on {@code address}, but does not accept
+     * connections until {@code serve} is called.
+     *
+     * @param address
+     *            a loopback {@code InetSocketAddress} or a
+     *            {@code UnixDomainSocketAddress}
+     * @param registry
+     *            the registry of compiled programs to use
+     * @throws IOException
+     *             if the server cannot listen on address
+     */
+    public BLServer(SocketAddress address, ProgramRegistry registry)
+            throws IOException {
+        assert address != null : "Violation of: address is not null";
+        assert registry != null : "Violation of: registry is not null";
+
+        if (address instanceof UnixDomainSocketAddress) {
+            this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            this.server = ServerSocketChannel.open();
+        }
+        this.server.bind(address);
+        this.address = this.server.getLocalAddress();
+        this.handlers = newHandlerExecutor();
+        this.registry = registry;
+    }
+
+    /**
+     * Returns an executor that runs each task on a new virtual thread if the
+     * runtime supports them, and on a pooled platform thread otherwise.
+     *
+     * @return the executor
+     */
+    private static ExecutorService newHandlerExecutor() {
+        ExecutorService result;
+        try {
+            Method m = Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor");
+            result = (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException
+                | UnsupportedOperationException e) {
+            result = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "bl-server-handler");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Reports the address {@code this} listens on.
+     *
+     * @return the address
+     */
+    public SocketAddress address() {
+        return this.address;
+    }
+
+    /**
+     * Accepts connections and hands each of them to a handler thread, until
+     * {@code this} is closed.
+     *
+     * @throws IOException
+     *             if accepting a connection fails
+     */
+    public void serve() throws IOException {
+        try {
+            while (this.server.isOpen()) {
+                SocketChannel connection = this.server.accept();
+                this.handlers.execute(() -> this.handle(connection));
+            }
+        } catch (ClosedChannelException e) {
+            /*
+             * close() was called while waiting for a connection.
+             */
+        }
+    }
+
+    /**
+     * Serves all requests on {@code connection}, then closes it.
+     *
+     * @param connection
+     *            the connection
+     */
+    private void handle(SocketChannel connection) {
+        try (SocketChannel c = connection;
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                        Channels.newInputStream(c), StandardCharsets.UTF_8));
+                Writer out = new BufferedWriter(new OutputStreamWriter(
+                        Channels.newOutputStream(c), StandardCharsets.UTF_8))) {
+            String command = in.readLine();
+            while (command != null && !command.trim().equals("QUIT")) {
+                StringBuilder source = new StringBuilder();
+                String line = in.readLine();
+                while (line != null && !line.equals(END)) {
+                    if (line.startsWith(END)) {
+                        line = line.substring(1);
+                    }
+                    source.append(line).append('\n');
+                    line = in.readLine();
+                }
+                List<String> reply;
+                try {
+                    reply = this.reply(command.trim(), source.toString());
+                } catch (Error e) {
+                    reply = List.of("ERROR " + e);
+                }
+                for (String r : reply) {
+                    if (r.startsWith(END)) {
+                        out.write(END);
+                    }
+                    out.write(r);
+                    out.write('\n');
+                }
+                out.write(END);
+                out.write('\n');
+                out.flush();
+                command = in.readLine();
+            }
+        } catch (IOException e) {
+            /*
+             * The client went away; nothing else to do for this connection.
+             */
+        }
+    }
+
+    /**
+     * Computes the reply to a request.
+     *
+     * @param command
+     *            the command line of the request
+     * @param source
+     *            the BL source of the request
+     * @return the lines of the reply, starting with the status line
+     */
+    List<String> reply(String command, String source) {
+        List<String> reply = new ArrayList<>();
+        String[] words = command.split("\\s+");
+        FrozenProgram p = null;
+        try {
+            p = this.registry.compile(source);
+        } catch (RuntimeException e) {
+            reply.add("ERROR " + e.getMessage());
+        }
+        if (p != null) {
+            String ok = "OK " + ProgramRegistry.sourceHash(source);
+            switch (words[0]) {
+                case "CHECK":
+                    reply.add(ok);
+                    break;
+                case "PRETTY":
+                    reply.add(ok);
+                    p.prettyPrintLines(reply::add);
+                    break;
+                case "CODE":
+                    reply.add(ok);
+                    reply.add(codeLine(p));
+                    break;
+                case "RUN":
+                    if (words.length != 2 || !words[1].matches("\\d{1,9}")) {
+                        reply.add("ERROR RUN needs a number of steps");
+                    } else if (Integer.parseInt(words[1]) > MAX_RUN_STEPS) {
+                        reply.add("ERROR RUN allows at most " + MAX_RUN_STEPS
+                                + " steps");
+                    } else {
+                        reply.add(ok);
+                        run(p, Integer.parseInt(words[1]), reply);
+                    }
+                    break;
+                default:
+                    reply.add("ERROR unknown command: " + words[0]);
+                    break;
+            }
+        }
+        return reply;
+    }
+
+    /**
+     * Returns the compiled code of {@code p} on one line.
+     *
+     * @param p
+     *            the program
+     * @return the compiled code of p, separated by spaces
+     */
+    private static String codeLine(FrozenProgram p) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < p.codeLength(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(p.codeAt(i));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs {@code p} for one bug in an {@code OpenWorld} for {@code steps}
+     * primitive instructions, or until it reaches HALT, and adds them to
+     * {@code reply}.
+     *
+     * @param p
+     *            the program
+     * @param steps
+     *            the number of primitive instructions
+     * @param reply
+     *            the reply
+     * @updates reply
+     */
+    private static void run(FrozenProgram p, int steps, List<String> reply) {
+        OpenWorld world = new OpenWorld();
+        int[] code = p.code();
+        int pc = 0;
+        for (int i = 0; i < steps && pc >= 0
+                && code[pc] != Instruction.HALT.byteCode(); i++) {
+            pc = BugInterpreter.nextAction(code, pc, 0, world, RUN_BUDGET);
+        }
+        reply.addAll(world.actions);
+        if (pc < 0) {
+            reply.add("preempted: no primitive instruction within "
+                    + RUN_BUDGET + " instructions");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.server.close();
+        this.handlers.shutdown();
+        if (this.address instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(
+                    ((UnixDomainSocketAddress) this.address).getPath());
+        }
+    }
+
+    /**
+     * Main method. The only argument is a port number to listen on the
+     * loopback interface, or the path of a Unix domain socket.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if the server cannot listen or accept connections
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: BLServer (port | socket-path)");
+            return;
+        }
+        SocketAddress address;
+        if (args[0].matches("\\d+")) {
+            address = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                    Integer.parseInt(args[0]));
+        } else {
+            address = UnixDomainSocketAddress.of(Path.of(args[0]));
+        }
+        try (BLServer server = new BLServer(address,
+                new ProgramRegistry(DEFAULT_CACHE_WEIGHT))) {
+            System.err.println("BLServer listening on " + server.address());
+            server.serve();
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+/**
+ * Executable form of a compiled BL program: interpreted, as a
+ * {@code FrozenProgram}, or translated to JVM bytecode by
+ * {@code BytecodeCompiler}. Implementations keep no per-bug state, so one
+ * instance can run any number of bugs on any number of threads.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public interface BugExecutable {
+
+    /**
+     * Executes the program for {@code bug}, starting at address {@code pc} of
+     * its compiled code, until one primitive instruction has been performed
+     * or a HALT is reached, and returns the address of the next instruction
+     * to execute.
+     *
+     * @param pc
+     *            the address of the next instruction to execute
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @return the address of the next instruction to execute
+     * @updates world
+     * @requires [pc is the address of an instruction in the compiled code]
+     * @see BugInterpreter#nextAction(int[], int, int, BugWorld)
+     */
+    int nextAction(int pc, int bug, BugWorld world);
+
+}
@@ -0,0 +1,251 @@
+import components.program.Program.Instruction;
+
+/**
+ * Interpreter for compiled BL code, i.e., the {@code int} values of the
+ * sequence returned by {@code Program.generatedCode()}. The interpreter keeps
+ * no state of its own, so it can run any number of bugs on any number of
+ * threads at the same time.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class BugInterpreter {
+
+    /**
+     * Instructions indexed by byte code.
+     */
+    private static final Instruction[] INSTRUCTIONS = instructionsByCode();
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BugInterpreter() {
+    }
+
+    /**
+     * Returns the instructions indexed by byte code.
+     *
+     * @return the instructions indexed by byte code
+     */
+    private static Instruction[] instructionsByCode() {
+        int max = 0;
+        for (Instruction i : Instruction.values()) {
+            max = Math.max(max, i.byteCode());
+        }
+        Instruction[] result = new Instruction[max + 1];
+        for (Instruction i : Instruction.values()) {
+            result[i.byteCode()] = i;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the instruction with the given byte code.
+     *
+     * @param byteCode
+     *            the byte code
+     * @return the instruction with byte code {@code byteCode}
+     * @requires byteCode is the byte code of an Instruction
+     */
+    public static Instruction instruction(int byteCode) {
+        assert 0 <= byteCode && byteCode < INSTRUCTIONS.length
+                && INSTRUCTIONS[byteCode] != null : ""
+                        + "Violation of: byteCode is the byte code of an Instruction";
+        return INSTRUCTIONS[byteCode];
+    }
+
+    /**
+     * Reports the number of {@code int}s taken by the instruction with the
+     * given byte code, including its operand if it has one.
+     *
+     * @param byteCode
+     *            the byte code
+     * @return the length of the instruction
+     * @requires byteCode is the byte code of an Instruction
+     */
+    public static int length(int byteCode) {
+        int length = 1;
+        if (byteCode >= Instruction.JUMP.byteCode()) {
+            length = 2;
+        }
+        return length;
+    }
+
+    /**
+     * Evaluates the condition tested by the conditional jump {@code jump} for
+     * {@code bug}.
+     *
+     * @param jump
+     *            the conditional jump instruction
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @return the value of the condition
+     * @requires jump is a JUMP_IF_NOT_* instruction
+     */
+    public static boolean test(Instruction jump, int bug, BugWorld world) {
+        boolean result;
+        switch (jump) {
+            case JUMP_IF_NOT_NEXT_IS_EMPTY:
+                result = world.nextIsEmpty(bug);
+                break;
+            case JUMP_IF_NOT_NEXT_IS_NOT_EMPTY:
+                result = !world.nextIsEmpty(bug);
+                break;
+            case JUMP_IF_NOT_NEXT_IS_WALL:
+                result = world.nextIsWall(bug);
+                break;
+            case JUMP_IF_NOT_NEXT_IS_NOT_WALL:
+                result = !world.nextIsWall(bug);
+                break;
+            case JUMP_IF_NOT_NEXT_IS_FRIEND:
+                result = world.nextIsFriend(bug);
+                break;
+            case JUMP_IF_NOT_NEXT_IS_NOT_FRIEND:
+                result = !world.nextIsFriend(bug);
+                break;
+            case JUMP_IF_NOT_NEXT_IS_ENEMY:
+                result = world.nextIsEnemy(bug);
+                break;
+            case JUMP_IF_NOT_NEXT_IS_NOT_ENEMY:
+                result = !world.nextIsEnemy(bug);
+                break;
+            case JUMP_IF_NOT_RANDOM:
+                result = world.random(bug);
+                break;
+            case JUMP_IF_NOT_TRUE:
+                result = true;
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Not a conditional jump: " + jump);
+        }
+        return result;
+    }
+
+    /**
+     * Executes {@code code} for {@code bug}, starting at address {@code pc},
+     * until one primitive instruction has been performed or a HALT is
+     * reached, and returns the address of the next instruction to execute. A
+     * bug whose program has halted stays at the HALT: executing it again
+     * performs nothing and returns the same address.
+     *
+     * @param code
+     *            the compiled program
+     * @param pc
+     *            the address of the next instruction to execute
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @return the address of the next instruction to execute
+     * @updates world
+     * @requires <pre>
+     * [code is the compiled code of a BL program] and
+     * [pc is the address of an instruction in code]
+     * </pre>
+     */
+    public static int nextAction(int[] code, int pc, int bug,
+            BugWorld world) {
+        return nextAction(code, pc, bug, world, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Encodes the address at which execution was preempted as a negative
+     * value, so that it can be told apart from the address returned after a
+     * primitive instruction.
+     *
+     * @param pc
+     *            the address at which execution was preempted
+     * @return the encoded address
+     * @ensures preempted(pc) < 0
+     */
+    public static int preempted(int pc) {
+        return -pc - 1;
+    }
+
+    /**
+     * Like {@link #nextAction(int[], int, int, BugWorld)}, but executes at most
+     * {@code budget} instructions, counting jumps and the primitive
+     * instruction. If the budget runs out first, returns
+     * {@code preempted(pc')}, where {@code pc'} is the address at which
+     * execution must be resumed; {@code -r - 1} recovers it from the result
+     * {@code r}.
+     *
+     * @param code
+     *            the compiled program
+     * @param pc
+     *            the address of the next instruction to execute
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @param budget
+     *            the maximum number of instructions to execute
+     * @return the address of the next instruction to execute, or the encoded
+     *         address at which execution was preempted
+     * @updates world
+     * @requires <pre>
+     * [code is the compiled code of a BL program] and
+     * [pc is the address of an instruction in code] and budget > 0
+     * </pre>
+     */
+    public static int nextAction(int[] code, int pc, int bug, BugWorld world,
+            int budget) {
+        assert budget > 0 : "Violation of: budget > 0";
+
+        int next = pc;
+        int left = budget;
+        boolean done = false;
+        while (!done && left > 0) {
+            left--;
+            Instruction i = INSTRUCTIONS[code[next]];
+            switch (i) {
+                case MOVE:
+                    world.move(bug);
+                    next++;
+                    done = true;
+                    break;
+                case TURNLEFT:
+                    world.turnLeft(bug);
+                    next++;
+                    done = true;
+                    break;
+                case TURNRIGHT:
+                    world.turnRight(bug);
+                    next++;
+                    done = true;
+                    break;
+                case INFECT:
+                    world.infect(bug);
+                    next++;
+                    done = true;
+                    break;
+                case SKIP:
+                    world.skip(bug);
+                    next++;
+                    done = true;
+                    break;
+                case HALT:
+                    done = true;
+                    break;
+                case JUMP:
+                    next = code[next + 1];
+                    break;
+                default:
+                    if (test(i, bug, world)) {
+                        next += 2;
+                    } else {
+                        next = code[next + 1];
+                    }
+                    break;
+            }
+        }
+        if (!done) {
+            next = preempted(next);
+        }
+        return next;
+    }
+
+}
@@ -0,0 +1,783 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import components.program.Program.Instruction;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.StatementKernel.Kind;
+
+/**
+ * Profiling executor for a compiled BL program. It runs the code exactly as
+ * {@code BugInterpreter} does, and also counts how many times each
+ * instruction is executed, how many times each conditional jump is taken and
+ * how many times each loop body is repeated. Every address is mapped back to
+ * the statement of the program that generated it and to the user instruction
+ * whose body contains that statement, so that the profile can be reported as
+ * a table of hot spots in the source.
+ *
+ * <p>
+ * To keep the overhead low, execution only counts the address each step
+ * starts at and the jumps taken. Since the only backward jumps are those at
+ * the end of loop bodies, and they are counted, the number of executions of
+ * every instruction follows from these counts in a single pass over the code.
+ *
+ * <p>
+ * A profiler is not thread-safe: use one per thread.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class BugProfiler implements BugExecutable {
+
+    /**
+     * One row of the hot-spot table: the profile of one instruction.
+     */
+    public static final class HotSpot {
+
+        /**
+         * The address of the instruction.
+         */
+        private final int address;
+
+        /**
+         * The instruction.
+         */
+        private final Instruction instruction;
+
+        /**
+         * The statement that generated the instruction.
+         */
+        private final FrozenStatement statement;
+
+        /**
+         * The user instruction whose body contains the statement, or null.
+         */
+        private final String owner;
+
+        /**
+         * The path of the statement from the root of its body.
+         */
+        private final String path;
+
+        /**
+         * The number of executions.
+         */
+        private final long hits;
+
+        /**
+         * The number of jumps taken.
+         */
+        private final long taken;
+
+        /**
+         * The number of loop iterations.
+         */
+        private final long iterations;
+
+        /**
+         * Constructor.
+         *
+         * @param address
+         *            the address of the instruction
+         * @param instruction
+         *            the instruction
+         * @param statement
+         *            the statement that generated the instruction
+         * @param owner
+         *            the user instruction containing the statement, or null
+         * @param path
+         *            the path of the statement
+         * @param hits
+         *            the number of executions
+         * @param taken
+         *            the number of jumps taken
+         * @param iterations
+         *            the number of loop iterations
+         */
+        private HotSpot(int address, Instruction instruction,
+                FrozenStatement statement, String owner, String path,
+                long hits, long taken, long iterations) {
+            this.address = address;
+            this.instruction = instruction;
+            this.statement = statement;
+            this.owner = owner;
+            this.path = path;
+            this.hits = hits;
+            this.taken = taken;
+            this.iterations = iterations;
+        }
+
+        /**
+         * Reports the address of the instruction.
+         *
+         * @return the address
+         */
+        public int address() {
+            return this.address;
+        }
+
+        /**
+         * Reports the instruction.
+         *
+         * @return the instruction
+         */
+        public Instruction instruction() {
+            return this.instruction;
+        }
+
+        /**
+         * Reports the statement that generated the instruction: the CALL of a
+         * primitive instruction, the IF, IF_ELSE or WHILE of a jump, or the
+         * program body for the final HALT.
+         *
+         * @return the statement
+         */
+        public FrozenStatement statement() {
+            return this.statement;
+        }
+
+        /**
+         * Reports the name of the user instruction whose body contains
+         * {@code statement()}, or {@code null} if it is in the program body.
+         *
+         * @return the user instruction name, or null
+         */
+        public String owner() {
+            return this.owner;
+        }
+
+        /**
+         * Reports the path of {@code statement()} from the root of the body
+         * that contains it: the positions of the children to follow, e.g.,
+         * {@code /2/0/1}, or {@code /} for the root itself.
+         *
+         * @return the path
+         */
+        public String path() {
+            return this.path;
+        }
+
+        /**
+         * Reports the number of times the instruction was executed.
+         *
+         * @return the number of executions
+         */
+        public long hits() {
+            return this.hits;
+        }
+
+        /**
+         * Reports the number of times the instruction, a conditional jump,
+         * jumped; 0 for other instructions.
+         *
+         * @return the number of jumps taken
+         */
+        public long taken() {
+            return this.taken;
+        }
+
+        /**
+         * Reports the number of iterations of the loop whose test is the
+         * instruction, i.e., the number of times its body was completed; 0
+         * for instructions that are not the test of a WHILE.
+         *
+         * @return the number of loop iterations
+         */
+        public long iterations() {
+            return this.iterations;
+        }
+
+    }
+
+    /**
+     * World used by {@code main} to time executors: its queries answer from a
+     * fixed pseudo-random sequence, and its actions do nothing, so that the
+     * time measured is that of the executor.
+     */
+    private static final class TimingWorld implements BugWorld {
+
+        /**
+         * The state of the sequence of answers.
+         */
+        private long state = 0x9E3779B97F4A7C15L;
+
+        /**
+         * Returns the next answer.
+         *
+         * @return the answer
+         * @updates this
+         */
+        private boolean answer() {
+            long x = this.state;
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            this.state = x;
+            return x < 0;
+        }
+
+        @Override
+        public boolean nextIsEmpty(int bug) {
+            return this.answer();
+        }
+
+        @Override
+        public boolean nextIsWall(int bug) {
+            return this.answer();
+        }
+
+        @Override
+        public boolean nextIsFriend(int bug) {
+            return this.answer();
+        }
+
+        @Override
+        public boolean nextIsEnemy(int bug) {
+            return this.answer();
+        }
+
+        @Override
+        public boolean random(int bug) {
+            return this.answer();
+        }
+
+        @Override
+        public void move(int bug) {
+        }
+
+        @Override
+        public void turnLeft(int bug) {
+        }
+
+        @Override
+        public void turnRight(int bug) {
+        }
+
+        @Override
+        public void infect(int bug) {
+        }
+
+        @Override
+        public void skip(int bug) {
+        }
+
+    }
+
+    /**
+     * The profiled program.
+     */
+    private final FrozenProgram program;
+
+    /**
+     * The compiled code.
+     */
+    private final int[] code;
+
+    /**
+     * The number of steps started, by address.
+     */
+    private final long[] starts;
+
+    /**
+     * The number of jumps taken, by address: for a JUMP, its number of
+     * executions.
+     */
+    private final long[] taken;
+
+    /**
+     * The statement that generated each address.
+     */
+    private final FrozenStatement[] statements;
+
+    /**
+     * The user instruction containing the statement at each address, or null.
+     */
+    private final String[] owners;
+
+    /**
+     * The path of the statement at each address.
+     */
+    private final String[] paths;
+
+    /**
+     * The address of the jump back to the test of each WHILE, by address of
+     * the test; 0 at other addresses.
+     */
+    private final int[] backJumps;
+
+    /**
+     * Source of the program timed by {@code main} when no file is named.
+     */
+    private static final String WANDER = "PROGRAM Wander IS"
+            + " INSTRUCTION look IS IF next-is-enemy THEN infect END IF"
+            + " END look"
+            + " BEGIN WHILE true DO look IF next-is-empty THEN move"
+            + " ELSE IF random THEN turnleft ELSE turnright END IF END IF"
+            + " END WHILE END Wander";
+
+    /**
+     * Number of rounds, each one step of every bug, in one timed run.
+     */
+    private static final int ROUNDS = 2_000;
+
+    /**
+     * Number of bugs stepped by {@code main} in each round.
+     */
+    private static final int BUGS = 500;
+
+    /**
+     * Number of timed runs of each executor; the fastest run is reported.
+     */
+    private static final int RUNS = 15;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            the program to profile
+     */
+    public BugProfiler(FrozenProgram p) {
+        assert p != null : "Violation of: p is not null";
+
+        this.program = p;
+        this.code = p.code();
+        int n = this.code.length;
+        this.starts = new long[n];
+        this.taken = new long[n];
+        this.statements = new FrozenStatement[n];
+        this.owners = new String[n];
+        this.paths = new String[n];
+        this.backJumps = new int[n];
+        int end = this.map(p.body(), 0, null, "");
+        this.mark(end, p.body(), null, "");
+        assert end == n - 1 : "Violation of: code is the code of p";
+    }
+
+    /**
+     * Records that the instruction at {@code pc} was generated by {@code s}.
+     *
+     * @param pc
+     *            the address
+     * @param s
+     *            the statement
+     * @param owner
+     *            the user instruction containing s, or null
+     * @param path
+     *            the path of s
+     */
+    private void mark(int pc, FrozenStatement s, String owner, String path) {
+        this.statements[pc] = s;
+        this.owners[pc] = owner;
+        if (path.isEmpty()) {
+            this.paths[pc] = "/";
+        } else {
+            this.paths[pc] = path;
+        }
+    }
+
+    /**
+     * Maps the addresses of the code generated for {@code s}, which starts at
+     * {@code pc}, laying it out exactly as {@code Program.generatedCode}
+     * does, and returns the address following it.
+     *
+     * @param s
+     *            the statement
+     * @param pc
+     *            the address of the code of s
+     * @param owner
+     *            the user instruction containing s, or null
+     * @param path
+     *            the path of s
+     * @return the address following the code of s
+     */
+    private int map(FrozenStatement s, int pc, String owner, String path) {
+        int next = pc;
+        switch (s.kind()) {
+            case BLOCK:
+                for (int i = 0; i < s.numberOfChildren(); i++) {
+                    next = this.map(s.child(i), next, owner, path + "/" + i);
+                }
+                break;
+            case IF:
+                this.mark(next, s, owner, path);
+                next = this.map(s.child(0), next + 2, owner, path + "/0");
+                break;
+            case IF_ELSE:
+                this.mark(next, s, owner, path);
+                next = this.map(s.child(0), next + 2, owner, path + "/0");
+                this.mark(next, s, owner, path);
+                next = this.map(s.child(1), next + 2, owner, path + "/1");
+                break;
+            case WHILE:
+                this.mark(next, s, owner, path);
+                next = this.map(s.child(0), next + 2, owner, path + "/0");
+                this.mark(next, s, owner, path);
+                this.backJumps[pc] = next;
+                next += 2;
+                break;
+            default: {
+                FrozenStatement callee = this.program
+                        .instruction(s.instructionId());
+                if (callee != null) {
+                    next = this.map(callee, next, s.instruction(), "");
+                } else {
+                    this.mark(next, s, owner, path);
+                    next++;
+                }
+                break;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Reports the profiled program.
+     *
+     * @return the program
+     */
+    public FrozenProgram program() {
+        return this.program;
+    }
+
+    /**
+     * Executes the program like {@code BugInterpreter.nextAction}, counting
+     * the instructions executed and the jumps taken.
+     *
+     * @param pc
+     *            the address of the next instruction to execute
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @return the address of the next instruction to execute
+     * @updates this, world
+     * @requires pc is the address of an instruction in the code
+     */
+    @Override
+    public int nextAction(int pc, int bug, BugWorld world) {
+        int[] c = this.code;
+        long[] t = this.taken;
+        this.starts[pc]++;
+        int next = pc;
+        boolean done = false;
+        while (!done) {
+            Instruction i = BugInterpreter.instruction(c[next]);
+            switch (i) {
+                case MOVE:
+                    world.move(bug);
+                    next++;
+                    done = true;
+                    break;
+                case TURNLEFT:
+                    world.turnLeft(bug);
+                    next++;
+                    done = true;
+                    break;
+                case TURNRIGHT:
+                    world.turnRight(bug);
+                    next++;
+                    done = true;
+                    break;
+                case INFECT:
+                    world.infect(bug);
+                    next++;
+                    done = true;
+                    break;
+                case SKIP:
+                    world.skip(bug);
+                    next++;
+                    done = true;
+                    break;
+                case HALT:
+                    done = true;
+                    break;
+                case JUMP:
+                    t[next]++;
+                    next = c[next + 1];
+                    break;
+                default:
+                    if (BugInterpreter.test(i, bug, world)) {
+                        next += 2;
+                    } else {
+                        t[next]++;
+                        next = c[next + 1];
+                    }
+                    break;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Returns the number of times each instruction was executed, by address;
+     * 0 at the addresses holding the targets of jumps.
+     *
+     * @return the number of executions, by address
+     */
+    public long[] hits() {
+        int[] c = this.code;
+        long[] result = new long[c.length];
+        for (int pc = 0; pc < c.length; pc += BugInterpreter.length(c[pc])) {
+            if (BugInterpreter.length(c[pc]) == 2) {
+                result[c[pc + 1]] += this.taken[pc];
+            }
+        }
+        int previous = -1;
+        for (int pc = 0; pc < c.length; pc += BugInterpreter.length(c[pc])) {
+            result[pc] += this.starts[pc];
+            if (previous >= 0 && c[previous] > Instruction.JUMP.byteCode()) {
+                /*
+                 * The conditional jump before pc falls through when not taken.
+                 */
+                result[pc] += result[previous] - this.taken[previous];
+            }
+            previous = pc;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of times the conditional jump at {@code pc} jumped.
+     *
+     * @param pc
+     *            the address
+     * @return the number of jumps taken
+     * @requires 0 <= pc < [length of the code]
+     */
+    public long taken(int pc) {
+        return this.taken[pc];
+    }
+
+    /**
+     * Resets all counts to 0.
+     *
+     * @updates this
+     */
+    public void reset() {
+        Arrays.fill(this.starts, 0);
+        Arrays.fill(this.taken, 0);
+    }
+
+    /**
+     * Returns the profile of every instruction executed at least once, most
+     * executed first.
+     *
+     * @return the hot spots
+     */
+    public List<HotSpot> hotSpots() {
+        long[] hits = this.hits();
+        List<HotSpot> result = new ArrayList<>();
+        for (int pc = 0; pc < this.code.length; pc += BugInterpreter
+                .length(this.code[pc])) {
+            if (hits[pc] > 0) {
+                long iterations = 0;
+                if (this.backJumps[pc] > 0) {
+                    iterations = this.taken[this.backJumps[pc]];
+                }
+                long jumped = 0;
+                if (this.code[pc] > Instruction.JUMP.byteCode()) {
+                    jumped = this.taken[pc];
+                }
+                result.add(new HotSpot(pc,
+                        BugInterpreter.instruction(this.code[pc]),
+                        this.statements[pc], this.owners[pc], this.paths[pc],
+                        hits[pc], jumped, iterations));
+            }
+        }
+        result.sort(Comparator.comparingLong(HotSpot::hits).reversed()
+                .thenComparingInt(HotSpot::address));
+        return result;
+    }
+
+    /**
+     * Returns a one-line description of {@code s}, e.g.,
+     * {@code WHILE next-is-empty} or {@code move}.
+     *
+     * @param s
+     *            the statement
+     * @return the description of s
+     */
+    private static String describe(FrozenStatement s) {
+        String result;
+        switch (s.kind()) {
+            case BLOCK:
+                result = "(end of body)";
+                break;
+            case IF:
+            case WHILE:
+                result = s.kind() + " "
+                        + FrozenStatement.toStringCondition(s.condition());
+                break;
+            case IF_ELSE:
+                result = "IF "
+                        + FrozenStatement.toStringCondition(s.condition())
+                        + " ... ELSE";
+                break;
+            default:
+                result = s.instruction();
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Prints the hot-spot table to {@code out}: for each of the {@code limit}
+     * most executed instructions, the number of executions and their share of
+     * the total, the address and instruction, the percentage of jumps taken
+     * for conditional jumps, the loop iterations for WHILE tests, and the
+     * user instruction, path and statement it comes from.
+     *
+     * @param out
+     *            the output stream
+     * @param limit
+     *            the maximum number of rows
+     * @updates out.content
+     * @requires out.is_open and limit >= 0
+     */
+    public void report(SimpleWriter out, int limit) {
+        this.report(out, limit, null);
+    }
+
+    /**
+     * Like {@link #report(SimpleWriter, int)}, but also prints the line and
+     * column in the source of each instruction, as given by {@code map}.
+     *
+     * @param out
+     *            the output stream
+     * @param limit
+     *            the maximum number of rows
+     * @param map
+     *            the source map of the profiled program, or null
+     * @updates out.content
+     * @requires <pre>
+     * out.is_open and limit >= 0 and
+     * [map is null or the source map of the profiled program]
+     * </pre>
+     */
+    public void report(SimpleWriter out, int limit, SourceMap map) {
+        assert out != null : "Violation of: out is not null";
+        assert out.isOpen() : "Violation of: out.is_open";
+        assert limit >= 0 : "Violation of: limit >= 0";
+
+        List<HotSpot> spots = this.hotSpots();
+        long total = 0;
+        for (HotSpot s : spots) {
+            total += s.hits();
+        }
+        String format = "%12s %6s %5s  %-30s %6s %10s  %s";
+        out.println(String.format(format, "hits", "%", "addr", "instruction",
+                "taken", "iters", "source"));
+        for (int k = 0; k < Math.min(limit, spots.size()); k++) {
+            HotSpot s = spots.get(k);
+            String taken = "";
+            if (s.instruction().byteCode() > Instruction.JUMP.byteCode()) {
+                taken = String.format("%5.1f%%",
+                        100.0 * s.taken() / s.hits());
+            }
+            String iterations = "";
+            if (s.statement().kind() == Kind.WHILE
+                    && s.instruction() != Instruction.JUMP) {
+                iterations = Long.toString(s.iterations());
+            }
+            String owner = s.owner();
+            if (owner == null) {
+                owner = this.program.name();
+            }
+            String source = owner + s.path() + " " + describe(s.statement());
+            if (map != null) {
+                SourceMap.Location at = map.locate(s.address());
+                source += " (" + at.line() + ":" + at.column() + ")";
+            }
+            out.println(String.format(format, s.hits(),
+                    String.format("%5.1f%%", 100.0 * s.hits() / total),
+                    s.address(), s.instruction(), taken, iterations, source));
+        }
+    }
+
+    /**
+     * Runs {@code ROUNDS} rounds of {@code exec}, each stepping
+     * {@code BUGS} bugs once, in a new {@code TimingWorld}, and returns the
+     * time taken.
+     *
+     * @param exec
+     *            the executor
+     * @return the time taken, in nanoseconds
+     */
+    private static long time(BugExecutable exec) {
+        BugWorld w = new TimingWorld();
+        int[] pcs = new int[BUGS];
+        long start = System.nanoTime();
+        for (int r = 0; r < ROUNDS; r++) {
+            for (int bug = 0; bug < BUGS; bug++) {
+                pcs[bug] = exec.nextAction(pcs[bug], bug, w);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Times {@code p} under {@code FrozenProgram.nextAction} and under a
+     * profiler, in alternate runs, and prints the fastest run of each, the
+     * overhead of profiling, and the hot spots.
+     *
+     * @param out
+     *            the output stream
+     * @param title
+     *            the name of the program
+     * @param p
+     *            the program
+     * @updates out.content
+     * @requires out.is_open
+     */
+    private static void time(SimpleWriter out, String title,
+            FrozenProgram p) {
+        long plain = Long.MAX_VALUE;
+        long profiled = Long.MAX_VALUE;
+        BugProfiler profiler = new BugProfiler(p);
+        for (int run = 0; run < RUNS; run++) {
+            plain = Math.min(plain, time(p));
+            profiler.reset();
+            profiled = Math.min(profiled, time(profiler));
+        }
+        double steps = (double) ROUNDS * BUGS;
+        out.println(String.format(
+                "%s: %.1f ns/step, profiled %.1f ns/step (%+.1f%%)", title,
+                plain / steps, profiled / steps,
+                100.0 * (profiled - plain) / plain));
+        profiler.report(out, 10);
+        out.println();
+    }
+
+    /**
+     * Main method: times each BL program named, or a built-in one if none is,
+     * with and without profiling.
+     *
+     * @param args
+     *            the names of BL files
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        SimpleWriter out = new SimpleWriter1L();
+        if (args.length == 0) {
+            Program2 p = new Program2();
+            p.parse(SourceTokenizer.tokens(WANDER));
+            time(out, "Wander", p.freeze());
+        }
+        for (String file : args) {
+            String source = new String(Files.readAllBytes(Paths.get(file)),
+                    StandardCharsets.UTF_8);
+            Program2 p = new Program2();
+            p.parse(SourceTokenizer.tokens(source));
+            time(out, file, p.freeze());
+        }
+        out.close();
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Source of the values of the BL condition {@code random} for a population of
+ * bugs: one independent SplitMix64 stream per bug, all derived from a single
+ * run seed. A bug's stream depends only on the run seed and the bug, never on
+ * which thread evaluates it or on the other bugs, so a run is reproducible bit
+ * for bit whatever the number of threads. Drawing a value updates one
+ * {@code long} of state and allocates nothing.
+ *
+ * <p>
+ * Different bugs may draw at the same time from different threads without
+ * synchronization; a single bug must not be run by two threads at once, which
+ * the simulation never does anyway. The states of neighbouring bugs share a
+ * cache line, as do the other per-bug arrays of {@code GridWorld}, so threads
+ * drawing for neighbouring bugs contend for that line although they share no
+ * data: parallel runs should give each thread a contiguous range of bugs
+ * rather than interleaving them.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class BugRandom {
+
+    /**
+     * Increment of the SplitMix64 state: the odd integer closest to 2^64
+     * divided by the golden ratio.
+     */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * The run seed.
+     */
+    private final long seed;
+
+    /**
+     * The state of the stream of each bug.
+     */
+    private final long[] states;
+
+    /**
+     * Constructor.
+     *
+     * @param seed
+     *            the run seed
+     * @param bugs
+     *            the number of bugs; they are numbered from 0
+     * @requires bugs >= 0
+     */
+    public BugRandom(long seed, int bugs) {
+        assert bugs >= 0 : "Violation of: bugs >= 0";
+
+        this.seed = seed;
+        this.states = new long[bugs];
+        for (int bug = 0; bug < bugs; bug++) {
+            this.states[bug] = initialState(seed, bug);
+        }
+    }
+
+    /**
+     * Returns the 64-bit finalizer of SplitMix64 applied to {@code z}: a
+     * bijection whose output bits all depend on all input bits.
+     *
+     * @param z
+     *            the value to mix
+     * @return the mixed value
+     */
+    static long mix64(long z) {
+        long x = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * Returns the initial state of the stream of {@code bug} for the run seed
+     * {@code seed}.
+     *
+     * @param seed
+     *            the run seed
+     * @param bug
+     *            the bug
+     * @return the initial state
+     */
+    private static long initialState(long seed, int bug) {
+        return mix64(seed + GOLDEN_GAMMA * (bug + 1L));
+    }
+
+    /**
+     * Reports the run seed.
+     *
+     * @return the run seed
+     */
+    public long seed() {
+        return this.seed;
+    }
+
+    /**
+     * Reports the number of bugs.
+     *
+     * @return the number of bugs
+     */
+    public int bugs() {
+        return this.states.length;
+    }
+
+    /**
+     * Returns the array holding the state of the stream of each bug, for
+     * checkpoints and copies of a simulation; writing it changes the streams.
+     *
+     * @return the states, indexed by bug
+     */
+    long[] stateArray() {
+        return this.states;
+    }
+
+    /**
+     * Returns the next value of the condition {@code random} for {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     * @return true or false, each with probability 1/2
+     * @updates this
+     * @requires 0 <= bug < bugs()
+     */
+    public boolean nextBoolean(int bug) {
+        long s = this.states[bug] + GOLDEN_GAMMA;
+        this.states[bug] = s;
+        return mix64(s) < 0;
+    }
+
+    /**
+     * Restarts the stream of {@code bug}, e.g., when a new bug takes its
+     * number, as if the run had just started.
+     *
+     * @param bug
+     *            the bug
+     * @updates this
+     * @requires 0 <= bug < bugs()
+     */
+    public void reset(int bug) {
+        this.states[bug] = initialState(this.seed, bug);
+    }
+
+    /**
+     * Returns a generator for {@code bugs} bugs whose run seed is derived from
+     * that of {@code this} and {@code index}, e.g., one per world or species
+     * of a batch of runs. Generators split with different indices are
+     * independent of each other and of {@code this}.
+     *
+     * @param index
+     *            the index of the new generator
+     * @param bugs
+     *            the number of bugs of the new generator
+     * @return the new generator
+     * @requires bugs >= 0
+     */
+    public BugRandom split(long index, int bugs) {
+        return new BugRandom(mix64(mix64(this.seed) + GOLDEN_GAMMA * index),
+                bugs);
+    }
+
+}
@@ -0,0 +1,99 @@
+/**
+ * World in which bugs execute compiled BL programs: the queries behind the BL
+ * conditions and the primitive instructions. Bugs are identified by
+ * non-negative integers chosen by the world.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public interface BugWorld {
+
+    /**
+     * Reports whether the cell in front of {@code bug} is empty.
+     *
+     * @param bug
+     *            the bug
+     * @return true iff the cell in front of bug is empty
+     */
+    boolean nextIsEmpty(int bug);
+
+    /**
+     * Reports whether the cell in front of {@code bug} is a wall.
+     *
+     * @param bug
+     *            the bug
+     * @return true iff the cell in front of bug is a wall
+     */
+    boolean nextIsWall(int bug);
+
+    /**
+     * Reports whether the cell in front of {@code bug} holds a bug of the same
+     * species.
+     *
+     * @param bug
+     *            the bug
+     * @return true iff the cell in front of bug holds a friend
+     */
+    boolean nextIsFriend(int bug);
+
+    /**
+     * Reports whether the cell in front of {@code bug} holds a bug of another
+     * species.
+     *
+     * @param bug
+     *            the bug
+     * @return true iff the cell in front of bug holds an enemy
+     */
+    boolean nextIsEnemy(int bug);
+
+    /**
+     * Evaluates the condition {@code random} for {@code bug}. Worlds that
+     * must be reproducible draw from a {@code BugRandom} seeded for the run.
+     *
+     * @param bug
+     *            the bug
+     * @return true or false, each with probability 1/2
+     */
+    boolean random(int bug);
+
+    /**
+     * Performs the primitive instruction {@code move} for {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     */
+    void move(int bug);
+
+    /**
+     * Performs the primitive instruction {@code turnleft} for {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     */
+    void turnLeft(int bug);
+
+    /**
+     * Performs the primitive instruction {@code turnright} for {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     */
+    void turnRight(int bug);
+
+    /**
+     * Performs the primitive instruction {@code infect} for {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     */
+    void infect(int bug);
+
+    /**
+     * Performs the primitive instruction {@code skip} for {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     */
+    void skip(int bug);
+
+}
@@ -0,0 +1,632 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.utilities.Tokenizer;
+
+/**
+ * Tokenizer for BL source held in memory as bytes of ASCII (or UTF-8) text.
+ * It splits the source at the same separators as {@code SourceTokenizer},
+ * but classifies each token as it goes and records it as an integer code:
+ * one of the keywords or conditions, {@code IDENTIFIER}, {@code ERROR} for
+ * any other token, and {@code END_OF_INPUT} at the end.
+ *
+ * <p>
+ * Keywords and conditions are recognized by a perfect hash over their raw
+ * bytes, checked with a single comparison, and identifiers are interned into
+ * a table of the scanner, so the only strings created are those of
+ * identifiers seen for the first time. The token buffer and the identifier
+ * table are reused from one {@code scan} to the next.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class ByteScanner {
+
+    /**
+     * Code of the keyword PROGRAM.
+     */
+    public static final int PROGRAM = 0;
+
+    /**
+     * Code of the keyword IS.
+     */
+    public static final int IS = 1;
+
+    /**
+     * Code of the keyword INSTRUCTION.
+     */
+    public static final int INSTRUCTION = 2;
+
+    /**
+     * Code of the keyword END.
+     */
+    public static final int END = 3;
+
+    /**
+     * Code of the keyword IF.
+     */
+    public static final int IF = 4;
+
+    /**
+     * Code of the keyword THEN.
+     */
+    public static final int THEN = 5;
+
+    /**
+     * Code of the keyword ELSE.
+     */
+    public static final int ELSE = 6;
+
+    /**
+     * Code of the keyword WHILE.
+     */
+    public static final int WHILE = 7;
+
+    /**
+     * Code of the keyword BEGIN.
+     */
+    public static final int BEGIN = 8;
+
+    /**
+     * Code of the keyword DO.
+     */
+    public static final int DO = 9;
+
+    /**
+     * Code of the first condition; the code of condition {@code c} is
+     * {@code FIRST_CONDITION + c.ordinal()}.
+     */
+    public static final int FIRST_CONDITION = 10;
+
+    /**
+     * Code of an identifier.
+     */
+    public static final int IDENTIFIER = 20;
+
+    /**
+     * Code of a token that is neither a keyword, a condition nor an
+     * identifier.
+     */
+    public static final int ERROR = 21;
+
+    /**
+     * Code of the end of the input.
+     */
+    public static final int END_OF_INPUT = 22;
+
+    /**
+     * The spellings of the keywords and conditions, indexed by code.
+     */
+    private static final String[] SPELLINGS = { "PROGRAM", "IS",
+        "INSTRUCTION", "END", "IF", "THEN", "ELSE", "WHILE", "BEGIN", "DO",
+        "next-is-empty", "next-is-not-empty", "next-is-wall",
+        "next-is-not-wall", "next-is-friend", "next-is-not-friend",
+        "next-is-enemy", "next-is-not-enemy", "random", "true" };
+
+    /**
+     * The bytes of the spellings, indexed by code.
+     */
+    private static final byte[][] SPELLING_BYTES =
+            new byte[SPELLINGS.length][];
+
+    /**
+     * Length of the longest keyword or condition.
+     */
+    private static final int MAX_SPELLING = 18;
+
+    /**
+     * The keyword or condition in each slot of the perfect hash, or -1.
+     */
+    private static final int[] SLOTS = new int[32];
+
+    /**
+     * Flag of the separator bytes in {@code CLASSES}.
+     */
+    private static final int SEPARATOR = 1;
+
+    /**
+     * Flag of the letters in {@code CLASSES}.
+     */
+    private static final int LETTER = 2;
+
+    /**
+     * Flag of the bytes that may follow the first one in an identifier.
+     */
+    private static final int IDENTIFIER_PART = 4;
+
+    /**
+     * The flags of each byte value.
+     */
+    private static final byte[] CLASSES = new byte[256];
+
+    static {
+        Arrays.fill(SLOTS, -1);
+        for (int code = 0; code < SPELLINGS.length; code++) {
+            byte[] b = SPELLINGS[code].getBytes(StandardCharsets.US_ASCII);
+            SPELLING_BYTES[code] = b;
+            int slot = slot(b, 0, b.length);
+            if (SLOTS[slot] >= 0) {
+                /*
+                 * Checked even without -ea: a collision would silently turn
+                 * a keyword into an identifier
+                 */
+                throw new AssertionError("Keyword hash collision: "
+                        + SPELLINGS[code] + " and " + SPELLINGS[SLOTS[slot]]);
+            }
+            SLOTS[slot] = code;
+        }
+        for (int c = 0; c < 256; c++) {
+            int flags = 0;
+            if (SourceTokenizer.isSeparator((char) c)) {
+                flags |= SEPARATOR;
+            }
+            if (('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z')) {
+                flags |= LETTER | IDENTIFIER_PART;
+            }
+            if (('0' <= c && c <= '9') || c == '-') {
+                flags |= IDENTIFIER_PART;
+            }
+            CLASSES[c] = (byte) flags;
+        }
+    }
+
+    /**
+     * Initial capacity of the token buffer and of the identifier table.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The code of each token.
+     */
+    private int[] kinds = new int[INITIAL_CAPACITY];
+
+    /**
+     * The identifier id of each IDENTIFIER token, -1 for the others.
+     */
+    private int[] ids = new int[INITIAL_CAPACITY];
+
+    /**
+     * The offset in the source of each token.
+     */
+    private int[] offsets = new int[INITIAL_CAPACITY];
+
+    /**
+     * The length in bytes of each token.
+     */
+    private int[] lengths = new int[INITIAL_CAPACITY];
+
+    /**
+     * The number of tokens, END_OF_INPUT included.
+     */
+    private int size = 0;
+
+    /**
+     * The source of the last scan.
+     */
+    private byte[] source = new byte[0];
+
+    /**
+     * Buffer the contents of direct buffers are copied to.
+     */
+    private byte[] scratch = new byte[0];
+
+    /**
+     * Open-addressing hash table of the identifiers: id + 1, or 0 for an
+     * empty slot.
+     */
+    private int[] table = new int[2 * INITIAL_CAPACITY];
+
+    /**
+     * The hash of each identifier, by id.
+     */
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    /**
+     * The bytes of each identifier, by id.
+     */
+    private byte[][] nameBytes = new byte[INITIAL_CAPACITY][];
+
+    /**
+     * Each identifier, by id.
+     */
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    /**
+     * The number of identifiers.
+     */
+    private int nameCount = 0;
+
+    /**
+     * Returns the slot of the perfect hash of the keywords and conditions for
+     * the {@code length} bytes of {@code b} at {@code offset}: constants
+     * chosen so that the 20 of them fall in distinct slots.
+     *
+     * @param b
+     *            the bytes
+     * @param offset
+     *            the offset of the token
+     * @param length
+     *            the length of the token
+     * @return the slot
+     * @requires length >= 1
+     */
+    private static int slot(byte[] b, int offset, int length) {
+        int last = offset + length - 1;
+        int fourthLast = offset + Math.max(length - 4, 0);
+        return (4 * b[offset] + 7 * b[last] + b[fourthLast] + 5 * length)
+                & (SLOTS.length - 1);
+    }
+
+    /**
+     * Returns the code of the keyword or condition spelled by the
+     * {@code length} bytes of {@code b} at {@code offset}, or -1 if they
+     * spell neither.
+     *
+     * @param b
+     *            the bytes
+     * @param offset
+     *            the offset of the token
+     * @param length
+     *            the length of the token
+     * @return the code, or -1
+     * @requires length >= 1
+     */
+    private static int keyword(byte[] b, int offset, int length) {
+        int result = -1;
+        if (length <= MAX_SPELLING) {
+            int code = SLOTS[slot(b, offset, length)];
+            if (code >= 0 && Arrays.equals(SPELLING_BYTES[code], 0,
+                    SPELLING_BYTES[code].length, b, offset,
+                    offset + length)) {
+                result = code;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the spelling of the keyword or condition with code
+     * {@code kind}.
+     *
+     * @param kind
+     *            the code
+     * @return the spelling
+     * @requires 0 <= kind < IDENTIFIER
+     */
+    public static String spelling(int kind) {
+        assert 0 <= kind && kind < IDENTIFIER : ""
+                + "Violation of: 0 <= kind < IDENTIFIER";
+
+        return SPELLINGS[kind];
+    }
+
+    /**
+     * Reports whether {@code kind} is the code of a condition.
+     *
+     * @param kind
+     *            the code
+     * @return true iff kind is the code of a condition
+     */
+    public static boolean isCondition(int kind) {
+        return FIRST_CONDITION <= kind && kind < IDENTIFIER;
+    }
+
+    /**
+     * Tokenizes the {@code length} bytes of {@code src} at {@code offset},
+     * replacing the tokens of the previous scan. Identifiers are added to the
+     * identifier table, which keeps the ids of those already in it.
+     *
+     * @param src
+     *            the source
+     * @param offset
+     *            the offset of the source in src
+     * @param length
+     *            the length of the source
+     * @updates this
+     * @requires 0 <= offset and 0 <= length and offset + length <= |src|
+     * @ensures <pre>
+     * [the tokens of this are the non-separator tokens of the source,
+     *  classified, followed by END_OF_INPUT]
+     * </pre>
+     */
+    public void scan(byte[] src, int offset, int length) {
+        assert src != null : "Violation of: src is not null";
+        assert 0 <= offset && 0 <= length
+                && offset + length <= src.length : ""
+                        + "Violation of: 0 <= offset and 0 <= length and "
+                        + "offset + length <= |src|";
+
+        this.source = src;
+        this.size = 0;
+        int end = offset + length;
+        int pos = offset;
+        while (pos < end) {
+            while (pos < end && (CLASSES[src[pos] & 0xFF] & SEPARATOR) != 0) {
+                pos++;
+            }
+            if (pos < end) {
+                int start = pos;
+                int hash = 0;
+                int flags = CLASSES[src[pos] & 0xFF];
+                boolean identifier = (flags & LETTER) != 0;
+                do {
+                    hash = 31 * hash + src[pos];
+                    identifier &= (flags & IDENTIFIER_PART) != 0;
+                    pos++;
+                    if (pos < end) {
+                        flags = CLASSES[src[pos] & 0xFF];
+                    }
+                } while (pos < end && (flags & SEPARATOR) == 0);
+
+                int n = pos - start;
+                int kind = keyword(src, start, n);
+                int id = -1;
+                if (kind < 0) {
+                    if (identifier) {
+                        kind = IDENTIFIER;
+                        id = this.intern(src, start, n, hash);
+                    } else {
+                        kind = ERROR;
+                    }
+                }
+                this.add(kind, id, start, n);
+            }
+        }
+        this.add(END_OF_INPUT, -1, end, 0);
+    }
+
+    /**
+     * Tokenizes the bytes of {@code src} from its position to its limit, as
+     * {@code scan(byte[], int, int)} does; the position of src is not
+     * changed.
+     *
+     * @param src
+     *            the source
+     * @updates this
+     */
+    public void scan(ByteBuffer src) {
+        assert src != null : "Violation of: src is not null";
+
+        int length = src.remaining();
+        if (src.hasArray()) {
+            this.scan(src.array(), src.arrayOffset() + src.position(),
+                    length);
+        } else {
+            if (this.scratch.length < length) {
+                this.scratch = new byte[length];
+            }
+            src.get(src.position(), this.scratch, 0, length);
+            this.scan(this.scratch, 0, length);
+        }
+    }
+
+    /**
+     * Appends a token to the token buffer.
+     *
+     * @param kind
+     *            the code of the token
+     * @param id
+     *            the identifier id, or -1
+     * @param offset
+     *            the offset of the token
+     * @param length
+     *            the length of the token
+     */
+    private void add(int kind, int id, int offset, int length) {
+        if (this.size == this.kinds.length) {
+            int capacity = 2 * this.size;
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.ids = Arrays.copyOf(this.ids, capacity);
+            this.offsets = Arrays.copyOf(this.offsets, capacity);
+            this.lengths = Arrays.copyOf(this.lengths, capacity);
+        }
+        this.kinds[this.size] = kind;
+        this.ids[this.size] = id;
+        this.offsets[this.size] = offset;
+        this.lengths[this.size] = length;
+        this.size++;
+    }
+
+    /**
+     * Returns the id of the identifier spelled by the {@code length} bytes of
+     * {@code b} at {@code offset}, adding it to the identifier table if it is
+     * not there yet.
+     *
+     * @param b
+     *            the bytes
+     * @param offset
+     *            the offset of the identifier
+     * @param length
+     *            the length of the identifier
+     * @param hash
+     *            the hash of the identifier
+     * @return the id of the identifier
+     */
+    private int intern(byte[] b, int offset, int length, int hash) {
+        int mask = this.table.length - 1;
+        int i = mix(hash) & mask;
+        int id = this.table[i] - 1;
+        while (id >= 0 && !(this.hashes[id] == hash
+                && Arrays.equals(this.nameBytes[id], 0,
+                        this.nameBytes[id].length, b, offset,
+                        offset + length))) {
+            i = (i + 1) & mask;
+            id = this.table[i] - 1;
+        }
+        if (id < 0) {
+            id = this.nameCount;
+            if (id == this.names.length) {
+                int capacity = 2 * id;
+                this.hashes = Arrays.copyOf(this.hashes, capacity);
+                this.nameBytes = Arrays.copyOf(this.nameBytes, capacity);
+                this.names = Arrays.copyOf(this.names, capacity);
+            }
+            this.hashes[id] = hash;
+            this.nameBytes[id] = Arrays.copyOfRange(b, offset,
+                    offset + length);
+            this.names[id] = new String(this.nameBytes[id],
+                    StandardCharsets.US_ASCII);
+            this.nameCount++;
+            this.table[i] = id + 1;
+            if (2 * this.nameCount > this.table.length) {
+                this.rehash();
+            }
+        }
+        return id;
+    }
+
+    /**
+     * Spreads the bits of {@code hash} over the low bits used by the table.
+     *
+     * @param hash
+     *            the hash
+     * @return the spread hash
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Doubles the size of the identifier table.
+     */
+    private void rehash() {
+        int[] t = new int[2 * this.table.length];
+        int mask = t.length - 1;
+        for (int id = 0; id < this.nameCount; id++) {
+            int i = mix(this.hashes[id]) & mask;
+            while (t[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            t[i] = id + 1;
+        }
+        this.table = t;
+    }
+
+    /**
+     * Reports the number of tokens of the last scan, END_OF_INPUT included.
+     *
+     * @return the number of tokens
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Reports the code of token {@code i}.
+     *
+     * @param i
+     *            the token
+     * @return the code of token i
+     * @requires 0 <= i < size()
+     */
+    public int kind(int i) {
+        assert 0 <= i && i < this.size : "Violation of: 0 <= i < size()";
+        return this.kinds[i];
+    }
+
+    /**
+     * Reports the identifier id of token {@code i}.
+     *
+     * @param i
+     *            the token
+     * @return the id of token i if it is an IDENTIFIER, -1 otherwise
+     * @requires 0 <= i < size()
+     */
+    public int id(int i) {
+        assert 0 <= i && i < this.size : "Violation of: 0 <= i < size()";
+        return this.ids[i];
+    }
+
+    /**
+     * Reports the offset of token {@code i} in the array scanned.
+     *
+     * @param i
+     *            the token
+     * @return the offset of token i
+     * @requires 0 <= i < size()
+     */
+    public int offset(int i) {
+        assert 0 <= i && i < this.size : "Violation of: 0 <= i < size()";
+        return this.offsets[i];
+    }
+
+    /**
+     * Reports the length in bytes of token {@code i}.
+     *
+     * @param i
+     *            the token
+     * @return the length of token i
+     * @requires 0 <= i < size()
+     */
+    public int length(int i) {
+        assert 0 <= i && i < this.size : "Violation of: 0 <= i < size()";
+        return this.lengths[i];
+    }
+
+    /**
+     * Returns the text of token {@code i}, as {@code Tokenizer.tokens} would
+     * give it. Only ERROR tokens create a new string.
+     *
+     * @param i
+     *            the token
+     * @return the text of token i
+     * @requires 0 <= i < size()
+     */
+    public String text(int i) {
+        int kind = this.kind(i);
+        String result;
+        if (kind < IDENTIFIER) {
+            result = SPELLINGS[kind];
+        } else if (kind == IDENTIFIER) {
+            result = this.names[this.ids[i]];
+        } else if (kind == ERROR) {
+            result = new String(this.source, this.offsets[i],
+                    this.lengths[i], StandardCharsets.UTF_8);
+        } else {
+            result = Tokenizer.END_OF_INPUT;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of identifiers in the identifier table.
+     *
+     * @return the number of identifiers; their ids are 0 to that number - 1
+     */
+    public int names() {
+        return this.nameCount;
+    }
+
+    /**
+     * Returns the identifier with id {@code id}.
+     *
+     * @param id
+     *            the id
+     * @return the identifier
+     * @requires 0 <= id < names()
+     */
+    public String name(int id) {
+        assert 0 <= id && id < this.nameCount : ""
+                + "Violation of: 0 <= id < names()";
+        return this.names[id];
+    }
+
+    /**
+     * Returns the tokens of the last scan as {@code Tokenizer.tokens} would
+     * give them, for the parsers reading a queue of strings.
+     *
+     * @return the texts of the tokens, END_OF_INPUT included
+     */
+    public Queue<String> tokens() {
+        Queue<String> result = new Queue1L<>();
+        for (int i = 0; i < this.size; i++) {
+            result.enqueue(this.text(i));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,662 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+import components.program.Program.Instruction;
+
+/**
+ * Translates compiled BL code into a JVM hidden class implementing
+ * {@code BugExecutable}, so that HotSpot can JIT bug programs to native code.
+ * The generated {@code nextAction} method dispatches on the start address
+ * once, through a {@code tableswitch}, and then runs straight-line bytecode:
+ * each BL jump becomes a JVM branch, each condition a direct call to the
+ * {@code BugWorld} query, and each primitive instruction a call to the
+ * {@code BugWorld} action followed by a return of the next address. Calls of
+ * user instructions are already inlined in the compiled code.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class BytecodeCompiler {
+
+    /**
+     * Largest generated method; JVM branch offsets are 16-bit.
+     */
+    private static final int MAX_METHOD_SIZE = Short.MAX_VALUE;
+
+    /**
+     * Number of distinct fused instructions used by programs too large to
+     * compile.
+     */
+    private static final int INTERPRETED_FUSIONS = 8;
+
+    /**
+     * Class file version 49 (Java 5), which does not need stack map frames.
+     */
+    private static final int CLASS_FILE_VERSION = 49;
+
+    /**
+     * Name of the generated hidden classes, before the JVM adds its suffix.
+     */
+    private static final String CLASS_NAME = "CompiledBLProgram";
+
+    /**
+     * JVM opcodes used by the generated code.
+     */
+    private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11,
+            LDC_W = 0x13, ILOAD_1 = 0x1b, ILOAD_2 = 0x1c, ALOAD_0 = 0x2a,
+            ALOAD_3 = 0x2d, DUP = 0x59, IFEQ = 0x99, IFNE = 0x9a, GOTO = 0xa7,
+            TABLESWITCH = 0xaa, IRETURN = 0xac, RETURN = 0xb1,
+            INVOKESPECIAL = 0xb7, INVOKEINTERFACE = 0xb9, NEW = 0xbb,
+            ATHROW = 0xbf;
+
+    /**
+     * Size of the code emitted for a primitive instruction, not counting the
+     * push of the next address.
+     */
+    private static final int ACTION_SIZE = 8;
+
+    /**
+     * Size of the code emitted for a conditional jump on a world query.
+     */
+    private static final int QUERY_JUMP_SIZE = 10;
+
+    /**
+     * Size of the code emitted for an unconditional jump.
+     */
+    private static final int GOTO_SIZE = 3;
+
+    /**
+     * Size of the code throwing on an invalid start address.
+     */
+    private static final int THROW_SIZE = 8;
+
+    /**
+     * Constant pool of a class file under construction.
+     */
+    private static final class ConstantPool {
+
+        /**
+         * Encoded entries.
+         */
+        private final ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream();
+
+        /**
+         * Index of each entry already added, by a key describing it.
+         */
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        /**
+         * Index of the next entry.
+         */
+        private int next = 1;
+
+        /**
+         * Returns the index of the entry described by {@code key}, adding it
+         * with the given tag and payload if needed.
+         *
+         * @param key
+         *            the description of the entry
+         * @param tag
+         *            the constant pool tag
+         * @param payload
+         *            the encoded entry, without its tag
+         * @return the index of the entry
+         */
+        private int entry(String key, int tag, byte[] payload) {
+            Integer index = this.indices.get(key);
+            if (index == null) {
+                index = this.next;
+                this.next++;
+                this.indices.put(key, index);
+                this.bytes.write(tag);
+                this.bytes.write(payload, 0, payload.length);
+            }
+            return index;
+        }
+
+        /**
+         * Encodes {@code values} as big-endian 16-bit integers.
+         *
+         * @param values
+         *            the values
+         * @return the encoding
+         */
+        private static byte[] u2(int... values) {
+            byte[] result = new byte[2 * values.length];
+            for (int i = 0; i < values.length; i++) {
+                result[2 * i] = (byte) (values[i] >> 8);
+                result[2 * i + 1] = (byte) values[i];
+            }
+            return result;
+        }
+
+        /**
+         * Returns the index of a CONSTANT_Utf8 entry.
+         *
+         * @param s
+         *            the string
+         * @return the index
+         */
+        int utf8(String s) {
+            ByteArrayOutputStream b = new ByteArrayOutputStream();
+            try {
+                new DataOutputStream(b).writeUTF(s);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            return this.entry("U" + s, 1, b.toByteArray());
+        }
+
+        /**
+         * Returns the index of a CONSTANT_Integer entry.
+         *
+         * @param v
+         *            the value
+         * @return the index
+         */
+        int integer(int v) {
+            byte[] b = { (byte) (v >> 24), (byte) (v >> 16), (byte) (v >> 8),
+                    (byte) v };
+            return this.entry("I" + v, 3, b);
+        }
+
+        /**
+         * Returns the index of a CONSTANT_Class entry.
+         *
+         * @param internalName
+         *            the internal name of the class
+         * @return the index
+         */
+        int classRef(String internalName) {
+            return this.entry("C" + internalName, 7,
+                    u2(this.utf8(internalName)));
+        }
+
+        /**
+         * Returns the index of a CONSTANT_Methodref or
+         * CONSTANT_InterfaceMethodref entry.
+         *
+         * @param isInterface
+         *            whether owner is an interface
+         * @param owner
+         *            the internal name of the owner class
+         * @param name
+         *            the method name
+         * @param descriptor
+         *            the method descriptor
+         * @return the index
+         */
+        int methodRef(boolean isInterface, String owner, String name,
+                String descriptor) {
+            int nameAndType = this.entry("N" + name + descriptor, 12,
+                    u2(this.utf8(name), this.utf8(descriptor)));
+            int tag = 10;
+            if (isInterface) {
+                tag = 11;
+            }
+            return this.entry("M" + owner + "." + name + descriptor, tag,
+                    u2(this.classRef(owner), nameAndType));
+        }
+
+        /**
+         * Writes the constant pool, with its count, to {@code dest}.
+         *
+         * @param dest
+         *            the output stream
+         * @throws IOException
+         *             never, for in-memory streams
+         */
+        void writeTo(DataOutputStream dest) throws IOException {
+            dest.writeShort(this.next);
+            this.bytes.writeTo(dest);
+        }
+
+    }
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * Returns an executable form of {@code p} whose {@code nextAction} runs as
+     * JVM bytecode. Programs too large for a single JVM method are
+     * interpreted instead, with their most common conditional jumps fused
+     * with the following primitive instruction by {@code FusedProgram}.
+     *
+     * @param p
+     *            the program
+     * @return the executable form of p
+     * @ensures <pre>
+     * [compile.nextAction behaves exactly like p.nextAction]
+     * </pre>
+     */
+    public static BugExecutable compile(FrozenProgram p) {
+        assert p != null : "Violation of: p is not null";
+
+        BugExecutable result;
+        byte[] classFile = classFile(p.code());
+        if (classFile == null) {
+            result = FusedProgram.of(p, INTERPRETED_FUSIONS);
+        } else {
+            try {
+                MethodHandles.Lookup hidden = MethodHandles.lookup()
+                        .defineHiddenClass(classFile, true);
+                result = (BugExecutable) hidden
+                        .findConstructor(hidden.lookupClass(),
+                                MethodType.methodType(void.class))
+                        .invoke();
+            } catch (Throwable e) {
+                throw new AssertionError(
+                        "Cannot define hidden class for " + p.name(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the size of the code pushing the constant {@code v}.
+     *
+     * @param v
+     *            the constant
+     * @return the size of the push
+     */
+    private static int pushSize(int v) {
+        int size;
+        if (-1 <= v && v <= 5) {
+            size = 1;
+        } else if (Byte.MIN_VALUE <= v && v <= Byte.MAX_VALUE) {
+            size = 2;
+        } else {
+            size = 3;
+        }
+        return size;
+    }
+
+    /**
+     * Emits the code pushing the constant {@code v}.
+     *
+     * @param out
+     *            the code
+     * @param pool
+     *            the constant pool
+     * @param v
+     *            the constant
+     */
+    private static void push(ByteArrayOutputStream out, ConstantPool pool,
+            int v) {
+        if (-1 <= v && v <= 5) {
+            out.write(ICONST_0 + v);
+        } else if (Byte.MIN_VALUE <= v && v <= Byte.MAX_VALUE) {
+            out.write(BIPUSH);
+            out.write(v);
+        } else if (Short.MIN_VALUE <= v && v <= Short.MAX_VALUE) {
+            out.write(SIPUSH);
+            writeU2(out, v);
+        } else {
+            out.write(LDC_W);
+            writeU2(out, pool.integer(v));
+        }
+    }
+
+    /**
+     * Emits a big-endian 16-bit value.
+     *
+     * @param out
+     *            the code
+     * @param v
+     *            the value
+     */
+    private static void writeU2(ByteArrayOutputStream out, int v) {
+        out.write(v >> 8);
+        out.write(v);
+    }
+
+    /**
+     * Emits a big-endian 32-bit value.
+     *
+     * @param out
+     *            the code
+     * @param v
+     *            the value
+     */
+    private static void writeU4(ByteArrayOutputStream out, int v) {
+        writeU2(out, v >> 16);
+        writeU2(out, v);
+    }
+
+    /**
+     * Returns the name of the {@code BugWorld} method called for the
+     * primitive instruction {@code i}.
+     *
+     * @param i
+     *            the primitive instruction
+     * @return the method name
+     */
+    private static String actionMethod(Instruction i) {
+        String name;
+        switch (i) {
+            case MOVE:
+                name = "move";
+                break;
+            case TURNLEFT:
+                name = "turnLeft";
+                break;
+            case TURNRIGHT:
+                name = "turnRight";
+                break;
+            case INFECT:
+                name = "infect";
+                break;
+            default:
+                name = "skip";
+                break;
+        }
+        return name;
+    }
+
+    /**
+     * Returns the name of the {@code BugWorld} method called for the
+     * conditional jump {@code i} on a world query or {@code random}.
+     *
+     * @param i
+     *            the conditional jump
+     * @return the method name
+     */
+    private static String queryMethod(Instruction i) {
+        String name;
+        switch (i) {
+            case JUMP_IF_NOT_NEXT_IS_EMPTY:
+            case JUMP_IF_NOT_NEXT_IS_NOT_EMPTY:
+                name = "nextIsEmpty";
+                break;
+            case JUMP_IF_NOT_NEXT_IS_WALL:
+            case JUMP_IF_NOT_NEXT_IS_NOT_WALL:
+                name = "nextIsWall";
+                break;
+            case JUMP_IF_NOT_NEXT_IS_FRIEND:
+            case JUMP_IF_NOT_NEXT_IS_NOT_FRIEND:
+                name = "nextIsFriend";
+                break;
+            case JUMP_IF_NOT_RANDOM:
+                name = "random";
+                break;
+            default:
+                name = "nextIsEnemy";
+                break;
+        }
+        return name;
+    }
+
+    /**
+     * Reports whether the conditional jump {@code i} tests the negation of a
+     * world query, i.e., jumps when the query is true.
+     *
+     * @param i
+     *            the conditional jump
+     * @return true iff i tests a NEXT_IS_NOT_* condition
+     */
+    private static boolean isNegated(Instruction i) {
+        return i == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_EMPTY
+                || i == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_WALL
+                || i == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_FRIEND
+                || i == Instruction.JUMP_IF_NOT_NEXT_IS_NOT_ENEMY;
+    }
+
+    /**
+     * Reports the size of the bytecode emitted for the BL instruction at
+     * address {@code pc} of {@code code}.
+     *
+     * @param code
+     *            the compiled BL code
+     * @param pc
+     *            the address of the instruction
+     * @return the size of the emitted bytecode
+     */
+    private static int emittedSize(int[] code, int pc) {
+        Instruction i = BugInterpreter.instruction(code[pc]);
+        int size;
+        switch (i) {
+            case MOVE:
+            case TURNLEFT:
+            case TURNRIGHT:
+            case INFECT:
+            case SKIP:
+                size = ACTION_SIZE + pushSize(pc + 1);
+                break;
+            case HALT:
+                size = pushSize(pc) + 1;
+                break;
+            case JUMP:
+                size = GOTO_SIZE;
+                break;
+            case JUMP_IF_NOT_TRUE:
+                size = 0;
+                break;
+            default:
+                size = QUERY_JUMP_SIZE;
+                break;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the class file of a hidden class implementing
+     * {@code BugExecutable} for {@code code}, or {@code null} if its
+     * {@code nextAction} method would be too large.
+     *
+     * @param code
+     *            the compiled BL code
+     * @return the class file, or null
+     */
+    private static byte[] classFile(int[] code) {
+        int n = code.length;
+        /*
+         * Pass 1: bytecode offset of each BL instruction. The code starts with
+         * iload_1, then a tableswitch padded to a multiple of 4 with one
+         * 4-byte offset per BL address.
+         */
+        final int switchAt = 1;
+        final int switchHeader = 16;
+        int[] label = new int[n];
+        boolean[] isStart = new boolean[n];
+        int offset = switchHeader + 4 * n;
+        int pc = 0;
+        while (pc < n) {
+            isStart[pc] = true;
+            label[pc] = offset;
+            offset += emittedSize(code, pc);
+            pc += BugInterpreter.length(code[pc]);
+        }
+        int badLabel = offset;
+        int codeSize = offset + THROW_SIZE;
+        if (codeSize > MAX_METHOD_SIZE) {
+            return null;
+        }
+        /*
+         * Pass 2: emit.
+         */
+        ConstantPool pool = new ConstantPool();
+        String world = "BugWorld";
+        ByteArrayOutputStream out = new ByteArrayOutputStream(codeSize);
+        out.write(ILOAD_1);
+        out.write(TABLESWITCH);
+        out.write(0);
+        out.write(0);
+        writeU4(out, badLabel - switchAt);
+        writeU4(out, 0);
+        writeU4(out, n - 1);
+        for (int a = 0; a < n; a++) {
+            if (isStart[a]) {
+                writeU4(out, label[a] - switchAt);
+            } else {
+                writeU4(out, badLabel - switchAt);
+            }
+        }
+        pc = 0;
+        while (pc < n) {
+            assert out.size() == label[pc] : "Size of emitted code is wrong";
+            Instruction i = BugInterpreter.instruction(code[pc]);
+            switch (i) {
+                case MOVE:
+                case TURNLEFT:
+                case TURNRIGHT:
+                case INFECT:
+                case SKIP:
+                    out.write(ALOAD_3);
+                    out.write(ILOAD_2);
+                    out.write(INVOKEINTERFACE);
+                    writeU2(out, pool.methodRef(true, world, actionMethod(i),
+                            "(I)V"));
+                    out.write(2);
+                    out.write(0);
+                    push(out, pool, pc + 1);
+                    out.write(IRETURN);
+                    break;
+                case HALT:
+                    push(out, pool, pc);
+                    out.write(IRETURN);
+                    break;
+                case JUMP:
+                    out.write(GOTO);
+                    writeU2(out, label[code[pc + 1]] - out.size() + 1);
+                    break;
+                case JUMP_IF_NOT_TRUE:
+                    break;
+                default:
+                    out.write(ALOAD_3);
+                    out.write(ILOAD_2);
+                    out.write(INVOKEINTERFACE);
+                    writeU2(out, pool.methodRef(true, world, queryMethod(i),
+                            "(I)Z"));
+                    out.write(2);
+                    out.write(0);
+                    if (isNegated(i)) {
+                        out.write(IFNE);
+                    } else {
+                        out.write(IFEQ);
+                    }
+                    writeU2(out, label[code[pc + 1]] - out.size() + 1);
+                    break;
+            }
+            pc += BugInterpreter.length(code[pc]);
+        }
+        out.write(NEW);
+        writeU2(out, pool.classRef("java/lang/IllegalArgumentException"));
+        out.write(DUP);
+        out.write(INVOKESPECIAL);
+        writeU2(out, pool.methodRef(false,
+                "java/lang/IllegalArgumentException", "<init>", "()V"));
+        out.write(ATHROW);
+        assert out.size() == codeSize : "Size of emitted code is wrong";
+        return assemble(pool, out.toByteArray());
+    }
+
+    /**
+     * Returns the class file holding a constructor and a {@code nextAction}
+     * method with the given code.
+     *
+     * @param pool
+     *            the constant pool, with the entries used by code
+     * @param code
+     *            the code of nextAction
+     * @return the class file
+     */
+    private static byte[] assemble(ConstantPool pool, byte[] code) {
+        final int accPublicFinalSuper = 0x0031;
+        final int accPublic = 0x0001;
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int iface = pool.classRef("BugExecutable");
+        int codeAttribute = pool.utf8("Code");
+        int init = pool.utf8("<init>");
+        int voidDescriptor = pool.utf8("()V");
+        int objectInit = pool.methodRef(false, "java/lang/Object", "<init>",
+                "()V");
+        int nextAction = pool.utf8("nextAction");
+        int nextActionDescriptor = pool.utf8("(IILBugWorld;)I");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_FILE_VERSION);
+            pool.writeTo(out);
+            out.writeShort(accPublicFinalSuper);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(iface);
+            out.writeShort(0);
+            out.writeShort(2);
+            /*
+             * public <init>() { super(); }
+             */
+            byte[] initCode = { (byte) ALOAD_0, (byte) INVOKESPECIAL,
+                    (byte) (objectInit >> 8), (byte) objectInit,
+                    (byte) RETURN };
+            writeMethod(out, accPublic, init, voidDescriptor, codeAttribute,
+                    1, 1, initCode);
+            /*
+             * public int nextAction(int pc, int bug, BugWorld world)
+             */
+            final int maxStack = 3;
+            final int maxLocals = 4;
+            writeMethod(out, accPublic, nextAction, nextActionDescriptor,
+                    codeAttribute, maxStack, maxLocals, code);
+            out.writeShort(0);
+            out.flush();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes a method_info structure with a Code attribute.
+     *
+     * @param out
+     *            the output stream
+     * @param access
+     *            the access flags
+     * @param name
+     *            the constant pool index of the name
+     * @param descriptor
+     *            the constant pool index of the descriptor
+     * @param codeAttribute
+     *            the constant pool index of "Code"
+     * @param maxStack
+     *            the maximum operand stack depth
+     * @param maxLocals
+     *            the number of local variable slots
+     * @param code
+     *            the bytecode
+     * @throws IOException
+     *             never, for in-memory streams
+     */
+    private static void writeMethod(DataOutputStream out, int access,
+            int name, int descriptor, int codeAttribute, int maxStack,
+            int maxLocals, byte[] code) throws IOException {
+        final int fixedCodeAttributeSize = 12;
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(fixedCodeAttributeSize + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+}
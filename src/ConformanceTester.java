@@ -0,0 +1,827 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import components.map.Map;
+import components.program.Program;
+import components.program.Program1;
+import components.queue.Queue;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.simplewriter.SimpleWriterSecondary;
+import components.statement.Statement;
+import components.statement.Statement1;
+
+/**
+ * Differential conformance harness for the Program2 and Statement2 kernels:
+ * streams BL inputs, read from corpus files and generated at random, through
+ * the library kernels and through ours, in parallel, and compares the
+ * outcomes. For each input, a program is parsed with {@code Program1} and with
+ * {@code Program2} (from a token queue and from a {@code TokenArray}), and
+ * the statements following BEGIN are parsed as a block with
+ * {@code Statement1} and with {@code Statement2} (both ways); the harness
+ * compares error messages, {@code equals}, the abstract syntax trees (as
+ * given by {@code toString}), the pretty-printed output and, for programs,
+ * {@code generatedCode()}. A third of the generated inputs are mutated to
+ * exercise the error paths.
+ *
+ * <p>
+ * Each mismatch is shrunk, by deleting tokens as long as the same mismatch
+ * remains, to a minimal reproducer, which is printed with the outcomes of
+ * both kernels. The number of inputs checked per second is printed as the
+ * run goes.
+ *
+ * <p>
+ * Usage: {@code ConformanceTester [-n count] [-t threads] [-seed seed]
+ * [file or directory...]}, where directories are searched for {@code .bl}
+ * files.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class ConformanceTester {
+
+    /**
+     * {@code SimpleWriter} that keeps what is written in memory, to compare
+     * pretty-printed output without files.
+     */
+    private static final class StringWriter extends SimpleWriterSecondary {
+
+        /**
+         * The text written so far.
+         */
+        private StringBuilder text = new StringBuilder();
+
+        @Override
+        public SimpleWriter newInstance() {
+            return new StringWriter();
+        }
+
+        @Override
+        public void clear() {
+            this.text = new StringBuilder();
+        }
+
+        @Override
+        public void transferFrom(SimpleWriter source) {
+            assert source instanceof StringWriter : ""
+                    + "Violation of: source is of dynamic type StringWriter";
+            StringWriter localSource = (StringWriter) source;
+            this.text = localSource.text;
+            localSource.clear();
+        }
+
+        @Override
+        public void write(char c) {
+            this.text.append(c);
+        }
+
+        @Override
+        public String name() {
+            return "memory";
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void print(String s) {
+            this.text.append(s);
+        }
+
+        @Override
+        public void print(int i) {
+            this.text.append(i);
+        }
+
+        @Override
+        public void print(long i) {
+            this.text.append(i);
+        }
+
+        @Override
+        public void print(double d) {
+            this.text.append(d);
+        }
+
+        @Override
+        public void print(double d, int precision, boolean commas) {
+            String format = "%." + precision + "f";
+            if (commas) {
+                format = "%,." + precision + "f";
+            }
+            this.text.append(String.format(format, d));
+        }
+
+        @Override
+        public void print(boolean b) {
+            this.text.append(b);
+        }
+
+        @Override
+        public void print(char c) {
+            this.text.append(c);
+        }
+
+        @Override
+        public void print(Object o) {
+            this.text.append(o);
+        }
+
+        @Override
+        public void println(String s) {
+            this.text.append(s).append('\n');
+        }
+
+        @Override
+        public void println(int i) {
+            this.text.append(i).append('\n');
+        }
+
+        @Override
+        public void println(long i) {
+            this.text.append(i).append('\n');
+        }
+
+        @Override
+        public void println(double d) {
+            this.text.append(d).append('\n');
+        }
+
+        @Override
+        public void println(double d, int precision, boolean commas) {
+            this.print(d, precision, commas);
+            this.text.append('\n');
+        }
+
+        @Override
+        public void println(boolean b) {
+            this.text.append(b).append('\n');
+        }
+
+        @Override
+        public void println(char c) {
+            this.text.append(c).append('\n');
+        }
+
+        @Override
+        public void println() {
+            this.text.append('\n');
+        }
+
+        @Override
+        public void println(Object o) {
+            this.text.append(o).append('\n');
+        }
+
+        @Override
+        public String toString() {
+            return this.text.toString();
+        }
+
+    }
+
+    /**
+     * The outcome of one aspect of an input under one kernel, e.g., its
+     * pretty-printed output.
+     */
+    static final class Outcome {
+
+        /**
+         * The aspect compared, e.g., "prettyPrint".
+         */
+        private final String aspect;
+
+        /**
+         * The result under the library kernel.
+         */
+        private final String expected;
+
+        /**
+         * The result under our kernel.
+         */
+        private final String actual;
+
+        /**
+         * Constructor.
+         *
+         * @param aspect
+         *            the aspect compared
+         * @param expected
+         *            the result under the library kernel
+         * @param actual
+         *            the result under our kernel
+         */
+        private Outcome(String aspect, String expected, String actual) {
+            this.aspect = aspect;
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+    }
+
+    /**
+     * A step of a check that may fail with an exception.
+     */
+    private interface Step {
+
+        /**
+         * Performs the step.
+         *
+         * @return its result
+         */
+        String run();
+
+    }
+
+    /**
+     * Tokens used to mutate generated inputs.
+     */
+    private static final String[] MUTATIONS = { "IF", "THEN", "ELSE", "END",
+        "WHILE", "DO", "IS", "BEGIN", "INSTRUCTION", "PROGRAM", "move",
+        "infect", "foo", "next-is-wall", "random", "true", "3x", "x.y", "-a" };
+
+    /**
+     * The primitive instructions.
+     */
+    private static final String[] PRIMITIVES = { "move", "turnleft",
+        "turnright", "infect", "skip" };
+
+    /**
+     * The conditions, as spelled in BL.
+     */
+    private static final String[] CONDITIONS = { "next-is-empty",
+        "next-is-not-empty", "next-is-wall", "next-is-not-wall",
+        "next-is-friend", "next-is-not-friend", "next-is-enemy",
+        "next-is-not-enemy", "random", "true" };
+
+    /**
+     * Maximum number of mismatches shrunk and printed; one per aspect.
+     */
+    private static final int MAX_REPORTS = 20;
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private ConformanceTester() {
+    }
+
+    /**
+     * Runs {@code step}, returning its result or a description of the
+     * exception it throws.
+     *
+     * @param step
+     *            the step
+     * @return the result of step, or "error: " followed by the exception
+     */
+    private static String attempt(Step step) {
+        String result;
+        try {
+            result = step.run();
+        } catch (RuntimeException | StackOverflowError e) {
+            result = "error: " + e.getMessage();
+        } catch (AssertionError e) {
+            result = "assertion: " + e.getMessage();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the pretty-printed text written by {@code print}.
+     *
+     * @param print
+     *            the pretty printer
+     * @return the text
+     */
+    private static String printed(Consumer<SimpleWriter> print) {
+        StringWriter out = new StringWriter();
+        print.accept(out);
+        return out.toString();
+    }
+
+    /**
+     * Returns the abstract syntax tree of {@code p}, with the instructions of
+     * its context in the order of their names, as the order in which
+     * {@code toString} lists them depends on the kernel.
+     *
+     * @param p
+     *            the program
+     * @return the name, the sorted context and the body of p
+     */
+    private static String ast(Program p) {
+        Map<String, Statement> c = p.newContext();
+        p.swapContext(c);
+        List<String> instructions = new ArrayList<>();
+        for (Map.Pair<String, Statement> instruction : c) {
+            instructions.add("(" + instruction.key() + ","
+                    + instruction.value() + ")");
+        }
+        p.swapContext(c);
+        Collections.sort(instructions);
+        Statement b = p.newBody();
+        p.swapBody(b);
+        String body = b.toString();
+        p.swapBody(b);
+        return "(" + p.name() + "," + instructions + "," + body + ")";
+    }
+
+    /**
+     * Adds to {@code outcomes} the comparison of the program parsed by the
+     * library kernel, {@code expected}, and by our kernel, {@code actual},
+     * after their parse results {@code e} and {@code a}. Code generation is
+     * compared separately, by {@code check}.
+     *
+     * @param how
+     *            the name of the way our kernel parsed
+     * @param expected
+     *            the program parsed by Program1
+     * @param e
+     *            the parse result of expected
+     * @param actual
+     *            the program parsed by Program2
+     * @param a
+     *            the parse result of actual
+     * @param outcomes
+     *            the outcomes so far
+     * @updates outcomes
+     */
+    private static void comparePrograms(String how, Program expected,
+            String e, Program actual, String a, List<Outcome> outcomes) {
+        outcomes.add(new Outcome(how + " error", e, a));
+        if (e == null && a == null) {
+            outcomes.add(new Outcome(how + " equals", "true",
+                    Boolean.toString(actual.equals(expected))));
+            outcomes.add(new Outcome(how + " AST", ast(expected),
+                    ast(actual)));
+            outcomes.add(new Outcome(how + " prettyPrint",
+                    printed(expected::prettyPrint),
+                    printed(actual::prettyPrint)));
+        }
+    }
+
+    /**
+     * Adds to {@code outcomes} the comparison of the blocks parsed by the
+     * library kernel, {@code expected}, and by our kernel, {@code actual},
+     * after their parse results {@code e} and {@code a}.
+     *
+     * @param how
+     *            the name of the way our kernel parsed
+     * @param expected
+     *            the block parsed by Statement1
+     * @param e
+     *            the parse result of expected
+     * @param actual
+     *            the block parsed by Statement2
+     * @param a
+     *            the parse result of actual
+     * @param outcomes
+     *            the outcomes so far
+     * @updates outcomes
+     */
+    private static void compareStatements(String how, Statement expected,
+            String e, Statement actual, String a, List<Outcome> outcomes) {
+        outcomes.add(new Outcome(how + " error", e, a));
+        if (e == null && a == null) {
+            outcomes.add(new Outcome(how + " equals", "true",
+                    Boolean.toString(actual.equals(expected))));
+            outcomes.add(new Outcome(how + " AST", expected.toString(),
+                    actual.toString()));
+            outcomes.add(new Outcome(how + " prettyPrint",
+                    printed(out -> expected.prettyPrint(out, 4)),
+                    printed(out -> actual.prettyPrint(out, 4))));
+        }
+    }
+
+    /**
+     * Parses {@code source} with the library kernels and with ours, and
+     * returns the first aspect in which they differ.
+     *
+     * @param source
+     *            the BL source
+     * @return the first differing outcome, or null if there is none
+     */
+    static Outcome check(String source) {
+        List<Outcome> outcomes = new ArrayList<>();
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        ByteScanner scanner = new ByteScanner();
+        TokenArray array = new TokenArray();
+
+        Program p1 = new Program1();
+        String e = attempt(() -> {
+            p1.parse(SourceTokenizer.tokens(source));
+            return null;
+        });
+        Program p2 = new Program2();
+        String a2 = attempt(() -> {
+            p2.parse(SourceTokenizer.tokens(source));
+            return null;
+        });
+        comparePrograms("Program2.parse(Queue)", p1, e, p2, a2, outcomes);
+        Program2 p3 = new Program2();
+        String a3 = attempt(() -> {
+            scanner.scan(bytes, 0, bytes.length);
+            array.load(scanner);
+            p3.parse(array);
+            return null;
+        });
+        comparePrograms("Program2.parse(TokenArray)", p1, e, p3, a3,
+                outcomes);
+
+        /*
+         * The statements following the first BEGIN, if any
+         */
+        int begin = (" " + source.replace('\n', ' ').replace('\t', ' ')
+                .replace('\r', ' ') + " ").indexOf(" BEGIN ");
+        String block = source;
+        if (begin >= 0) {
+            block = source.substring(begin + "BEGIN".length());
+        }
+        String blockSource = block;
+        Queue<String> q1 = SourceTokenizer.tokens(blockSource);
+        Statement s1 = new Statement1();
+        String f = attempt(() -> {
+            s1.parseBlock(q1);
+            return null;
+        });
+        Queue<String> q2 = SourceTokenizer.tokens(blockSource);
+        Statement s2 = new Statement2();
+        String b2 = attempt(() -> {
+            s2.parseBlock(q2);
+            return null;
+        });
+        compareStatements("Statement2.parseBlock(Queue)", s1, f, s2, b2,
+                outcomes);
+        if (f == null && b2 == null) {
+            outcomes.add(new Outcome(
+                    "Statement2.parseBlock(Queue) tokens left",
+                    Integer.toString(q1.length()),
+                    Integer.toString(q2.length())));
+        }
+        byte[] blockBytes = blockSource.getBytes(StandardCharsets.UTF_8);
+        Statement2 s3 = new Statement2();
+        String b3 = attempt(() -> {
+            scanner.scan(blockBytes, 0, blockBytes.length);
+            array.load(scanner);
+            s3.parseBlock(array);
+            return null;
+        });
+        compareStatements("Statement2.parseBlock(TokenArray)", s1, f, s3,
+                b3, outcomes);
+        if (f == null && b3 == null) {
+            outcomes.add(new Outcome(
+                    "Statement2.parseBlock(TokenArray) tokens left",
+                    Integer.toString(q1.length()),
+                    Integer.toString(array.size() - array.position())));
+        }
+
+        /*
+         * Last, as the library kernel leaves the context of a program
+         * swapped out when generatedCode fails
+         */
+        if (e == null) {
+            String code = attempt(() -> p1.generatedCode().toString());
+            if (a2 == null) {
+                outcomes.add(new Outcome("Program2.parse(Queue) generatedCode",
+                        code, attempt(() -> p2.generatedCode().toString())));
+            }
+            if (a3 == null) {
+                outcomes.add(new Outcome(
+                        "Program2.parse(TokenArray) generatedCode", code,
+                        attempt(() -> p3.generatedCode().toString())));
+            }
+        }
+
+        Outcome result = null;
+        for (Outcome o : outcomes) {
+            if (result == null && !Objects.equals(o.expected, o.actual)) {
+                result = o;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the tokens of {@code source}, without END_OF_INPUT.
+     *
+     * @param source
+     *            the BL source
+     * @return the tokens
+     */
+    private static List<String> tokenList(String source) {
+        Queue<String> q = SourceTokenizer.tokens(source);
+        List<String> result = new ArrayList<>();
+        while (q.length() > 1) {
+            result.add(q.dequeue());
+        }
+        return result;
+    }
+
+    /**
+     * Returns a minimal input, obtained by deleting tokens of {@code source},
+     * on which the kernels still differ in the aspect of {@code mismatch}.
+     * Runs of tokens are deleted, halving their length down to single tokens,
+     * as long as a deletion keeps the mismatch.
+     *
+     * @param source
+     *            the input
+     * @param mismatch
+     *            the first differing outcome for source
+     * @return the minimal input, with its tokens separated by spaces or new
+     *         lines
+     */
+    private static String shrink(String source, Outcome mismatch) {
+        List<String> tokens = tokenList(source);
+        int chunk = Math.max(1, tokens.size() / 2);
+        while (chunk > 0) {
+            boolean removed = false;
+            int start = 0;
+            while (start < tokens.size()) {
+                List<String> candidate = new ArrayList<>(tokens);
+                candidate.subList(start,
+                        Math.min(tokens.size(), start + chunk)).clear();
+                Outcome o = check(String.join(" ", candidate));
+                if (o != null && o.aspect.equals(mismatch.aspect)) {
+                    tokens = candidate;
+                    removed = true;
+                } else {
+                    start += chunk;
+                }
+            }
+            if (!removed) {
+                chunk /= 2;
+            }
+        }
+        return String.join(" ", tokens);
+    }
+
+    /**
+     * Returns a random valid identifier that is not a keyword, condition or
+     * primitive instruction.
+     *
+     * @param r
+     *            the random source
+     * @return the identifier
+     */
+    private static String identifier(Random r) {
+        StringBuilder sb = new StringBuilder();
+        sb.append((char) ('a' + r.nextInt(26)));
+        int length = r.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            int k = r.nextInt(40);
+            if (k < 26) {
+                sb.append((char) ('a' + k));
+            } else if (k < 36) {
+                sb.append((char) ('0' + k - 26));
+            } else {
+                sb.append('-');
+            }
+        }
+        return "i" + sb;
+    }
+
+    /**
+     * Appends a random block of statements to {@code sb}.
+     *
+     * @param r
+     *            the random source
+     * @param depth
+     *            the nesting depth of the block
+     * @param callable
+     *            the user instructions the block may call
+     * @param sb
+     *            the source so far
+     * @updates sb
+     */
+    private static void block(Random r, int depth, List<String> callable,
+            StringBuilder sb) {
+        int length = r.nextInt(depth == 0 ? 6 : 4);
+        for (int i = 0; i < length; i++) {
+            int k = r.nextInt(20);
+            String condition = CONDITIONS[r.nextInt(CONDITIONS.length)];
+            if (depth >= 4 || k < 10) {
+                if (!callable.isEmpty() && k < 3) {
+                    sb.append(callable.get(r.nextInt(callable.size())));
+                } else {
+                    sb.append(PRIMITIVES[r.nextInt(PRIMITIVES.length)]);
+                }
+                sb.append('\n');
+            } else if (k < 13) {
+                sb.append("IF ").append(condition).append(" THEN\n");
+                block(r, depth + 1, callable, sb);
+                sb.append("END IF\n");
+            } else if (k < 16) {
+                sb.append("IF ").append(condition).append(" THEN\n");
+                block(r, depth + 1, callable, sb);
+                sb.append("ELSE\n");
+                block(r, depth + 1, callable, sb);
+                sb.append("END IF\n");
+            } else {
+                sb.append("WHILE ").append(condition).append(" DO\n");
+                block(r, depth + 1, callable, sb);
+                sb.append("END WHILE\n");
+            }
+        }
+    }
+
+    /**
+     * Returns generated input number {@code index}: a random valid program,
+     * mutated one time in three by deleting, duplicating or replacing a few
+     * tokens. User instructions only call those defined before them, so
+     * the program never recurses.
+     *
+     * @param seed
+     *            the seed of the run
+     * @param index
+     *            the index of the input
+     * @return the input
+     */
+    static String generate(long seed, long index) {
+        Random r = new Random(seed * 0x9E3779B97F4A7C15L + index);
+        List<String> callable = new ArrayList<>();
+        String name = "P" + r.nextInt(1000);
+        StringBuilder sb = new StringBuilder();
+        sb.append("PROGRAM ").append(name).append(" IS\n");
+        int instructions = r.nextInt(4);
+        for (int i = 0; i < instructions; i++) {
+            String instruction = identifier(r);
+            if (!callable.contains(instruction)) {
+                sb.append("INSTRUCTION ").append(instruction).append(" IS\n");
+                block(r, 1, callable, sb);
+                sb.append("END ").append(instruction).append('\n');
+                callable.add(instruction);
+            }
+        }
+        sb.append("BEGIN\n");
+        block(r, 0, callable, sb);
+        sb.append("END ").append(name).append('\n');
+        String result = sb.toString();
+        if (r.nextInt(3) == 0) {
+            List<String> tokens = tokenList(result);
+            int edits = 1 + r.nextInt(3);
+            for (int k = 0; k < edits && !tokens.isEmpty(); k++) {
+                int at = r.nextInt(tokens.size());
+                switch (r.nextInt(3)) {
+                    case 0:
+                        tokens.remove(at);
+                        break;
+                    case 1:
+                        tokens.add(at, tokens.get(at));
+                        break;
+                    default:
+                        tokens.set(at, MUTATIONS[r.nextInt(MUTATIONS.length)]);
+                        break;
+                }
+            }
+            result = String.join(" ", tokens);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the contents of the corpus files named by {@code args}, from
+     * {@code first} on; directories are searched for {@code .bl} files.
+     *
+     * @param args
+     *            the command line arguments
+     * @param first
+     *            the index of the first file name
+     * @return the sources
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    private static List<String> corpus(String[] args, int first)
+            throws IOException {
+        List<String> result = new ArrayList<>();
+        for (int i = first; i < args.length; i++) {
+            Path path = Paths.get(args[i]);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    for (Object o : files.filter(
+                            f -> f.toString().endsWith(".bl")).toArray()) {
+                        result.add(new String(Files.readAllBytes((Path) o),
+                                StandardCharsets.UTF_8));
+                    }
+                }
+            } else {
+                result.add(new String(Files.readAllBytes(path),
+                        StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Main method.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if a corpus file cannot be read
+     * @throws InterruptedException
+     *             if interrupted while waiting for the workers
+     */
+    public static void main(String[] args)
+            throws IOException, InterruptedException {
+        long count = 100_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        long seed = System.nanoTime();
+        int first = 0;
+        while (first + 1 < args.length && args[first].startsWith("-")) {
+            if (args[first].equals("-n")) {
+                count = Long.parseLong(args[first + 1]);
+            } else if (args[first].equals("-t")) {
+                threads = Integer.parseInt(args[first + 1]);
+            } else if (args[first].equals("-seed")) {
+                seed = Long.parseLong(args[first + 1]);
+            }
+            first += 2;
+        }
+        List<String> corpus = corpus(args, first);
+        long total = corpus.size() + count;
+        long runSeed = seed;
+
+        SimpleWriter out = new SimpleWriter1L();
+        out.println("Checking " + corpus.size() + " corpus and " + count
+                + " generated inputs (seed " + seed + ") on " + threads
+                + " threads");
+        AtomicLong next = new AtomicLong();
+        LongAdder checked = new LongAdder();
+        LongAdder mismatches = new LongAdder();
+        ConcurrentHashMap<String, String> reports = new ConcurrentHashMap<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            pool.execute(() -> {
+                long i = next.getAndIncrement();
+                while (i < total) {
+                    String source;
+                    if (i < corpus.size()) {
+                        source = corpus.get((int) i);
+                    } else {
+                        source = generate(runSeed, i - corpus.size());
+                    }
+                    Outcome o = check(source);
+                    if (o != null) {
+                        mismatches.increment();
+                        if (reports.size() < MAX_REPORTS
+                                && !reports.containsKey(o.aspect)) {
+                            String small = shrink(source, o);
+                            Outcome s = check(small);
+                            reports.putIfAbsent(o.aspect,
+                                    "MISMATCH in " + o.aspect + " (input "
+                                            + i + ")\n  reproducer: " + small
+                                            + "\n  library: " + s.expected
+                                            + "\n  ours:    " + s.actual);
+                        }
+                    }
+                    checked.increment();
+                    i = next.getAndIncrement();
+                }
+            });
+        }
+        pool.shutdown();
+        long start = System.nanoTime();
+        long last = start;
+        long lastChecked = 0;
+        while (!pool.awaitTermination(1, TimeUnit.SECONDS)) {
+            long now = System.nanoTime();
+            long c = checked.sum();
+            out.println(String.format(
+                    "  %d/%d inputs, %.0f inputs/s, %d mismatches", c, total,
+                    (c - lastChecked) * 1e9 / (now - last),
+                    mismatches.sum()));
+            last = now;
+            lastChecked = c;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        for (String report : reports.values()) {
+            out.println(report);
+        }
+        out.println(String.format(
+                "Checked %d inputs in %.1f s (%.0f inputs/s): %d mismatches",
+                checked.sum(), seconds, checked.sum() / seconds,
+                mismatches.sum()));
+        out.close();
+    }
+
+}
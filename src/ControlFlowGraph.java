@@ -0,0 +1,450 @@
+import components.program.Program.Instruction;
+import components.statement.StatementKernel.Condition;
+
+/**
+ * Control-flow graph of compiled BL code, i.e., of the {@code int} values of
+ * the sequence returned by {@code Program.generatedCode()}, split into basic
+ * blocks. A block ends with a jump, with a primitive instruction (where
+ * {@code BugInterpreter.nextAction} returns), or with HALT, or just before
+ * the target of a jump; each block thus performs at most one primitive
+ * instruction, as its last one. Blocks are numbered in address order, so
+ * block 0 is the entry.
+ *
+ * <p>
+ * A block has at most two successors: {@code next}, where control goes when
+ * the block falls through, jumps unconditionally, or ends with a conditional
+ * jump whose condition holds; and {@code branch}, where a conditional jump
+ * goes when its condition does not hold. {@code JUMP_IF_NOT_TRUE} never
+ * jumps, so it falls through without ending its block. HALT has no
+ * successor.
+ *
+ * <p>
+ * The graph is built in two passes over the code and is held in {@code int}
+ * arrays, so it takes time and space linear in the length of the code.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class ControlFlowGraph {
+
+    /**
+     * The condition tested by each conditional jump, indexed by byte code;
+     * null for the other instructions.
+     */
+    private static final Condition[] CONDITIONS = conditionsByCode();
+
+    /**
+     * The address of the first instruction of each block, followed by the
+     * length of the code.
+     */
+    private final int[] start;
+
+    /**
+     * The address of the last instruction of each block.
+     */
+    private final int[] last;
+
+    /**
+     * The byte code of the last instruction of each block.
+     */
+    private final int[] exit;
+
+    /**
+     * The block of each address, operands included.
+     */
+    private final int[] blockOf;
+
+    /**
+     * The next block of each block, or -1 if none.
+     */
+    private final int[] next;
+
+    /**
+     * The branch block of each block, or -1 if none.
+     */
+    private final int[] branch;
+
+    /**
+     * Where the predecessors of each block start in {@code predecessors},
+     * followed by the number of edges.
+     */
+    private final int[] predecessorStart;
+
+    /**
+     * The predecessors of each block, in block order, one for each edge.
+     */
+    private final int[] predecessors;
+
+    /**
+     * Constructor.
+     *
+     * @param code
+     *            the compiled code
+     */
+    private ControlFlowGraph(int[] code) {
+        int n = code.length;
+        int jumpIfNotTrue = Instruction.JUMP_IF_NOT_TRUE.byteCode();
+        /*
+         * First pass: mark the address following each block-ending
+         * instruction, and the target of each jump, as starting a block
+         */
+        boolean[] leader = new boolean[n + 1];
+        leader[0] = true;
+        int blocks = 0;
+        for (int pc = 0; pc < n; pc += BugInterpreter.length(code[pc])) {
+            int op = code[pc];
+            if (op != jumpIfNotTrue) {
+                leader[pc + BugInterpreter.length(op)] = true;
+                if (op >= Instruction.JUMP.byteCode()) {
+                    leader[code[pc + 1]] = true;
+                }
+            }
+        }
+        for (int pc = 0; pc < n; pc += BugInterpreter.length(code[pc])) {
+            if (leader[pc]) {
+                blocks++;
+            }
+        }
+        /*
+         * Second pass: number the blocks and find their last instructions
+         */
+        this.start = new int[blocks + 1];
+        this.last = new int[blocks];
+        this.exit = new int[blocks];
+        this.blockOf = new int[n];
+        int b = -1;
+        for (int pc = 0; pc < n; pc += BugInterpreter.length(code[pc])) {
+            if (leader[pc]) {
+                b++;
+                this.start[b] = pc;
+            }
+            this.last[b] = pc;
+            this.exit[b] = code[pc];
+            this.blockOf[pc] = b;
+            if (BugInterpreter.length(code[pc]) == 2) {
+                this.blockOf[pc + 1] = b;
+            }
+        }
+        this.start[blocks] = n;
+        /*
+         * Edges, then predecessors by counting sort
+         */
+        this.next = new int[blocks];
+        this.branch = new int[blocks];
+        this.predecessorStart = new int[blocks + 1];
+        int edges = 0;
+        for (b = 0; b < blocks; b++) {
+            int pc = this.last[b];
+            int op = this.exit[b];
+            this.next[b] = -1;
+            this.branch[b] = -1;
+            if (op == Instruction.JUMP.byteCode()) {
+                this.next[b] = this.blockOf[code[pc + 1]];
+            } else if (op > Instruction.JUMP.byteCode()) {
+                this.next[b] = this.blockOf[pc + 2];
+                if (op != jumpIfNotTrue) {
+                    this.branch[b] = this.blockOf[code[pc + 1]];
+                }
+            } else if (op != Instruction.HALT.byteCode()) {
+                this.next[b] = this.blockOf[pc + 1];
+            }
+            if (this.next[b] >= 0) {
+                this.predecessorStart[this.next[b] + 1]++;
+                edges++;
+            }
+            if (this.branch[b] >= 0) {
+                this.predecessorStart[this.branch[b] + 1]++;
+                edges++;
+            }
+        }
+        for (b = 0; b < blocks; b++) {
+            this.predecessorStart[b + 1] += this.predecessorStart[b];
+        }
+        this.predecessors = new int[edges];
+        int[] fill = new int[blocks];
+        for (b = 0; b < blocks; b++) {
+            int[] targets = { this.next[b], this.branch[b] };
+            for (int t : targets) {
+                if (t >= 0) {
+                    this.predecessors[this.predecessorStart[t] + fill[t]] = b;
+                    fill[t]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the condition tested by each conditional jump, indexed by byte
+     * code.
+     *
+     * @return the conditions indexed by byte code
+     */
+    private static Condition[] conditionsByCode() {
+        String prefix = "JUMP_IF_NOT_";
+        int max = 0;
+        for (Instruction i : Instruction.values()) {
+            max = Math.max(max, i.byteCode());
+        }
+        Condition[] result = new Condition[max + 1];
+        for (Instruction i : Instruction.values()) {
+            if (i.name().startsWith(prefix)) {
+                result[i.byteCode()] = Condition
+                        .valueOf(i.name().substring(prefix.length()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the control-flow graph of {@code code}.
+     *
+     * @param code
+     *            the compiled code
+     * @return the control-flow graph of code
+     * @requires [code is the compiled code of a BL program]
+     */
+    public static ControlFlowGraph of(int[] code) {
+        assert code != null : "Violation of: code is not null";
+        assert code.length > 0 : "Violation of: code is not empty";
+
+        return new ControlFlowGraph(code);
+    }
+
+    /**
+     * Returns the control-flow graph of the compiled code of {@code p}.
+     *
+     * @param p
+     *            the program
+     * @return the control-flow graph of p
+     */
+    public static ControlFlowGraph of(FrozenProgram p) {
+        assert p != null : "Violation of: p is not null";
+
+        return new ControlFlowGraph(p.code());
+    }
+
+    /**
+     * Reports the number of blocks.
+     *
+     * @return the number of blocks
+     */
+    public int blocks() {
+        return this.last.length;
+    }
+
+    /**
+     * Returns the block of the instruction at address {@code pc}.
+     *
+     * @param pc
+     *            the address
+     * @return the block containing pc
+     * @requires 0 <= pc < [length of the code]
+     */
+    public int block(int pc) {
+        assert 0 <= pc && pc < this.blockOf.length : ""
+                + "Violation of: 0 <= pc < [length of the code]";
+
+        return this.blockOf[pc];
+    }
+
+    /**
+     * Returns the address of the first instruction of block {@code b}.
+     *
+     * @param b
+     *            the block
+     * @return the start address of b
+     * @requires 0 <= b < blocks()
+     */
+    public int start(int b) {
+        assert 0 <= b && b < this.blocks() : "Violation of: 0 <= b < blocks()";
+
+        return this.start[b];
+    }
+
+    /**
+     * Returns the address following block {@code b}.
+     *
+     * @param b
+     *            the block
+     * @return the end address of b, exclusive
+     * @requires 0 <= b < blocks()
+     */
+    public int end(int b) {
+        assert 0 <= b && b < this.blocks() : "Violation of: 0 <= b < blocks()";
+
+        return this.start[b + 1];
+    }
+
+    /**
+     * Returns the address of the last instruction of block {@code b}.
+     *
+     * @param b
+     *            the block
+     * @return the address of the last instruction of b
+     * @requires 0 <= b < blocks()
+     */
+    public int last(int b) {
+        assert 0 <= b && b < this.blocks() : "Violation of: 0 <= b < blocks()";
+
+        return this.last[b];
+    }
+
+    /**
+     * Returns the last instruction of block {@code b}.
+     *
+     * @param b
+     *            the block
+     * @return the last instruction of b
+     * @requires 0 <= b < blocks()
+     */
+    public Instruction exit(int b) {
+        assert 0 <= b && b < this.blocks() : "Violation of: 0 <= b < blocks()";
+
+        return BugInterpreter.instruction(this.exit[b]);
+    }
+
+    /**
+     * Reports whether block {@code b} ends with a primitive instruction.
+     *
+     * @param b
+     *            the block
+     * @return true iff the last instruction of b is a primitive instruction
+     * @requires 0 <= b < blocks()
+     */
+    public boolean isAction(int b) {
+        assert 0 <= b && b < this.blocks() : "Violation of: 0 <= b < blocks()";
+
+        return this.exit[b] < Instruction.HALT.byteCode();
+    }
+
+    /**
+     * Returns the condition labelling the edges out of block {@code b}: the
+     * {@code next} edge is taken when it holds, and the {@code branch} edge
+     * when it does not.
+     *
+     * @param b
+     *            the block
+     * @return the condition tested at the end of b, or null if b does not end
+     *         with a conditional jump that can jump
+     * @requires 0 <= b < blocks()
+     */
+    public Condition condition(int b) {
+        assert 0 <= b && b < this.blocks() : "Violation of: 0 <= b < blocks()";
+
+        Condition result = null;
+        if (this.branch[b] >= 0) {
+            result = CONDITIONS[this.exit[b]];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the block control goes to after block {@code b} when it falls
+     * through, jumps unconditionally, or its condition holds.
+     *
+     * @param b
+     *            the block
+     * @return the next block, or -1 if b ends with HALT
+     * @requires 0 <= b < blocks()
+     */
+    public int next(int b) {
+        assert 0 <= b && b < this.blocks() : "Violation of: 0 <= b < blocks()";
+
+        return this.next[b];
+    }
+
+    /**
+     * Returns the block control goes to after block {@code b} when its
+     * condition does not hold.
+     *
+     * @param b
+     *            the block
+     * @return the branch block, or -1 if condition(b) is null
+     * @requires 0 <= b < blocks()
+     */
+    public int branch(int b) {
+        assert 0 <= b && b < this.blocks() : "Violation of: 0 <= b < blocks()";
+
+        return this.branch[b];
+    }
+
+    /**
+     * Reports the number of edges into block {@code b}.
+     *
+     * @param b
+     *            the block
+     * @return the number of predecessors of b, counted once for each edge
+     * @requires 0 <= b < blocks()
+     */
+    public int predecessors(int b) {
+        assert 0 <= b && b < this.blocks() : "Violation of: 0 <= b < blocks()";
+
+        return this.predecessorStart[b + 1] - this.predecessorStart[b];
+    }
+
+    /**
+     * Returns the source of the {@code k}-th edge into block {@code b}, in
+     * block order.
+     *
+     * @param b
+     *            the block
+     * @param k
+     *            the position of the edge
+     * @return the k-th predecessor of b
+     * @requires 0 <= b < blocks() and 0 <= k < predecessors(b)
+     */
+    public int predecessor(int b, int k) {
+        assert 0 <= k && k < this.predecessors(b) : ""
+                + "Violation of: 0 <= k < predecessors(b)";
+
+        return this.predecessors[this.predecessorStart[b] + k];
+    }
+
+    /**
+     * Returns which blocks can be reached from the entry block.
+     *
+     * @return an array whose entry b is true iff block b can be reached
+     */
+    public boolean[] reachable() {
+        int blocks = this.blocks();
+        boolean[] result = new boolean[blocks];
+        int[] stack = new int[blocks];
+        int top = 0;
+        result[0] = true;
+        stack[top] = 0;
+        top++;
+        while (top > 0) {
+            top--;
+            int b = stack[top];
+            int[] targets = { this.next[b], this.branch[b] };
+            for (int t : targets) {
+                if (t >= 0 && !result[t]) {
+                    result[t] = true;
+                    stack[top] = t;
+                    top++;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < this.blocks(); b++) {
+            sb.append('B').append(b).append(" [").append(this.start[b])
+                    .append(", ").append(this.start[b + 1]).append(") ")
+                    .append(this.exit(b));
+            if (this.condition(b) != null) {
+                sb.append(": ").append(this.condition(b)).append(" -> B")
+                        .append(this.next[b]).append(", else -> B")
+                        .append(this.branch[b]);
+            } else if (this.next[b] >= 0) {
+                sb.append(" -> B").append(this.next[b]);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,326 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import components.map.Map.Pair;
+import components.program.Program;
+import components.sequence.Sequence;
+import components.simplewriter.SimpleWriter;
+import components.statement.Statement;
+
+/**
+ * Immutable snapshot of a {@code Program}: its name, context, body and
+ * compiled code. All fields are final and never modified after construction,
+ * so a {@code FrozenProgram} can be safely published to, traversed, pretty
+ * printed and executed by any number of threads without locking.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class FrozenProgram implements BugExecutable {
+
+    /**
+     * The program name.
+     */
+    private final String name;
+
+    /**
+     * The program context, in the iteration order of the original context.
+     */
+    private final Map<String, FrozenStatement> context;
+
+    /**
+     * The interned names of the instructions in the context, in increasing
+     * order of id; holding them keeps their ids.
+     */
+    private final InstructionNames.Name[] names;
+
+    /**
+     * The id of each name in {@code names}, at the same index.
+     */
+    private final int[] ids;
+
+    /**
+     * The body of each instruction in {@code ids}, at the same index.
+     */
+    private final FrozenStatement[] bodies;
+
+    /**
+     * The program body.
+     */
+    private final FrozenStatement body;
+
+    /**
+     * The compiled code.
+     */
+    private final int[] code;
+
+    /**
+     * Constructor.
+     *
+     * @param n
+     *            the program name
+     * @param ctxt
+     *            the program context, not copied
+     * @param b
+     *            the program body
+     * @param c
+     *            the compiled code, not copied
+     */
+    private FrozenProgram(String n, Map<String, FrozenStatement> ctxt,
+            FrozenStatement b, int[] c) {
+        this.name = n;
+        this.context = Collections.unmodifiableMap(ctxt);
+        int size = ctxt.size();
+        this.names = new InstructionNames.Name[size];
+        int i = 0;
+        for (String instruction : ctxt.keySet()) {
+            this.names[i] = InstructionNames.intern(instruction);
+            i++;
+        }
+        Arrays.sort(this.names,
+                (x, y) -> Integer.compare(x.id(), y.id()));
+        this.ids = new int[size];
+        this.bodies = new FrozenStatement[size];
+        for (i = 0; i < size; i++) {
+            this.ids[i] = this.names[i].id();
+            this.bodies[i] = ctxt.get(this.names[i].toString());
+        }
+        this.body = b;
+        this.code = c;
+    }
+
+    /**
+     * Returns an immutable snapshot of {@code p}. The kernel methods of
+     * {@code p} are used to read it, so {@code p} must not be used by another
+     * thread during the call.
+     *
+     * @param p
+     *            the program to copy
+     * @return the snapshot of p
+     * @ensures <pre>
+     * copyOf = p and
+     * copyOf.code = [the values of p.generatedCode()]
+     * </pre>
+     */
+    public static FrozenProgram copyOf(Program p) {
+        assert p != null : "Violation of: p is not null";
+
+        components.map.Map<String, Statement> c = p.newContext();
+        p.swapContext(c);
+        List<String> names = new ArrayList<>(c.size());
+        for (Pair<String, Statement> pair : c) {
+            names.add(pair.key());
+        }
+        Map<String, FrozenStatement> ctxt = new LinkedHashMap<>();
+        for (String n : names) {
+            ctxt.put(n, FrozenStatement.copyOf(c.value(n)));
+        }
+        p.swapContext(c);
+
+        Statement b = p.newBody();
+        p.swapBody(b);
+        FrozenStatement frozenBody = FrozenStatement.copyOf(b);
+        p.swapBody(b);
+
+        Sequence<Integer> generated = p.generatedCode();
+        int[] code = new int[generated.length()];
+        int i = 0;
+        for (int word : generated) {
+            code[i] = word;
+            i++;
+        }
+        return new FrozenProgram(p.name(), ctxt, frozenBody, code);
+    }
+
+    /**
+     * Reports the name of {@code this}.
+     *
+     * @return the name of this
+     */
+    public String name() {
+        return this.name;
+    }
+
+    /**
+     * Returns the context of {@code this} as an unmodifiable map from
+     * instruction names to bodies.
+     *
+     * @return the context of this
+     */
+    public Map<String, FrozenStatement> context() {
+        return this.context;
+    }
+
+    /**
+     * Returns the body of the instruction with id {@code id} in the context
+     * of {@code this}, comparing ids rather than names.
+     *
+     * @param id
+     *            the instruction id in {@code InstructionNames}
+     * @return the instruction body, or null if the context of this has no
+     *         instruction with id id
+     */
+    public FrozenStatement instruction(int id) {
+        int i = Arrays.binarySearch(this.ids, id);
+        FrozenStatement result = null;
+        if (i >= 0) {
+            result = this.bodies[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the body of {@code this}.
+     *
+     * @return the body of this
+     */
+    public FrozenStatement body() {
+        return this.body;
+    }
+
+    /**
+     * Reports the number of {@code int}s in the compiled code of {@code this}.
+     *
+     * @return the length of the compiled code
+     */
+    public int codeLength() {
+        return this.code.length;
+    }
+
+    /**
+     * Reports the {@code int} at address {@code pc} of the compiled code of
+     * {@code this}.
+     *
+     * @param pc
+     *            the address
+     * @return the compiled code at address pc
+     * @requires 0 <= pc < [length of the compiled code]
+     */
+    public int codeAt(int pc) {
+        return this.code[pc];
+    }
+
+    /**
+     * Returns a copy of the compiled code of {@code this}.
+     *
+     * @return the compiled code of this
+     */
+    public int[] code() {
+        return this.code.clone();
+    }
+
+    @Override
+    public int nextAction(int pc, int bug, BugWorld world) {
+        return BugInterpreter.nextAction(this.code, pc, bug, world);
+    }
+
+    /**
+     * Like {@link #nextAction(int, int, BugWorld)}, but executes at most
+     * {@code budget} instructions, as
+     * {@link BugInterpreter#nextAction(int[], int, int, BugWorld, int)}
+     * does.
+     *
+     * @param pc
+     *            the address of the next instruction to execute
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @param budget
+     *            the maximum number of instructions to execute
+     * @return the address of the next instruction to execute, or the encoded
+     *         address at which execution was preempted
+     * @updates world
+     * @requires [pc is the address of an instruction in the compiled code]
+     *           and budget > 0
+     */
+    public int nextAction(int pc, int bug, BugWorld world, int budget) {
+        return BugInterpreter.nextAction(this.code, pc, bug, world, budget);
+    }
+
+    /**
+     * Pretty prints {@code this} to {@code out}, exactly as
+     * {@code Program.prettyPrint} would.
+     *
+     * @param out
+     *            the output stream
+     * @updates out.content
+     * @requires out.is_open
+     */
+    public void prettyPrint(SimpleWriter out) {
+        assert out != null : "Violation of: out is not null";
+        assert out.isOpen() : "Violation of: out.is_open";
+
+        this.prettyPrintLines(out::println);
+    }
+
+    /**
+     * Pretty prints {@code this}, passing each line of output, without its
+     * line separator, to {@code lines}.
+     *
+     * @param lines
+     *            the consumer of the lines of output
+     */
+    public void prettyPrintLines(Consumer<String> lines) {
+        assert lines != null : "Violation of: lines is not null";
+
+        String indent = " ".repeat(Program.INDENT_SIZE);
+        lines.accept("PROGRAM " + this.name + " IS");
+        lines.accept("");
+        for (Map.Entry<String, FrozenStatement> e : this.context.entrySet()) {
+            lines.accept(indent + "INSTRUCTION " + e.getKey() + " IS");
+            e.getValue().prettyPrintLines(lines, 2 * Program.INDENT_SIZE);
+            lines.accept(indent + "END " + e.getKey());
+            lines.accept("");
+        }
+        lines.accept("BEGIN");
+        this.body.prettyPrintLines(lines, Program.INDENT_SIZE);
+        lines.accept("END " + this.name);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append('(').append(this.name).append(",{");
+        boolean first = true;
+        for (Map.Entry<String, FrozenStatement> e : this.context.entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append('(').append(e.getKey()).append(',');
+            e.getValue().appendTo(sb);
+            sb.append(')');
+        }
+        sb.append("},");
+        this.body.appendTo(sb);
+        sb.append(')');
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof FrozenProgram)) {
+            return false;
+        }
+        FrozenProgram other = (FrozenProgram) obj;
+        return this.name.equals(other.name)
+                && this.context.equals(other.context)
+                && this.body.equals(other.body);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * this.name.hashCode() + this.context.hashCode())
+                + this.body.hashCode();
+    }
+
+}
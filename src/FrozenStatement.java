@@ -0,0 +1,447 @@
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import components.program.Program;
+import components.simplewriter.SimpleWriter;
+import components.statement.Statement;
+import components.statement.StatementKernel.Condition;
+import components.statement.StatementKernel.Kind;
+
+/**
+ * Immutable copy of a {@code Statement}. Unlike {@code Statement}, it can be
+ * read without being taken apart, so once constructed it can be shared
+ * freely among threads.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class FrozenStatement {
+
+    /**
+     * No children, shared by all CALL statements.
+     */
+    private static final FrozenStatement[] NO_CHILDREN = {};
+
+    /**
+     * Statement kind.
+     */
+    private final Kind kind;
+
+    /**
+     * IF/IF_ELSE/WHILE statement condition; {@code null} otherwise.
+     */
+    private final Condition condition;
+
+    /**
+     * CALL instruction name in {@code InstructionNames}; {@code null}
+     * otherwise.
+     */
+    private final InstructionNames.Name instruction;
+
+    /**
+     * The children: the statements of a BLOCK, the body of an IF or WHILE, or
+     * the two bodies of an IF_ELSE.
+     */
+    private final FrozenStatement[] children;
+
+    /**
+     * Cached hash code.
+     */
+    private final int hash;
+
+    /**
+     * Cached 64-bit hash of the whole subtree.
+     */
+    private final long fingerprint;
+
+    /**
+     * Constructor.
+     *
+     * @param k
+     *            the kind of statement
+     * @param c
+     *            the statement condition, or {@code null}
+     * @param i
+     *            the instruction name, or {@code null}
+     * @param ch
+     *            the children, not copied
+     */
+    private FrozenStatement(Kind k, Condition c, InstructionNames.Name i,
+            FrozenStatement[] ch) {
+        this.kind = k;
+        this.condition = c;
+        this.instruction = i;
+        this.children = ch;
+        int h = k.ordinal();
+        if (c != null) {
+            h = 31 * h + c.ordinal() + 1;
+        }
+        if (i != null) {
+            /*
+             * Hash the name, not the id, so hash codes do not depend on the
+             * order in which names were interned.
+             */
+            h = 31 * h + i.toString().hashCode();
+        }
+        this.hash = 31 * h + Arrays.hashCode(ch);
+        long f = mix(k.ordinal() + 1);
+        if (c != null) {
+            f = mix(f + c.ordinal() + 1);
+        }
+        if (i != null) {
+            f = mix(f + fingerprintOf(i.toString()));
+        }
+        for (FrozenStatement child : ch) {
+            f = mix(f + child.fingerprint);
+        }
+        this.fingerprint = f;
+    }
+
+    /**
+     * Scrambles the bits of {@code x} (the finalizer of SplitMix64).
+     *
+     * @param x
+     *            the value to scramble
+     * @return the scrambled value
+     */
+    private static long mix(long x) {
+        long z = x + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns a 64-bit hash of {@code name} (FNV-1a over its chars).
+     *
+     * @param name
+     *            the name
+     * @return the hash of name
+     */
+    private static long fingerprintOf(String name) {
+        long f = 0xCBF29CE484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            f = (f ^ name.charAt(i)) * 0x100000001B3L;
+        }
+        return f;
+    }
+
+    /**
+     * Returns an immutable copy of {@code s}. The kernel methods of {@code s}
+     * are used to read it, so {@code s} must not be used by another thread
+     * during the call.
+     *
+     * @param s
+     *            the statement to copy
+     * @return the copy of s
+     * @ensures copyOf = s
+     */
+    public static FrozenStatement copyOf(Statement s) {
+        assert s != null : "Violation of: s is not null";
+
+        FrozenStatement result;
+        switch (s.kind()) {
+            case BLOCK: {
+                int length = s.lengthOfBlock();
+                FrozenStatement[] ch = new FrozenStatement[length];
+                for (int i = 0; i < length; i++) {
+                    Statement child = s.removeFromBlock(i);
+                    ch[i] = copyOf(child);
+                    s.addToBlock(i, child);
+                }
+                result = new FrozenStatement(Kind.BLOCK, null, null, ch);
+                break;
+            }
+            case IF: {
+                Statement body = s.newInstance();
+                Condition c = s.disassembleIf(body);
+                FrozenStatement[] ch = { copyOf(body) };
+                s.assembleIf(c, body);
+                result = new FrozenStatement(Kind.IF, c, null, ch);
+                break;
+            }
+            case IF_ELSE: {
+                Statement body1 = s.newInstance();
+                Statement body2 = s.newInstance();
+                Condition c = s.disassembleIfElse(body1, body2);
+                FrozenStatement[] ch = { copyOf(body1), copyOf(body2) };
+                s.assembleIfElse(c, body1, body2);
+                result = new FrozenStatement(Kind.IF_ELSE, c, null, ch);
+                break;
+            }
+            case WHILE: {
+                Statement body = s.newInstance();
+                Condition c = s.disassembleWhile(body);
+                FrozenStatement[] ch = { copyOf(body) };
+                s.assembleWhile(c, body);
+                result = new FrozenStatement(Kind.WHILE, c, null, ch);
+                break;
+            }
+            default: {
+                InstructionNames.Name name;
+                if (s instanceof Statement2) {
+                    name = ((Statement2) s).instructionName();
+                } else {
+                    String n = s.disassembleCall();
+                    s.assembleCall(n);
+                    name = InstructionNames.intern(n);
+                }
+                result = new FrozenStatement(Kind.CALL, null, name,
+                        NO_CHILDREN);
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the kind of {@code this}.
+     *
+     * @return the kind of this
+     */
+    public Kind kind() {
+        return this.kind;
+    }
+
+    /**
+     * Reports the condition of {@code this}.
+     *
+     * @return the condition of this
+     * @requires [this is an IF, IF_ELSE or WHILE statement]
+     */
+    public Condition condition() {
+        assert this.condition != null : ""
+                + "Violation of: [this is an IF, IF_ELSE or WHILE statement]";
+        return this.condition;
+    }
+
+    /**
+     * Reports the name of the instruction called by {@code this}.
+     *
+     * @return the instruction name
+     * @requires [this is a CALL statement]
+     */
+    public String instruction() {
+        assert this.kind == Kind.CALL : ""
+                + "Violation of: [this is a CALL statement]";
+        return this.instruction.toString();
+    }
+
+    /**
+     * Reports the id in {@code InstructionNames} of the instruction called by
+     * {@code this}.
+     *
+     * @return the instruction id
+     * @requires [this is a CALL statement]
+     */
+    public int instructionId() {
+        assert this.kind == Kind.CALL : ""
+                + "Violation of: [this is a CALL statement]";
+        return this.instruction.id();
+    }
+
+    /**
+     * Returns the interned name of the instruction called by {@code this}.
+     *
+     * @return the instruction name
+     * @requires [this is a CALL statement]
+     */
+    public InstructionNames.Name instructionName() {
+        assert this.kind == Kind.CALL : ""
+                + "Violation of: [this is a CALL statement]";
+        return this.instruction;
+    }
+
+    /**
+     * Reports a 64-bit hash of {@code this}, computed once from the
+     * fingerprints of its children, so equal statements have equal
+     * fingerprints and statements with equal fingerprints are equal but for a
+     * chance of about one in 2^64.
+     *
+     * @return the fingerprint of this
+     */
+    long fingerprint() {
+        return this.fingerprint;
+    }
+
+    /**
+     * Reports the number of children of {@code this}: the length of a BLOCK,
+     * 1 for IF and WHILE, 2 for IF_ELSE and 0 for CALL.
+     *
+     * @return the number of children of this
+     */
+    public int numberOfChildren() {
+        return this.children.length;
+    }
+
+    /**
+     * Returns the child of {@code this} at position {@code pos}: a statement
+     * of a BLOCK, the body of an IF or WHILE, or the then (0) or else (1) body
+     * of an IF_ELSE.
+     *
+     * @param pos
+     *            the position of the child
+     * @return the child at position pos
+     * @requires 0 <= pos < [number of children of this]
+     */
+    public FrozenStatement child(int pos) {
+        assert 0 <= pos : "Violation of: 0 <= pos";
+        assert pos < this.children.length : ""
+                + "Violation of: pos < [number of children of this]";
+        return this.children[pos];
+    }
+
+    /**
+     * Reports the number of statements in {@code this}, counting {@code this}
+     * and each BLOCK.
+     *
+     * @return the size of this
+     */
+    public int size() {
+        int size = 1;
+        for (FrozenStatement c : this.children) {
+            size += c.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the BL spelling of {@code c}, e.g., {@code next-is-empty}.
+     *
+     * @param c
+     *            the condition
+     * @return the BL spelling of c
+     */
+    public static String toStringCondition(Condition c) {
+        return c.name().toLowerCase().replace('_', '-');
+    }
+
+    /**
+     * Pretty prints {@code this} to {@code out}, exactly as
+     * {@code Statement.prettyPrint} would.
+     *
+     * @param out
+     *            the output stream
+     * @param offset
+     *            the number of spaces to be placed before every nonblank line
+     *            of output
+     * @updates out.content
+     * @requires out.is_open and 0 <= offset
+     */
+    public void prettyPrint(SimpleWriter out, int offset) {
+        assert out != null : "Violation of: out is not null";
+        assert out.isOpen() : "Violation of: out.is_open";
+        assert offset >= 0 : "Violation of: 0 <= offset";
+
+        this.prettyPrintLines(out::println, offset);
+    }
+
+    /**
+     * Pretty prints {@code this}, passing each line of output, without its
+     * line separator, to {@code lines}.
+     *
+     * @param lines
+     *            the consumer of the lines of output
+     * @param offset
+     *            the number of spaces to be placed before every nonblank line
+     *            of output
+     * @requires 0 <= offset
+     */
+    public void prettyPrintLines(Consumer<String> lines, int offset) {
+        assert lines != null : "Violation of: lines is not null";
+        assert offset >= 0 : "Violation of: 0 <= offset";
+
+        String indent = " ".repeat(offset);
+        int inner = offset + Program.INDENT_SIZE;
+        switch (this.kind) {
+            case BLOCK:
+                for (FrozenStatement c : this.children) {
+                    c.prettyPrintLines(lines, offset);
+                }
+                break;
+            case IF:
+                lines.accept(indent + "IF "
+                        + toStringCondition(this.condition) + " THEN");
+                this.children[0].prettyPrintLines(lines, inner);
+                lines.accept(indent + "END IF");
+                break;
+            case IF_ELSE:
+                lines.accept(indent + "IF "
+                        + toStringCondition(this.condition) + " THEN");
+                this.children[0].prettyPrintLines(lines, inner);
+                lines.accept(indent + "ELSE");
+                this.children[1].prettyPrintLines(lines, inner);
+                lines.accept(indent + "END IF");
+                break;
+            case WHILE:
+                lines.accept(indent + "WHILE "
+                        + toStringCondition(this.condition) + " DO");
+                this.children[0].prettyPrintLines(lines, inner);
+                lines.accept(indent + "END WHILE");
+                break;
+            default:
+                lines.accept(indent + this.instruction);
+                break;
+        }
+    }
+
+    /**
+     * Appends the mathematical string representation of {@code this}, in the
+     * same format as {@code Statement.toString}, to {@code sb}.
+     *
+     * @param sb
+     *            the builder to append to
+     */
+    void appendTo(StringBuilder sb) {
+        sb.append("compose((").append(this.kind).append(',');
+        if (this.condition != null) {
+            sb.append(this.condition);
+        } else {
+            sb.append('?');
+        }
+        sb.append(',');
+        if (this.instruction != null) {
+            sb.append(this.instruction);
+        } else {
+            sb.append('?');
+        }
+        sb.append("),<");
+        for (int i = 0; i < this.children.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            this.children[i].appendTo(sb);
+        }
+        sb.append(">)");
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        this.appendTo(sb);
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof FrozenStatement)) {
+            return false;
+        }
+        FrozenStatement other = (FrozenStatement) obj;
+        return this.hash == other.hash
+                && this.fingerprint == other.fingerprint
+                && this.kind == other.kind
+                && this.condition == other.condition
+                && this.instruction == other.instruction
+                && Arrays.equals(this.children, other.children);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+}
@@ -0,0 +1,369 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import components.program.Program.Instruction;
+
+/**
+ * Compiled code of a {@code FrozenProgram} rewritten with superinstructions:
+ * each conditional jump {@code JUMP_IF_NOT_X L} immediately followed by a
+ * primitive instruction {@code A} is replaced by one fused instruction, which
+ * performs A if X holds and jumps to L otherwise. The common
+ * {@code IF next-is-empty THEN move END IF} and
+ * {@code IF next-is-enemy THEN infect END IF} then take one dispatch instead
+ * of two.
+ *
+ * <p>
+ * Only the opcode word of the conditional jump is rewritten, and A is left in
+ * place after it, so every address is unchanged: jumps to A still find it,
+ * and {@code nextAction} returns the same addresses as
+ * {@code FrozenProgram.nextAction}, so the two can be used interchangeably
+ * on the same bugs. A fused instruction counts as the two instructions it
+ * replaces against the budget of {@code nextAction}.
+ *
+ * <p>
+ * The pairs (X, A) to fuse are chosen by weight, either static (the number
+ * of sites in the code) or from a {@code BugProfiler} (the number of times
+ * X held at each site), and only the heaviest ones are fused, so that the
+ * interpreter dispatches on few distinct opcodes.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class FusedProgram implements BugExecutable {
+
+    /**
+     * Byte code of the first conditional jump.
+     */
+    private static final int FIRST_CONDITIONAL = Instruction.JUMP.byteCode()
+            + 1;
+
+    /**
+     * Number of primitive instructions, whose byte codes are 0 to this number
+     * - 1.
+     */
+    private static final int ACTIONS = Instruction.HALT.byteCode();
+
+    /**
+     * Opcode of the first fused instruction; that of the fusion of the
+     * conditional jump with byte code j and the primitive instruction with
+     * byte code a is {@code FUSED + (j - FIRST_CONDITIONAL) * ACTIONS + a}.
+     */
+    private static final int FUSED = 32;
+
+    /**
+     * Number of possible fused instructions.
+     */
+    private static final int PAIRS = (lastByteCode() + 1 - FIRST_CONDITIONAL)
+            * ACTIONS;
+
+    /**
+     * The instruction of each opcode; for a fused instruction, its
+     * conditional jump.
+     */
+    private static final Instruction[] INSTRUCTIONS = new Instruction[FUSED
+            + PAIRS];
+
+    /**
+     * The primitive instruction of each fused instruction, by opcode; null
+     * for the other opcodes.
+     */
+    private static final Instruction[] FUSED_ACTIONS = new Instruction[FUSED
+            + PAIRS];
+
+    static {
+        for (Instruction i : Instruction.values()) {
+            INSTRUCTIONS[i.byteCode()] = i;
+        }
+        for (int pair = 0; pair < PAIRS; pair++) {
+            INSTRUCTIONS[FUSED + pair] = INSTRUCTIONS[FIRST_CONDITIONAL
+                    + pair / ACTIONS];
+            FUSED_ACTIONS[FUSED + pair] = INSTRUCTIONS[pair % ACTIONS];
+        }
+    }
+
+    /**
+     * The program.
+     */
+    private final FrozenProgram program;
+
+    /**
+     * The rewritten code.
+     */
+    private final int[] code;
+
+    /**
+     * The fused instructions used, by decreasing weight.
+     */
+    private final List<String> fused;
+
+    /**
+     * The number of sites rewritten.
+     */
+    private final int sites;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            the program
+     * @param weights
+     *            the weight of the site of each address
+     * @param limit
+     *            the maximum number of distinct fused instructions
+     */
+    private FusedProgram(FrozenProgram p, long[] weights, int limit) {
+        this.program = p;
+        int[] c = p.code();
+        long[] pairWeights = new long[PAIRS];
+        for (int pc = 0; pc < c.length; pc += BugInterpreter.length(c[pc])) {
+            int pair = pair(c, pc);
+            if (pair >= 0) {
+                pairWeights[pair] += weights[pc];
+            }
+        }
+        List<Integer> pairs = new ArrayList<>();
+        for (int pair = 0; pair < PAIRS; pair++) {
+            if (pairWeights[pair] > 0) {
+                pairs.add(pair);
+            }
+        }
+        pairs.sort((x, y) -> Long.compare(pairWeights[y], pairWeights[x]));
+        if (pairs.size() > limit) {
+            pairs = pairs.subList(0, limit);
+        }
+        boolean[] chosen = new boolean[PAIRS];
+        List<String> names = new ArrayList<>();
+        for (int pair : pairs) {
+            chosen[pair] = true;
+            names.add(INSTRUCTIONS[FUSED + pair] + "+"
+                    + FUSED_ACTIONS[FUSED + pair]);
+        }
+        int count = 0;
+        for (int pc = 0; pc < c.length; pc += BugInterpreter.length(c[pc])) {
+            int pair = pair(c, pc);
+            if (pair >= 0 && chosen[pair]) {
+                c[pc] = FUSED + pair;
+                count++;
+            }
+        }
+        this.code = c;
+        this.fused = Collections.unmodifiableList(names);
+        this.sites = count;
+    }
+
+    /**
+     * Returns the largest byte code of an instruction.
+     *
+     * @return the largest byte code
+     */
+    private static int lastByteCode() {
+        int max = 0;
+        for (Instruction i : Instruction.values()) {
+            max = Math.max(max, i.byteCode());
+        }
+        assert max < FUSED : "Violation of: byte codes are below FUSED";
+        return max;
+    }
+
+    /**
+     * Returns the fused instruction that could replace the instruction at
+     * address {@code pc} of {@code c}, as an offset from {@code FUSED}.
+     *
+     * @param c
+     *            the compiled code
+     * @param pc
+     *            the address of an instruction
+     * @return the pair, or -1 if the instruction at pc is not a conditional
+     *         jump followed by a primitive instruction
+     */
+    private static int pair(int[] c, int pc) {
+        int result = -1;
+        if (FIRST_CONDITIONAL <= c[pc] && c[pc] < FUSED
+                && c[pc + 2] < ACTIONS) {
+            result = (c[pc] - FIRST_CONDITIONAL) * ACTIONS + c[pc + 2];
+        }
+        return result;
+    }
+
+    /**
+     * Returns {@code p} with its heaviest fusions applied, weighing each site
+     * by 1.
+     *
+     * @param p
+     *            the program
+     * @param limit
+     *            the maximum number of distinct fused instructions
+     * @return the fused program
+     * @requires limit >= 0
+     * @ensures [of.nextAction behaves exactly like p.nextAction]
+     */
+    public static FusedProgram of(FrozenProgram p, int limit) {
+        assert p != null : "Violation of: p is not null";
+        assert limit >= 0 : "Violation of: limit >= 0";
+
+        long[] weights = new long[p.code().length];
+        Arrays.fill(weights, 1);
+        return new FusedProgram(p, weights, limit);
+    }
+
+    /**
+     * Returns the program profiled by {@code profile} with its heaviest
+     * fusions applied, weighing each site by the number of times its
+     * condition held, i.e., by the number of dispatches the fusion saves.
+     *
+     * @param profile
+     *            the profile
+     * @param limit
+     *            the maximum number of distinct fused instructions
+     * @return the fused program
+     * @requires limit >= 0
+     * @ensures <pre>
+     * [of.nextAction behaves exactly like profile.program().nextAction]
+     * </pre>
+     */
+    public static FusedProgram of(BugProfiler profile, int limit) {
+        assert profile != null : "Violation of: profile is not null";
+        assert limit >= 0 : "Violation of: limit >= 0";
+
+        long[] weights = profile.hits();
+        for (int pc = 0; pc < weights.length; pc++) {
+            weights[pc] -= profile.taken(pc);
+        }
+        return new FusedProgram(profile.program(), weights, limit);
+    }
+
+    /**
+     * Returns the program.
+     *
+     * @return the program
+     */
+    public FrozenProgram program() {
+        return this.program;
+    }
+
+    /**
+     * Returns the fused instructions used, by decreasing weight, e.g.,
+     * {@code JUMP_IF_NOT_NEXT_IS_EMPTY+MOVE}.
+     *
+     * @return the fused instructions
+     */
+    public List<String> superinstructions() {
+        return this.fused;
+    }
+
+    /**
+     * Reports the number of conditional jumps fused with the following
+     * primitive instruction.
+     *
+     * @return the number of sites rewritten
+     */
+    public int sites() {
+        return this.sites;
+    }
+
+    /**
+     * Performs the primitive instruction {@code action}.
+     *
+     * @param action
+     *            the primitive instruction
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @updates world
+     */
+    private static void perform(Instruction action, int bug, BugWorld world) {
+        switch (action) {
+            case MOVE:
+                world.move(bug);
+                break;
+            case TURNLEFT:
+                world.turnLeft(bug);
+                break;
+            case TURNRIGHT:
+                world.turnRight(bug);
+                break;
+            case INFECT:
+                world.infect(bug);
+                break;
+            default:
+                world.skip(bug);
+                break;
+        }
+    }
+
+    @Override
+    public int nextAction(int pc, int bug, BugWorld world) {
+        return this.nextAction(pc, bug, world, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Like {@link #nextAction(int, int, BugWorld)}, but executes at most
+     * {@code budget} instructions, as
+     * {@link BugInterpreter#nextAction(int[], int, int, BugWorld, int)}
+     * does.
+     *
+     * @param pc
+     *            the address of the next instruction to execute
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @param budget
+     *            the maximum number of instructions to execute
+     * @return the address of the next instruction to execute, or the encoded
+     *         address at which execution was preempted
+     * @updates world
+     * @requires [pc is the address of an instruction in the compiled code]
+     *           and budget > 0
+     */
+    public int nextAction(int pc, int bug, BugWorld world, int budget) {
+        assert budget > 0 : "Violation of: budget > 0";
+
+        int[] c = this.code;
+        int next = pc;
+        int left = budget;
+        boolean done = false;
+        while (!done && left > 0) {
+            left--;
+            int op = c[next];
+            Instruction i = INSTRUCTIONS[op];
+            switch (i) {
+                case MOVE:
+                case TURNLEFT:
+                case TURNRIGHT:
+                case INFECT:
+                case SKIP:
+                    perform(i, bug, world);
+                    next++;
+                    done = true;
+                    break;
+                case HALT:
+                    done = true;
+                    break;
+                case JUMP:
+                    next = c[next + 1];
+                    break;
+                default:
+                    if (!BugInterpreter.test(i, bug, world)) {
+                        next = c[next + 1];
+                    } else if (FUSED_ACTIONS[op] == null || left == 0) {
+                        next += 2;
+                    } else {
+                        left--;
+                        perform(FUSED_ACTIONS[op], bug, world);
+                        next += 3;
+                        done = true;
+                    }
+                    break;
+            }
+        }
+        if (!done) {
+            next = BugInterpreter.preempted(next);
+        }
+        return next;
+    }
+
+}
@@ -0,0 +1,585 @@
+/**
+ * Rectangular grid world with the BugsWorld rules: each cell is empty, a
+ * wall, or holds one bug, and each bug faces one of the four directions.
+ * {@code move} moves a bug into the cell in front if it is empty,
+ * {@code turnleft} and {@code turnright} turn it by a quarter turn, and
+ * {@code infect} turns the bug in front, if it is an enemy, into a bug of the
+ * infecting bug's species, which restarts its program.
+ *
+ * <p>
+ * The state is held in primitive arrays, with no object per bug or per cell,
+ * so that a world can hold millions of both: one {@code int} per cell, and
+ * per bug its cell, the cell it faces, its direction, species and program
+ * counter. The grid is surrounded by a border of walls, so the cell in front
+ * of a bug always exists, and each query is one or two array reads, plus the
+ * species of the bug in front for {@code next-is-friend} and
+ * {@code next-is-enemy}.
+ *
+ * <p>
+ * Queries may run concurrently, but actions change the shared grid and must
+ * not run concurrently with any other call.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class GridWorld implements BugWorld {
+
+    /**
+     * Direction facing decreasing y.
+     */
+    public static final int NORTH = 0;
+
+    /**
+     * Direction facing increasing x.
+     */
+    public static final int EAST = 1;
+
+    /**
+     * Direction facing increasing y.
+     */
+    public static final int SOUTH = 2;
+
+    /**
+     * Direction facing decreasing x.
+     */
+    public static final int WEST = 3;
+
+    /**
+     * Contents of an empty cell.
+     */
+    private static final int EMPTY = 0;
+
+    /**
+     * Contents of a wall cell. Other cells hold the number of their bug plus
+     * one.
+     */
+    private static final int WALL = -1;
+
+    /**
+     * The width of the grid.
+     */
+    private final int width;
+
+    /**
+     * The height of the grid.
+     */
+    private final int height;
+
+    /**
+     * The distance between vertically adjacent cells in {@code cells}: the
+     * width plus the border.
+     */
+    private final int stride;
+
+    /**
+     * The change of cell index for a step in each direction.
+     */
+    private final int[] delta;
+
+    /**
+     * The contents of each cell, border included, row by row.
+     */
+    private final int[] cells;
+
+    /**
+     * The cell index of each bug.
+     */
+    private final int[] position;
+
+    /**
+     * The cell index of the cell in front of each bug.
+     */
+    private final int[] facing;
+
+    /**
+     * The direction of each bug.
+     */
+    private final byte[] direction;
+
+    /**
+     * The species of each bug.
+     */
+    private final short[] species;
+
+    /**
+     * The program counter of each bug.
+     */
+    private final int[] pc;
+
+    /**
+     * The source of the condition random.
+     */
+    private final BugRandom random;
+
+    /**
+     * The number of bugs.
+     */
+    private int bugs;
+
+    /**
+     * Constructor; the grid is initially empty.
+     *
+     * @param width
+     *            the width of the grid
+     * @param height
+     *            the height of the grid
+     * @param capacity
+     *            the maximum number of bugs
+     * @param seed
+     *            the run seed of the condition random
+     * @requires <pre>
+     * width > 0 and height > 0 and 0 <= capacity <= width * height and
+     * (width + 2) * (height + 2) <= Integer.MAX_VALUE
+     * </pre>
+     */
+    public GridWorld(int width, int height, int capacity, long seed) {
+        assert width > 0 : "Violation of: width > 0";
+        assert height > 0 : "Violation of: height > 0";
+        assert 0 <= capacity : "Violation of: 0 <= capacity";
+        assert capacity <= (long) width * height : ""
+                + "Violation of: capacity <= width * height";
+        assert (width + 2L) * (height + 2L) <= Integer.MAX_VALUE : ""
+                + "Violation of: (width + 2) * (height + 2) <= "
+                + "Integer.MAX_VALUE";
+
+        this.width = width;
+        this.height = height;
+        this.stride = width + 2;
+        this.delta = new int[] { -this.stride, 1, this.stride, -1 };
+        this.cells = new int[this.stride * (height + 2)];
+        for (int x = 0; x < this.stride; x++) {
+            this.cells[x] = WALL;
+            this.cells[this.cells.length - 1 - x] = WALL;
+        }
+        for (int y = 1; y <= height; y++) {
+            this.cells[y * this.stride] = WALL;
+            this.cells[y * this.stride + width + 1] = WALL;
+        }
+        this.position = new int[capacity];
+        this.facing = new int[capacity];
+        this.direction = new byte[capacity];
+        this.species = new short[capacity];
+        this.pc = new int[capacity];
+        this.random = new BugRandom(seed, capacity);
+        this.bugs = 0;
+    }
+
+    /**
+     * Returns the index in {@code cells} of the cell at ({@code x},
+     * {@code y}).
+     *
+     * @param x
+     *            the column
+     * @param y
+     *            the row
+     * @return the cell index
+     */
+    private int index(int x, int y) {
+        assert 0 <= x && x < this.width : "Violation of: 0 <= x < width";
+        assert 0 <= y && y < this.height : "Violation of: 0 <= y < height";
+        return (y + 1) * this.stride + x + 1;
+    }
+
+    /**
+     * Reports the width of the grid.
+     *
+     * @return the width
+     */
+    public int width() {
+        return this.width;
+    }
+
+    /**
+     * Reports the height of the grid.
+     *
+     * @return the height
+     */
+    public int height() {
+        return this.height;
+    }
+
+    /**
+     * Reports the number of bugs.
+     *
+     * @return the number of bugs, numbered from 0
+     */
+    public int bugs() {
+        return this.bugs;
+    }
+
+    /**
+     * Reports the maximum number of bugs.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return this.position.length;
+    }
+
+    /**
+     * Returns a copy of {@code this}, e.g., to branch an experiment from the
+     * middle of a run: the same grid, bugs and program counters, and random
+     * streams that continue from the same states.
+     *
+     * @return the copy
+     */
+    public GridWorld copy() {
+        GridWorld result = new GridWorld(this.width, this.height,
+                this.capacity(), this.random.seed());
+        this.copyTo(result);
+        return result;
+    }
+
+    /**
+     * Copies the state of {@code this} into {@code target}, which ends up
+     * equal to {@code copy()}, reusing its arrays.
+     *
+     * @param target
+     *            the world to copy into
+     * @updates target
+     * @requires <pre>
+     * target has the same width, height, capacity and run seed as this
+     * </pre>
+     */
+    void copyTo(GridWorld target) {
+        assert target.width == this.width
+                && target.height == this.height : ""
+                        + "Violation of: target has the same size as this";
+        assert target.capacity() == this.capacity() : ""
+                + "Violation of: target has the same capacity as this";
+        assert target.random.seed() == this.random.seed() : ""
+                + "Violation of: target has the same run seed as this";
+
+        int n = this.bugs;
+        System.arraycopy(this.cells, 0, target.cells, 0, this.cells.length);
+        System.arraycopy(this.position, 0, target.position, 0, n);
+        System.arraycopy(this.facing, 0, target.facing, 0, n);
+        System.arraycopy(this.direction, 0, target.direction, 0, n);
+        System.arraycopy(this.species, 0, target.species, 0, n);
+        System.arraycopy(this.pc, 0, target.pc, 0, n);
+        System.arraycopy(this.random.stateArray(), 0,
+                target.random.stateArray(), 0, this.capacity());
+        target.bugs = n;
+    }
+
+    /**
+     * Returns the array holding the contents of each cell, border included,
+     * row by row: 0 for an empty cell, -1 for a wall and the bug number plus
+     * one for a bug. For checkpoints; see {@code setBugs}.
+     *
+     * @return the cell contents
+     */
+    int[] cellArray() {
+        return this.cells;
+    }
+
+    /**
+     * Returns the array holding the index in {@code cellArray()} of the cell
+     * of each bug. For checkpoints; see {@code setBugs}.
+     *
+     * @return the positions, indexed by bug
+     */
+    int[] positionArray() {
+        return this.position;
+    }
+
+    /**
+     * Returns the array holding the direction of each bug. For checkpoints;
+     * see {@code setBugs}.
+     *
+     * @return the directions, indexed by bug
+     */
+    byte[] directionArray() {
+        return this.direction;
+    }
+
+    /**
+     * Returns the array holding the species of each bug. For checkpoints.
+     *
+     * @return the species, indexed by bug
+     */
+    short[] speciesArray() {
+        return this.species;
+    }
+
+    /**
+     * Returns the array holding the program counter of each bug. For
+     * checkpoints.
+     *
+     * @return the program counters, indexed by bug
+     */
+    int[] pcArray() {
+        return this.pc;
+    }
+
+    /**
+     * Returns the source of the condition random. For checkpoints.
+     *
+     * @return the source of random
+     */
+    BugRandom randomSource() {
+        return this.random;
+    }
+
+    /**
+     * Sets the number of bugs after the arrays have been filled in directly,
+     * e.g., from a checkpoint, and recomputes the cell each bug faces.
+     *
+     * @param n
+     *            the number of bugs
+     * @updates this
+     * @requires <pre>
+     * 0 <= n <= capacity() and [the arrays describe n bugs consistently]
+     * </pre>
+     */
+    void setBugs(int n) {
+        assert 0 <= n && n <= this.capacity() : ""
+                + "Violation of: 0 <= n <= capacity()";
+
+        this.bugs = n;
+        for (int bug = 0; bug < n; bug++) {
+            this.facing[bug] = this.position[bug]
+                    + this.delta[this.direction[bug]];
+        }
+    }
+
+    /**
+     * Puts a wall in the cell at ({@code x}, {@code y}).
+     *
+     * @param x
+     *            the column
+     * @param y
+     *            the row
+     * @updates this
+     * @requires [the cell at (x, y) is in the grid and holds no bug]
+     */
+    public void addWall(int x, int y) {
+        int i = this.index(x, y);
+        assert this.cells[i] <= EMPTY : ""
+                + "Violation of: [the cell holds no bug]";
+        this.cells[i] = WALL;
+    }
+
+    /**
+     * Adds a bug in the cell at ({@code x}, {@code y}), facing {@code dir},
+     * with program counter 0, and returns its number.
+     *
+     * @param x
+     *            the column
+     * @param y
+     *            the row
+     * @param dir
+     *            the direction, NORTH, EAST, SOUTH or WEST
+     * @param s
+     *            the species
+     * @return the number of the new bug
+     * @updates this
+     * @requires <pre>
+     * [the cell at (x, y) is in the grid and empty] and bugs() < capacity()
+     * and 0 <= dir < 4 and 0 <= s <= Short.MAX_VALUE
+     * </pre>
+     */
+    public int addBug(int x, int y, int dir, int s) {
+        int i = this.index(x, y);
+        assert this.cells[i] == EMPTY : "Violation of: [the cell is empty]";
+        assert this.bugs < this.capacity() : ""
+                + "Violation of: bugs() < capacity()";
+        assert 0 <= dir && dir < 4 : "Violation of: 0 <= dir < 4";
+        assert 0 <= s && s <= Short.MAX_VALUE : ""
+                + "Violation of: 0 <= s <= Short.MAX_VALUE";
+
+        int bug = this.bugs;
+        this.bugs++;
+        this.cells[i] = bug + 1;
+        this.position[bug] = i;
+        this.direction[bug] = (byte) dir;
+        this.facing[bug] = i + this.delta[dir];
+        this.species[bug] = (short) s;
+        this.pc[bug] = 0;
+        return bug;
+    }
+
+    /**
+     * Reports whether the cell at ({@code x}, {@code y}) is a wall.
+     *
+     * @param x
+     *            the column
+     * @param y
+     *            the row
+     * @return true iff the cell is a wall
+     * @requires [the cell at (x, y) is in the grid]
+     */
+    public boolean isWall(int x, int y) {
+        return this.cells[this.index(x, y)] == WALL;
+    }
+
+    /**
+     * Reports the bug in the cell at ({@code x}, {@code y}), or -1 if there
+     * is none.
+     *
+     * @param x
+     *            the column
+     * @param y
+     *            the row
+     * @return the bug, or -1
+     * @requires [the cell at (x, y) is in the grid]
+     */
+    public int bugAt(int x, int y) {
+        int c = this.cells[this.index(x, y)];
+        int result = -1;
+        if (c > EMPTY) {
+            result = c - 1;
+        }
+        return result;
+    }
+
+    /**
+     * Reports the column of {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     * @return the column of bug
+     * @requires 0 <= bug < bugs()
+     */
+    public int x(int bug) {
+        return this.position[bug] % this.stride - 1;
+    }
+
+    /**
+     * Reports the row of {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     * @return the row of bug
+     * @requires 0 <= bug < bugs()
+     */
+    public int y(int bug) {
+        return this.position[bug] / this.stride - 1;
+    }
+
+    /**
+     * Reports the direction of {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     * @return NORTH, EAST, SOUTH or WEST
+     * @requires 0 <= bug < bugs()
+     */
+    public int direction(int bug) {
+        return this.direction[bug];
+    }
+
+    /**
+     * Reports the species of {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     * @return the species of bug
+     * @requires 0 <= bug < bugs()
+     */
+    public int species(int bug) {
+        return this.species[bug];
+    }
+
+    /**
+     * Reports the program counter of {@code bug}.
+     *
+     * @param bug
+     *            the bug
+     * @return the program counter of bug
+     * @requires 0 <= bug < bugs()
+     */
+    public int pc(int bug) {
+        return this.pc[bug];
+    }
+
+    /**
+     * Sets the program counter of {@code bug}, typically to the value
+     * returned by {@code nextAction}.
+     *
+     * @param bug
+     *            the bug
+     * @param value
+     *            the new program counter
+     * @updates this
+     * @requires 0 <= bug < bugs()
+     */
+    public void setPc(int bug, int value) {
+        this.pc[bug] = value;
+    }
+
+    /**
+     * Turns {@code bug} to face {@code dir}.
+     *
+     * @param bug
+     *            the bug
+     * @param dir
+     *            the new direction
+     */
+    private void face(int bug, int dir) {
+        this.direction[bug] = (byte) dir;
+        this.facing[bug] = this.position[bug] + this.delta[dir];
+    }
+
+    @Override
+    public boolean nextIsEmpty(int bug) {
+        return this.cells[this.facing[bug]] == EMPTY;
+    }
+
+    @Override
+    public boolean nextIsWall(int bug) {
+        return this.cells[this.facing[bug]] == WALL;
+    }
+
+    @Override
+    public boolean nextIsFriend(int bug) {
+        int c = this.cells[this.facing[bug]];
+        return c > EMPTY && this.species[c - 1] == this.species[bug];
+    }
+
+    @Override
+    public boolean nextIsEnemy(int bug) {
+        int c = this.cells[this.facing[bug]];
+        return c > EMPTY && this.species[c - 1] != this.species[bug];
+    }
+
+    @Override
+    public boolean random(int bug) {
+        return this.random.nextBoolean(bug);
+    }
+
+    @Override
+    public void move(int bug) {
+        int next = this.facing[bug];
+        if (this.cells[next] == EMPTY) {
+            this.cells[next] = bug + 1;
+            this.cells[this.position[bug]] = EMPTY;
+            this.position[bug] = next;
+            this.facing[bug] = next + this.delta[this.direction[bug]];
+        }
+    }
+
+    @Override
+    public void turnLeft(int bug) {
+        this.face(bug, (this.direction[bug] + 3) & 3);
+    }
+
+    @Override
+    public void turnRight(int bug) {
+        this.face(bug, (this.direction[bug] + 1) & 3);
+    }
+
+    @Override
+    public void infect(int bug) {
+        int c = this.cells[this.facing[bug]];
+        if (c > EMPTY && this.species[c - 1] != this.species[bug]) {
+            this.species[c - 1] = this.species[bug];
+            this.pc[c - 1] = 0;
+        }
+    }
+
+    @Override
+    public void skip(int bug) {
+    }
+
+}
@@ -0,0 +1,243 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import components.idnametable.IdNameTable;
+import components.idnametable.IdNameTableSecondary;
+
+/**
+ * {@code IdNameTable} represented as an array of names indexed by id, for
+ * dense non-negative ids, plus hash maps, with implementations of primary
+ * methods. {@code name}, {@code id}, {@code hasId} and {@code hasName} take
+ * constant time.
+ *
+ * @convention <pre>
+ * [$this.byName maps each name to its id] and
+ * [$this.byId holds the name of each id in [0, |$this.byId|), or null] and
+ * [$this.others holds the names of the other ids, if it is not null] and
+ * [the ids and names are unique]
+ * </pre>
+ * @correspondence this = [the pairs (id, name) of $this.byName]
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public class IdNameTable2 extends IdNameTableSecondary {
+
+    /*
+     * Private members --------------------------------------------------------
+     */
+
+    /**
+     * Initial length of {@code byId}.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The name of each id in [0, |byId|), or null.
+     */
+    private String[] byId;
+
+    /**
+     * The names of the ids outside [0, |byId|), or null if there are none.
+     */
+    private HashMap<Integer, String> others;
+
+    /**
+     * The id of each name.
+     */
+    private HashMap<String, Integer> byName;
+
+    /**
+     * Creator of initial representation.
+     */
+    private void createNewRep() {
+        this.byId = new String[INITIAL_CAPACITY];
+        this.others = null;
+        this.byName = new HashMap<>();
+    }
+
+    /**
+     * Reports whether {@code id} is stored in {@code byId}.
+     *
+     * @param id
+     *            the id
+     * @return true iff 0 <= id < |byId|
+     */
+    private boolean isDense(int id) {
+        return 0 <= id && id < this.byId.length;
+    }
+
+    /*
+     * Constructors -----------------------------------------------------------
+     */
+
+    /**
+     * No-argument constructor.
+     */
+    public IdNameTable2() {
+        this.createNewRep();
+    }
+
+    /*
+     * Standard methods -------------------------------------------------------
+     */
+
+    @Override
+    public final IdNameTable newInstance() {
+        try {
+            return this.getClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new AssertionError(
+                    "Cannot construct object of type " + this.getClass());
+        }
+    }
+
+    @Override
+    public final void clear() {
+        this.createNewRep();
+    }
+
+    @Override
+    public final void transferFrom(IdNameTable source) {
+        assert source != null : "Violation of: source is not null";
+        assert source != this : "Violation of: source is not this";
+        assert source instanceof IdNameTable2 : ""
+                + "Violation of: source is of dynamic type IdNameTable2";
+        /*
+         * This cast cannot fail since the assert above would have stopped
+         * execution in that case: source must be of dynamic type IdNameTable2.
+         */
+        IdNameTable2 localSource = (IdNameTable2) source;
+        this.byId = localSource.byId;
+        this.others = localSource.others;
+        this.byName = localSource.byName;
+        localSource.createNewRep();
+    }
+
+    /*
+     * Kernel methods ---------------------------------------------------------
+     */
+
+    @Override
+    public final void add(int id, String name) {
+        assert name != null : "Violation of: name is not null";
+        assert !this.hasId(id) : "Violation of: id is not in ID_DOMAIN(this)";
+        assert !this.hasName(name) : ""
+                + "Violation of: name is not in NAME_DOMAIN(this)";
+
+        if (0 <= id && id >= this.byId.length
+                && id < 2 * (this.byName.size() + INITIAL_CAPACITY)) {
+            /*
+             * The ids are dense enough to keep them all in the array.
+             */
+            String[] a = new String[Math.max(2 * this.byId.length, id + 1)];
+            System.arraycopy(this.byId, 0, a, 0, this.byId.length);
+            this.byId = a;
+        }
+        if (this.isDense(id)) {
+            this.byId[id] = name;
+        } else {
+            if (this.others == null) {
+                this.others = new HashMap<>();
+            }
+            this.others.put(id, name);
+        }
+        this.byName.put(name, id);
+    }
+
+    @Override
+    public final String removeId(int id) {
+        assert this.hasId(id) : "Violation of: id is in ID_DOMAIN(this)";
+
+        String name;
+        if (this.isDense(id)) {
+            name = this.byId[id];
+            this.byId[id] = null;
+        } else {
+            name = this.others.remove(id);
+        }
+        this.byName.remove(name);
+        return name;
+    }
+
+    @Override
+    public final int removeName(String name) {
+        assert name != null : "Violation of: name is not null";
+        assert this.hasName(name) : ""
+                + "Violation of: name is in NAME_DOMAIN(this)";
+
+        int id = this.byName.remove(name);
+        if (this.isDense(id)) {
+            this.byId[id] = null;
+        } else {
+            this.others.remove(id);
+        }
+        return id;
+    }
+
+    @Override
+    public final String name(int id) {
+        assert this.hasId(id) : "Violation of: id is in ID_DOMAIN(this)";
+
+        String name;
+        if (this.isDense(id)) {
+            name = this.byId[id];
+        } else {
+            name = this.others.get(id);
+        }
+        return name;
+    }
+
+    @Override
+    public final int id(String name) {
+        assert name != null : "Violation of: name is not null";
+        assert this.hasName(name) : ""
+                + "Violation of: name is in NAME_DOMAIN(this)";
+
+        return this.byName.get(name);
+    }
+
+    @Override
+    public final boolean hasId(int id) {
+        boolean result;
+        if (this.isDense(id)) {
+            result = this.byId[id] != null;
+        } else {
+            result = this.others != null && this.others.containsKey(id);
+        }
+        return result;
+    }
+
+    @Override
+    public final boolean hasName(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        return this.byName.containsKey(name);
+    }
+
+    @Override
+    public final int size() {
+        return this.byName.size();
+    }
+
+    @Override
+    public final Iterator<Integer> iterator() {
+        return this.idIterator();
+    }
+
+    @Override
+    public final Iterator<Integer> idIterator() {
+        List<Integer> ids = new ArrayList<>(this.byName.values());
+        return Collections.unmodifiableList(ids).iterator();
+    }
+
+    @Override
+    public final Iterator<String> nameIterator() {
+        List<String> names = new ArrayList<>(this.byName.keySet());
+        return Collections.unmodifiableList(names).iterator();
+    }
+
+}
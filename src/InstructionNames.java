@@ -0,0 +1,312 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide table of interned BL instruction names with small integer ids.
+ * Each name is interned as a canonical {@code Name}, which carries its id,
+ * and the primitive instructions have the fixed ids {@code MOVE} to
+ * {@code SKIP}. The CALL labels of {@code Statement2} and
+ * {@code FrozenStatement} hold the {@code Name} of their instruction, so
+ * comparing two instruction names is comparing two references or two ints and
+ * each distinct name is held once, however many times it is called.
+ *
+ * <p>
+ * The table holds names weakly: a name that no statement or program refers to
+ * any longer is reclaimed by the garbage collector, and its id is given to a
+ * name interned later. The table thus grows with the number of distinct
+ * instruction names in use, not with the number seen by the process, so a
+ * server compiling programs from untrusted clients does not accumulate their
+ * names. An id is meaningful only while its {@code Name} is reachable; those
+ * of the primitive instructions always are. All methods are thread-safe;
+ * {@code name} takes no lock.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class InstructionNames {
+
+    /**
+     * An interned instruction name. There is at most one {@code Name} for
+     * each string at any time, so names can be compared with {@code ==}.
+     */
+    public static final class Name {
+
+        /**
+         * The id.
+         */
+        private final int id;
+
+        /**
+         * The name.
+         */
+        private final String name;
+
+        /**
+         * Constructor.
+         *
+         * @param id
+         *            the id
+         * @param name
+         *            the name
+         */
+        private Name(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        /**
+         * Reports the id of {@code this}, unique among the reachable names.
+         *
+         * @return the id
+         */
+        public int id() {
+            return this.id;
+        }
+
+        @Override
+        public String toString() {
+            return this.name;
+        }
+
+    }
+
+    /**
+     * Weak reference from the table to a name, which remembers the id to free
+     * once the name has been reclaimed.
+     */
+    private static final class Ref extends WeakReference<Name> {
+
+        /**
+         * The id of the name.
+         */
+        private final int id;
+
+        /**
+         * The name.
+         */
+        private final String key;
+
+        /**
+         * Constructor.
+         *
+         * @param n
+         *            the name
+         */
+        private Ref(Name n) {
+            super(n, RECLAIMED);
+            this.id = n.id;
+            this.key = n.name;
+        }
+
+    }
+
+    /**
+     * Id of the primitive instruction move.
+     */
+    public static final int MOVE = 0;
+
+    /**
+     * Id of the primitive instruction turnleft.
+     */
+    public static final int TURNLEFT = 1;
+
+    /**
+     * Id of the primitive instruction turnright.
+     */
+    public static final int TURNRIGHT = 2;
+
+    /**
+     * Id of the primitive instruction infect.
+     */
+    public static final int INFECT = 3;
+
+    /**
+     * Id of the primitive instruction skip.
+     */
+    public static final int SKIP = 4;
+
+    /**
+     * The reference to each name in use.
+     */
+    private static final ConcurrentHashMap<String, Ref> REFS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The references whose names have been reclaimed.
+     */
+    private static final ReferenceQueue<Name> RECLAIMED =
+            new ReferenceQueue<>();
+
+    /**
+     * The reference to the name of each id, or null for a free id; replaced
+     * by a longer copy when full. Each entry is written before it is put in
+     * {@code REFS}.
+     */
+    private static volatile Ref[] names = new Ref[64];
+
+    /**
+     * The ids freed by reclaimed names, {@code freeCount} of them; guarded by
+     * the class lock.
+     */
+    private static int[] free = new int[16];
+
+    /**
+     * The number of ids in {@code free}; guarded by the class lock.
+     */
+    private static int freeCount = 0;
+
+    /**
+     * The number of ids given so far, free or not; guarded by the class lock.
+     */
+    private static int count = 0;
+
+    /**
+     * The names of the primitive instructions, by id, which are never
+     * reclaimed.
+     */
+    private static final Name[] PRIMITIVES = { intern("move"),
+        intern("turnleft"), intern("turnright"), intern("infect"),
+        intern("skip") };
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private InstructionNames() {
+    }
+
+    /**
+     * Returns the {@code Name} of {@code name}, interning it with a free id if
+     * it is not in use.
+     *
+     * @param name
+     *            the instruction name
+     * @return the interned name
+     * @ensures intern.toString() = name
+     */
+    public static Name intern(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        Ref r = REFS.get(name);
+        Name result = null;
+        if (r != null) {
+            result = r.get();
+        }
+        if (result == null) {
+            result = add(name);
+        }
+        return result;
+    }
+
+    /**
+     * Interns {@code name} with a free id, unless another thread has just
+     * done it, and returns its {@code Name}.
+     *
+     * @param name
+     *            the instruction name
+     * @return the interned name
+     */
+    private static synchronized Name add(String name) {
+        Ref r = REFS.get(name);
+        Name result = null;
+        if (r != null) {
+            result = r.get();
+        }
+        if (result == null) {
+            expunge();
+            int id;
+            if (freeCount > 0) {
+                freeCount--;
+                id = free[freeCount];
+            } else {
+                id = count;
+                if (count == names.length) {
+                    names = Arrays.copyOf(names, 2 * count);
+                }
+                count++;
+            }
+            result = new Name(id, name);
+            r = new Ref(result);
+            names[id] = r;
+            REFS.put(name, r);
+        }
+        return result;
+    }
+
+    /**
+     * Frees the ids of the names that have been reclaimed; the caller holds
+     * the class lock.
+     */
+    private static void expunge() {
+        Ref r = (Ref) RECLAIMED.poll();
+        while (r != null) {
+            /*
+             * The name may have been interned again since, with a new Ref
+             */
+            REFS.remove(r.key, r);
+            names[r.id] = null;
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, 2 * freeCount);
+            }
+            free[freeCount] = r.id;
+            freeCount++;
+            r = (Ref) RECLAIMED.poll();
+        }
+    }
+
+    /**
+     * Returns the id of {@code name}, interning it with a free id if it is not
+     * in use. The id stays that of name only while its {@code Name} is
+     * reachable; hold {@code intern(name)} to keep it.
+     *
+     * @param name
+     *            the instruction name
+     * @return the id of name
+     */
+    public static int id(String name) {
+        return intern(name).id();
+    }
+
+    /**
+     * Returns the name with id {@code id}.
+     *
+     * @param id
+     *            the id
+     * @return the name
+     * @requires [id is the id of a reachable Name]
+     */
+    public static String name(int id) {
+        Ref r = names[id];
+        Name n = null;
+        if (r != null) {
+            n = r.get();
+        }
+        assert n != null : "Violation of: [id is the id of a reachable Name]";
+
+        return n.toString();
+    }
+
+    /**
+     * Reports whether {@code id} is the id of a primitive instruction.
+     *
+     * @param id
+     *            the id
+     * @return true iff id is one of MOVE, TURNLEFT, TURNRIGHT, INFECT, SKIP
+     */
+    public static boolean isPrimitive(int id) {
+        return MOVE <= id && id < PRIMITIVES.length;
+    }
+
+    /**
+     * Reports the number of names in use, i.e., not yet known to have been
+     * reclaimed.
+     *
+     * @return the number of names in use
+     */
+    public static synchronized int size() {
+        expunge();
+        return count - freeCount;
+    }
+
+}
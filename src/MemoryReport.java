@@ -0,0 +1,675 @@
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import components.program.Program;
+import components.program.Program1;
+import components.queue.Queue;
+import components.sequence.Sequence;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.statement.Statement1;
+import components.statement.StatementKernel.Kind;
+import components.tree.Tree;
+
+/**
+ * Retained heap size of a program or statement representation: the bytes of
+ * the objects reachable from it, less those also reachable from static fields
+ * (shared empty bodies, enum constants, interned instruction names, ...),
+ * broken down by part of the representation and by kind of statement. The
+ * objects are found by reflection, and their sizes computed for the layout of
+ * a 64-bit HotSpot JVM with compressed class pointers: 12-byte object
+ * headers, 16-byte array headers, 8-byte alignment, and 4-byte references
+ * when the heap is under 32 GB.
+ *
+ * <p>
+ * The internals of the JDK's own classes (e.g., the list of a
+ * {@code Sequence1L} and the hash map of a {@code Map1L}) can only be read
+ * when {@code java.base} opens them, i.e., when run with
+ * {@code --add-opens java.base/java.lang=ALL-UNNAMED --add-opens
+ * java.base/java.util=ALL-UNNAMED}; otherwise their sizes are estimated from
+ * the number of elements, assuming no spare capacity, and the elements are
+ * reached through their public methods.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class MemoryReport {
+
+    /**
+     * Part of a representation.
+     */
+    public enum Part {
+        /**
+         * Statement objects and tree nodes.
+         */
+        NODES,
+        /**
+         * Statement labels: the kind, condition and instruction of a node.
+         */
+        LABELS,
+        /**
+         * Sequences of children, with their lists and arrays.
+         */
+        SEQUENCES,
+        /**
+         * Strings, with their arrays.
+         */
+        STRINGS,
+        /**
+         * Context maps, with their tables and entries, but not the names and
+         * bodies of the instructions.
+         */
+        CONTEXT,
+        /**
+         * Everything else: program objects, compiled code, caches, ...
+         */
+        OTHER
+    }
+
+    /**
+     * Layout of the instances of a class.
+     */
+    private static final class Layout {
+
+        /**
+         * Size of an instance, in bytes.
+         */
+        private final long size;
+
+        /**
+         * The reference fields that can be read, in all superclasses too.
+         */
+        private final Field[] references;
+
+        /**
+         * Whether some reference field cannot be read.
+         */
+        private final boolean opaque;
+
+        /**
+         * The field holding the kind of a statement label, or null if the
+         * class is not a label.
+         */
+        private final Field kind;
+
+        /**
+         * Constructor.
+         *
+         * @param c
+         *            the class
+         */
+        private Layout(Class<?> c) {
+            long bytes = HEADER;
+            List<Field> fields = new ArrayList<>();
+            boolean unreadable = false;
+            Field kindField = null;
+            for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+                for (Field f : k.getDeclaredFields()) {
+                    if (!Modifier.isStatic(f.getModifiers())) {
+                        bytes += fieldSize(f.getType());
+                        if (!f.getType().isPrimitive()) {
+                            if (f.trySetAccessible()) {
+                                fields.add(f);
+                                if (f.getType() == Kind.class) {
+                                    kindField = f;
+                                }
+                            } else {
+                                unreadable = true;
+                            }
+                        }
+                    }
+                }
+            }
+            this.size = align(bytes);
+            this.references = fields.toArray(new Field[0]);
+            this.opaque = unreadable;
+            this.kind = kindField;
+        }
+
+    }
+
+    /**
+     * Whether references are compressed to 4 bytes.
+     */
+    private static final boolean COMPRESSED = Runtime.getRuntime()
+            .maxMemory() < (32L << 30);
+
+    /**
+     * Size of a reference, in bytes.
+     */
+    private static final int REFERENCE = COMPRESSED ? 4 : 8;
+
+    /**
+     * Size of an object header, in bytes.
+     */
+    private static final int HEADER = 12;
+
+    /**
+     * Size of an array header, with its length, in bytes.
+     */
+    private static final int ARRAY_HEADER = 16;
+
+    /**
+     * The layout of each class seen so far.
+     */
+    private static final ConcurrentHashMap<Class<?>, Layout> LAYOUTS =
+            new ConcurrentHashMap<>();
+
+    /**
+     * The kinds of statements.
+     */
+    private static final Kind[] KINDS = Kind.values();
+
+    /**
+     * The bytes of each part.
+     */
+    private final long[] partBytes = new long[Part.values().length];
+
+    /**
+     * The bytes of the statements of each kind, with their labels, children
+     * sequences and strings, but not their children.
+     */
+    private final long[] kindBytes = new long[KINDS.length];
+
+    /**
+     * The number of statements of each kind.
+     */
+    private final int[] kindCounts = new int[KINDS.length];
+
+    /**
+     * The number of objects.
+     */
+    private int objects = 0;
+
+    /**
+     * The objects reachable from static fields, which are not retained by
+     * the root.
+     */
+    private final Set<Object> shared = Collections
+            .newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * The objects visited by the current walk.
+     */
+    private Set<Object> visited = Collections
+            .newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * The classes of the objects visited.
+     */
+    private final Set<Class<?>> classes = new LinkedHashSet<>();
+
+    /**
+     * Whether the current walk counts the objects it visits.
+     */
+    private boolean counting = false;
+
+    /**
+     * Private constructor; use {@code of}.
+     */
+    private MemoryReport() {
+    }
+
+    /**
+     * Rounds {@code bytes} up to a multiple of 8.
+     *
+     * @param bytes
+     *            the number of bytes
+     * @return the aligned number of bytes
+     */
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * Returns the size of a field or array element of type {@code type}.
+     *
+     * @param type
+     *            the type
+     * @return the number of bytes
+     */
+    private static int fieldSize(Class<?> type) {
+        int size = REFERENCE;
+        if (type == long.class || type == double.class) {
+            size = 8;
+        } else if (type == int.class || type == float.class) {
+            size = 4;
+        } else if (type == short.class || type == char.class) {
+            size = 2;
+        } else if (type == byte.class || type == boolean.class) {
+            size = 1;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the smallest power of 2 that is at least {@code n}.
+     *
+     * @param n
+     *            the lower bound
+     * @return the power of 2
+     */
+    private static long powerOf2(long n) {
+        long p = 1;
+        while (p < n) {
+            p *= 2;
+        }
+        return p;
+    }
+
+    /**
+     * Returns the estimated size of the internal objects of {@code o}, a JDK
+     * object whose fields cannot be read: the array of a string, the array or
+     * nodes of a list, the table and entries of a hash map, ...
+     *
+     * @param o
+     *            the object
+     * @return the estimated number of bytes
+     */
+    private static long internals(Object o) {
+        long bytes = 0;
+        if (o instanceof String) {
+            String s = (String) o;
+            int width = 1;
+            for (int i = 0; i < s.length() && width == 1; i++) {
+                if (s.charAt(i) > 0xFF) {
+                    width = 2;
+                }
+            }
+            bytes = align(ARRAY_HEADER + (long) width * s.length());
+        } else if (o instanceof HashMap<?, ?> || o instanceof HashSet<?>) {
+            int n = ((o instanceof HashMap<?, ?>) ? ((HashMap<?, ?>) o).size()
+                    : ((HashSet<?>) o).size());
+            long entry = align(HEADER + 4 + 3 * REFERENCE);
+            if (o instanceof LinkedHashMap<?, ?>
+                    || o instanceof LinkedHashSet<?>) {
+                entry = align(HEADER + 4 + 5 * REFERENCE);
+            }
+            if (n > 0) {
+                long table = powerOf2(Math.max(16, (long) Math.ceil(n / 0.75)));
+                bytes = align(ARRAY_HEADER + table * REFERENCE) + n * entry;
+            }
+            if (o instanceof HashSet<?>) {
+                bytes += LAYOUTS.computeIfAbsent(HashMap.class,
+                        Layout::new).size;
+            }
+        } else if (o instanceof LinkedList<?>) {
+            bytes = ((LinkedList<?>) o).size()
+                    * align(HEADER + 3 * REFERENCE);
+        } else if (o instanceof ArrayDeque<?>) {
+            bytes = align(ARRAY_HEADER + powerOf2(((ArrayDeque<?>) o).size()
+                    + 1) * REFERENCE);
+        } else if (o instanceof Collection<?>) {
+            bytes = align(ARRAY_HEADER
+                    + (long) ((Collection<?>) o).size() * REFERENCE);
+        } else if (o instanceof java.util.Map<?, ?>) {
+            bytes = ((java.util.Map<?, ?>) o).size()
+                    * align(HEADER + 4 + 3 * REFERENCE);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the kind of the statement label {@code o}, or null if it is not
+     * one.
+     *
+     * @param o
+     *            the object, or null
+     * @return the kind of o
+     */
+    private static Kind labelKind(Object o) {
+        Kind kind = null;
+        if (o != null && !o.getClass().isArray()) {
+            Layout l = LAYOUTS.computeIfAbsent(o.getClass(), Layout::new);
+            if (l.kind != null) {
+                try {
+                    kind = (Kind) l.kind.get(o);
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return kind;
+    }
+
+    /**
+     * Returns the value of field {@code f} of {@code o}.
+     *
+     * @param f
+     *            the field
+     * @param o
+     *            the object
+     * @return the value
+     */
+    private static Object get(Field f, Object o) {
+        try {
+            return f.get(o);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the part {@code o} belongs to, given that the object that
+     * reached it belongs to {@code inherited}.
+     *
+     * @param o
+     *            the object
+     * @param l
+     *            the layout of o, or null if o is an array
+     * @param inherited
+     *            the part of the object that reached o
+     * @return the part of o
+     */
+    private static Part partOf(Object o, Layout l, Part inherited) {
+        Part part = inherited;
+        if (l != null && l.kind != null) {
+            part = Part.LABELS;
+        } else if (o instanceof Tree<?> || o instanceof Statement) {
+            part = Part.NODES;
+        } else if (o instanceof Sequence<?>) {
+            part = Part.SEQUENCES;
+        } else if (o instanceof components.map.Map<?, ?>) {
+            part = Part.CONTEXT;
+        } else if (o instanceof String) {
+            part = Part.STRINGS;
+        } else if (o instanceof Program) {
+            part = Part.OTHER;
+        }
+        return part;
+    }
+
+    /**
+     * Visits the objects reachable from {@code root} that are not shared,
+     * counting them if {@code counting}, and recording their classes.
+     *
+     * @param root
+     *            the first object
+     */
+    private void walk(Object root) {
+        Deque<Object> objectStack = new ArrayDeque<>();
+        Deque<Part> partStack = new ArrayDeque<>();
+        Deque<Integer> kindStack = new ArrayDeque<>();
+        objectStack.push(root);
+        partStack.push(Part.OTHER);
+        kindStack.push(-1);
+        while (!objectStack.isEmpty()) {
+            Object o = objectStack.pop();
+            Part inherited = partStack.pop();
+            int kind = kindStack.pop();
+            if (o instanceof Enum<?> || o instanceof Class<?>
+                    || this.shared.contains(o) || !this.visited.add(o)) {
+                continue;
+            }
+            Class<?> c = o.getClass();
+            this.classes.add(c);
+            List<Object> children = new ArrayList<>();
+            long bytes;
+            Layout l = null;
+            if (c.isArray()) {
+                int n = Array.getLength(o);
+                bytes = align(ARRAY_HEADER
+                        + (long) n * fieldSize(c.getComponentType()));
+                if (!c.getComponentType().isPrimitive()) {
+                    Collections.addAll(children, (Object[]) o);
+                }
+            } else {
+                l = LAYOUTS.computeIfAbsent(c, Layout::new);
+                bytes = l.size;
+                for (Field f : l.references) {
+                    children.add(get(f, o));
+                }
+                if (l.opaque) {
+                    bytes += internals(o);
+                    if (o instanceof Collection<?>) {
+                        children.addAll((Collection<?>) o);
+                    } else if (o instanceof java.util.Map<?, ?>) {
+                        children.addAll(((java.util.Map<?, ?>) o).keySet());
+                        children.addAll(((java.util.Map<?, ?>) o).values());
+                    }
+                }
+            }
+            Part part = partOf(o, l, inherited);
+            Kind own = labelKind(o);
+            for (int i = 0; i < children.size() && own == null; i++) {
+                if (!(o instanceof Statement)) {
+                    own = labelKind(children.get(i));
+                }
+            }
+            if (own != null) {
+                kind = own.ordinal();
+            } else if (o instanceof Statement) {
+                kind = -1;
+            }
+            if (this.counting) {
+                this.objects++;
+                this.partBytes[part.ordinal()] += bytes;
+                if (kind >= 0) {
+                    this.kindBytes[kind] += bytes;
+                    if (l != null && l.kind != null) {
+                        this.kindCounts[kind]++;
+                    }
+                }
+            }
+            for (Object child : children) {
+                if (child != null) {
+                    objectStack.push(child);
+                    partStack.push(part);
+                    kindStack.push(kind);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the retained size of {@code root} and its breakdown.
+     *
+     * @param root
+     *            the program, statement, or other object
+     * @return the report
+     */
+    public static MemoryReport of(Object root) {
+        assert root != null : "Violation of: root is not null";
+
+        MemoryReport r = new MemoryReport();
+        r.walk(root);
+        /*
+         * The objects reachable from the static fields of the classes seen,
+         * and of the classes of those objects, in turn
+         */
+        Set<Class<?>> done = new HashSet<>();
+        List<Class<?>> pending = new ArrayList<>(r.classes);
+        r.visited = r.shared;
+        while (!pending.isEmpty()) {
+            for (Class<?> c : pending) {
+                done.add(c);
+                for (Field f : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(f.getModifiers())
+                            && !f.getType().isPrimitive()
+                            && f.trySetAccessible()) {
+                        Object value = get(f, null);
+                        if (value != null) {
+                            r.walk(value);
+                        }
+                    }
+                }
+            }
+            pending = new ArrayList<>(r.classes);
+            pending.removeAll(done);
+        }
+        r.visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        r.counting = true;
+        r.walk(root);
+        return r;
+    }
+
+    /**
+     * Reports the retained size.
+     *
+     * @return the number of bytes
+     */
+    public long size() {
+        long total = 0;
+        for (long bytes : this.partBytes) {
+            total += bytes;
+        }
+        return total;
+    }
+
+    /**
+     * Reports the retained size of part {@code p}.
+     *
+     * @param p
+     *            the part
+     * @return the number of bytes
+     */
+    public long size(Part p) {
+        return this.partBytes[p.ordinal()];
+    }
+
+    /**
+     * Reports the retained size of the statements of kind {@code k}: their
+     * nodes, labels, children sequences and strings, but not their children.
+     *
+     * @param k
+     *            the kind
+     * @return the number of bytes
+     */
+    public long size(Kind k) {
+        return this.kindBytes[k.ordinal()];
+    }
+
+    /**
+     * Reports the number of statements of kind {@code k}.
+     *
+     * @param k
+     *            the kind
+     * @return the number of statements
+     */
+    public int statements(Kind k) {
+        return this.kindCounts[k.ordinal()];
+    }
+
+    /**
+     * Reports the number of statements.
+     *
+     * @return the number of statements
+     */
+    public int statements() {
+        int total = 0;
+        for (int n : this.kindCounts) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Reports the number of objects retained.
+     *
+     * @return the number of objects
+     */
+    public int objects() {
+        return this.objects;
+    }
+
+    /**
+     * Prints the report, titled {@code title}, for a representation of
+     * {@code sourceBytes} bytes of source.
+     *
+     * @param out
+     *            the output stream
+     * @param title
+     *            the title
+     * @param sourceBytes
+     *            the size of the source, in bytes
+     * @updates out.content
+     * @requires out.is_open and sourceBytes > 0
+     */
+    public void print(SimpleWriter out, String title, int sourceBytes) {
+        assert out != null : "Violation of: out is not null";
+        assert out.isOpen() : "Violation of: out.is_open";
+        assert sourceBytes > 0 : "Violation of: sourceBytes > 0";
+
+        long total = this.size();
+        int n = Math.max(1, this.statements());
+        out.println(String.format(
+                "%s: %d bytes in %d objects, %.1f bytes/statement,"
+                        + " %.2f bytes/source byte",
+                title, total, this.objects, (double) total / n,
+                (double) total / sourceBytes));
+        String format = "  %-10s %10d %6.1f%%";
+        for (Part p : Part.values()) {
+            out.println(String.format(format, p, this.size(p),
+                    100.0 * this.size(p) / total));
+        }
+        for (Kind k : KINDS) {
+            if (this.statements(k) > 0) {
+                out.println(String.format(format + " %7d x %6.1f", k,
+                        this.size(k), 100.0 * this.size(k) / total,
+                        this.statements(k),
+                        (double) this.size(k) / this.statements(k)));
+            }
+        }
+    }
+
+    /**
+     * Main method: prints the retained size of the program in each file named
+     * by {@code args} under the library kernel, under {@code Program2}, and
+     * frozen, and of its body under {@code Statement1} and
+     * {@code Statement2}.
+     *
+     * @param args
+     *            the names of BL files
+     * @throws IOException
+     *             if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        SimpleWriter out = new SimpleWriter1L();
+        for (String file : args) {
+            byte[] bytes = Files.readAllBytes(Paths.get(file));
+            String source = new String(bytes, StandardCharsets.UTF_8);
+            out.println(file + " (" + bytes.length + " bytes)");
+            Program p1 = new Program1();
+            p1.parse(SourceTokenizer.tokens(source));
+            of(p1).print(out, "Program1", bytes.length);
+            Program p2 = new Program2();
+            p2.parse(SourceTokenizer.tokens(source));
+            of(p2).print(out, "Program2", bytes.length);
+            of(FrozenProgram.copyOf(p2)).print(out, "FrozenProgram",
+                    bytes.length);
+            Statement b1 = p1.newBody();
+            p1.swapBody(b1);
+            of(b1).print(out, "Statement1 body", bytes.length);
+            Queue<String> tokens = SourceTokenizer.tokens(source);
+            while (!tokens.dequeue().equals("BEGIN")) {
+                continue;
+            }
+            Statement b2 = new Statement2();
+            b2.parseBlock(tokens);
+            of(b2).print(out, "Statement2 body", bytes.length);
+            out.println();
+        }
+        out.close();
+    }
+
+}
@@ -5,6 +5,7 @@ import components.program.ProgramSecondary;
 import components.statement.Statement;
 import components.statement.Statement1;
 import components.statement.StatementKernel.Kind;
+import components.utilities.Reporter;
 import components.utilities.Tokenizer;
 
 /**
@@ -24,6 +25,78 @@ public class Program2 extends ProgramSecondary {
      * Private members --------------------------------------------------------
      */
 
+    /**
+     * A cost cached with the statement it was computed from, so that it can be
+     * kept as long as the statement is unchanged.
+     */
+    private static final class CachedCost {
+
+        /**
+         * Snapshot of the statement analyzed.
+         */
+        private final FrozenStatement statement;
+
+        /**
+         * The cost of the statement.
+         */
+        private final StatementCost cost;
+
+        /**
+         * The cost of each user instruction called by the statement, as used
+         * to compute its cost.
+         */
+        private final Map<String, StatementCost> callees;
+
+        /**
+         * The version of the context, or of the body, holding the statement
+         * when the statement was last found unchanged.
+         */
+        private long seen;
+
+        /**
+         * The version of the context when the costs of the callees were last
+         * found unchanged.
+         */
+        private long checked;
+
+        /**
+         * Constructor.
+         *
+         * @param statement
+         *            snapshot of the statement analyzed
+         * @param cost
+         *            the cost of the statement
+         * @param callees
+         *            the cost of each user instruction called by the statement
+         * @param seen
+         *            the version of the context or body holding the statement
+         * @param checked
+         *            the version of the context
+         */
+        private CachedCost(FrozenStatement statement, StatementCost cost,
+                Map<String, StatementCost> callees, long seen, long checked) {
+            this.statement = statement;
+            this.cost = cost;
+            this.callees = callees;
+            this.seen = seen;
+            this.checked = checked;
+        }
+
+    }
+
+    /**
+     * Shared context of a newly created program. It is never modified: it is
+     * replaced by a private context the first time {@code swapContext} is
+     * called.
+     */
+    private static final Map<String, Statement> EMPTY_CONTEXT = new Map1L<>();
+
+    /**
+     * Shared body of a newly created program. It is never modified: it is
+     * replaced by a private body the first time {@code swapBody} is called.
+     */
+    private static final Statement EMPTY_BODY = new Statement1();
+
     /**
      * The program name.
      */
@@ -39,6 +112,42 @@ public class Program2 extends ProgramSecondary {
      */
     private Statement body;
 
+    /**
+     * An empty context of the same type as the one last swapped in, kept to
+     * receive the context swapped in next, or null if there is none.
+     */
+    private Map<String, Statement> spareContext;
+
+    /**
+     * An empty body of the same type as the one last swapped in, kept to
+     * receive the body swapped in next, or null if there is none.
+     */
+    private Statement spareBody;
+
+    /**
+     * The cached costs of the instructions of the context, by name, or null
+     * if there are none; they may be stale, see {@code refresh}.
+     */
+    private Map<String, CachedCost> instructionCosts;
+
+    /**
+     * The cached cost of the body, or null if there is none; it may be
+     * stale, see {@code refresh}.
+     */
+    private CachedCost bodyCost;
+
+    /**
+     * The number of times the context was swapped; a cached cost of an
+     * instruction is known to be current only at the version it was seen at.
+     */
+    private long contextVersion;
+
+    /**
+     * The number of times the body was swapped; the cached cost of the body
+     * is known to be current only at the version it was seen at.
+     */
+    private long bodyVersion;
+
     /**
      * Reports whether all the names of instructions in {@code c} are valid
      * IDENTIFIERs.
@@ -107,8 +216,10 @@ public class Program2 extends ProgramSecondary {
     private void createNewRep() {
 
         this.name = "Unnamed";
-        this.context = new Map1L<String, Statement>();
-        this.body = new Statement1();
+        this.context = EMPTY_CONTEXT;
+        this.body = EMPTY_BODY;
+        this.instructionCosts = null;
+        this.bodyCost = null;
 
     }
 
@@ -156,6 +267,10 @@ public class Program2 extends ProgramSecondary {
         this.name = localSource.name;
         this.context = localSource.context;
         this.body = localSource.body;
+        this.instructionCosts = localSource.instructionCosts;
+        this.bodyCost = localSource.bodyCost;
+        this.contextVersion = localSource.contextVersion;
+        this.bodyVersion = localSource.bodyVersion;
         localSource.createNewRep();
     }
 
@@ -197,10 +312,22 @@ public class Program2 extends ProgramSecondary {
         assert allBlocks(c) : "Violation of: bodies in c"
                 + " are all BLOCK statements";
 
-        Map<String, Statement> toSwap = c.newInstance();
+        Map<String, Statement> toSwap = this.spareContext;
+        if (toSwap == null) {
+            toSwap = c.newInstance();
+        }
         toSwap.transferFrom(c);
-        c.transferFrom(this.context);
-        this.context.transferFrom(toSwap);
+        this.spareContext = null;
+        if (this.context != EMPTY_CONTEXT) {
+            c.transferFrom(this.context);
+            /*
+             * The old context is now empty and private, so it can receive the
+             * next context swapped in
+             */
+            this.spareContext = this.context;
+        }
+        this.context = toSwap;
+        this.contextVersion++;
 
     }
 
@@ -216,11 +343,312 @@ public class Program2 extends ProgramSecondary {
         assert b instanceof Statement1 : "Violation of: b is a Statement1";
         assert b.kind() == Kind.BLOCK : "Violation of: b is a BLOCK statement";
 
-        Statement toSwap = b.newInstance();
+        Statement toSwap = this.spareBody;
+        if (toSwap == null) {
+            toSwap = b.newInstance();
+        }
         toSwap.transferFrom(b);
-        b.transferFrom(this.body);
-        this.body.transferFrom(toSwap);
+        this.spareBody = null;
+        if (this.body != EMPTY_BODY) {
+            b.transferFrom(this.body);
+            /*
+             * The old body is now empty and private, so it can receive the next
+             * body swapped in
+             */
+            this.spareBody = this.body;
+        }
+        this.body = toSwap;
+        this.bodyVersion++;
+
+    }
+
+    /*
+     * Other methods ----------------------------------------------------------
+     */
 
+    /**
+     * Returns an immutable snapshot of {@code this}, including its compiled
+     * code. The snapshot can be shared by any number of threads; {@code this}
+     * itself must not be used by another thread during the call.
+     *
+     * @return the snapshot of this
+     * @ensures freeze = this
+     */
+    public final FrozenProgram freeze() {
+        return FrozenProgram.copyOf(this);
+    }
+
+    /**
+     * Simplifies the body of {@code this} and the bodies of its instructions
+     * in place, without changing the primitive instructions the program
+     * performs; see {@code Statement2.simplify}. Calls to {@code skip} are
+     * never removed from instruction bodies, which may be called from a
+     * loop.
+     *
+     * @param dropSkips
+     *            whether calls to skip outside of WHILE bodies are removed
+     *            from the body of this
+     * @updates this
+     * @ensures <pre>
+     * this.name = #this.name and
+     * [this.context and this.body are #this.context and #this.body
+     *  simplified]
+     * </pre>
+     */
+    public final void simplify(boolean dropSkips) {
+        Map<String, Statement> c = this.newContext();
+        this.swapContext(c);
+        Map<String, Statement> simplified = c.newInstance();
+        while (c.size() > 0) {
+            Map.Pair<String, Statement> instruction = c.removeAny();
+            Statement2.simplify(instruction.value(), false);
+            simplified.add(instruction.key(), instruction.value());
+        }
+        this.swapContext(simplified);
+        Statement b = this.newBody();
+        this.swapBody(b);
+        Statement2.simplify(b, dropSkips);
+        this.swapBody(b);
+    }
+
+    /**
+     * Parses an instruction definition from {@code tokens} into {@code body}
+     * and returns its name.
+     *
+     * @param tokens
+     *            the tokens, starting with INSTRUCTION
+     * @param body
+     *            the body of the instruction
+     * @return the instruction name
+     * @replaces body
+     * @updates tokens
+     * @throws RuntimeException
+     *             if the tokens do not start with a valid instruction
+     */
+    private static String parseInstruction(TokenArray tokens,
+            Statement body) {
+        tokens.advance();
+        String name = tokens.expectIdentifier();
+        if (name.equals("move") || name.equals("turnleft")
+                || name.equals("turnright") || name.equals("infect")
+                || name.equals("skip")) {
+            Reporter.fatalErrorToConsole("Error: New instruction name must "
+                    + "not be name of primitive instruction \"" + name
+                    + "\"");
+        }
+        tokens.expect(ByteScanner.IS);
+        Statement2.parseBlock(body, tokens);
+        tokens.expect(ByteScanner.END);
+        String endName = tokens.expectIdentifier();
+        if (!endName.equals(name)) {
+            Reporter.fatalErrorToConsole("Error: IDENTIFIER \"" + endName
+                    + "\" at end of instruction \"" + name
+                    + "\" must match instruction name");
+        }
+        return name;
+    }
+
+    /**
+     * Parses a program from the integer-coded {@code tokens}, as
+     * {@code parse(Queue<String>)} does, with the same error messages, but
+     * dispatching on token codes instead of comparing strings.
+     *
+     * @param tokens
+     *            the tokens
+     * @replaces this
+     * @updates tokens
+     * @throws RuntimeException
+     *             if the tokens are not a valid program
+     */
+    public final void parse(TokenArray tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+
+        tokens.expect(ByteScanner.PROGRAM);
+        String programName = tokens.expectIdentifier();
+        tokens.expect(ByteScanner.IS);
+        Map<String, Statement> c = this.newContext();
+        if (tokens.front() != ByteScanner.BEGIN
+                && tokens.front() != ByteScanner.INSTRUCTION) {
+            Reporter.fatalErrorToConsole("Error: Keywords \"BEGIN\" or "
+                    + "\"INSTRUCTION\" expected, found: \""
+                    + tokens.frontText() + "\"");
+        }
+        while (tokens.front() == ByteScanner.INSTRUCTION) {
+            Statement body = this.newBody();
+            String name = parseInstruction(tokens, body);
+            if (c.hasKey(name)) {
+                Reporter.fatalErrorToConsole("Error: Instruction \"" + name
+                        + "\" cannot be already defined");
+            }
+            c.add(name, body);
+        }
+        tokens.expect(ByteScanner.BEGIN);
+        Statement b = this.newBody();
+        Statement2.parseBlock(b, tokens);
+        tokens.expect(ByteScanner.END);
+        String endName = tokens.expectIdentifier();
+        if (!endName.equals(programName)) {
+            Reporter.fatalErrorToConsole("Error: IDENTIFIER \"" + endName
+                    + "\" at end of program \"" + programName
+                    + "\" must match program name");
+        }
+        if (tokens.front() != ByteScanner.END_OF_INPUT) {
+            Reporter.fatalErrorToConsole("Error: found \""
+                    + tokens.frontText() + "\" beyond end of program source");
+        }
+        this.setName(programName);
+        this.swapContext(c);
+        this.swapBody(b);
+    }
+
+    /**
+     * Returns {@code cached} if it is still the cost of {@code s}, and the cost
+     * of s computed anew otherwise. The cached cost is still that of s if s
+     * is unchanged, which is known without looking at s if the context or
+     * body holding s has not been swapped since the cost was last seen, and
+     * if the costs of the instructions s calls are unchanged.
+     *
+     * @param cached
+     *            the cached cost of s, or null
+     * @param s
+     *            the statement
+     * @param version
+     *            the version of the context or body holding s
+     * @param level
+     *            the number of instructions being analyzed that called s
+     * @return the cost of s
+     * @throws IllegalArgumentException
+     *             if the instructions of the context call each other
+     *             recursively, or an undefined instruction is called
+     */
+    private CachedCost refresh(CachedCost cached, Statement s, long version,
+            int level) {
+        CachedCost result = cached;
+        FrozenStatement snapshot = null;
+        if (result != null && result.seen != version) {
+            snapshot = FrozenStatement.copyOf(s);
+            if (snapshot.equals(result.statement)) {
+                result.seen = version;
+            } else {
+                result = null;
+            }
+        }
+        if (result != null && result.checked != this.contextVersion) {
+            boolean unchanged = true;
+            for (Map.Pair<String, StatementCost> callee : result.callees) {
+                unchanged = unchanged && this.costOf(callee.key(),
+                        level + 1) == callee.value();
+            }
+            if (unchanged) {
+                result.checked = this.contextVersion;
+            } else {
+                result = null;
+            }
+        }
+        if (result == null) {
+            if (snapshot == null) {
+                snapshot = FrozenStatement.copyOf(s);
+            }
+            Map<String, StatementCost> callees = new Map1L<>();
+            StatementCost cost = StatementCost.of(s, n -> {
+                StatementCost c = this.costOf(n, level + 1);
+                if (c != null && !callees.hasKey(n)) {
+                    callees.add(n, c);
+                }
+                return c;
+            });
+            result = new CachedCost(snapshot, cost, callees, version,
+                    this.contextVersion);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cost of the instruction named {@code instruction}, analyzing
+     * it again only if it, or an instruction it calls, has changed since it
+     * was last analyzed.
+     *
+     * @param instruction
+     *            the instruction name
+     * @param level
+     *            the number of instructions being analyzed that called this
+     *            one
+     * @return the cost of the instruction, or null if it is not defined
+     * @throws IllegalArgumentException
+     *             if the instructions of the context call each other
+     *             recursively, or call an undefined instruction
+     */
+    private StatementCost costOf(String instruction, int level) {
+        if (this.instructionCosts == null) {
+            this.instructionCosts = new Map1L<>();
+        }
+        StatementCost result = null;
+        if (this.context.hasKey(instruction)) {
+            /*
+             * Without recursion, a chain of calls cannot be longer than the
+             * number of instructions.
+             */
+            if (level > this.context.size()) {
+                throw new IllegalArgumentException(
+                        "Recursive instruction: " + instruction);
+            }
+            CachedCost cached = null;
+            if (this.instructionCosts.hasKey(instruction)) {
+                cached = this.instructionCosts.value(instruction);
+            }
+            CachedCost current = this.refresh(cached,
+                    this.context.value(instruction), this.contextVersion,
+                    level);
+            if (current != cached) {
+                if (cached != null) {
+                    this.instructionCosts.remove(instruction);
+                }
+                this.instructionCosts.add(instruction, current);
+            }
+            result = current.cost;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the static cost of the body of the instruction named
+     * {@code instruction}, without generating code. Costs are cached and kept
+     * across swaps of the context: an instruction is analyzed again only if
+     * its body, or that of an instruction it calls, has changed.
+     *
+     * @param instruction
+     *            the instruction name
+     * @return the cost of the instruction
+     * @throws IllegalArgumentException
+     *             if the instructions of the context call each other
+     *             recursively, or call an undefined instruction
+     * @requires instruction is in DOMAIN(this.context)
+     */
+    public final StatementCost instructionCost(String instruction) {
+        assert instruction != null : "Violation of: instruction is not null";
+        assert this.context.hasKey(instruction) : ""
+                + "Violation of: instruction is in DOMAIN(this.context)";
+
+        return this.costOf(instruction, 0);
+    }
+
+    /**
+     * Returns the static cost of the body of {@code this}, without generating
+     * code. The compiled code of {@code this} has {@code bodyCost().words()
+     * + 1} words, and {@code bodyCost().maxStepAsBody()} is the smallest
+     * budget with which {@code BugInterpreter.nextAction} never preempts it.
+     * The cost is cached and kept across swaps: the body is analyzed again
+     * only if it, or the body of an instruction it calls, has changed.
+     *
+     * @return the cost of the body
+     * @throws IllegalArgumentException
+     *             if the instructions of the context call each other
+     *             recursively, or an undefined instruction is called
+     */
+    public final StatementCost bodyCost() {
+        this.bodyCost = this.refresh(this.bodyCost, this.body,
+                this.bodyVersion, 0);
+        return this.bodyCost.cost;
     }
 
 }
@@ -0,0 +1,874 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import components.map.Map.Pair;
+import components.program.Program;
+import components.statement.Statement;
+import components.statement.StatementKernel.Kind;
+
+/**
+ * Structural diff between two versions of a BL program: the instructions
+ * added to, removed from and changed in the context, and, within each changed
+ * body, the smallest subtrees that were added, removed or changed.
+ *
+ * <p>
+ * Statements are compared by {@code FrozenStatement} fingerprint, so an
+ * unchanged subtree is skipped in constant time whatever its size, and
+ * diffing two large similar programs takes time proportional to the size of
+ * the change (plus the length of each BLOCK on the path to it). Within a
+ * BLOCK, the common prefix and suffix are skipped and the rest is aligned on
+ * a longest common subsequence of children; an unmatched child of the old
+ * block facing an unmatched child of the new one is diffed recursively.
+ *
+ * <p>
+ * Paths follow {@code BugProfiler.Site.path}: the positions of the children
+ * to follow from the root of the body, e.g., {@code /2/0/1}, or {@code /}
+ * for the root itself.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class ProgramDiff {
+
+    /**
+     * Kinds of edit.
+     */
+    public enum Change {
+        /**
+         * The statement is only in the newer version.
+         */
+        ADDED,
+        /**
+         * The statement is only in the older version.
+         */
+        REMOVED,
+        /**
+         * The statement of the older version was replaced by that of the
+         * newer one, whose kind, condition or instruction differs.
+         */
+        CHANGED
+    }
+
+    /**
+     * An added, removed or changed subtree of a body.
+     */
+    public static final class Edit {
+
+        /**
+         * The kind of edit.
+         */
+        private final Change change;
+
+        /**
+         * The path in the older body, or null for ADDED.
+         */
+        private final String oldPath;
+
+        /**
+         * The path in the newer body, or null for REMOVED.
+         */
+        private final String newPath;
+
+        /**
+         * The subtree of the older body, or null for ADDED.
+         */
+        private final FrozenStatement oldStatement;
+
+        /**
+         * The subtree of the newer body, or null for REMOVED.
+         */
+        private final FrozenStatement newStatement;
+
+        /**
+         * Constructor.
+         *
+         * @param change
+         *            the kind of edit
+         * @param oldPath
+         *            the path in the older body, or null
+         * @param oldStatement
+         *            the subtree of the older body, or null
+         * @param newPath
+         *            the path in the newer body, or null
+         * @param newStatement
+         *            the subtree of the newer body, or null
+         */
+        private Edit(Change change, String oldPath,
+                FrozenStatement oldStatement, String newPath,
+                FrozenStatement newStatement) {
+            this.change = change;
+            this.oldPath = oldPath;
+            this.oldStatement = oldStatement;
+            this.newPath = newPath;
+            this.newStatement = newStatement;
+        }
+
+        /**
+         * Reports the kind of edit.
+         *
+         * @return the kind of edit
+         */
+        public Change change() {
+            return this.change;
+        }
+
+        /**
+         * Reports the path of the subtree in the older body.
+         *
+         * @return the path, or null for ADDED
+         */
+        public String oldPath() {
+            return this.oldPath;
+        }
+
+        /**
+         * Reports the path of the subtree in the newer body.
+         *
+         * @return the path, or null for REMOVED
+         */
+        public String newPath() {
+            return this.newPath;
+        }
+
+        /**
+         * Returns the subtree of the older body.
+         *
+         * @return the subtree, or null for ADDED
+         */
+        public FrozenStatement oldStatement() {
+            return this.oldStatement;
+        }
+
+        /**
+         * Returns the subtree of the newer body.
+         *
+         * @return the subtree, or null for REMOVED
+         */
+        public FrozenStatement newStatement() {
+            return this.newStatement;
+        }
+
+        @Override
+        public String toString() {
+            String result;
+            if (this.change == Change.ADDED) {
+                result = this.change + " " + this.newPath;
+            } else if (this.change == Change.REMOVED
+                    || this.oldPath.equals(this.newPath)) {
+                result = this.change + " " + this.oldPath;
+            } else {
+                result = this.change + " " + this.oldPath + " -> "
+                        + this.newPath;
+            }
+            return result;
+        }
+
+    }
+
+    /**
+     * Largest dynamic-programming table used to align the changed middles of
+     * two blocks; longer middles are aligned position by position.
+     */
+    private static final int MAX_TABLE = 1 << 20;
+
+    /**
+     * The name of the older version.
+     */
+    private final String oldName;
+
+    /**
+     * The name of the newer version.
+     */
+    private final String newName;
+
+    /**
+     * The instructions only in the newer context, in its order.
+     */
+    private final List<String> added = new ArrayList<>();
+
+    /**
+     * The instructions only in the older context, in its order.
+     */
+    private final List<String> removed = new ArrayList<>();
+
+    /**
+     * The edits of each changed instruction, in the order of the newer
+     * context.
+     */
+    private final Map<String, List<Edit>> changed = new LinkedHashMap<>();
+
+    /**
+     * The edits of the body.
+     */
+    private final List<Edit> body;
+
+    /**
+     * Constructor.
+     *
+     * @param oldName
+     *            the name of the older version
+     * @param oldContext
+     *            the context of the older version
+     * @param oldBody
+     *            the body of the older version
+     * @param newName
+     *            the name of the newer version
+     * @param newContext
+     *            the context of the newer version
+     * @param newBody
+     *            the body of the newer version
+     */
+    private ProgramDiff(String oldName, Map<String, FrozenStatement> oldContext,
+            FrozenStatement oldBody, String newName,
+            Map<String, FrozenStatement> newContext, FrozenStatement newBody) {
+        this.oldName = oldName;
+        this.newName = newName;
+        for (Map.Entry<String, FrozenStatement> e : newContext.entrySet()) {
+            FrozenStatement old = oldContext.get(e.getKey());
+            if (old == null) {
+                this.added.add(e.getKey());
+            } else if (old.fingerprint() != e.getValue().fingerprint()) {
+                this.changed.put(e.getKey(),
+                        Collections.unmodifiableList(edits(old, e.getValue())));
+            }
+        }
+        for (String instruction : oldContext.keySet()) {
+            if (!newContext.containsKey(instruction)) {
+                this.removed.add(instruction);
+            }
+        }
+        this.body = Collections.unmodifiableList(edits(oldBody, newBody));
+    }
+
+    /**
+     * Returns the diff from {@code older} to {@code newer}.
+     *
+     * @param older
+     *            the older version
+     * @param newer
+     *            the newer version
+     * @return the diff
+     */
+    public static ProgramDiff of(FrozenProgram older, FrozenProgram newer) {
+        assert older != null : "Violation of: older is not null";
+        assert newer != null : "Violation of: newer is not null";
+
+        return new ProgramDiff(older.name(), older.context(), older.body(),
+                newer.name(), newer.context(), newer.body());
+    }
+
+    /**
+     * Returns the diff from {@code older} to {@code newer}. Both programs are
+     * copied first, in time linear in their size, using their kernel methods,
+     * so they must not be used by another thread during the call.
+     *
+     * @param older
+     *            the older version
+     * @param newer
+     *            the newer version
+     * @return the diff
+     */
+    public static ProgramDiff of(Program older, Program newer) {
+        assert older != null : "Violation of: older is not null";
+        assert newer != null : "Violation of: newer is not null";
+
+        return new ProgramDiff(older.name(), frozenContext(older),
+                frozenBody(older), newer.name(), frozenContext(newer),
+                frozenBody(newer));
+    }
+
+    /**
+     * Returns the edits from {@code older} to {@code newer}, in the order of
+     * their paths.
+     *
+     * @param older
+     *            the older statement
+     * @param newer
+     *            the newer statement
+     * @return the edits; empty iff older = newer
+     */
+    public static List<Edit> edits(FrozenStatement older,
+            FrozenStatement newer) {
+        assert older != null : "Violation of: older is not null";
+        assert newer != null : "Violation of: newer is not null";
+
+        List<Edit> result = new ArrayList<>();
+        diff(older, "", newer, "", result);
+        return result;
+    }
+
+    /**
+     * Returns the edits from {@code older} to {@code newer}, in the order of
+     * their paths. Both statements are copied first, using their kernel
+     * methods.
+     *
+     * @param older
+     *            the older statement
+     * @param newer
+     *            the newer statement
+     * @return the edits; empty iff older = newer
+     */
+    public static List<Edit> edits(Statement older, Statement newer) {
+        assert older != null : "Violation of: older is not null";
+        assert newer != null : "Violation of: newer is not null";
+
+        return edits(FrozenStatement.copyOf(older),
+                FrozenStatement.copyOf(newer));
+    }
+
+    /**
+     * Returns the correspondence between the addresses of the compiled code of
+     * {@code older} and those of the compiled code of {@code newer}, e.g., to
+     * move a running bug from one version to the other. The two bodies are
+     * walked together, through the calls of user instructions defined in both
+     * contexts, and each instruction generated by a statement is mapped to the
+     * same instruction generated by the corresponding statement: the one at
+     * the same place in a BLOCK aligned as by {@code edits}, with the same
+     * kind and, for a CALL, the same instruction. Every other address is
+     * mapped like the next address that has a counterpart, so a bug in code
+     * that was removed or changed resumes after it, and HALT is mapped to
+     * HALT.
+     *
+     * @param older
+     *            the older version
+     * @param newer
+     *            the newer version
+     * @return the array m such that address pc of the code of older
+     *         corresponds to address m[pc] of the code of newer
+     * @ensures <pre>
+     * |m| = [length of the code of older] and
+     * [each entry of m is the address of an instruction of the code of newer]
+     * </pre>
+     */
+    public static int[] addressMap(FrozenProgram older, FrozenProgram newer) {
+        assert older != null : "Violation of: older is not null";
+        assert newer != null : "Violation of: newer is not null";
+
+        int n = older.codeLength();
+        int[] map = new int[n];
+        Arrays.fill(map, -1);
+        correspond(older.body(), 0, older, newer.body(), 0, newer, map);
+        map[n - 1] = newer.codeLength() - 1;
+        for (int pc = n - 2; pc >= 0; pc--) {
+            if (map[pc] < 0) {
+                map[pc] = map[pc + 1];
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Records in {@code map} the correspondence between the addresses of the
+     * code generated for {@code a}, at {@code aPc} in the code of {@code p},
+     * and those of the code generated for {@code b}, at {@code bPc} in the
+     * code of {@code q}.
+     *
+     * @param a
+     *            the older statement
+     * @param aPc
+     *            the address of the code of a
+     * @param p
+     *            the older program
+     * @param b
+     *            the newer statement, which corresponds to a
+     * @param bPc
+     *            the address of the code of b
+     * @param q
+     *            the newer program
+     * @param map
+     *            the correspondence being built
+     * @updates map
+     */
+    private static void correspond(FrozenStatement a, int aPc, FrozenProgram p,
+            FrozenStatement b, int bPc, FrozenProgram q, int[] map) {
+        switch (a.kind()) {
+            case BLOCK: {
+                int[] match = matching(a, b);
+                int[] bStarts = new int[b.numberOfChildren()];
+                int next = bPc;
+                for (int j = 0; j < bStarts.length; j++) {
+                    bStarts[j] = next;
+                    next += codeLength(b.child(j), q);
+                }
+                next = aPc;
+                for (int i = 0; i < match.length; i++) {
+                    FrozenStatement child = a.child(i);
+                    if (match[i] >= 0 && corresponds(child,
+                            b.child(match[i]))) {
+                        correspond(child, next, p, b.child(match[i]),
+                                bStarts[match[i]], q, map);
+                    }
+                    next += codeLength(child, p);
+                }
+                break;
+            }
+            case IF:
+                map[aPc] = bPc;
+                correspond(a.child(0), aPc + 2, p, b.child(0), bPc + 2, q,
+                        map);
+                break;
+            case IF_ELSE: {
+                map[aPc] = bPc;
+                correspond(a.child(0), aPc + 2, p, b.child(0), bPc + 2, q,
+                        map);
+                int aJump = aPc + 2 + codeLength(a.child(0), p);
+                int bJump = bPc + 2 + codeLength(b.child(0), q);
+                map[aJump] = bJump;
+                correspond(a.child(1), aJump + 2, p, b.child(1), bJump + 2, q,
+                        map);
+                break;
+            }
+            case WHILE:
+                map[aPc] = bPc;
+                correspond(a.child(0), aPc + 2, p, b.child(0), bPc + 2, q,
+                        map);
+                map[aPc + 2 + codeLength(a.child(0), p)] = bPc + 2
+                        + codeLength(b.child(0), q);
+                break;
+            default: {
+                int id = a.instructionId();
+                if (InstructionNames.isPrimitive(id)) {
+                    map[aPc] = bPc;
+                } else if (p.instruction(id) != null
+                        && q.instruction(id) != null) {
+                    correspond(p.instruction(id), aPc, p, q.instruction(id),
+                            bPc, q, map);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reports whether {@code a} and {@code b} can be walked together by
+     * {@code correspond}.
+     *
+     * @param a
+     *            the older statement
+     * @param b
+     *            the newer statement
+     * @return true iff a and b have the same kind and, if they are CALLs,
+     *         call the same instruction
+     */
+    private static boolean corresponds(FrozenStatement a, FrozenStatement b) {
+        return a.kind() == b.kind() && (a.kind() != Kind.CALL
+                || a.instructionId() == b.instructionId());
+    }
+
+    /**
+     * Reports the number of {@code int}s in the code generated for {@code s}
+     * in the code of {@code p}, where each call of a user instruction is
+     * replaced by the code of its body.
+     *
+     * @param s
+     *            the statement
+     * @param p
+     *            the program containing s
+     * @return the length of the code of s
+     */
+    private static int codeLength(FrozenStatement s, FrozenProgram p) {
+        int length;
+        switch (s.kind()) {
+            case BLOCK:
+                length = 0;
+                for (int i = 0; i < s.numberOfChildren(); i++) {
+                    length += codeLength(s.child(i), p);
+                }
+                break;
+            case IF:
+                length = 2 + codeLength(s.child(0), p);
+                break;
+            case IF_ELSE:
+                length = 4 + codeLength(s.child(0), p)
+                        + codeLength(s.child(1), p);
+                break;
+            case WHILE:
+                length = 4 + codeLength(s.child(0), p);
+                break;
+            default: {
+                FrozenStatement callee = p.instruction(s.instructionId());
+                if (callee == null) {
+                    length = 1;
+                } else {
+                    length = codeLength(callee, p);
+                }
+                break;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns an immutable copy of the context of {@code p}, in its iteration
+     * order.
+     *
+     * @param p
+     *            the program
+     * @return the copy of p.context
+     */
+    private static Map<String, FrozenStatement> frozenContext(Program p) {
+        components.map.Map<String, Statement> c = p.newContext();
+        p.swapContext(c);
+        List<String> names = new ArrayList<>(c.size());
+        for (Pair<String, Statement> pair : c) {
+            names.add(pair.key());
+        }
+        Map<String, FrozenStatement> result = new LinkedHashMap<>();
+        for (String n : names) {
+            result.put(n, FrozenStatement.copyOf(c.value(n)));
+        }
+        p.swapContext(c);
+        return result;
+    }
+
+    /**
+     * Returns an immutable copy of the body of {@code p}.
+     *
+     * @param p
+     *            the program
+     * @return the copy of p.body
+     */
+    private static FrozenStatement frozenBody(Program p) {
+        Statement b = p.newBody();
+        p.swapBody(b);
+        FrozenStatement result = FrozenStatement.copyOf(b);
+        p.swapBody(b);
+        return result;
+    }
+
+    /**
+     * Returns the path of child {@code i} of the statement at {@code path},
+     * where the root is at the empty path.
+     *
+     * @param path
+     *            the path of the parent
+     * @param i
+     *            the position of the child
+     * @return the path of the child
+     */
+    private static String child(String path, int i) {
+        return path + "/" + i;
+    }
+
+    /**
+     * Returns {@code path} in the form reported to clients.
+     *
+     * @param path
+     *            the path, empty for the root
+     * @return path, or "/" for the root
+     */
+    private static String shown(String path) {
+        String result = path;
+        if (path.isEmpty()) {
+            result = "/";
+        }
+        return result;
+    }
+
+    /**
+     * Appends the edits from {@code a} to {@code b} to {@code edits}.
+     *
+     * @param a
+     *            the older statement
+     * @param aPath
+     *            the path of a
+     * @param b
+     *            the newer statement
+     * @param bPath
+     *            the path of b
+     * @param edits
+     *            the edits found so far
+     * @updates edits
+     */
+    private static void diff(FrozenStatement a, String aPath,
+            FrozenStatement b, String bPath, List<Edit> edits) {
+        if (a.fingerprint() == b.fingerprint()) {
+            return;
+        }
+        if (a.kind() != b.kind() || a.kind() == Kind.CALL
+                || (a.kind() != Kind.BLOCK
+                        && a.condition() != b.condition())) {
+            edits.add(new Edit(Change.CHANGED, shown(aPath), a, shown(bPath),
+                    b));
+        } else if (a.kind() == Kind.BLOCK) {
+            diffBlock(a, aPath, b, bPath, edits);
+        } else {
+            for (int i = 0; i < a.numberOfChildren(); i++) {
+                diff(a.child(i), child(aPath, i), b.child(i), child(bPath, i),
+                        edits);
+            }
+        }
+    }
+
+    /**
+     * Appends the edits from BLOCK {@code a} to BLOCK {@code b} to
+     * {@code edits}.
+     *
+     * @param a
+     *            the older block
+     * @param aPath
+     *            the path of a
+     * @param b
+     *            the newer block
+     * @param bPath
+     *            the path of b
+     * @param edits
+     *            the edits found so far
+     * @updates edits
+     */
+    private static void diffBlock(FrozenStatement a, String aPath,
+            FrozenStatement b, String bPath, List<Edit> edits) {
+        int[] match = matching(a, b);
+        int j = 0;
+        for (int i = 0; i < match.length; i++) {
+            if (match[i] < 0) {
+                edits.add(new Edit(Change.REMOVED, child(aPath, i), a.child(i),
+                        null, null));
+            } else {
+                for (; j < match[i]; j++) {
+                    edits.add(new Edit(Change.ADDED, null, null,
+                            child(bPath, j), b.child(j)));
+                }
+                diff(a.child(i), child(aPath, i), b.child(j), child(bPath, j),
+                        edits);
+                j++;
+            }
+        }
+        for (; j < b.numberOfChildren(); j++) {
+            edits.add(new Edit(Change.ADDED, null, null, child(bPath, j),
+                    b.child(j)));
+        }
+    }
+
+    /**
+     * Returns the correspondence between the children of BLOCK {@code a} and
+     * those of BLOCK {@code b}: the common prefix and suffix are matched,
+     * then the rest is aligned on a longest common subsequence, and each run
+     * of unmatched children of a facing a run of unmatched children of b is
+     * matched position by position, as far as the shorter run goes.
+     *
+     * @param a
+     *            the older block
+     * @param b
+     *            the newer block
+     * @return the array m such that child i of a corresponds to child m[i] of
+     *         b, or to none if m[i] = -1
+     * @requires [a and b are BLOCK statements]
+     * @ensures [the non-negative entries of m are increasing]
+     */
+    static int[] matching(FrozenStatement a, FrozenStatement b) {
+        int[] match = new int[a.numberOfChildren()];
+        int lo = 0;
+        int aHi = a.numberOfChildren();
+        int bHi = b.numberOfChildren();
+        while (lo < aHi && lo < bHi && same(a, lo, b, lo)) {
+            match[lo] = lo;
+            lo++;
+        }
+        while (aHi > lo && bHi > lo && same(a, aHi - 1, b, bHi - 1)) {
+            aHi--;
+            bHi--;
+            match[aHi] = bHi;
+        }
+        int m = aHi - lo;
+        int n = bHi - lo;
+        if ((long) (m + 1) * (n + 1) > MAX_TABLE) {
+            matchRun(match, lo, aHi, lo, bHi);
+            return match;
+        }
+        /*
+         * table[i * (n + 1) + j] is the length of a longest common
+         * subsequence of the children of a from lo + i and those of b from
+         * lo + j, up to aHi and bHi.
+         */
+        int[] table = new int[(m + 1) * (n + 1)];
+        for (int i = m - 1; i >= 0; i--) {
+            for (int j = n - 1; j >= 0; j--) {
+                int k = i * (n + 1) + j;
+                if (same(a, lo + i, b, lo + j)) {
+                    table[k] = table[k + n + 2] + 1;
+                } else {
+                    table[k] = Math.max(table[k + n + 1], table[k + 1]);
+                }
+            }
+        }
+        int i = 0;
+        int j = 0;
+        int runI = 0;
+        int runJ = 0;
+        while (i < m || j < n) {
+            int k = i * (n + 1) + j;
+            if (i < m && j < n && same(a, lo + i, b, lo + j)) {
+                matchRun(match, lo + runI, lo + i, lo + runJ, lo + j);
+                match[lo + i] = lo + j;
+                i++;
+                j++;
+                runI = i;
+                runJ = j;
+            } else if (j == n || (i < m && table[k + n + 1] >= table[k + 1])) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        matchRun(match, lo + runI, lo + m, lo + runJ, lo + n);
+        return match;
+    }
+
+    /**
+     * Matches children [{@code aLo}, {@code aHi}) of a block with children
+     * [{@code bLo}, {@code bHi}) of another, position by position, as far as
+     * the shorter run goes; the rest of the longer run of the older block is
+     * left unmatched.
+     *
+     * @param match
+     *            the correspondence being built
+     * @param aLo
+     *            the first child of the run of the older block
+     * @param aHi
+     *            the child after the run of the older block
+     * @param bLo
+     *            the first child of the run of the newer block
+     * @param bHi
+     *            the child after the run of the newer block
+     * @updates match
+     */
+    private static void matchRun(int[] match, int aLo, int aHi, int bLo,
+            int bHi) {
+        int paired = Math.min(aHi - aLo, bHi - bLo);
+        for (int k = 0; k < paired; k++) {
+            match[aLo + k] = bLo + k;
+        }
+        for (int i = aLo + paired; i < aHi; i++) {
+            match[i] = -1;
+        }
+    }
+
+    /**
+     * Reports whether child {@code i} of {@code a} and child {@code j} of
+     * {@code b} have the same fingerprint.
+     *
+     * @param a
+     *            the older block
+     * @param i
+     *            the position in a
+     * @param b
+     *            the newer block
+     * @param j
+     *            the position in b
+     * @return true iff a.child(i) and b.child(j) have equal fingerprints
+     */
+    private static boolean same(FrozenStatement a, int i, FrozenStatement b,
+            int j) {
+        return a.child(i).fingerprint() == b.child(j).fingerprint();
+    }
+
+    /**
+     * Reports whether the two versions are equal.
+     *
+     * @return true iff nothing changed
+     */
+    public boolean isEmpty() {
+        return !this.nameChanged() && this.added.isEmpty()
+                && this.removed.isEmpty() && this.changed.isEmpty()
+                && this.body.isEmpty();
+    }
+
+    /**
+     * Reports whether the program name changed.
+     *
+     * @return true iff the names of the two versions differ
+     */
+    public boolean nameChanged() {
+        return !this.oldName.equals(this.newName);
+    }
+
+    /**
+     * Returns the instructions only in the newer context, in its order.
+     *
+     * @return the added instructions
+     */
+    public List<String> addedInstructions() {
+        return Collections.unmodifiableList(this.added);
+    }
+
+    /**
+     * Returns the instructions only in the older context, in its order.
+     *
+     * @return the removed instructions
+     */
+    public List<String> removedInstructions() {
+        return Collections.unmodifiableList(this.removed);
+    }
+
+    /**
+     * Returns the instructions in both contexts whose bodies differ, in the
+     * order of the newer context.
+     *
+     * @return the changed instructions
+     */
+    public Set<String> changedInstructions() {
+        return Collections.unmodifiableSet(this.changed.keySet());
+    }
+
+    /**
+     * Returns the edits of the body of {@code instruction}, with paths from
+     * the root of that body.
+     *
+     * @param instruction
+     *            the instruction
+     * @return the edits of its body; empty unless it is changed
+     */
+    public List<Edit> instructionEdits(String instruction) {
+        assert instruction != null : "Violation of: instruction is not null";
+
+        List<Edit> result = this.changed.get(instruction);
+        if (result == null) {
+            result = Collections.emptyList();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the edits of the program body.
+     *
+     * @return the edits of the body
+     */
+    public List<Edit> bodyEdits() {
+        return this.body;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (this.nameChanged()) {
+            sb.append("PROGRAM ").append(this.oldName).append(" -> ")
+                    .append(this.newName).append('\n');
+        }
+        for (String instruction : this.removed) {
+            sb.append("REMOVED INSTRUCTION ").append(instruction).append('\n');
+        }
+        for (String instruction : this.added) {
+            sb.append("ADDED INSTRUCTION ").append(instruction).append('\n');
+        }
+        for (Map.Entry<String, List<Edit>> e : this.changed.entrySet()) {
+            sb.append("CHANGED INSTRUCTION ").append(e.getKey()).append('\n');
+            for (Edit edit : e.getValue()) {
+                sb.append("  ").append(edit).append('\n');
+            }
+        }
+        if (!this.body.isEmpty()) {
+            sb.append("CHANGED BODY\n");
+            for (Edit edit : this.body) {
+                sb.append("  ").append(edit).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+}
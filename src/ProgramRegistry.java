@@ -0,0 +1,536 @@
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe registry of compiled BL programs, looked up by source hash or by
+ * program name. Concurrent requests to compile the same source share a single
+ * compilation. The total weight of the resident programs, i.e., the total
+ * length of their compiled code, is kept under a bound by evicting the least
+ * recently used programs.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class ProgramRegistry {
+
+    /**
+     * A registry entry: a program that has been compiled or is being compiled.
+     */
+    private static final class Entry {
+
+        /**
+         * The source hash.
+         */
+        private final String hash;
+
+        /**
+         * The compiled program, once available.
+         */
+        private final CompletableFuture<FrozenProgram> program =
+                new CompletableFuture<>();
+
+        /**
+         * The weight of the compiled program; 0 until it is available.
+         */
+        private volatile long weight;
+
+        /**
+         * The source map of the compiled program, if the registry keeps them;
+         * set before {@code program} is completed.
+         */
+        private volatile SourceMap sourceMap;
+
+        /**
+         * The key of this in {@code byAccess}, i.e., the value of
+         * {@code clock} at the last access; 0 until the program is available.
+         */
+        private volatile long lastAccess;
+
+        /**
+         * Constructor.
+         *
+         * @param h
+         *            the source hash
+         */
+        private Entry(String h) {
+            this.hash = h;
+        }
+
+    }
+
+    /**
+     * Snapshot of the statistics of a registry.
+     */
+    public static final class Stats {
+
+        /**
+         * Number of lookups that found a program.
+         */
+        private final long hits;
+
+        /**
+         * Number of lookups that did not find a program.
+         */
+        private final long misses;
+
+        /**
+         * Number of programs evicted.
+         */
+        private final long evictions;
+
+        /**
+         * Constructor.
+         *
+         * @param h
+         *            the number of hits
+         * @param m
+         *            the number of misses
+         * @param e
+         *            the number of evictions
+         */
+        private Stats(long h, long m, long e) {
+            this.hits = h;
+            this.misses = m;
+            this.evictions = e;
+        }
+
+        /**
+         * Reports the number of lookups that found a program, compiled or
+         * being compiled.
+         *
+         * @return the number of hits
+         */
+        public long hits() {
+            return this.hits;
+        }
+
+        /**
+         * Reports the number of lookups that did not find a program. Each miss
+         * of {@code compile} starts a compilation.
+         *
+         * @return the number of misses
+         */
+        public long misses() {
+            return this.misses;
+        }
+
+        /**
+         * Reports the number of programs evicted.
+         *
+         * @return the number of evictions
+         */
+        public long evictions() {
+            return this.evictions;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + this.hits + ", misses=" + this.misses
+                    + ", evictions=" + this.evictions;
+        }
+
+    }
+
+    /**
+     * Entries by source hash.
+     */
+    private final ConcurrentHashMap<String, Entry> byHash =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Source hash of the most recently compiled program with each name.
+     */
+    private final ConcurrentHashMap<String, String> byName =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Compiled entries by last access, least recently used first.
+     */
+    private final ConcurrentSkipListMap<Long, Entry> byAccess =
+            new ConcurrentSkipListMap<>();
+
+    /**
+     * Source of the keys of {@code byAccess}, increasing with each access.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    /**
+     * Maximum total weight of the resident programs.
+     */
+    private final long maxWeight;
+
+    /**
+     * Whether a source map is built for each compiled program.
+     */
+    private final boolean sourceMaps;
+
+    /**
+     * Total weight of the resident programs.
+     */
+    private final AtomicLong weight = new AtomicLong();
+
+    /**
+     * Held by the thread evicting programs.
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    /**
+     * Hit counter.
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Miss counter.
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Eviction counter.
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor.
+     *
+     * @param maxWeight
+     *            the maximum total length of the compiled code of the
+     *            resident programs
+     * @requires maxWeight > 0
+     */
+    public ProgramRegistry(long maxWeight) {
+        this(maxWeight, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxWeight
+     *            the maximum total length of the compiled code of the
+     *            resident programs
+     * @param sourceMaps
+     *            whether to build and keep the source map of each compiled
+     *            program, for {@code sourceMap}
+     * @requires maxWeight > 0
+     */
+    public ProgramRegistry(long maxWeight, boolean sourceMaps) {
+        assert maxWeight > 0 : "Violation of: maxWeight > 0";
+        this.maxWeight = maxWeight;
+        this.sourceMaps = sourceMaps;
+    }
+
+    /**
+     * Returns the hash identifying {@code source} in the registry: the
+     * hexadecimal SHA-256 digest of its UTF-8 encoding.
+     *
+     * @param source
+     *            the BL source
+     * @return the hash of source
+     */
+    public static String sourceHash(String source) {
+        assert source != null : "Violation of: source is not null";
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError("SHA-256 is not available", e);
+        }
+        byte[] bytes = digest.digest(source.getBytes(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the compiled program for {@code source}, compiling it if it is
+     * not resident. If several threads ask for the same source at the same
+     * time, it is compiled only once and all of them get the same program.
+     *
+     * @param source
+     *            the BL source of a program
+     * @return the compiled program
+     * @throws RuntimeException
+     *             if source is not a valid BL program; all threads waiting
+     *             for the same compilation get the same exception
+     * @throws Error
+     *             if the compilation fails with an error, e.g.,
+     *             {@code StackOverflowError}; the source is then not resident
+     *             and all threads waiting for it get the same error
+     */
+    public FrozenProgram compile(String source) {
+        assert source != null : "Violation of: source is not null";
+
+        String hash = sourceHash(source);
+        Entry e = this.byHash.get(hash);
+        if (e == null) {
+            Entry created = new Entry(hash);
+            e = this.byHash.putIfAbsent(hash, created);
+            if (e == null) {
+                e = created;
+                this.misses.increment();
+                this.build(created, source);
+            } else {
+                this.hits.increment();
+            }
+        } else {
+            this.hits.increment();
+        }
+        this.touch(e);
+        return join(e);
+    }
+
+    /**
+     * Returns the resident program with source hash {@code hash}, waiting for
+     * it if it is being compiled, or {@code null} if there is none.
+     *
+     * @param hash
+     *            the source hash
+     * @return the program, or null
+     */
+    public FrozenProgram getByHash(String hash) {
+        assert hash != null : "Violation of: hash is not null";
+
+        FrozenProgram result = null;
+        Entry e = this.byHash.get(hash);
+        if (e == null) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+            this.touch(e);
+            result = join(e);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the most recently compiled resident program named {@code name},
+     * or {@code null} if there is none.
+     *
+     * @param name
+     *            the program name
+     * @return the program, or null
+     */
+    public FrozenProgram getByName(String name) {
+        assert name != null : "Violation of: name is not null";
+
+        FrozenProgram result = null;
+        String hash = this.byName.get(name);
+        if (hash == null) {
+            this.misses.increment();
+        } else {
+            result = this.getByHash(hash);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the program with source hash {@code hash}, if it is resident.
+     *
+     * @param hash
+     *            the source hash
+     */
+    public void invalidate(String hash) {
+        assert hash != null : "Violation of: hash is not null";
+
+        Entry e = this.byHash.get(hash);
+        if (e != null && e.program.isDone()) {
+            this.remove(e);
+        }
+    }
+
+    /**
+     * Reports the number of resident programs, including those being
+     * compiled.
+     *
+     * @return the number of resident programs
+     */
+    public int size() {
+        return this.byHash.size();
+    }
+
+    /**
+     * Reports the total weight of the resident programs.
+     *
+     * @return the total length of the compiled code of the resident programs
+     */
+    public long weight() {
+        return this.weight.get();
+    }
+
+    /**
+     * Returns a snapshot of the statistics of {@code this}.
+     *
+     * @return the statistics
+     */
+    public Stats stats() {
+        return new Stats(this.hits.sum(), this.misses.sum(),
+                this.evictions.sum());
+    }
+
+    /**
+     * Returns the source map of the resident program with source hash
+     * {@code hash}, waiting for it if it is being compiled, or {@code null}
+     * if there is none or this registry does not keep source maps.
+     *
+     * @param hash
+     *            the source hash
+     * @return the source map, or null
+     */
+    public SourceMap sourceMap(String hash) {
+        assert hash != null : "Violation of: hash is not null";
+
+        SourceMap result = null;
+        Entry e = this.byHash.get(hash);
+        if (e != null) {
+            join(e);
+            result = e.sourceMap;
+        }
+        return result;
+    }
+
+    /**
+     * Compiles {@code source} and completes {@code e} with the result.
+     *
+     * @param e
+     *            the entry for source, just added to byHash
+     * @param source
+     *            the BL source
+     */
+    private void build(Entry e, String source) {
+        FrozenProgram p;
+        try {
+            Program2 program = new Program2();
+            program.parse(SourceTokenizer.tokens(source));
+            p = program.freeze();
+            if (this.sourceMaps) {
+                e.sourceMap = SourceMap.of(p,
+                        source.getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (RuntimeException ex) {
+            this.byHash.remove(e.hash, e);
+            e.program.completeExceptionally(ex);
+            return;
+        } catch (Error ex) {
+            /*
+             * E.g., StackOverflowError on deeply nested statements: the entry
+             * must not be left with a program that never completes
+             */
+            this.byHash.remove(e.hash, e);
+            e.program.completeExceptionally(ex);
+            throw ex;
+        }
+        e.weight = p.codeLength();
+        this.weight.addAndGet(e.weight);
+        this.byName.put(p.name(), e.hash);
+        e.program.complete(p);
+        e.lastAccess = this.clock.incrementAndGet();
+        this.byAccess.put(e.lastAccess, e);
+        if (this.byHash.get(e.hash) != e) {
+            this.byAccess.remove(e.lastAccess, e);
+        }
+        this.evictIfNeeded();
+    }
+
+    /**
+     * Waits for the program of {@code e}.
+     *
+     * @param e
+     *            the entry
+     * @return the program of e
+     */
+    private static FrozenProgram join(Entry e) {
+        try {
+            return e.program.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Moves {@code e} to the most recently used end of {@code byAccess}, if
+     * it is there, i.e., if its program is available and it is resident. A
+     * concurrent access to e may be lost, which only makes the order of
+     * eviction approximate.
+     *
+     * @param e
+     *            the entry
+     */
+    private void touch(Entry e) {
+        long old = e.lastAccess;
+        if (old != 0 && this.byAccess.remove(old, e)) {
+            long now = this.clock.incrementAndGet();
+            e.lastAccess = now;
+            this.byAccess.put(now, e);
+            if (this.byHash.get(e.hash) != e) {
+                /*
+                 * Removed by another thread in the meantime
+                 */
+                this.byAccess.remove(now, e);
+            }
+        }
+    }
+
+    /**
+     * Removes {@code e}, if it is still resident.
+     *
+     * @param e
+     *            the entry
+     * @return true iff e was removed by this call
+     */
+    private boolean remove(Entry e) {
+        boolean removed = this.byHash.remove(e.hash, e);
+        if (removed) {
+            this.byAccess.remove(e.lastAccess, e);
+            this.weight.addAndGet(-e.weight);
+            FrozenProgram p = e.program.getNow(null);
+            if (p != null) {
+                this.byName.remove(p.name(), e.hash);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Evicts the least recently used compiled programs until the total weight
+     * is within the bound, taking each from the front of {@code byAccess} in
+     * logarithmic time. Does nothing if another thread is already evicting.
+     */
+    private void evictIfNeeded() {
+        if (this.weight.get() > this.maxWeight
+                && this.evictionLock.tryLock()) {
+            try {
+                Map.Entry<Long, Entry> oldest = this.byAccess.firstEntry();
+                while (this.weight.get() > this.maxWeight && oldest != null) {
+                    Entry e = oldest.getValue();
+                    this.byAccess.remove(oldest.getKey(), e);
+                    if (this.remove(e)) {
+                        this.evictions.increment();
+                    }
+                    oldest = this.byAccess.firstEntry();
+                }
+            } finally {
+                this.evictionLock.unlock();
+            }
+        }
+    }
+
+}
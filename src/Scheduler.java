@@ -0,0 +1,295 @@
+import java.util.Arrays;
+
+import components.simplewriter.SimpleWriter;
+
+/**
+ * Time-sliced scheduler for the bugs of a {@code Simulation}. Each tick steps
+ * every bug once, with a budget of instructions: a bug whose program loops
+ * without reaching a primitive instruction, e.g., in
+ * {@code WHILE next-is-wall DO END WHILE}, is preempted when the budget runs
+ * out and resumes where it stopped at the next tick, so no program can stall
+ * a tick for longer than its budget.
+ *
+ * <p>
+ * Within a tick, bugs are stepped in batches of the same species, i.e., of
+ * the same compiled code, and in increasing order within a batch, so that the
+ * code of one program stays in cache while it runs. The batches are taken in
+ * turn starting from a different species at each tick, so that no species
+ * always gets to act first. The time spent in each batch, with the number of
+ * steps completed and of preemptions, is charged to its species.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class Scheduler {
+
+    /**
+     * The simulation.
+     */
+    private final Simulation simulation;
+
+    /**
+     * The number of instructions each bug may execute per tick.
+     */
+    private final int budget;
+
+    /**
+     * The nanoseconds spent running each species.
+     */
+    private final long[] cpuTime;
+
+    /**
+     * The number of steps each species completed.
+     */
+    private final long[] steps;
+
+    /**
+     * The number of times a bug of each species was preempted.
+     */
+    private final long[] preemptions;
+
+    /**
+     * The start in {@code order} of the batch of each species, followed by
+     * the number of bugs.
+     */
+    private final int[] batchStart;
+
+    /**
+     * The number of bugs of each species placed in {@code order} so far, while
+     * batching.
+     */
+    private final int[] fill;
+
+    /**
+     * The bugs of the current tick, by species; grown with the world.
+     */
+    private int[] order = new int[0];
+
+    /**
+     * The species whose batch runs first at the next tick.
+     */
+    private int first = 0;
+
+    /**
+     * The number of ticks run.
+     */
+    private long ticks = 0;
+
+    /**
+     * The number of bugs preempted at the last tick.
+     */
+    private int preempted = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param simulation
+     *            the simulation
+     * @param budget
+     *            the number of instructions each bug may execute per tick
+     * @requires simulation.species() > 0 and budget > 0
+     */
+    public Scheduler(Simulation simulation, int budget) {
+        assert simulation != null : "Violation of: simulation is not null";
+        assert simulation.species() > 0 : ""
+                + "Violation of: simulation.species() > 0";
+        assert budget > 0 : "Violation of: budget > 0";
+
+        this.simulation = simulation;
+        this.budget = budget;
+        int species = simulation.species();
+        this.cpuTime = new long[species];
+        this.steps = new long[species];
+        this.preemptions = new long[species];
+        this.batchStart = new int[species + 1];
+        this.fill = new int[species];
+    }
+
+    /**
+     * Returns the simulation.
+     *
+     * @return the simulation
+     */
+    public Simulation simulation() {
+        return this.simulation;
+    }
+
+    /**
+     * Reports the number of instructions each bug may execute per tick.
+     *
+     * @return the budget
+     */
+    public int budget() {
+        return this.budget;
+    }
+
+    /**
+     * Sorts the bugs of the world by species into {@code order}, by counting.
+     */
+    private void batch() {
+        GridWorld world = this.simulation.world();
+        int n = world.bugs();
+        int species = this.batchStart.length - 1;
+        if (this.order.length < n) {
+            this.order = new int[Math.max(n, 2 * this.order.length)];
+        }
+        int[] start = this.batchStart;
+        Arrays.fill(start, 0);
+        for (int bug = 0; bug < n; bug++) {
+            start[world.species(bug) + 1]++;
+        }
+        for (int s = 0; s < species; s++) {
+            start[s + 1] += start[s];
+        }
+        int[] fill = this.fill;
+        Arrays.fill(fill, 0);
+        for (int bug = 0; bug < n; bug++) {
+            int s = world.species(bug);
+            this.order[start[s] + fill[s]] = bug;
+            fill[s]++;
+        }
+    }
+
+    /**
+     * Steps each bug of the world once, with a budget of {@code budget()}
+     * instructions, in batches of the same species.
+     *
+     * @updates simulation.world
+     */
+    public void tick() {
+        this.batch();
+        int species = this.batchStart.length - 1;
+        int preemptedNow = 0;
+        for (int k = 0; k < species; k++) {
+            int s = (this.first + k) % species;
+            long completed = 0;
+            long stopped = 0;
+            long start = System.nanoTime();
+            for (int i = this.batchStart[s]; i < this.batchStart[s + 1]; i++) {
+                if (this.simulation.step(this.order[i], this.budget)) {
+                    completed++;
+                } else {
+                    stopped++;
+                }
+            }
+            this.cpuTime[s] += System.nanoTime() - start;
+            this.steps[s] += completed;
+            this.preemptions[s] += stopped;
+            preemptedNow += (int) stopped;
+        }
+        this.first = (this.first + 1) % species;
+        this.preempted = preemptedNow;
+        this.ticks++;
+    }
+
+    /**
+     * Reports the number of ticks run.
+     *
+     * @return the number of ticks
+     */
+    public long ticks() {
+        return this.ticks;
+    }
+
+    /**
+     * Reports the number of bugs preempted at the last tick.
+     *
+     * @return the number of bugs preempted
+     */
+    public int preempted() {
+        return this.preempted;
+    }
+
+    /**
+     * Reports the time spent running the bugs of species {@code s}, including
+     * bugs infected during a tick before their batch ran.
+     *
+     * @param s
+     *            the species
+     * @return the number of nanoseconds
+     * @requires 0 <= s < simulation.species()
+     */
+    public long cpuTime(int s) {
+        assert 0 <= s && s < this.cpuTime.length : ""
+                + "Violation of: 0 <= s < simulation.species()";
+
+        return this.cpuTime[s];
+    }
+
+    /**
+     * Reports the number of steps completed by bugs of species {@code s},
+     * i.e., of primitive instructions performed or HALTs reached.
+     *
+     * @param s
+     *            the species
+     * @return the number of steps
+     * @requires 0 <= s < simulation.species()
+     */
+    public long steps(int s) {
+        assert 0 <= s && s < this.steps.length : ""
+                + "Violation of: 0 <= s < simulation.species()";
+
+        return this.steps[s];
+    }
+
+    /**
+     * Reports the number of times a bug of species {@code s} ran out of
+     * budget.
+     *
+     * @param s
+     *            the species
+     * @return the number of preemptions
+     * @requires 0 <= s < simulation.species()
+     */
+    public long preemptions(int s) {
+        assert 0 <= s && s < this.preemptions.length : ""
+                + "Violation of: 0 <= s < simulation.species()";
+
+        return this.preemptions[s];
+    }
+
+    /**
+     * Resets all counts to 0.
+     *
+     * @updates this
+     */
+    public void reset() {
+        Arrays.fill(this.cpuTime, 0);
+        Arrays.fill(this.steps, 0);
+        Arrays.fill(this.preemptions, 0);
+        this.ticks = 0;
+        this.preempted = 0;
+    }
+
+    /**
+     * Prints the time, steps and preemptions of each species to {@code out}.
+     *
+     * @param out
+     *            the output stream
+     * @updates out.content
+     * @requires out.is_open
+     */
+    public void report(SimpleWriter out) {
+        assert out != null : "Violation of: out is not null";
+        assert out.isOpen() : "Violation of: out.is_open";
+
+        long total = 0;
+        for (long t : this.cpuTime) {
+            total += t;
+        }
+        String format = "%8s  %-20s %12s %6s %12s %12s %9s";
+        out.println(String.format(format, "species", "program", "cpu ms", "%",
+                "steps", "preemptions", "ns/step"));
+        for (int s = 0; s < this.cpuTime.length; s++) {
+            out.println(String.format(format, s,
+                    this.simulation.program(s).name(),
+                    String.format("%.1f", this.cpuTime[s] / 1e6),
+                    String.format("%5.1f%%",
+                            100.0 * this.cpuTime[s] / Math.max(1, total)),
+                    this.steps[s], this.preemptions[s],
+                    String.format("%.1f", (double) this.cpuTime[s]
+                            / Math.max(1, this.steps[s]))));
+        }
+    }
+
+}
@@ -0,0 +1,286 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import components.program.Program;
+
+/**
+ * Runs the bugs of a {@code GridWorld}, each with the program of its species,
+ * and lets the program of a species be replaced while the simulation is
+ * running. The new program is compiled and its code correspondence with the
+ * old one computed by the caller of {@code swap}, on its own thread; each bug
+ * then switches over at its next primitive-action boundary, i.e., the next
+ * time it starts a step, with its address remapped by
+ * {@code ProgramDiff.addressMap}. A bug preempted in the middle of a step by
+ * {@code step(bug, budget)} finishes that step with the version it started
+ * it with. There is no global pause and the world is not touched.
+ *
+ * <p>
+ * {@code step} must be called by one thread at a time; {@code swap} may be
+ * called by any thread at any time.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class Simulation {
+
+    /**
+     * A version of the program of a species. Versions of the same species are
+     * chained from the oldest to the newest, so that a bug that missed
+     * several swaps follows the remaps of each; versions no bug runs any
+     * longer are unreachable.
+     */
+    private static final class Version {
+
+        /**
+         * The species.
+         */
+        private final int species;
+
+        /**
+         * The program.
+         */
+        private final FrozenProgram program;
+
+        /**
+         * The map from the addresses of the previous version to those of this
+         * one; null for the first version.
+         */
+        private final int[] remap;
+
+        /**
+         * The next version, once there is one.
+         */
+        private volatile Version next;
+
+        /**
+         * Constructor.
+         *
+         * @param s
+         *            the species
+         * @param p
+         *            the program
+         * @param r
+         *            the map from the addresses of the previous version, or
+         *            null
+         */
+        private Version(int s, FrozenProgram p, int[] r) {
+            this.species = s;
+            this.program = p;
+            this.remap = r;
+        }
+
+    }
+
+    /**
+     * The world.
+     */
+    private final GridWorld world;
+
+    /**
+     * The newest version of each species.
+     */
+    private final AtomicReferenceArray<Version> current;
+
+    /**
+     * The version each bug runs; null until the bug is first stepped.
+     */
+    private final Version[] running;
+
+    /**
+     * Whether each bug was preempted in the middle of a step, and so must
+     * not switch versions before it finishes that step.
+     */
+    private final boolean[] midStep;
+
+    /**
+     * Constructor.
+     *
+     * @param world
+     *            the world
+     * @param programs
+     *            the program of each species, by species number
+     * @requires [programs has an entry for each species of the bugs of world]
+     */
+    public Simulation(GridWorld world, FrozenProgram... programs) {
+        assert world != null : "Violation of: world is not null";
+        assert programs != null : "Violation of: programs is not null";
+
+        this.world = world;
+        this.current = new AtomicReferenceArray<>(programs.length);
+        for (int s = 0; s < programs.length; s++) {
+            this.current.set(s, new Version(s, programs[s], null));
+        }
+        this.running = new Version[world.capacity()];
+        this.midStep = new boolean[world.capacity()];
+    }
+
+    /**
+     * Returns the world.
+     *
+     * @return the world
+     */
+    public GridWorld world() {
+        return this.world;
+    }
+
+    /**
+     * Reports the number of species.
+     *
+     * @return the number of species
+     */
+    public int species() {
+        return this.current.length();
+    }
+
+    /**
+     * Returns the newest program of species {@code s}.
+     *
+     * @param s
+     *            the species
+     * @return the program of s
+     * @requires 0 <= s < species()
+     */
+    public FrozenProgram program(int s) {
+        assert 0 <= s : "Violation of: 0 <= s";
+        assert s < this.species() : "Violation of: s < species()";
+
+        return this.current.get(s).program;
+    }
+
+    /**
+     * Replaces the program of species {@code s} by {@code p}. Each bug of
+     * species s switches to p the next time it is stepped.
+     *
+     * @param s
+     *            the species
+     * @param p
+     *            the new program
+     * @requires 0 <= s < species()
+     */
+    public void swap(int s, FrozenProgram p) {
+        assert 0 <= s : "Violation of: 0 <= s";
+        assert s < this.species() : "Violation of: s < species()";
+        assert p != null : "Violation of: p is not null";
+
+        synchronized (this.current) {
+            Version old = this.current.get(s);
+            Version v = new Version(s, p, ProgramDiff.addressMap(old.program,
+                    p));
+            old.next = v;
+            this.current.set(s, v);
+        }
+    }
+
+    /**
+     * Replaces the program of species {@code s} by a compiled copy of
+     * {@code p}. Each bug of species s switches to it the next time it is
+     * stepped. The kernel methods of {@code p} are used to read it, so
+     * {@code p} must not be used by another thread during the call.
+     *
+     * @param s
+     *            the species
+     * @param p
+     *            the new program
+     * @requires 0 <= s < species()
+     */
+    public void swap(int s, Program p) {
+        assert p != null : "Violation of: p is not null";
+
+        this.swap(s, FrozenProgram.copyOf(p));
+    }
+
+    /**
+     * Returns the version bug {@code bug} is to run next, switching it over,
+     * with its address, to the newest version of its species if needed and
+     * the bug is not in the middle of a step.
+     *
+     * @param bug
+     *            the bug
+     * @return the version of bug
+     */
+    private Version version(int bug) {
+        int s = this.world.species(bug);
+        Version v = this.running[bug];
+        if (v == null || v.species != s) {
+            /*
+             * A new bug, or one just infected, whose address is that of the
+             * start of its (new) program.
+             */
+            v = this.current.get(s);
+            this.running[bug] = v;
+            this.midStep[bug] = false;
+        } else if (v.next != null && !this.midStep[bug]) {
+            int pc = this.world.pc(bug);
+            do {
+                v = v.next;
+                pc = v.remap[pc];
+            } while (v.next != null);
+            this.world.setPc(bug, pc);
+            this.running[bug] = v;
+        }
+        return v;
+    }
+
+    /**
+     * Executes the program of bug {@code bug} until it has performed one
+     * primitive instruction or reached HALT.
+     *
+     * @param bug
+     *            the bug
+     * @updates world
+     * @requires 0 <= bug < world.bugs()
+     */
+    public void step(int bug) {
+        assert 0 <= bug : "Violation of: 0 <= bug";
+        assert bug < this.world.bugs() : "Violation of: bug < world.bugs()";
+
+        Version v = this.version(bug);
+        this.world.setPc(bug,
+                v.program.nextAction(this.world.pc(bug), bug, this.world));
+        this.midStep[bug] = false;
+    }
+
+    /**
+     * Like {@link #step(int)}, but executes at most {@code budget}
+     * instructions of the program of bug {@code bug}. If the budget runs out
+     * first, the bug is left at the address where it must resume, and its
+     * step goes on the next time it is stepped, with the same version of its
+     * program even if a newer one was swapped in meanwhile.
+     *
+     * @param bug
+     *            the bug
+     * @param budget
+     *            the maximum number of instructions to execute
+     * @return true iff the bug performed a primitive instruction or reached
+     *         HALT, false if it was preempted
+     * @updates world
+     * @requires 0 <= bug < world.bugs() and budget > 0
+     */
+    public boolean step(int bug, int budget) {
+        assert 0 <= bug : "Violation of: 0 <= bug";
+        assert bug < this.world.bugs() : "Violation of: bug < world.bugs()";
+        assert budget > 0 : "Violation of: budget > 0";
+
+        Version v = this.version(bug);
+        int next = v.program.nextAction(this.world.pc(bug), bug, this.world,
+                budget);
+        boolean done = next >= 0;
+        if (!done) {
+            next = -next - 1;
+        }
+        this.world.setPc(bug, next);
+        this.midStep[bug] = !done;
+        return done;
+    }
+
+    /**
+     * Steps each bug of the world once, in order.
+     *
+     * @updates world
+     */
+    public void step() {
+        for (int bug = 0; bug < this.world.bugs(); bug++) {
+            this.step(bug);
+        }
+    }
+
+}
@@ -0,0 +1,713 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checkpoints of a simulation in a memory-mapped file: the grid, position,
+ * direction, species and program counter of every bug, the states of the
+ * random streams, and a reference to the program of each species (its source
+ * hash in a {@code ProgramRegistry}). Every part is a primitive array stored
+ * as is, so that restoring a checkpoint is a handful of bulk copies, with no
+ * object per bug or per cell.
+ *
+ * <p>
+ * The file holds two slots, written alternately, and a header giving the
+ * sequence number of the checkpoint each slot holds. A slot is marked
+ * incomplete before it is overwritten and complete only once its contents
+ * have been forced to the file, so a crash in the middle of a checkpoint
+ * leaves the previous one intact.
+ *
+ * <p>
+ * {@code checkpoint} copies the world into a spare world, a pause of one
+ * memory copy, and the slot is then written by a background thread while
+ * the simulation goes on. Writing is incremental: the slot is compared with
+ * the copy block by block and only the blocks that changed are written, so
+ * the pages of the file that did not change are not written back.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class SimulationCheckpoint implements Closeable {
+
+    /**
+     * The result of {@code restore}.
+     */
+    public static final class Restored {
+
+        /**
+         * The restored world.
+         */
+        private final GridWorld world;
+
+        /**
+         * The program references, indexed by species.
+         */
+        private final String[] programs;
+
+        /**
+         * The sequence number of the checkpoint.
+         */
+        private final long sequence;
+
+        /**
+         * Constructor.
+         *
+         * @param w
+         *            the restored world
+         * @param p
+         *            the program references
+         * @param s
+         *            the sequence number
+         */
+        private Restored(GridWorld w, String[] p, long s) {
+            this.world = w;
+            this.programs = p;
+            this.sequence = s;
+        }
+
+        /**
+         * Returns the restored world.
+         *
+         * @return the world
+         */
+        public GridWorld world() {
+            return this.world;
+        }
+
+        /**
+         * Returns the program references saved with the world, indexed by
+         * species.
+         *
+         * @return a copy of the program references
+         */
+        public String[] programs() {
+            return this.programs.clone();
+        }
+
+        /**
+         * Reports the sequence number of the checkpoint, counting from 1 in
+         * the file it was read from.
+         *
+         * @return the sequence number
+         */
+        public long sequence() {
+            return this.sequence;
+        }
+
+    }
+
+    /**
+     * Offsets of the parts of a slot, for a given world geometry.
+     */
+    private static final class Layout {
+
+        /**
+         * The width of the grid.
+         */
+        private final int width;
+
+        /**
+         * The height of the grid.
+         */
+        private final int height;
+
+        /**
+         * The maximum number of bugs.
+         */
+        private final int capacity;
+
+        /**
+         * The maximum number of species with a program reference.
+         */
+        private final int maxSpecies;
+
+        /**
+         * The number of cells, border included.
+         */
+        private final int cells;
+
+        /**
+         * Offset of the random states.
+         */
+        private final long randoms;
+
+        /**
+         * Offset of the cells.
+         */
+        private final long grid;
+
+        /**
+         * Offset of the positions.
+         */
+        private final long positions;
+
+        /**
+         * Offset of the program counters.
+         */
+        private final long pcs;
+
+        /**
+         * Offset of the species.
+         */
+        private final long species;
+
+        /**
+         * Offset of the directions.
+         */
+        private final long directions;
+
+        /**
+         * Size of a slot, rounded up to a page.
+         */
+        private final long size;
+
+        /**
+         * Constructor.
+         *
+         * @param w
+         *            the width of the grid
+         * @param h
+         *            the height of the grid
+         * @param c
+         *            the maximum number of bugs
+         * @param m
+         *            the maximum number of species
+         */
+        private Layout(int w, int h, int c, int m) {
+            this.width = w;
+            this.height = h;
+            this.capacity = c;
+            this.maxSpecies = m;
+            this.cells = (w + 2) * (h + 2);
+            this.randoms = align(PROGRAMS + (long) m * MAX_PROGRAM_BYTES);
+            this.grid = this.randoms + 8L * c;
+            this.positions = this.grid + 4L * this.cells;
+            this.pcs = this.positions + 4L * c;
+            this.species = this.pcs + 4L * c;
+            this.directions = this.species + 2L * c;
+            this.size = (this.directions + c + PAGE - 1) / PAGE * PAGE;
+        }
+
+        /**
+         * Returns {@code offset} rounded up to a multiple of 8.
+         *
+         * @param offset
+         *            the offset
+         * @return the aligned offset
+         */
+        private static long align(long offset) {
+            return (offset + 7) & ~7L;
+        }
+
+    }
+
+    /**
+     * The first word of a checkpoint file: "BLCK".
+     */
+    private static final int MAGIC = 0x424c434b;
+
+    /**
+     * The version of the file layout.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the file header, and alignment of the slots.
+     */
+    private static final int PAGE = 4096;
+
+    /**
+     * Offset in the header of the sequence number of the first slot; that of
+     * the second slot follows.
+     */
+    private static final int SEQUENCE = 32;
+
+    /**
+     * Maximum number of bytes of a program reference.
+     */
+    public static final int MAX_PROGRAM_BYTES = 64;
+
+    /**
+     * Offset in a slot of the program references.
+     */
+    private static final int PROGRAMS = 16;
+
+    /**
+     * Number of bytes compared, and written if they differ, at a time.
+     */
+    private static final int BLOCK = 16384;
+
+    /**
+     * The byte order of the file.
+     */
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /**
+     * The file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The mapped header.
+     */
+    private final MappedByteBuffer header;
+
+    /**
+     * The mapped slots.
+     */
+    private final MappedByteBuffer[] slots;
+
+    /**
+     * The layout of the slots.
+     */
+    private final Layout layout;
+
+    /**
+     * The thread writing the slots.
+     */
+    private final ExecutorService writer;
+
+    /**
+     * Copy of the world being written, reused from one checkpoint to the
+     * next; null before the first checkpoint.
+     */
+    private GridWorld spare;
+
+    /**
+     * The checkpoint being written, or the last one.
+     */
+    private CompletableFuture<Long> pending;
+
+    /**
+     * The sequence number of the last checkpoint.
+     */
+    private long sequence;
+
+    /**
+     * Opens or creates the checkpoint file {@code file} for worlds with the
+     * size, capacity and run seed of {@code world}. An existing file with the
+     * same geometry is kept, and the next checkpoint follows its last one;
+     * any other file is reset.
+     *
+     * @param file
+     *            the checkpoint file
+     * @param world
+     *            a world of the simulation
+     * @param maxSpecies
+     *            the maximum number of program references
+     * @throws IOException
+     *             if the file cannot be opened or mapped
+     * @requires <pre>
+     * maxSpecies >= 0 and [a slot for world and maxSpecies takes at most
+     * Integer.MAX_VALUE bytes]
+     * </pre>
+     */
+    public SimulationCheckpoint(Path file, GridWorld world, int maxSpecies)
+            throws IOException {
+        assert file != null : "Violation of: file is not null";
+        assert world != null : "Violation of: world is not null";
+        assert maxSpecies >= 0 : "Violation of: maxSpecies >= 0";
+
+        this.layout = new Layout(world.width(), world.height(),
+                world.capacity(), maxSpecies);
+        assert this.layout.size <= Integer.MAX_VALUE : ""
+                + "Violation of: [a slot takes at most Integer.MAX_VALUE "
+                + "bytes]";
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean reuse = this.channel.size() == PAGE + 2 * this.layout.size;
+        this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                PAGE);
+        this.header.order(ORDER);
+        reuse = reuse && this.header.getInt(0) == MAGIC
+                && this.header.getInt(4) == VERSION
+                && this.header.getInt(8) == this.layout.width
+                && this.header.getInt(12) == this.layout.height
+                && this.header.getInt(16) == this.layout.capacity
+                && this.header.getInt(20) == this.layout.maxSpecies;
+        if (!reuse) {
+            this.channel.truncate(PAGE);
+            this.header.putInt(0, MAGIC);
+            this.header.putInt(4, VERSION);
+            this.header.putInt(8, this.layout.width);
+            this.header.putInt(12, this.layout.height);
+            this.header.putInt(16, this.layout.capacity);
+            this.header.putInt(20, this.layout.maxSpecies);
+            this.header.putLong(24, this.layout.size);
+            this.header.putLong(SEQUENCE, 0);
+            this.header.putLong(SEQUENCE + 8, 0);
+            this.header.force();
+        }
+        this.slots = new MappedByteBuffer[2];
+        for (int i = 0; i < 2; i++) {
+            this.slots[i] = this.channel.map(FileChannel.MapMode.READ_WRITE,
+                    PAGE + i * this.layout.size, this.layout.size);
+            this.slots[i].order(ORDER);
+        }
+        this.sequence = Math.max(this.header.getLong(SEQUENCE),
+                this.header.getLong(SEQUENCE + 8));
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "checkpoint-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.pending = CompletableFuture.completedFuture(0L);
+        this.spare = null;
+    }
+
+    /**
+     * Starts a checkpoint of {@code world} and {@code programs}. The state is
+     * copied before returning, so the simulation can go on at once; the copy
+     * is written to the file in the background. If the previous checkpoint is
+     * still being written, waits for it first.
+     *
+     * @param world
+     *            the world
+     * @param programs
+     *            the program references, indexed by species, e.g., source
+     *            hashes of a ProgramRegistry
+     * @return a future completed, once the checkpoint is in the file, with
+     *         the number of bytes that had to be written
+     * @requires <pre>
+     * [world has the geometry and run seed this was opened for] and
+     * programs.length <= [maxSpecies] and [each program reference is at most
+     * MAX_PROGRAM_BYTES bytes of ASCII]
+     * </pre>
+     */
+    public synchronized CompletableFuture<Long> checkpoint(GridWorld world,
+            String[] programs) {
+        assert world != null : "Violation of: world is not null";
+        assert programs != null : "Violation of: programs is not null";
+        assert world.width() == this.layout.width
+                && world.height() == this.layout.height
+                && world.capacity() == this.layout.capacity : ""
+                        + "Violation of: [world has the geometry this was "
+                        + "opened for]";
+        assert programs.length <= this.layout.maxSpecies : ""
+                + "Violation of: programs.length <= [maxSpecies]";
+
+        this.pending.exceptionally(e -> 0L).join();
+        if (this.spare == null) {
+            this.spare = world.copy();
+        } else {
+            world.copyTo(this.spare);
+        }
+        byte[][] references = new byte[programs.length][];
+        for (int i = 0; i < programs.length; i++) {
+            references[i] = programs[i].getBytes(StandardCharsets.US_ASCII);
+            assert references[i].length <= MAX_PROGRAM_BYTES : ""
+                    + "Violation of: [each program reference is at most "
+                    + "MAX_PROGRAM_BYTES bytes]";
+        }
+        this.sequence++;
+        long seq = this.sequence;
+        GridWorld copy = this.spare;
+        this.pending = CompletableFuture.supplyAsync(() -> {
+            try {
+                return this.write(copy, references, seq);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, this.writer);
+        return this.pending;
+    }
+
+    /**
+     * Writes {@code world} and {@code references} as checkpoint {@code seq}
+     * into the slot holding the older checkpoint.
+     *
+     * @param world
+     *            the copy of the world
+     * @param references
+     *            the program references
+     * @param seq
+     *            the sequence number
+     * @return the number of bytes written
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    private long write(GridWorld world, byte[][] references, long seq)
+            throws IOException {
+        int s = 0;
+        if (this.header.getLong(SEQUENCE) > this.header
+                .getLong(SEQUENCE + 8)) {
+            s = 1;
+        }
+        this.header.putLong(SEQUENCE + 8 * s, 0);
+        this.header.force();
+
+        ByteBuffer slot = this.slots[s];
+        Layout l = this.layout;
+        int n = world.bugs();
+        slot.putLong(0, world.randomSource().seed());
+        slot.putInt(8, n);
+        slot.putInt(12, references.length);
+        byte[] table = new byte[l.maxSpecies * MAX_PROGRAM_BYTES];
+        for (int i = 0; i < references.length; i++) {
+            System.arraycopy(references[i], 0, table, i * MAX_PROGRAM_BYTES,
+                    references[i].length);
+        }
+        long written = 16 + putBytes(slot, PROGRAMS, table, table.length);
+        written += putLongs(slot, l.randoms,
+                world.randomSource().stateArray(), l.capacity);
+        written += putInts(slot, l.grid, world.cellArray(), l.cells);
+        written += putInts(slot, l.positions, world.positionArray(), n);
+        written += putInts(slot, l.pcs, world.pcArray(), n);
+        written += putShorts(slot, l.species, world.speciesArray(), n);
+        written += putBytes(slot, l.directions, world.directionArray(), n);
+        this.slots[s].force();
+
+        this.header.putLong(SEQUENCE + 8 * s, seq);
+        this.header.force();
+        return written;
+    }
+
+    /**
+     * Returns the part of {@code slot} of {@code length} bytes at
+     * {@code offset}, in the byte order of the file.
+     *
+     * @param slot
+     *            the slot
+     * @param offset
+     *            the offset of the part
+     * @param length
+     *            the length of the part
+     * @return the part of slot
+     */
+    private static ByteBuffer region(ByteBuffer slot, long offset,
+            long length) {
+        return slot.slice((int) offset, (int) length).order(ORDER);
+    }
+
+    /**
+     * Writes the first {@code n} entries of {@code a} at {@code offset} in
+     * {@code slot}, skipping the blocks that are already there.
+     *
+     * @param slot
+     *            the slot
+     * @param offset
+     *            the offset
+     * @param a
+     *            the array
+     * @param n
+     *            the number of entries
+     * @return the number of bytes written
+     */
+    private static long putLongs(ByteBuffer slot, long offset, long[] a,
+            int n) {
+        LongBuffer dst = region(slot, offset, 8L * n).asLongBuffer();
+        int block = BLOCK / 8;
+        long written = 0;
+        for (int i = 0; i < n; i += block) {
+            int len = Math.min(block, n - i);
+            if (!dst.slice(i, len).equals(LongBuffer.wrap(a, i, len))) {
+                dst.put(i, a, i, len);
+                written += 8L * len;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Writes the first {@code n} entries of {@code a} at {@code offset} in
+     * {@code slot}, skipping the blocks that are already there.
+     *
+     * @param slot
+     *            the slot
+     * @param offset
+     *            the offset
+     * @param a
+     *            the array
+     * @param n
+     *            the number of entries
+     * @return the number of bytes written
+     */
+    private static long putInts(ByteBuffer slot, long offset, int[] a, int n) {
+        IntBuffer dst = region(slot, offset, 4L * n).asIntBuffer();
+        int block = BLOCK / 4;
+        long written = 0;
+        for (int i = 0; i < n; i += block) {
+            int len = Math.min(block, n - i);
+            if (!dst.slice(i, len).equals(IntBuffer.wrap(a, i, len))) {
+                dst.put(i, a, i, len);
+                written += 4L * len;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Writes the first {@code n} entries of {@code a} at {@code offset} in
+     * {@code slot}, skipping the blocks that are already there.
+     *
+     * @param slot
+     *            the slot
+     * @param offset
+     *            the offset
+     * @param a
+     *            the array
+     * @param n
+     *            the number of entries
+     * @return the number of bytes written
+     */
+    private static long putShorts(ByteBuffer slot, long offset, short[] a,
+            int n) {
+        ShortBuffer dst = region(slot, offset, 2L * n).asShortBuffer();
+        int block = BLOCK / 2;
+        long written = 0;
+        for (int i = 0; i < n; i += block) {
+            int len = Math.min(block, n - i);
+            if (!dst.slice(i, len).equals(ShortBuffer.wrap(a, i, len))) {
+                dst.put(i, a, i, len);
+                written += 2L * len;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Writes the first {@code n} entries of {@code a} at {@code offset} in
+     * {@code slot}, skipping the blocks that are already there.
+     *
+     * @param slot
+     *            the slot
+     * @param offset
+     *            the offset
+     * @param a
+     *            the array
+     * @param n
+     *            the number of entries
+     * @return the number of bytes written
+     */
+    private static long putBytes(ByteBuffer slot, long offset, byte[] a,
+            int n) {
+        ByteBuffer dst = region(slot, offset, n);
+        long written = 0;
+        for (int i = 0; i < n; i += BLOCK) {
+            int len = Math.min(BLOCK, n - i);
+            if (!dst.slice(i, len).equals(ByteBuffer.wrap(a, i, len))) {
+                dst.put(i, a, i, len);
+                written += len;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Reports the sequence number of the last checkpoint started, 0 if there
+     * is none.
+     *
+     * @return the sequence number
+     */
+    public synchronized long sequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Waits for the checkpoint being written, if any, and closes the file.
+     *
+     * @throws IOException
+     *             if the file cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            this.pending.exceptionally(e -> 0L).join();
+        } finally {
+            this.writer.shutdown();
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Restores the last complete checkpoint in {@code file}.
+     *
+     * @param file
+     *            the checkpoint file
+     * @return the restored world, program references and sequence number
+     * @throws IOException
+     *             if the file cannot be read, is not a checkpoint file or
+     *             holds no complete checkpoint
+     */
+    public static Restored restore(Path file) throws IOException {
+        assert file != null : "Violation of: file is not null";
+
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            if (ch.size() < PAGE) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            ByteBuffer h = ch.map(FileChannel.MapMode.READ_ONLY, 0, PAGE)
+                    .order(ORDER);
+            if (h.getInt(0) != MAGIC || h.getInt(4) != VERSION) {
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            Layout l = new Layout(h.getInt(8), h.getInt(12), h.getInt(16),
+                    h.getInt(20));
+            if (h.getLong(24) != l.size || ch.size() != PAGE + 2 * l.size) {
+                throw new IOException("Truncated checkpoint file: " + file);
+            }
+            long seq0 = h.getLong(SEQUENCE);
+            long seq1 = h.getLong(SEQUENCE + 8);
+            if (seq0 == 0 && seq1 == 0) {
+                throw new IOException("No complete checkpoint in: " + file);
+            }
+            int s = 0;
+            long seq = seq0;
+            if (seq1 > seq0) {
+                s = 1;
+                seq = seq1;
+            }
+            ByteBuffer slot = ch.map(FileChannel.MapMode.READ_ONLY,
+                    PAGE + s * l.size, l.size).order(ORDER);
+
+            int n = slot.getInt(8);
+            int species = slot.getInt(12);
+            if (n < 0 || n > l.capacity || species < 0
+                    || species > l.maxSpecies) {
+                throw new IOException("Corrupt checkpoint file: " + file);
+            }
+            GridWorld world = new GridWorld(l.width, l.height, l.capacity,
+                    slot.getLong(0));
+            String[] programs = new String[species];
+            byte[] reference = new byte[MAX_PROGRAM_BYTES];
+            for (int i = 0; i < species; i++) {
+                slot.get(PROGRAMS + i * MAX_PROGRAM_BYTES, reference);
+                int len = 0;
+                while (len < MAX_PROGRAM_BYTES && reference[len] != 0) {
+                    len++;
+                }
+                programs[i] = new String(reference, 0, len,
+                        StandardCharsets.US_ASCII);
+            }
+            region(slot, l.randoms, 8L * l.capacity).asLongBuffer()
+                    .get(world.randomSource().stateArray());
+            region(slot, l.grid, 4L * l.cells).asIntBuffer()
+                    .get(world.cellArray());
+            region(slot, l.positions, 4L * n).asIntBuffer()
+                    .get(world.positionArray(), 0, n);
+            region(slot, l.pcs, 4L * n).asIntBuffer().get(world.pcArray(), 0,
+                    n);
+            region(slot, l.species, 2L * n).asShortBuffer()
+                    .get(world.speciesArray(), 0, n);
+            region(slot, l.directions, n).get(world.directionArray(), 0, n);
+            world.setBugs(n);
+            return new Restored(world, programs, seq);
+        }
+    }
+
+}
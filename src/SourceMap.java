@@ -0,0 +1,833 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import components.statement.StatementKernel.Condition;
+
+/**
+ * Map from the addresses of the compiled code of a {@code FrozenProgram} back
+ * to its source: for each instruction, the statement that generated it, as a
+ * path in the body of the program or of the user instruction that contains
+ * it, and the line and column of the token the statement starts with (ELSE
+ * for the jump at the end of the then branch of an IF_ELSE, and the END of END
+ * WHILE for the jump back at the end of a loop body). HALT is mapped to the
+ * END token that ends the program body.
+ *
+ * <p>
+ * The map is delta encoded as a byte array of variable-length integers, about
+ * five bytes per instruction, with an absolute entry every
+ * {@code CHECKPOINT} instructions so that {@code locate} decodes at most that
+ * many entries. It is immutable, so it can be shared by any number of
+ * threads.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class SourceMap {
+
+    /**
+     * The location in the source of an instruction of the compiled code.
+     */
+    public static final class Location {
+
+        /**
+         * The address of the instruction.
+         */
+        private final int address;
+
+        /**
+         * The user instruction whose body contains the statement, or null.
+         */
+        private final String owner;
+
+        /**
+         * The statement that generated the instruction.
+         */
+        private final FrozenStatement statement;
+
+        /**
+         * The path of the statement from the root of the body containing it.
+         */
+        private final String path;
+
+        /**
+         * The line of the token, from 1.
+         */
+        private final int line;
+
+        /**
+         * The column of the token, from 1.
+         */
+        private final int column;
+
+        /**
+         * Constructor.
+         *
+         * @param address
+         *            the address of the instruction
+         * @param owner
+         *            the user instruction containing the statement, or null
+         * @param statement
+         *            the statement
+         * @param path
+         *            the path of the statement
+         * @param line
+         *            the line of the token
+         * @param column
+         *            the column of the token
+         */
+        private Location(int address, String owner, FrozenStatement statement,
+                String path, int line, int column) {
+            this.address = address;
+            this.owner = owner;
+            this.statement = statement;
+            this.path = path;
+            this.line = line;
+            this.column = column;
+        }
+
+        /**
+         * Reports the address of the first word of the instruction.
+         *
+         * @return the address
+         */
+        public int address() {
+            return this.address;
+        }
+
+        /**
+         * Reports the user instruction whose body contains the statement.
+         *
+         * @return the name of the instruction, or null for the program body
+         */
+        public String owner() {
+            return this.owner;
+        }
+
+        /**
+         * Returns the statement that generated the instruction.
+         *
+         * @return the statement
+         */
+        public FrozenStatement statement() {
+            return this.statement;
+        }
+
+        /**
+         * Reports the path of {@code statement()} from the root of the body
+         * containing it, as in {@code BugProfiler.HotSpot.path}.
+         *
+         * @return the path
+         */
+        public String path() {
+            return this.path;
+        }
+
+        /**
+         * Reports the line of the token, counting from 1.
+         *
+         * @return the line
+         */
+        public int line() {
+            return this.line;
+        }
+
+        /**
+         * Reports the column of the token, counting bytes from 1.
+         *
+         * @return the column
+         */
+        public int column() {
+            return this.column;
+        }
+
+        @Override
+        public String toString() {
+            String owner = "";
+            if (this.owner != null) {
+                owner = this.owner;
+            }
+            return this.line + ":" + this.column + " " + owner + this.path;
+        }
+
+    }
+
+    /**
+     * Number of entries between two absolute entries.
+     */
+    private static final int CHECKPOINT = 32;
+
+    /**
+     * The program.
+     */
+    private final FrozenProgram program;
+
+    /**
+     * The user instructions, by owner index; index 0 stands for the body.
+     */
+    private final String[] owners;
+
+    /**
+     * The entries: for each instruction, in increasing order of address, the
+     * address, the owner index, the preorder number of the statement in the
+     * body of its owner, the line and the column, as variable-length
+     * integers. The address, number and line are deltas from the previous
+     * entry, zigzag encoded but for the address, and from 0 for every
+     * {@code CHECKPOINT}-th entry.
+     */
+    private final byte[] entries;
+
+    /**
+     * The address of every {@code CHECKPOINT}-th entry.
+     */
+    private final int[] checkpointAddresses;
+
+    /**
+     * The index in {@code entries} of every {@code CHECKPOINT}-th entry.
+     */
+    private final int[] checkpointOffsets;
+
+    /**
+     * Builder state: the entries encoded so far.
+     */
+    private static final class Encoder {
+
+        /**
+         * The bytes.
+         */
+        private byte[] bytes = new byte[256];
+
+        /**
+         * The number of bytes.
+         */
+        private int size = 0;
+
+        /**
+         * The number of entries.
+         */
+        private int count = 0;
+
+        /**
+         * The addresses of the checkpoints.
+         */
+        private int[] addresses = new int[16];
+
+        /**
+         * The offsets of the checkpoints.
+         */
+        private int[] offsets = new int[16];
+
+        /**
+         * The address of the last entry.
+         */
+        private int lastAddress;
+
+        /**
+         * The preorder number of the last entry.
+         */
+        private int lastNumber;
+
+        /**
+         * The line of the last entry.
+         */
+        private int lastLine;
+
+        /**
+         * Appends {@code value} as a variable-length integer: 7 bits per
+         * byte, low bits first, with the high bit set on all but the last.
+         *
+         * @param value
+         *            the value
+         * @requires value >= 0
+         */
+        private void put(int value) {
+            if (this.size + 5 > this.bytes.length) {
+                this.bytes = Arrays.copyOf(this.bytes, 2 * this.bytes.length);
+            }
+            int v = value;
+            while ((v & ~0x7F) != 0) {
+                this.bytes[this.size] = (byte) ((v & 0x7F) | 0x80);
+                this.size++;
+                v >>>= 7;
+            }
+            this.bytes[this.size] = (byte) v;
+            this.size++;
+        }
+
+        /**
+         * Appends an entry.
+         *
+         * @param address
+         *            the address of the instruction
+         * @param owner
+         *            the owner index
+         * @param number
+         *            the preorder number of the statement
+         * @param offset
+         *            the line and column of its token, packed by
+         *            {@code position}
+         */
+        private void add(int address, int owner, int number, long offset) {
+            if (this.count % CHECKPOINT == 0) {
+                int k = this.count / CHECKPOINT;
+                if (k == this.addresses.length) {
+                    this.addresses = Arrays.copyOf(this.addresses, 2 * k);
+                    this.offsets = Arrays.copyOf(this.offsets, 2 * k);
+                }
+                this.addresses[k] = address;
+                this.offsets[k] = this.size;
+                this.lastAddress = 0;
+                this.lastNumber = 0;
+                this.lastLine = 0;
+            }
+            int line = (int) (offset >>> 32);
+            this.put(address - this.lastAddress);
+            this.put(owner);
+            this.put(zigzag(number - this.lastNumber));
+            this.put(zigzag(line - this.lastLine));
+            this.put((int) offset);
+            this.lastAddress = address;
+            this.lastNumber = number;
+            this.lastLine = line;
+            this.count++;
+        }
+
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            the program
+     * @param o
+     *            the owners
+     * @param e
+     *            the encoder holding the entries
+     */
+    private SourceMap(FrozenProgram p, String[] o, Encoder e) {
+        this.program = p;
+        this.owners = o;
+        this.entries = Arrays.copyOf(e.bytes, e.size);
+        int checkpoints = (e.count + CHECKPOINT - 1) / CHECKPOINT;
+        this.checkpointAddresses = Arrays.copyOf(e.addresses, checkpoints);
+        this.checkpointOffsets = Arrays.copyOf(e.offsets, checkpoints);
+    }
+
+    /**
+     * Returns the source map of {@code p}, whose source is the
+     * {@code length} bytes of {@code src} at {@code offset}.
+     *
+     * @param p
+     *            the program
+     * @param src
+     *            the array holding the source of p
+     * @param offset
+     *            the offset of the source in src
+     * @param length
+     *            the length of the source
+     * @return the source map of p
+     * @throws IllegalArgumentException
+     *             if the tokens of the source do not spell p
+     * @requires 0 <= offset and 0 <= length and offset + length <= |src|
+     */
+    public static SourceMap of(FrozenProgram p, byte[] src, int offset,
+            int length) {
+        assert p != null : "Violation of: p is not null";
+        assert src != null : "Violation of: src is not null";
+
+        ByteScanner tokens = new ByteScanner();
+        tokens.scan(src, offset, length);
+        Walker walker = new Walker(p, tokens, src, offset, length);
+        walker.program();
+        String[] owners = new String[walker.owners.size() + 1];
+        long[][] positions = new long[owners.length][];
+        int k = 1;
+        for (Map.Entry<String, long[]> e : walker.owners.entrySet()) {
+            owners[k] = e.getKey();
+            positions[k] = e.getValue();
+            k++;
+        }
+        positions[0] = walker.body;
+        Encoder encoder = new Encoder();
+        int end = map(p.body(), 0, 0, new int[] { 0 }, owners, positions, p,
+                encoder);
+        encoder.add(end, 0, 0, walker.end);
+        assert end == p.codeLength() - 1 : ""
+                + "Violation of: the code of p ends with HALT";
+        return new SourceMap(p, owners, encoder);
+    }
+
+    /**
+     * Returns the source map of {@code p}, whose source is {@code src}.
+     *
+     * @param p
+     *            the program
+     * @param src
+     *            the source of p
+     * @return the source map of p
+     * @throws IllegalArgumentException
+     *             if the tokens of the source do not spell p
+     */
+    public static SourceMap of(FrozenProgram p, byte[] src) {
+        assert src != null : "Violation of: src is not null";
+
+        return of(p, src, 0, src.length);
+    }
+
+    /**
+     * Walks the tokens of the source of a program together with its
+     * statements, recording the line and column of the token each statement
+     * starts with.
+     */
+    private static final class Walker {
+
+        /**
+         * The program.
+         */
+        private final FrozenProgram program;
+
+        /**
+         * The tokens.
+         */
+        private final ByteScanner tokens;
+
+        /**
+         * The offset of the start of each line.
+         */
+        private int[] lines = new int[64];
+
+        /**
+         * The number of lines.
+         */
+        private int lineCount = 0;
+
+        /**
+         * The index of the next token.
+         */
+        private int next = 0;
+
+        /**
+         * The positions in the body of each user instruction, by preorder
+         * number, with an extra position per statement for IF_ELSE and WHILE;
+         * in source order.
+         */
+        private final Map<String, long[]> owners = new LinkedHashMap<>();
+
+        /**
+         * The positions in the program body.
+         */
+        private long[] body;
+
+        /**
+         * The position of the END that ends the program body.
+         */
+        private long end;
+
+        /**
+         * Constructor.
+         *
+         * @param p
+         *            the program
+         * @param t
+         *            the tokens of its source
+         * @param src
+         *            the array holding the source
+         * @param offset
+         *            the offset of the source in src
+         * @param length
+         *            the length of the source
+         */
+        private Walker(FrozenProgram p, ByteScanner t, byte[] src, int offset,
+                int length) {
+            this.program = p;
+            this.tokens = t;
+            this.lines[0] = offset;
+            this.lineCount = 1;
+            for (int i = offset; i < offset + length; i++) {
+                if (src[i] == '\n') {
+                    if (this.lineCount == this.lines.length) {
+                        this.lines = Arrays.copyOf(this.lines,
+                                2 * this.lineCount);
+                    }
+                    this.lines[this.lineCount] = i + 1;
+                    this.lineCount++;
+                }
+            }
+        }
+
+        /**
+         * Returns the line and column of the next token, packed into a
+         * {@code long}: the line in the high half, the column in the low.
+         *
+         * @return the position of the next token
+         */
+        private long position() {
+            int offset = this.tokens.offset(this.next);
+            int line = Arrays.binarySearch(this.lines, 0, this.lineCount,
+                    offset);
+            if (line < 0) {
+                line = -line - 2;
+            }
+            return ((long) (line + 1) << 32) | (offset - this.lines[line] + 1);
+        }
+
+        /**
+         * Moves past the next token, which must be {@code kind}.
+         *
+         * @param kind
+         *            the code of the expected token
+         * @throws IllegalArgumentException
+         *             if the next token is not of kind
+         */
+        private void expect(int kind) {
+            if (this.tokens.kind(this.next) != kind) {
+                throw new IllegalArgumentException("Source does not match "
+                        + "program: " + ByteScanner.spelling(kind)
+                        + " expected, found: " + this.tokens.text(this.next));
+            }
+            this.next++;
+        }
+
+        /**
+         * Moves past the head of an IF or WHILE statement: {@code keyword},
+         * the condition {@code c} and {@code then}.
+         *
+         * @param keyword
+         *            the code of IF or WHILE
+         * @param c
+         *            the condition of the statement
+         * @param then
+         *            the code of THEN or DO
+         * @throws IllegalArgumentException
+         *             if the next tokens are not the head
+         */
+        private void expectHead(int keyword, Condition c, int then) {
+            this.expect(keyword);
+            this.expect(ByteScanner.FIRST_CONDITION + c.ordinal());
+            this.expect(then);
+        }
+
+        /**
+         * Walks the whole program.
+         */
+        private void program() {
+            this.expect(ByteScanner.PROGRAM);
+            this.expect(ByteScanner.IDENTIFIER);
+            this.expect(ByteScanner.IS);
+            while (this.tokens.kind(this.next) == ByteScanner.INSTRUCTION) {
+                this.next++;
+                String name = this.tokens.text(this.next);
+                FrozenStatement body = this.program.context().get(name);
+                this.expect(ByteScanner.IDENTIFIER);
+                if (body == null) {
+                    throw new IllegalArgumentException("Source does not match "
+                            + "program: no instruction " + name);
+                }
+                this.expect(ByteScanner.IS);
+                long[] positions = new long[2 * body.size()];
+                this.statement(body, positions, 0);
+                this.owners.put(name, positions);
+                this.expect(ByteScanner.END);
+                this.expect(ByteScanner.IDENTIFIER);
+            }
+            this.expect(ByteScanner.BEGIN);
+            this.body = new long[2 * this.program.body().size()];
+            this.statement(this.program.body(), this.body, 0);
+            this.end = this.position();
+            this.expect(ByteScanner.END);
+        }
+
+        /**
+         * Walks {@code s}, whose preorder number is {@code number}, recording
+         * the positions of its tokens in {@code positions}: at
+         * {@code 2 * number} the first, and at {@code 2 * number + 1} the
+         * ELSE or END WHILE, if any.
+         *
+         * @param s
+         *            the statement
+         * @param positions
+         *            the positions in the body containing s
+         * @param number
+         *            the preorder number of s
+         * @return the preorder number following the statements of s
+         */
+        private int statement(FrozenStatement s, long[] positions,
+                int number) {
+            positions[2 * number] = this.position();
+            int following = number + 1;
+            switch (s.kind()) {
+                case BLOCK:
+                    for (int i = 0; i < s.numberOfChildren(); i++) {
+                        following = this.statement(s.child(i), positions,
+                                following);
+                    }
+                    break;
+                case IF:
+                    this.expectHead(ByteScanner.IF, s.condition(),
+                            ByteScanner.THEN);
+                    following = this.statement(s.child(0), positions,
+                            following);
+                    this.expect(ByteScanner.END);
+                    this.expect(ByteScanner.IF);
+                    break;
+                case IF_ELSE:
+                    this.expectHead(ByteScanner.IF, s.condition(),
+                            ByteScanner.THEN);
+                    following = this.statement(s.child(0), positions,
+                            following);
+                    positions[2 * number + 1] = this.position();
+                    this.expect(ByteScanner.ELSE);
+                    following = this.statement(s.child(1), positions,
+                            following);
+                    this.expect(ByteScanner.END);
+                    this.expect(ByteScanner.IF);
+                    break;
+                case WHILE:
+                    this.expectHead(ByteScanner.WHILE, s.condition(),
+                            ByteScanner.DO);
+                    following = this.statement(s.child(0), positions,
+                            following);
+                    positions[2 * number + 1] = this.position();
+                    this.expect(ByteScanner.END);
+                    this.expect(ByteScanner.WHILE);
+                    break;
+                default:
+                    if (!this.tokens.text(this.next).equals(s.instruction())) {
+                        throw new IllegalArgumentException("Source does not "
+                                + "match program: " + s.instruction()
+                                + " expected, found: "
+                                + this.tokens.text(this.next));
+                    }
+                    this.expect(ByteScanner.IDENTIFIER);
+                    break;
+            }
+            return following;
+        }
+
+    }
+
+    /**
+     * Appends the entries of the code generated for {@code s} at {@code pc}
+     * to {@code encoder}, as {@code BugProfiler} lays it out.
+     *
+     * @param s
+     *            the statement
+     * @param pc
+     *            the address of the code of s
+     * @param owner
+     *            the index of the owner of s
+     * @param number
+     *            the preorder number of s, in element 0; replaced by the
+     *            number following the statements of s
+     * @param owners
+     *            the owners
+     * @param positions
+     *            the positions of the statements of each owner
+     * @param p
+     *            the program
+     * @param encoder
+     *            the encoder
+     * @return the address following the code of s
+     */
+    private static int map(FrozenStatement s, int pc, int owner, int[] number,
+            String[] owners, long[][] positions, FrozenProgram p,
+            Encoder encoder) {
+        int n = number[0];
+        long[] at = positions[owner];
+        number[0] = n + 1;
+        int next = pc;
+        switch (s.kind()) {
+            case BLOCK:
+                for (int i = 0; i < s.numberOfChildren(); i++) {
+                    next = map(s.child(i), next, owner, number, owners,
+                            positions, p, encoder);
+                }
+                break;
+            case IF:
+                encoder.add(next, owner, n, at[2 * n]);
+                next = map(s.child(0), next + 2, owner, number, owners,
+                        positions, p, encoder);
+                break;
+            case IF_ELSE:
+                encoder.add(next, owner, n, at[2 * n]);
+                next = map(s.child(0), next + 2, owner, number, owners,
+                        positions, p, encoder);
+                encoder.add(next, owner, n, at[2 * n + 1]);
+                next = map(s.child(1), next + 2, owner, number, owners,
+                        positions, p, encoder);
+                break;
+            case WHILE:
+                encoder.add(next, owner, n, at[2 * n]);
+                next = map(s.child(0), next + 2, owner, number, owners,
+                        positions, p, encoder);
+                encoder.add(next, owner, n, at[2 * n + 1]);
+                next += 2;
+                break;
+            default: {
+                FrozenStatement callee = p.instruction(s.instructionId());
+                if (callee == null) {
+                    encoder.add(next, owner, n, at[2 * n]);
+                    next++;
+                } else {
+                    int calleeOwner = Arrays.asList(owners)
+                            .indexOf(s.instruction());
+                    next = map(callee, next, calleeOwner, new int[] { 0 },
+                            owners, positions, p, encoder);
+                }
+                break;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Returns {@code v} zigzag encoded, so that values of small magnitude
+     * are small non-negative values.
+     *
+     * @param v
+     *            the value
+     * @return the encoded value
+     */
+    private static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    /**
+     * Returns the location in the source of the instruction containing
+     * address {@code pc} of the compiled code.
+     *
+     * @param pc
+     *            the address
+     * @return the location of the instruction at or before pc
+     * @requires 0 <= pc < [length of the compiled code]
+     */
+    public Location locate(int pc) {
+        assert 0 <= pc : "Violation of: 0 <= pc";
+        assert pc < this.program.codeLength() : ""
+                + "Violation of: pc < [length of the compiled code]";
+
+        int k = Arrays.binarySearch(this.checkpointAddresses, pc);
+        if (k < 0) {
+            k = -k - 2;
+        }
+        int[] at = { this.checkpointOffsets[k] };
+        int address = 0;
+        int owner = 0;
+        int number = 0;
+        int line = 0;
+        int column = 0;
+        int end = this.entries.length;
+        if (k + 1 < this.checkpointOffsets.length) {
+            end = this.checkpointOffsets[k + 1];
+        }
+        boolean found = false;
+        while (!found && at[0] < end) {
+            int nextAddress = address + this.get(at);
+            if (nextAddress > pc) {
+                found = true;
+            } else {
+                address = nextAddress;
+                owner = this.get(at);
+                number += unzigzag(this.get(at));
+                line += unzigzag(this.get(at));
+                column = this.get(at);
+            }
+        }
+        FrozenStatement root = this.program.body();
+        if (owner > 0) {
+            root = this.program.context().get(this.owners[owner]);
+        }
+        StringBuilder path = new StringBuilder();
+        FrozenStatement s = find(root, number, path);
+        if (path.length() == 0) {
+            path.append('/');
+        }
+        return new Location(address, this.owners[owner], s, path.toString(),
+                line, column);
+    }
+
+    /**
+     * Decodes the variable-length integer at {@code at[0]} of the entries.
+     *
+     * @param at
+     *            the index of the integer, in element 0; replaced by the
+     *            index following it
+     * @return the integer
+     */
+    private int get(int[] at) {
+        int result = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = this.entries[at[0]];
+            at[0]++;
+            result |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    /**
+     * Returns the value zigzag encoded as {@code v}.
+     *
+     * @param v
+     *            the encoded value
+     * @return the value
+     */
+    private static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Returns the statement with preorder number {@code number} in
+     * {@code s}, and appends its path from s to {@code path}.
+     *
+     * @param s
+     *            the root
+     * @param number
+     *            the preorder number
+     * @param path
+     *            the path so far
+     * @return the statement
+     * @updates path
+     * @requires 0 <= number < [size of s]
+     */
+    private static FrozenStatement find(FrozenStatement s, int number,
+            StringBuilder path) {
+        FrozenStatement result = s;
+        int n = number;
+        while (n > 0) {
+            n--;
+            int i = 0;
+            int size = result.child(0).size();
+            while (n >= size) {
+                n -= size;
+                i++;
+                size = result.child(i).size();
+            }
+            path.append('/').append(i);
+            result = result.child(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the program.
+     *
+     * @return the program
+     */
+    public FrozenProgram program() {
+        return this.program;
+    }
+
+    /**
+     * Reports the number of bytes of the encoded entries and their
+     * checkpoints.
+     *
+     * @return the size of the encoding
+     */
+    public int encodedSize() {
+        return this.entries.length + 8 * this.checkpointAddresses.length;
+    }
+
+}
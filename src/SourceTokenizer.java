@@ -0,0 +1,66 @@
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.utilities.Tokenizer;
+
+/**
+ * Tokenizer for BL source held in memory. It produces exactly the tokens
+ * {@code Tokenizer.tokens} produces when reading the same text from a
+ * {@code SimpleReader}.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class SourceTokenizer {
+
+    /**
+     * Private constructor so this utility class cannot be instantiated.
+     */
+    private SourceTokenizer() {
+    }
+
+    /**
+     * Reports whether {@code c} separates tokens.
+     *
+     * @param c
+     *            the character
+     * @return true iff c is a space, tab, carriage return or new line
+     */
+    public static boolean isSeparator(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    /**
+     * Tokenizes {@code source}.
+     *
+     * @param source
+     *            the BL source
+     * @return the tokens of source, followed by
+     *         {@code Tokenizer.END_OF_INPUT}
+     * @ensures <pre>
+     * tokens = [the non-separator tokens in source] *
+     *   <Tokenizer.END_OF_INPUT>
+     * </pre>
+     */
+    public static Queue<String> tokens(CharSequence source) {
+        assert source != null : "Violation of: source is not null";
+
+        Queue<String> tokens = new Queue1L<>();
+        int length = source.length();
+        int pos = 0;
+        while (pos < length) {
+            while (pos < length && isSeparator(source.charAt(pos))) {
+                pos++;
+            }
+            int start = pos;
+            while (pos < length && !isSeparator(source.charAt(pos))) {
+                pos++;
+            }
+            if (start < pos) {
+                tokens.enqueue(source.subSequence(start, pos).toString());
+            }
+        }
+        tokens.enqueue(Tokenizer.END_OF_INPUT);
+        return tokens;
+    }
+
+}
@@ -1,8 +1,12 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 import components.sequence.Sequence;
 import components.statement.Statement;
 import components.statement.StatementSecondary;
 import components.tree.Tree;
 import components.tree.Tree1;
+import components.utilities.Reporter;
 import components.utilities.Tokenizer;
 
 /**
@@ -37,9 +41,9 @@ public class Statement2 extends StatementSecondary {
         private Condition condition;
 
         /**
-         * CALL instruction name.
+         * CALL instruction name in {@code InstructionNames}; null otherwise.
          */
-        private String instruction;
+        private InstructionNames.Name instruction;
 
         /**
          * Constructor for BLOCK.
@@ -75,11 +79,9 @@ public class Statement2 extends StatementSecondary {
          * @param i
          *            the instruction name
          */
-        private StatementLabel(Kind k, String i) {
+        private StatementLabel(Kind k, InstructionNames.Name i) {
             assert k == Kind.CALL : "Violation of: k = CALL";
             assert i != null : "Violation of: i is not null";
-            assert Tokenizer
-                    .isIdentifier(i) : "Violation of: i is an IDENTIFIER";
             this.kind = k;
             this.instruction = i;
         }
@@ -91,27 +93,272 @@ public class Statement2 extends StatementSecondary {
                     || (this.kind == Kind.WHILE)) {
                 condition = this.condition.toString();
             } else if (this.kind == Kind.CALL) {
-                instruction = this.instruction;
+                instruction = this.instruction.toString();
             }
             return "(" + this.kind + "," + condition + "," + instruction + ")";
         }
 
     }
 
+    /**
+     * Thread-confined free lists of the objects most often allocated and
+     * dropped by the kernel methods: {@code Statement2} shells, labels, empty
+     * tree nodes and empty child sequences.
+     */
+    private static final class Pool {
+
+        /**
+         * Maximum number of objects kept in each free list.
+         */
+        private static final int CAPACITY = 1024;
+
+        /**
+         * Free {@code Statement2} objects, each with value compose((BLOCK, ?,
+         * ?), <>).
+         */
+        private final Deque<Statement2> shells = new ArrayDeque<>();
+
+        /**
+         * Free labels.
+         */
+        private final Deque<StatementLabel> labels = new ArrayDeque<>();
+
+        /**
+         * Free trees, each of size 0.
+         */
+        private final Deque<Tree<StatementLabel>> trees = new ArrayDeque<>();
+
+        /**
+         * Free sequences of trees, each of length 0.
+         */
+        private final Deque<Sequence<Tree<StatementLabel>>> sequences =
+                new ArrayDeque<>();
+
+    }
+
+    /**
+     * The pool of the current thread, if pooling is enabled for it.
+     */
+    private static final ThreadLocal<Pool> POOL = new ThreadLocal<>();
+
+    /**
+     * Whether pooling was ever enabled; lets threads that never use pooling
+     * skip the thread-local lookup.
+     */
+    private static volatile boolean poolingUsed = false;
+
+    /**
+     * Shared representation of the empty BLOCK statement. It is never
+     * modified: every kernel method that would update {@code this.rep} in
+     * place first replaces this tree with a private one.
+     */
+    private static final Tree<StatementLabel> EMPTY_BLOCK = newEmptyBlock();
+
     /**
      * The tree representation field.
      */
     private Tree<StatementLabel> rep;
 
+    /**
+     * Returns a new tree representing the empty BLOCK statement.
+     *
+     * @return the new tree
+     * @ensures newEmptyBlock = compose((BLOCK, ?, ?), <>)
+     */
+    private static Tree<StatementLabel> newEmptyBlock() {
+        Tree<StatementLabel> t = new Tree1<>();
+        StatementLabel label = new StatementLabel(Kind.BLOCK);
+        Sequence<Tree<StatementLabel>> temp = t.newSequenceOfTree();
+        t.assemble(label, temp);
+        return t;
+    }
+
+    /**
+     * Returns the pool of the current thread, or {@code null} if pooling is
+     * not enabled for it.
+     *
+     * @return the pool of the current thread
+     */
+    private static Pool pool() {
+        Pool p = null;
+        if (poolingUsed) {
+            p = POOL.get();
+        }
+        return p;
+    }
+
+    /**
+     * Returns a label with the given fields, reusing a pooled one if possible.
+     *
+     * @param k
+     *            the kind of statement
+     * @param c
+     *            the statement condition, for IF, IF_ELSE and WHILE
+     * @param i
+     *            the instruction name, for CALL, or null
+     * @return the label
+     */
+    private static StatementLabel newLabel(Kind k, Condition c,
+            InstructionNames.Name i) {
+        Pool p = pool();
+        StatementLabel label;
+        if (p != null && !p.labels.isEmpty()) {
+            label = p.labels.pop();
+            label.kind = k;
+            label.condition = c;
+            label.instruction = i;
+        } else if (k == Kind.BLOCK) {
+            label = new StatementLabel(k);
+        } else if (k == Kind.CALL) {
+            label = new StatementLabel(k, i);
+        } else {
+            label = new StatementLabel(k, c);
+        }
+        return label;
+    }
+
+    /**
+     * Returns an empty tree, reusing a pooled one if possible.
+     *
+     * @return the tree
+     * @ensures newTree.size() = 0
+     */
+    private static Tree<StatementLabel> newTree() {
+        Pool p = pool();
+        Tree<StatementLabel> t;
+        if (p != null && !p.trees.isEmpty()) {
+            t = p.trees.pop();
+        } else {
+            t = new Tree1<>();
+        }
+        return t;
+    }
+
+    /**
+     * Returns an empty sequence of trees, reusing a pooled one if possible.
+     *
+     * @return the sequence
+     * @ensures newSequence = <>
+     */
+    private static Sequence<Tree<StatementLabel>> newSequence() {
+        Pool p = pool();
+        Sequence<Tree<StatementLabel>> seq;
+        if (p != null && !p.sequences.isEmpty()) {
+            seq = p.sequences.pop();
+        } else {
+            seq = EMPTY_BLOCK.newSequenceOfTree();
+        }
+        return seq;
+    }
+
+    /**
+     * Returns {@code label}, {@code t} and {@code seq} to the pool of the
+     * current thread, if pooling is enabled for it. Any argument may be
+     * {@code null}.
+     *
+     * @param label
+     *            the label to recycle
+     * @param t
+     *            the tree to recycle
+     * @param seq
+     *            the sequence to recycle
+     * @requires <pre>
+     * label, t and seq are no longer referenced and
+     * [t is not EMPTY_BLOCK] and t.size() = 0 and seq = <>
+     * </pre>
+     */
+    private static void recycle(StatementLabel label, Tree<StatementLabel> t,
+            Sequence<Tree<StatementLabel>> seq) {
+        Pool p = pool();
+        if (p != null) {
+            if (label != null && p.labels.size() < Pool.CAPACITY) {
+                label.condition = null;
+                label.instruction = null;
+                p.labels.push(label);
+            }
+            if (t != null && p.trees.size() < Pool.CAPACITY) {
+                p.trees.push(t);
+            }
+            if (seq != null && p.sequences.size() < Pool.CAPACITY) {
+                p.sequences.push(seq);
+            }
+        }
+    }
+
+    /**
+     * Takes apart {@code t} and returns all of its labels, nodes and the
+     * sequences used to take it apart to the pool {@code p}.
+     *
+     * @param t
+     *            the tree to release
+     * @param p
+     *            the pool of the current thread
+     * @updates t
+     * @requires t is no longer referenced
+     */
+    private static void releaseTree(Tree<StatementLabel> t, Pool p) {
+        if (t != EMPTY_BLOCK) {
+            StatementLabel label = null;
+            Sequence<Tree<StatementLabel>> children = null;
+            if (t.size() > 0) {
+                children = newSequence();
+                label = t.disassemble(children);
+                while (children.length() > 0) {
+                    releaseTree(children.remove(children.length() - 1), p);
+                }
+            }
+            recycle(label, t, children);
+        }
+    }
+
     /**
      * Creator of initial representation.
      */
     private void createNewRep() {
+        this.rep = EMPTY_BLOCK;
+    }
 
-        this.rep = new Tree1<>();
-        StatementLabel label = new StatementLabel(Kind.BLOCK);
-        Sequence<Tree<StatementLabel>> temp = this.rep.newSequenceOfTree();
-        this.rep.assemble(label, temp);
+    /**
+     * Clears {@code this}, first returning the objects of its representation
+     * to the pool of the current thread if pooling is enabled for it.
+     *
+     * @clears this
+     */
+    private void discardRep() {
+        Pool p = pool();
+        if (p != null) {
+            releaseTree(this.rep, p);
+        }
+        this.createNewRep();
+    }
+
+    /**
+     * Makes sure {@code this.rep} is not the shared {@code EMPTY_BLOCK} so
+     * that it can be updated in place.
+     *
+     * @ensures this.rep is not EMPTY_BLOCK and this = #this
+     */
+    private void makeRepPrivate() {
+        if (this.rep == EMPTY_BLOCK) {
+            Tree<StatementLabel> t = newTree();
+            Sequence<Tree<StatementLabel>> temp = newSequence();
+            t.assemble(newLabel(Kind.BLOCK, null, null), temp);
+            recycle(null, null, temp);
+            this.rep = t;
+        }
+    }
+
+    /**
+     * Makes sure {@code this.rep} is not the shared {@code EMPTY_BLOCK} so
+     * that it can be replaced by {@code assemble}. The value of {@code this}
+     * is not preserved.
+     *
+     * @ensures this.rep is not EMPTY_BLOCK
+     */
+    private void makeRepAssemblable() {
+        if (this.rep == EMPTY_BLOCK) {
+            this.rep = newTree();
+        }
     }
 
     /*
@@ -131,6 +378,16 @@ public class Statement2 extends StatementSecondary {
 
     @Override
     public final Statement2 newInstance() {
+        if (this.getClass() == Statement2.class) {
+            Pool p = pool();
+            Statement2 s;
+            if (p != null && !p.shells.isEmpty()) {
+                s = p.shells.pop();
+            } else {
+                s = new Statement2();
+            }
+            return s;
+        }
         try {
             return this.getClass().getConstructor().newInstance();
         } catch (ReflectiveOperationException e) {
@@ -141,7 +398,7 @@ public class Statement2 extends StatementSecondary {
 
     @Override
     public final void clear() {
-        this.createNewRep();
+        this.discardRep();
     }
 
     @Override
@@ -155,6 +412,7 @@ public class Statement2 extends StatementSecondary {
          * execution in that case: source must be of dynamic type Statement2.
          */
         Statement2 localSource = (Statement2) source;
+        this.discardRep();
         this.rep = localSource.rep;
         localSource.createNewRep();
     }
@@ -182,7 +440,9 @@ public class Statement2 extends StatementSecondary {
         assert s.kind() != Kind.BLOCK : "Violation of: [s is not a BLOCK statement]";
 
         Statement2 local = (Statement2) s;
+        this.makeRepPrivate();
         this.rep.addSubtree(pos, local.rep);
+        recycle(null, local.rep, null);
         local.createNewRep();
     }
 
@@ -223,10 +483,12 @@ public class Statement2 extends StatementSecondary {
         assert s.kind() == Kind.BLOCK : ""
                 + "Violation of: [s is a BLOCK statement]";
         Statement2 localS = (Statement2) s;
-        StatementLabel label = new StatementLabel(Kind.IF, c);
-        Sequence<Tree<StatementLabel>> children = this.rep.newSequenceOfTree();
+        StatementLabel label = newLabel(Kind.IF, c, null);
+        this.makeRepAssemblable();
+        Sequence<Tree<StatementLabel>> children = newSequence();
         children.add(0, localS.rep);
         this.rep.assemble(label, children);
+        recycle(null, null, children);
         localS.createNewRep(); // clears s
     }
 
@@ -238,11 +500,13 @@ public class Statement2 extends StatementSecondary {
         assert this.kind() == Kind.IF : ""
                 + "Violation of: [this is an IF statement]";
         Statement2 localS = (Statement2) s;
-        Sequence<Tree<StatementLabel>> children = this.rep.newSequenceOfTree();
+        Sequence<Tree<StatementLabel>> children = newSequence();
         StatementLabel label = this.rep.disassemble(children);
         localS.rep = children.remove(0);
+        Condition c = label.condition;
+        recycle(label, this.rep, children);
         this.createNewRep(); // clears this
-        return label.condition;
+        return c;
     }
 
     @Override
@@ -263,12 +527,14 @@ public class Statement2 extends StatementSecondary {
         Statement2 local1 = (Statement2) s1;
         Statement2 local2 = (Statement2) s2;
 
-        StatementLabel label = new StatementLabel(Kind.IF_ELSE, c);
-        Sequence<Tree<StatementLabel>> children = this.rep.newSequenceOfTree();
+        StatementLabel label = newLabel(Kind.IF_ELSE, c, null);
+        this.makeRepAssemblable();
+        Sequence<Tree<StatementLabel>> children = newSequence();
         children.add(0, local1.rep);
         children.add(1, local2.rep);
 
         this.rep.assemble(label, children);
+        recycle(null, null, children);
 
         local1.createNewRep();
         local2.createNewRep();
@@ -290,14 +556,16 @@ public class Statement2 extends StatementSecondary {
         Statement2 local1 = (Statement2) s1;
         Statement2 local2 = (Statement2) s2;
 
-        Sequence<Tree<StatementLabel>> children = this.rep.newSequenceOfTree();
+        Sequence<Tree<StatementLabel>> children = newSequence();
         StatementLabel label = this.rep.disassemble(children);
 
         local1.rep = children.remove(0);
         local2.rep = children.remove(0);
 
+        Condition c = label.condition;
+        recycle(label, this.rep, children);
         this.createNewRep();
-        return label.condition;
+        return c;
     }
 
     @Override
@@ -310,11 +578,13 @@ public class Statement2 extends StatementSecondary {
 
         Statement2 local = (Statement2) s;
 
-        StatementLabel label = new StatementLabel(Kind.WHILE, c);
-        Sequence<Tree<StatementLabel>> children = this.rep.newSequenceOfTree();
+        StatementLabel label = newLabel(Kind.WHILE, c, null);
+        this.makeRepAssemblable();
+        Sequence<Tree<StatementLabel>> children = newSequence();
         children.add(0, local.rep);
 
         this.rep.assemble(label, children);
+        recycle(null, null, children);
 
         local.createNewRep();
 
@@ -330,13 +600,15 @@ public class Statement2 extends StatementSecondary {
 
         Statement2 local = (Statement2) s;
 
-        Sequence<Tree<StatementLabel>> children = this.rep.newSequenceOfTree();
+        Sequence<Tree<StatementLabel>> children = newSequence();
         StatementLabel label = this.rep.disassemble(children);
 
         local.rep = children.remove(0);
 
+        Condition c = label.condition;
+        recycle(label, this.rep, children);
         this.createNewRep();
-        return label.condition;
+        return c;
     }
 
     @Override
@@ -345,9 +617,12 @@ public class Statement2 extends StatementSecondary {
         assert Tokenizer.isIdentifier(inst) : ""
                 + "Violation of: inst is a valid IDENTIFIER";
 
-        StatementLabel label = new StatementLabel(Kind.CALL, inst);
-        Sequence<Tree<StatementLabel>> children = this.rep.newSequenceOfTree();
+        StatementLabel label = newLabel(Kind.CALL, null,
+                InstructionNames.intern(inst));
+        this.makeRepAssemblable();
+        Sequence<Tree<StatementLabel>> children = newSequence();
         this.rep.assemble(label, children);
+        recycle(null, null, children);
     }
 
     @Override
@@ -355,9 +630,609 @@ public class Statement2 extends StatementSecondary {
         assert this.kind() == Kind.CALL : ""
                 + "Violation of: [this is a CALL statement]";
 
-        String out = this.rep.root().instruction;
-        this.createNewRep();
+        String out = this.rep.root().instruction.toString();
+        this.discardRep();
         return out;
     }
 
+    /*
+     * Instruction id methods -------------------------------------------------
+     */
+
+    /**
+     * Reports the id in {@code InstructionNames} of the instruction called by
+     * {@code this}, without disassembling it.
+     *
+     * @return the instruction id
+     * @requires [this is a CALL statement]
+     * @ensures <pre>
+     * InstructionNames.name(instructionId) =
+     *   [the instruction name of this]
+     * </pre>
+     */
+    public final int instructionId() {
+        assert this.kind() == Kind.CALL : ""
+                + "Violation of: [this is a CALL statement]";
+
+        return this.rep.root().instruction.id();
+    }
+
+    /**
+     * Returns the interned name of the instruction called by {@code this},
+     * without disassembling it. Holding it keeps {@code instructionId()}
+     * valid after {@code this} is changed.
+     *
+     * @return the instruction name
+     * @requires [this is a CALL statement]
+     * @ensures <pre>
+     * instructionName.toString() = [the instruction name of this]
+     * </pre>
+     */
+    public final InstructionNames.Name instructionName() {
+        assert this.kind() == Kind.CALL : ""
+                + "Violation of: [this is a CALL statement]";
+
+        return this.rep.root().instruction;
+    }
+
+    /*
+     * Bulk block methods -----------------------------------------------------
+     */
+
+    /**
+     * Moves the last {@code from.length() - pos} entries of {@code from}, in
+     * order, to the end of {@code to}, removing them only from the end of
+     * {@code from}.
+     *
+     * @param from
+     *            the source sequence
+     * @param pos
+     *            the position of the first entry to move
+     * @param to
+     *            the destination sequence
+     * @updates from, to
+     * @requires 0 <= pos <= |from|
+     * @ensures <pre>
+     * from = #from[0, pos) and to = #to * #from[pos, |#from|)
+     * </pre>
+     */
+    private static void moveSuffix(Sequence<Tree<StatementLabel>> from,
+            int pos, Sequence<Tree<StatementLabel>> to) {
+        int length = from.length();
+        for (int i = pos; i < length; i++) {
+            to.add(to.length(), from.entry(i));
+        }
+        for (int i = length; i > pos; i--) {
+            from.remove(i - 1);
+        }
+    }
+
+    /**
+     * Inserts all the statements of the BLOCK {@code s} into {@code this} at
+     * position {@code pos}, in one step: the children are moved without being
+     * copied, in time linear in the number of statements moved and those
+     * after {@code pos}.
+     *
+     * @param pos
+     *            the position at which to insert
+     * @param s
+     *            the BLOCK whose statements are inserted
+     * @updates this
+     * @clears s
+     * @requires <pre>
+     * [this is a BLOCK statement] and [s is a BLOCK statement] and
+     * 0 <= pos <= [length of this BLOCK]
+     * </pre>
+     * @ensures <pre>
+     * this = [#this with the children of #s inserted at position pos]
+     * </pre>
+     */
+    public final void spliceIntoBlock(int pos, Statement s) {
+        assert s != null : "Violation of: s is not null";
+        assert s != this : "Violation of: s is not this";
+        assert s instanceof Statement2 : "Violation of: s is a Statement2";
+        assert this.kind() == Kind.BLOCK : ""
+                + "Violation of: [this is a BLOCK statement]";
+        assert s.kind() == Kind.BLOCK : ""
+                + "Violation of: [s is a BLOCK statement]";
+        assert 0 <= pos : "Violation of: 0 <= pos";
+        assert pos <= this.lengthOfBlock() : ""
+                + "Violation of: pos <= [length of this BLOCK]";
+
+        Statement2 local = (Statement2) s;
+        if (local.rep != EMPTY_BLOCK && local.rep.numberOfSubtrees() > 0) {
+            this.makeRepPrivate();
+            Sequence<Tree<StatementLabel>> mine = newSequence();
+            StatementLabel label = this.rep.disassemble(mine);
+            Sequence<Tree<StatementLabel>> theirs = newSequence();
+            StatementLabel theirLabel = local.rep.disassemble(theirs);
+            Sequence<Tree<StatementLabel>> tail = newSequence();
+            moveSuffix(mine, pos, tail);
+            moveSuffix(theirs, 0, mine);
+            moveSuffix(tail, 0, mine);
+            this.rep.assemble(label, mine);
+            recycle(theirLabel, local.rep, theirs);
+            recycle(null, null, mine);
+            recycle(null, null, tail);
+        }
+        local.createNewRep();
+    }
+
+    /**
+     * Removes the statements at positions {@code from} to {@code to - 1} from
+     * {@code this} and returns them as a BLOCK, in one step: the children are
+     * moved without being copied, in time linear in the number of statements
+     * from position {@code from} on.
+     *
+     * @param from
+     *            the position of the first statement to remove
+     * @param to
+     *            the position after the last statement to remove
+     * @return the BLOCK of the removed statements
+     * @updates this
+     * @requires <pre>
+     * [this is a BLOCK statement] and
+     * 0 <= from <= to <= [length of this BLOCK]
+     * </pre>
+     * @ensures <pre>
+     * [extractFromBlock is a BLOCK whose children are the children of #this
+     *  at positions from to to - 1, in order] and
+     * this = [#this without those children]
+     * </pre>
+     */
+    public final Statement extractFromBlock(int from, int to) {
+        assert this.kind() == Kind.BLOCK : ""
+                + "Violation of: [this is a BLOCK statement]";
+        assert 0 <= from : "Violation of: 0 <= from";
+        assert from <= to : "Violation of: from <= to";
+        assert to <= this.lengthOfBlock() : ""
+                + "Violation of: to <= [length of this BLOCK]";
+        /*
+         * The following call to Statement newInstance method is a violation of
+         * the kernel purity rule, as in removeFromBlock.
+         */
+        Statement2 result = this.newInstance();
+        if (from < to) {
+            Sequence<Tree<StatementLabel>> mine = newSequence();
+            StatementLabel label = this.rep.disassemble(mine);
+            Sequence<Tree<StatementLabel>> tail = newSequence();
+            moveSuffix(mine, to, tail);
+            Sequence<Tree<StatementLabel>> extracted = newSequence();
+            moveSuffix(mine, from, extracted);
+            moveSuffix(tail, 0, mine);
+            this.rep.assemble(label, mine);
+            result.rep = newTree();
+            result.rep.assemble(newLabel(Kind.BLOCK, null, null), extracted);
+            recycle(null, null, mine);
+            recycle(null, null, tail);
+            recycle(null, null, extracted);
+        }
+        return result;
+    }
+
+    /*
+     * Simplification methods -------------------------------------------------
+     */
+
+    /**
+     * Returns the condition that is true exactly when {@code c} is false, or
+     * {@code RANDOM} for {@code RANDOM}, which is its own negation in
+     * distribution.
+     *
+     * @param c
+     *            the condition
+     * @return the negation of c
+     * @requires c /= TRUE
+     */
+    private static Condition negation(Condition c) {
+        Condition result;
+        switch (c) {
+            case NEXT_IS_EMPTY:
+                result = Condition.NEXT_IS_NOT_EMPTY;
+                break;
+            case NEXT_IS_NOT_EMPTY:
+                result = Condition.NEXT_IS_EMPTY;
+                break;
+            case NEXT_IS_WALL:
+                result = Condition.NEXT_IS_NOT_WALL;
+                break;
+            case NEXT_IS_NOT_WALL:
+                result = Condition.NEXT_IS_WALL;
+                break;
+            case NEXT_IS_FRIEND:
+                result = Condition.NEXT_IS_NOT_FRIEND;
+                break;
+            case NEXT_IS_NOT_FRIEND:
+                result = Condition.NEXT_IS_FRIEND;
+                break;
+            case NEXT_IS_ENEMY:
+                result = Condition.NEXT_IS_NOT_ENEMY;
+                break;
+            case NEXT_IS_NOT_ENEMY:
+                result = Condition.NEXT_IS_ENEMY;
+                break;
+            default:
+                assert c == Condition.RANDOM : "Violation of: c /= TRUE";
+                result = Condition.RANDOM;
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Reports whether {@code s} is a {@code WHILE TRUE} statement, after which
+     * nothing in the same block is reachable.
+     *
+     * @param s
+     *            the statement
+     * @return true iff s is a WHILE statement with condition TRUE
+     */
+    private static boolean isWhileTrue(Statement s) {
+        boolean result = false;
+        if (s.kind() == Kind.WHILE) {
+            Statement body = s.newInstance();
+            Condition c = s.disassembleWhile(body);
+            result = c == Condition.TRUE;
+            s.assembleWhile(c, body);
+        }
+        return result;
+    }
+
+    /**
+     * Simplifies {@code s}, which may be any {@code Statement}, using only its
+     * kernel methods; see {@code simplify(boolean)}. Calls to {@code skip}
+     * are removed only if {@code dropSkips} is true, and never inside a WHILE
+     * body, so that no loop loses the primitive instruction it performs.
+     *
+     * @param s
+     *            the statement to simplify
+     * @param dropSkips
+     *            whether calls to skip may be removed from s
+     * @updates s
+     * @ensures [s is #s simplified]
+     */
+    static void simplify(Statement s, boolean dropSkips) {
+        switch (s.kind()) {
+            case BLOCK: {
+                Statement result = s.newInstance();
+                boolean reachable = true;
+                while (reachable && s.lengthOfBlock() > 0) {
+                    Statement child = s.removeFromBlock(0);
+                    simplify(child, dropSkips);
+                    Statement children = child;
+                    if (child.kind() != Kind.BLOCK) {
+                        children = s.newInstance();
+                        children.addToBlock(0, child);
+                    }
+                    while (reachable && children.lengthOfBlock() > 0) {
+                        Statement next = children.removeFromBlock(0);
+                        reachable = !isWhileTrue(next);
+                        result.addToBlock(result.lengthOfBlock(), next);
+                    }
+                }
+                s.transferFrom(result);
+                break;
+            }
+            case IF: {
+                Statement body = s.newInstance();
+                Condition c = s.disassembleIf(body);
+                simplify(body, dropSkips);
+                if (c == Condition.TRUE) {
+                    s.transferFrom(body);
+                } else if (body.lengthOfBlock() > 0) {
+                    s.assembleIf(c, body);
+                }
+                break;
+            }
+            case IF_ELSE: {
+                Statement ifBody = s.newInstance();
+                Statement elseBody = s.newInstance();
+                Condition c = s.disassembleIfElse(ifBody, elseBody);
+                simplify(ifBody, dropSkips);
+                simplify(elseBody, dropSkips);
+                if (c == Condition.TRUE || ifBody.equals(elseBody)) {
+                    s.transferFrom(ifBody);
+                } else if (elseBody.lengthOfBlock() == 0) {
+                    s.assembleIf(c, ifBody);
+                } else if (ifBody.lengthOfBlock() == 0) {
+                    s.assembleIf(negation(c), elseBody);
+                } else {
+                    s.assembleIfElse(c, ifBody, elseBody);
+                }
+                break;
+            }
+            case WHILE: {
+                Statement body = s.newInstance();
+                Condition c = s.disassembleWhile(body);
+                simplify(body, false);
+                s.assembleWhile(c, body);
+                break;
+            }
+            default: {
+                String instruction = s.disassembleCall();
+                if (!(dropSkips && instruction.equals("skip"))) {
+                    s.assembleCall(instruction);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Simplifies {@code this} in place, without changing the primitive
+     * instructions it performs. The rewrites are:
+     * <ul>
+     * <li>{@code IF TRUE} and {@code IF_ELSE TRUE} are replaced by their
+     * (first) body, and the statements following a {@code WHILE TRUE} in a
+     * block, which are unreachable, are removed;</li>
+     * <li>an {@code IF_ELSE} whose two bodies are equal is replaced by that
+     * body, and one with an empty body becomes an {@code IF}, on the negated
+     * condition if needed;</li>
+     * <li>an {@code IF} with an empty body is removed;</li>
+     * <li>the blocks left by these rewrites are flattened into the enclosing
+     * block;</li>
+     * <li>if {@code dropSkips} is true, calls to {@code skip} outside of WHILE
+     * bodies are removed.</li>
+     * </ul>
+     * Removing a condition or negating {@code RANDOM} may change which random
+     * values later conditions get, but not their distribution.
+     *
+     * @param dropSkips
+     *            whether calls to skip outside of WHILE bodies are removed;
+     *            must be false if this is a loop body or may be called from
+     *            one, since dropping its only skip could turn a loop into one
+     *            that never performs a primitive instruction
+     * @updates this
+     * @ensures <pre>
+     * [this performs the same primitive instructions as #this, without the
+     *  dropped calls to skip] and
+     * [this is the simplified #this, which may be a BLOCK even if #this is
+     *  not]
+     * </pre>
+     */
+    public final void simplify(boolean dropSkips) {
+        simplify(this, dropSkips);
+    }
+
+    /*
+     * Parsing methods --------------------------------------------------------
+     */
+
+    /**
+     * The conditions, indexed by condition ordinal.
+     */
+    private static final Condition[] CONDITIONS = Condition.values();
+
+    /**
+     * Moves the cursor of {@code tokens} past the next token, which must be a
+     * condition, and returns it.
+     *
+     * @param tokens
+     *            the tokens
+     * @return the condition
+     * @updates tokens
+     */
+    private static Condition parseCondition(TokenArray tokens) {
+        int kind = tokens.front();
+        if (!ByteScanner.isCondition(kind)) {
+            Reporter.fatalErrorToConsole("Error: CONDITION expected, found: \""
+                    + tokens.frontText() + "\"");
+        }
+        tokens.advance();
+        return CONDITIONS[kind - ByteScanner.FIRST_CONDITION];
+    }
+
+    /**
+     * Parses an IF or IF_ELSE statement from {@code tokens} into {@code s}.
+     *
+     * @param s
+     *            the statement
+     * @param tokens
+     *            the tokens, starting with IF
+     * @replaces s
+     * @updates tokens
+     */
+    private static void parseIf(Statement s, TokenArray tokens) {
+        tokens.advance();
+        Condition c = parseCondition(tokens);
+        tokens.expect(ByteScanner.THEN);
+        Statement s1 = s.newInstance();
+        parseBlock(s1, tokens);
+        int kind = tokens.front();
+        if (kind == ByteScanner.ELSE) {
+            tokens.advance();
+            Statement s2 = s.newInstance();
+            parseBlock(s2, tokens);
+            tokens.expect(ByteScanner.END);
+            tokens.expect(ByteScanner.IF);
+            s.assembleIfElse(c, s1, s2);
+        } else {
+            if (kind != ByteScanner.END) {
+                Reporter.fatalErrorToConsole("Error: Keywords \"END\" or "
+                        + "\"ELSE\" expected, found: \"" + tokens.frontText()
+                        + "\"");
+            }
+            tokens.advance();
+            tokens.expect(ByteScanner.IF);
+            s.assembleIf(c, s1);
+        }
+    }
+
+    /**
+     * Parses a WHILE statement from {@code tokens} into {@code s}.
+     *
+     * @param s
+     *            the statement
+     * @param tokens
+     *            the tokens, starting with WHILE
+     * @replaces s
+     * @updates tokens
+     */
+    private static void parseWhile(Statement s, TokenArray tokens) {
+        tokens.advance();
+        Condition c = parseCondition(tokens);
+        tokens.expect(ByteScanner.DO);
+        Statement b = s.newInstance();
+        parseBlock(b, tokens);
+        tokens.expect(ByteScanner.END);
+        tokens.expect(ByteScanner.WHILE);
+        s.assembleWhile(c, b);
+    }
+
+    /**
+     * Parses a statement from {@code tokens} into {@code s}, through the
+     * kernel methods of {@code s}, as {@code parse} does from a queue of
+     * strings, with the same error messages.
+     *
+     * @param s
+     *            the statement
+     * @param tokens
+     *            the tokens
+     * @replaces s
+     * @updates tokens
+     * @throws RuntimeException
+     *             if the tokens do not start with a valid statement
+     */
+    static void parse(Statement s, TokenArray tokens) {
+        switch (tokens.front()) {
+            case ByteScanner.IF:
+                parseIf(s, tokens);
+                break;
+            case ByteScanner.WHILE:
+                parseWhile(s, tokens);
+                break;
+            case ByteScanner.IDENTIFIER:
+                s.assembleCall(tokens.expectIdentifier());
+                break;
+            default:
+                Reporter.fatalErrorToConsole("Error: Keywords \"IF\" or "
+                        + "\"WHILE\" or IDENTIFIER expected, found: \""
+                        + tokens.frontText() + "\"");
+                break;
+        }
+    }
+
+    /**
+     * Parses a block from {@code tokens} into {@code s}: the longest sequence
+     * of statements at the cursor.
+     *
+     * @param s
+     *            the statement
+     * @param tokens
+     *            the tokens
+     * @replaces s
+     * @updates tokens
+     * @throws RuntimeException
+     *             if a statement of the block is not valid
+     */
+    static void parseBlock(Statement s, TokenArray tokens) {
+        s.clear();
+        Statement child = s.newInstance();
+        int kind = tokens.front();
+        while (kind == ByteScanner.IF || kind == ByteScanner.WHILE
+                || kind == ByteScanner.IDENTIFIER) {
+            parse(child, tokens);
+            s.addToBlock(s.lengthOfBlock(), child);
+            kind = tokens.front();
+        }
+    }
+
+    /**
+     * Parses a statement from the integer-coded {@code tokens}, as
+     * {@code parse(Queue<String>)} does, dispatching on token codes instead
+     * of comparing strings.
+     *
+     * @param tokens
+     *            the tokens
+     * @replaces this
+     * @updates tokens
+     * @throws RuntimeException
+     *             if the tokens do not start with a valid statement
+     */
+    public final void parse(TokenArray tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+
+        parse(this, tokens);
+    }
+
+    /**
+     * Parses a block from the integer-coded {@code tokens}, as
+     * {@code parseBlock(Queue<String>)} does, dispatching on token codes
+     * instead of comparing strings.
+     *
+     * @param tokens
+     *            the tokens
+     * @replaces this
+     * @updates tokens
+     * @throws RuntimeException
+     *             if a statement of the block is not valid
+     */
+    public final void parseBlock(TokenArray tokens) {
+        assert tokens != null : "Violation of: tokens is not null";
+
+        parseBlock(this, tokens);
+    }
+
+    /*
+     * Pooling methods --------------------------------------------------------
+     */
+
+    /**
+     * Enables or disables, for the current thread only, the reuse of the
+     * {@code Statement2} objects, labels, tree nodes and sequences that the
+     * kernel methods drop. Objects only return to the pool of the thread that
+     * drops them, so no synchronization is needed.
+     *
+     * @param enabled
+     *            whether pooling should be enabled for the current thread
+     * @ensures <pre>
+     * [pooling is enabled for the current thread iff enabled] and
+     * [if not enabled, the pool of the current thread is discarded]
+     * </pre>
+     */
+    public static void setPoolingEnabled(boolean enabled) {
+        if (enabled) {
+            if (POOL.get() == null) {
+                POOL.set(new Pool());
+            }
+            poolingUsed = true;
+        } else {
+            POOL.remove();
+        }
+    }
+
+    /**
+     * Reports whether pooling is enabled for the current thread.
+     *
+     * @return true iff pooling is enabled for the current thread
+     */
+    public static boolean isPoolingEnabled() {
+        return pool() != null;
+    }
+
+    /**
+     * Releases {@code s}: clears it and, if pooling is enabled for the current
+     * thread, returns {@code s} and every node of its representation to the
+     * pool of the current thread. This is the explicit release point for
+     * statements that are no longer needed, e.g., those returned by
+     * {@code removeFromBlock}.
+     *
+     * @param s
+     *            the statement to release
+     * @clears s
+     * @requires s is a Statement2 and [s is not used by the caller again]
+     */
+    public static void release(Statement s) {
+        assert s != null : "Violation of: s is not null";
+        assert s instanceof Statement2 : "Violation of: s is a Statement2";
+
+        Statement2 local = (Statement2) s;
+        local.discardRep();
+        Pool p = pool();
+        if (p != null && local.getClass() == Statement2.class
+                && p.shells.size() < Pool.CAPACITY) {
+            p.shells.push(local);
+        }
+    }
+
 }
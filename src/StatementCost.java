@@ -0,0 +1,374 @@
+import java.util.function.Function;
+
+import components.statement.Statement;
+import components.statement.StatementKernel.Condition;
+
+/**
+ * Static cost of a BL statement, computed from its abstract syntax tree
+ * without generating code: the number of words of compiled code it yields,
+ * its maximum nesting depth, and the maximum number of instructions executed
+ * between two primitive instructions. Calls of user instructions count as the
+ * code of the instruction body, which the code generator inlines. Conditions
+ * other than {@code TRUE} are assumed to take either value, and code that
+ * cannot be reached then counts only toward the number of words.
+ *
+ * <p>
+ * The number of instructions executed is counted as the budget of
+ * {@code BugInterpreter.nextAction} counts it: every jump, plus the primitive
+ * instruction or HALT that ends the step. A loop that may run forever without
+ * performing a primitive instruction makes that number {@code UNBOUNDED}.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class StatementCost {
+
+    /**
+     * Number of instructions executed on a path that can loop forever without
+     * performing a primitive instruction.
+     */
+    public static final int UNBOUNDED = Integer.MAX_VALUE;
+
+    /**
+     * Number of instructions executed on a path that does not exist.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Cost of a call of a primitive instruction.
+     */
+    private static final StatementCost PRIMITIVE = new StatementCost(1, 0,
+            NONE, 1, 0, NONE);
+
+    /**
+     * Cost of an empty block.
+     */
+    private static final StatementCost EMPTY = new StatementCost(0, 0, 0,
+            NONE, NONE, NONE);
+
+    /**
+     * Number of words of compiled code.
+     */
+    private final long words;
+
+    /**
+     * Maximum nesting depth.
+     */
+    private final int depth;
+
+    /**
+     * Maximum number of instructions executed from the start to the end
+     * without performing a primitive instruction.
+     */
+    private final int through;
+
+    /**
+     * Maximum number of instructions executed from the start up to and
+     * including the first primitive instruction.
+     */
+    private final int head;
+
+    /**
+     * Maximum number of instructions executed after a primitive instruction to
+     * the end without performing another one.
+     */
+    private final int tail;
+
+    /**
+     * Maximum number of instructions executed after a primitive instruction up
+     * to and including the next one.
+     */
+    private final int inner;
+
+    /**
+     * Constructor.
+     *
+     * @param words
+     *            the number of words of compiled code
+     * @param depth
+     *            the maximum nesting depth
+     * @param through
+     *            the cost from the start to the end
+     * @param head
+     *            the cost from the start to the first primitive instruction
+     * @param tail
+     *            the cost from a primitive instruction to the end
+     * @param inner
+     *            the cost between two primitive instructions
+     */
+    private StatementCost(long words, int depth, int through, int head,
+            int tail, int inner) {
+        this.words = words;
+        this.depth = depth;
+        this.through = through;
+        this.head = head;
+        this.tail = tail;
+        this.inner = inner;
+    }
+
+    /**
+     * Reports whether {@code instruction} is the name of a primitive
+     * instruction.
+     *
+     * @param instruction
+     *            the instruction name
+     * @return true iff instruction is a primitive instruction of BL
+     */
+    private static boolean isPrimitive(String instruction) {
+        return instruction.equals("move") || instruction.equals("turnleft")
+                || instruction.equals("turnright")
+                || instruction.equals("infect") || instruction.equals("skip");
+    }
+
+    /**
+     * Returns the number of instructions executed on a path made of a path
+     * costing {@code a} followed by one costing {@code b}.
+     *
+     * @param a
+     *            the cost of the first path, NONE or UNBOUNDED
+     * @param b
+     *            the cost of the second path, NONE or UNBOUNDED
+     * @return the cost of the combined path
+     */
+    private static int add(int a, int b) {
+        int result;
+        if (a == NONE || b == NONE) {
+            result = NONE;
+        } else {
+            result = (int) Math.min((long) a + b, UNBOUNDED);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cost of {@code a} followed by {@code b}.
+     *
+     * @param a
+     *            the cost of the first statement
+     * @param b
+     *            the cost of the second statement
+     * @return the cost of the sequence
+     */
+    private static StatementCost sequence(StatementCost a, StatementCost b) {
+        StatementCost result;
+        if (a.through == NONE && a.tail == NONE) {
+            /*
+             * a never ends, so b is unreachable and only adds code.
+             */
+            result = new StatementCost(a.words + b.words,
+                    Math.max(a.depth, b.depth), NONE, a.head, NONE, a.inner);
+        } else {
+            result = new StatementCost(a.words + b.words,
+                    Math.max(a.depth, b.depth), add(a.through, b.through),
+                    Math.max(a.head, add(a.through, b.head)),
+                    Math.max(b.tail, add(a.tail, b.through)),
+                    Math.max(Math.max(a.inner, b.inner),
+                            add(a.tail, b.head)));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the cost of {@code IF c THEN b END IF}, compiled as a
+     * conditional jump followed by {@code b}.
+     *
+     * @param c
+     *            the condition
+     * @param b
+     *            the cost of the body
+     * @return the cost of the statement
+     */
+    private static StatementCost ifCost(Condition c, StatementCost b) {
+        int through = add(1, b.through);
+        if (c != Condition.TRUE) {
+            through = Math.max(through, 1);
+        }
+        return new StatementCost(2 + b.words, 1 + b.depth, through,
+                add(1, b.head), b.tail, b.inner);
+    }
+
+    /**
+     * Returns the cost of {@code IF c THEN b1 ELSE b2 END IF}, compiled as a
+     * conditional jump, {@code b1}, a jump to the end and {@code b2}.
+     *
+     * @param c
+     *            the condition
+     * @param b1
+     *            the cost of the first body
+     * @param b2
+     *            the cost of the second body
+     * @return the cost of the statement
+     */
+    private static StatementCost ifElseCost(Condition c, StatementCost b1,
+            StatementCost b2) {
+        int through = add(2, b1.through);
+        int head = add(1, b1.head);
+        int tail = add(b1.tail, 1);
+        int inner = b1.inner;
+        if (c != Condition.TRUE) {
+            through = Math.max(through, add(1, b2.through));
+            head = Math.max(head, add(1, b2.head));
+            tail = Math.max(tail, b2.tail);
+            inner = Math.max(inner, b2.inner);
+        }
+        return new StatementCost(4 + b1.words + b2.words,
+                1 + Math.max(b1.depth, b2.depth), through, head, tail, inner);
+    }
+
+    /**
+     * Returns the cost of {@code WHILE c DO b END WHILE}, compiled as a
+     * conditional jump, {@code b} and a jump back to the conditional jump.
+     *
+     * @param c
+     *            the condition
+     * @param b
+     *            the cost of the body
+     * @return the cost of the statement
+     */
+    private static StatementCost whileCost(Condition c, StatementCost b) {
+        int through = 1;
+        int tail = add(b.tail, 2);
+        if (c == Condition.TRUE) {
+            through = NONE;
+            tail = NONE;
+        }
+        int head = add(1, b.head);
+        int inner = Math.max(b.inner, add(add(b.tail, 2), b.head));
+        if (b.through != NONE) {
+            /*
+             * The body can be run without performing a primitive instruction,
+             * so the loop can spin forever on any path reaching the test.
+             */
+            through = UNBOUNDED;
+            head = UNBOUNDED;
+            if (b.tail != NONE) {
+                tail = UNBOUNDED;
+                inner = UNBOUNDED;
+            }
+        }
+        return new StatementCost(4 + b.words, 1 + b.depth, through, head,
+                tail, inner);
+    }
+
+    /**
+     * Returns the cost of {@code s}, reading it through its kernel methods;
+     * {@code s} is restored before returning.
+     *
+     * @param s
+     *            the statement
+     * @param callees
+     *            gives the cost of the body of each user instruction, by name,
+     *            or null if it is not defined
+     * @return the cost of s
+     * @throws IllegalArgumentException
+     *             if s calls an instruction that is neither primitive nor
+     *             defined by callees
+     */
+    public static StatementCost of(Statement s,
+            Function<String, StatementCost> callees) {
+        assert s != null : "Violation of: s is not null";
+        assert callees != null : "Violation of: callees is not null";
+
+        StatementCost result;
+        switch (s.kind()) {
+            case BLOCK:
+                result = EMPTY;
+                for (int i = 0; i < s.lengthOfBlock(); i++) {
+                    Statement child = s.removeFromBlock(i);
+                    result = sequence(result, of(child, callees));
+                    s.addToBlock(i, child);
+                }
+                break;
+            case IF: {
+                Statement b = s.newInstance();
+                Condition c = s.disassembleIf(b);
+                result = ifCost(c, of(b, callees));
+                s.assembleIf(c, b);
+                break;
+            }
+            case IF_ELSE: {
+                Statement b1 = s.newInstance();
+                Statement b2 = s.newInstance();
+                Condition c = s.disassembleIfElse(b1, b2);
+                result = ifElseCost(c, of(b1, callees), of(b2, callees));
+                s.assembleIfElse(c, b1, b2);
+                break;
+            }
+            case WHILE: {
+                Statement b = s.newInstance();
+                Condition c = s.disassembleWhile(b);
+                result = whileCost(c, of(b, callees));
+                s.assembleWhile(c, b);
+                break;
+            }
+            default: {
+                String instruction = s.disassembleCall();
+                s.assembleCall(instruction);
+                if (isPrimitive(instruction)) {
+                    result = PRIMITIVE;
+                } else {
+                    result = callees.apply(instruction);
+                    if (result == null) {
+                        throw new IllegalArgumentException(
+                                "Undefined instruction: " + instruction);
+                    }
+                }
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reports the number of words of compiled code of the statement, with
+     * calls of user instructions inlined.
+     *
+     * @return the number of words
+     */
+    public long words() {
+        return this.words;
+    }
+
+    /**
+     * Reports the maximum nesting depth of IF, IF_ELSE and WHILE statements,
+     * with calls of user instructions inlined.
+     *
+     * @return the maximum nesting depth
+     */
+    public int depth() {
+        return this.depth;
+    }
+
+    /**
+     * Reports the maximum number of instructions executed in the code of the
+     * statement, from its start or from just after one of its primitive
+     * instructions, up to and including the next primitive instruction, or up
+     * to its end.
+     *
+     * @return the maximum number of instructions, or UNBOUNDED
+     */
+    public int maxStraightLine() {
+        return Math.max(Math.max(this.through, this.head),
+                Math.max(this.tail, this.inner));
+    }
+
+    /**
+     * Reports the maximum number of instructions executed by one call of
+     * {@code BugInterpreter.nextAction} when the statement is the body of a
+     * program, whose code ends with a HALT: the smallest budget that never
+     * preempts the program.
+     *
+     * @return the maximum number of instructions, or UNBOUNDED
+     */
+    public int maxStepAsBody() {
+        return Math.max(Math.max(add(this.through, 1), this.head),
+                Math.max(add(this.tail, 1), this.inner));
+    }
+
+    @Override
+    public String toString() {
+        return "words=" + this.words + ", depth=" + this.depth
+                + ", maxStraightLine=" + this.maxStraightLine();
+    }
+
+}
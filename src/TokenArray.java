@@ -0,0 +1,213 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import components.idnametable.IdNameTable;
+import components.utilities.Reporter;
+import components.utilities.Tokenizer;
+
+/**
+ * Compact token stream for the parsers of {@code Statement2} and
+ * {@code Program2}: an {@code int} code per token, as given by
+ * {@code ByteScanner}, and for each identifier its id in an identifier table,
+ * with a cursor marking the next token to parse. The arrays and the table are
+ * reused from one {@code load} to the next, so parsing many files creates no
+ * object per token.
+ *
+ * @author Rohan Patel, Zach Zhu
+ *
+ */
+public final class TokenArray {
+
+    /**
+     * Initial capacity of the token arrays.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The code of each token.
+     */
+    private int[] kinds = new int[INITIAL_CAPACITY];
+
+    /**
+     * The identifier id of each IDENTIFIER token, and the index in
+     * {@code errors} of each ERROR token.
+     */
+    private int[] values = new int[INITIAL_CAPACITY];
+
+    /**
+     * The number of tokens, END_OF_INPUT included.
+     */
+    private int size = 0;
+
+    /**
+     * The index of the next token to parse.
+     */
+    private int position = 0;
+
+    /**
+     * The identifiers, by id.
+     */
+    private final IdNameTable2 names = new IdNameTable2();
+
+    /**
+     * The texts of the ERROR tokens.
+     */
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * Replaces the tokens of {@code this} with those of the last scan of
+     * {@code scanner}, and moves the cursor to the first one. Identifier ids
+     * are those of the scanner, so the identifier table only grows.
+     *
+     * @param scanner
+     *            the scanner
+     * @updates this
+     * @requires [every previous load of this was from scanner]
+     */
+    public void load(ByteScanner scanner) {
+        assert scanner != null : "Violation of: scanner is not null";
+
+        int n = scanner.size();
+        if (this.kinds.length < n) {
+            int capacity = Math.max(n, 2 * this.kinds.length);
+            this.kinds = Arrays.copyOf(this.kinds, capacity);
+            this.values = Arrays.copyOf(this.values, capacity);
+        }
+        for (int id = this.names.size(); id < scanner.names(); id++) {
+            this.names.add(id, scanner.name(id));
+        }
+        this.errors.clear();
+        for (int i = 0; i < n; i++) {
+            int kind = scanner.kind(i);
+            this.kinds[i] = kind;
+            if (kind == ByteScanner.ERROR) {
+                this.values[i] = this.errors.size();
+                this.errors.add(scanner.text(i));
+            } else {
+                this.values[i] = scanner.id(i);
+            }
+        }
+        this.size = n;
+        this.position = 0;
+    }
+
+    /**
+     * Returns the identifier table: the identifier of each id of an
+     * IDENTIFIER token. The table must not be modified.
+     *
+     * @return the identifier table
+     */
+    public IdNameTable names() {
+        return this.names;
+    }
+
+    /**
+     * Reports the number of tokens, END_OF_INPUT included.
+     *
+     * @return the number of tokens
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Reports the index of the next token to parse.
+     *
+     * @return the position of the cursor
+     */
+    public int position() {
+        return this.position;
+    }
+
+    /**
+     * Moves the cursor back to the first token, e.g., to parse the same
+     * tokens again.
+     *
+     * @updates this
+     */
+    public void rewind() {
+        this.position = 0;
+    }
+
+    /**
+     * Reports the code of the next token.
+     *
+     * @return the code of the next token
+     * @requires [the cursor is not past END_OF_INPUT]
+     */
+    int front() {
+        return this.kinds[this.position];
+    }
+
+    /**
+     * Returns the text of the next token, for error messages.
+     *
+     * @return the text of the next token
+     * @requires [the cursor is not past END_OF_INPUT]
+     */
+    String frontText() {
+        int kind = this.kinds[this.position];
+        String result;
+        if (kind < ByteScanner.IDENTIFIER) {
+            result = ByteScanner.spelling(kind);
+        } else if (kind == ByteScanner.IDENTIFIER) {
+            result = this.names.name(this.values[this.position]);
+        } else if (kind == ByteScanner.ERROR) {
+            result = this.errors.get(this.values[this.position]);
+        } else {
+            result = Tokenizer.END_OF_INPUT;
+        }
+        return result;
+    }
+
+    /**
+     * Moves the cursor past the next token, unless it is END_OF_INPUT.
+     *
+     * @updates this
+     */
+    void advance() {
+        if (this.kinds[this.position] != ByteScanner.END_OF_INPUT) {
+            this.position++;
+        }
+    }
+
+    /**
+     * Moves the cursor past the next token, which must be the keyword
+     * {@code kind}.
+     *
+     * @param kind
+     *            the code of the keyword
+     * @updates this
+     * @throws RuntimeException
+     *             if the next token is not the keyword
+     */
+    void expect(int kind) {
+        if (this.front() != kind) {
+            Reporter.fatalErrorToConsole("Error: Keyword \""
+                    + ByteScanner.spelling(kind) + "\" expected, found: \""
+                    + this.frontText() + "\"");
+        }
+        this.advance();
+    }
+
+    /**
+     * Moves the cursor past the next token, which must be an identifier, and
+     * returns it.
+     *
+     * @return the identifier
+     * @updates this
+     * @throws RuntimeException
+     *             if the next token is not an identifier
+     */
+    String expectIdentifier() {
+        if (this.front() != ByteScanner.IDENTIFIER) {
+            Reporter.fatalErrorToConsole("Error: IDENTIFIER expected, found: \""
+                    + this.frontText() + "\"");
+        }
+        String result = this.names.name(this.values[this.position]);
+        this.advance();
+        return result;
+    }
+
+}
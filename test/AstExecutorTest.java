@@ -0,0 +1,215 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.program.Program.Instruction;
+
+/**
+ * Customized JUnit test fixture for {@code AstExecutor}.
+ */
+public class AstExecutorTest {
+
+    /**
+     * Number of steps each bug is run for.
+     */
+    private static final int STEPS = 200;
+
+    /**
+     * Source of a program with IF statements whose body reaches HALT.
+     */
+    private static final String IF_HALT = "PROGRAM Test IS BEGIN"
+            + " IF next-is-empty THEN move END IF"
+            + " IF next-is-wall THEN turnleft END IF"
+            + " IF next-is-friend THEN turnright END IF"
+            + " IF next-is-enemy THEN infect END IF skip move END Test";
+
+    /**
+     * Source of a program with nested IF_ELSE and WHILE statements and
+     * random.
+     */
+    private static final String LOOPS = "PROGRAM Test IS BEGIN WHILE true DO"
+            + " IF next-is-wall THEN turnright"
+            + " ELSE IF next-is-enemy THEN infect"
+            + " ELSE IF random THEN move ELSE turnleft END IF END IF END IF"
+            + " WHILE next-is-friend DO WHILE random DO skip END WHILE"
+            + " turnleft END WHILE END WHILE END Test";
+
+    /**
+     * Source of a program with user instructions calling each other.
+     */
+    private static final String CALLS = "PROGRAM Test IS"
+            + " INSTRUCTION look IS IF next-is-enemy THEN infect END IF"
+            + " END look"
+            + " INSTRUCTION go IS look IF next-is-empty THEN move"
+            + " ELSE turnleft END IF END go"
+            + " BEGIN WHILE true DO go look go END WHILE END Test";
+
+    /**
+     * Returns the program with the given source.
+     *
+     * @param source
+     *            the BL source
+     * @return the program
+     */
+    private static Program2 parse(String source) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens(source));
+        return p;
+    }
+
+    /**
+     * Seed of the answers of the worlds the programs run in.
+     */
+    private static final long SEED = 0x5DEECE66DL;
+
+    /**
+     * Number of bugs run.
+     */
+    private static final int BUGS = 30;
+
+    /**
+     * Runs {@code BUGS} bugs for {@code STEPS} steps each, with
+     * {@code BugInterpreter.nextAction} on the code of {@code p} in one world
+     * and {@code AstExecutor.nextAction} on {@code executor} in another world
+     * with the same answers, and asserts that each step makes the same calls
+     * on the world and that the bugs halt at the same steps.
+     *
+     * @param p
+     *            the program
+     * @param executor
+     *            the executor for p
+     */
+    private static void assertSameRun(FrozenProgram p, AstExecutor executor) {
+        int[] code = p.code();
+        LoggingWorld expected = new LoggingWorld(SEED);
+        LoggingWorld actual = new LoggingWorld(SEED);
+        int[] pcs = new int[BUGS];
+        AstExecutor.Node[] nodes = new AstExecutor.Node[BUGS];
+        for (int bug = 0; bug < BUGS; bug++) {
+            nodes[bug] = executor.start();
+        }
+        for (int step = 0; step < STEPS; step++) {
+            for (int bug = 0; bug < BUGS; bug++) {
+                pcs[bug] = BugInterpreter.nextAction(code, pcs[bug], bug,
+                        expected);
+                nodes[bug] = AstExecutor.nextAction(nodes[bug], bug, actual);
+                assertEquals(expected.takeLog(), actual.takeLog());
+                assertEquals(code[pcs[bug]] == Instruction.HALT.byteCode(),
+                        AstExecutor.isHalted(nodes[bug]));
+            }
+        }
+    }
+
+    /**
+     * Test of(Program) and of(FrozenProgram) on IF statements and a body
+     * that reaches HALT.
+     */
+    @Test
+    public final void testIfAndHalt() {
+        /*
+         * Setup
+         */
+        Program2 p = parse(IF_HALT);
+        FrozenProgram frozen = p.freeze();
+
+        /*
+         * The calls
+         */
+        AstExecutor fromProgram = AstExecutor.of(p);
+        AstExecutor fromFrozen = AstExecutor.of(frozen);
+
+        /*
+         * Evaluation
+         */
+        assertEquals("Test", fromProgram.name());
+        assertSameRun(frozen, fromProgram);
+        assertSameRun(frozen, fromFrozen);
+    }
+
+    /**
+     * Test of on nested IF_ELSE and WHILE statements with random.
+     */
+    @Test
+    public final void testLoops() {
+        /*
+         * Setup
+         */
+        Program2 p = parse(LOOPS);
+        FrozenProgram frozen = p.freeze();
+
+        /*
+         * The calls
+         */
+        AstExecutor fromProgram = AstExecutor.of(p);
+        AstExecutor fromFrozen = AstExecutor.of(frozen);
+
+        /*
+         * Evaluation
+         */
+        assertSameRun(frozen, fromProgram);
+        assertSameRun(frozen, fromFrozen);
+    }
+
+    /**
+     * Test of on calls of user instructions calling each other.
+     */
+    @Test
+    public final void testCalls() {
+        /*
+         * Setup
+         */
+        Program2 p = parse(CALLS);
+        FrozenProgram frozen = p.freeze();
+
+        /*
+         * The calls
+         */
+        AstExecutor fromProgram = AstExecutor.of(p);
+        AstExecutor fromFrozen = AstExecutor.of(frozen);
+
+        /*
+         * Evaluation
+         */
+        assertSameRun(frozen, fromProgram);
+        assertSameRun(frozen, fromFrozen);
+    }
+
+    /**
+     * Test that of rejects a call of an undefined instruction when it links
+     * the graph.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testUndefinedInstruction() {
+        /*
+         * Setup
+         */
+        Program2 p = parse("PROGRAM Test IS INSTRUCTION go IS move END go"
+                + " BEGIN WHILE true DO go jump END WHILE END Test");
+
+        /*
+         * The call
+         */
+        AstExecutor.of(p);
+    }
+
+    /**
+     * Test that of rejects instructions calling each other recursively when
+     * it links the graph.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testRecursiveInstruction() {
+        /*
+         * Setup
+         */
+        Program2 p = parse("PROGRAM Test IS"
+                + " INSTRUCTION ping IS move pong END ping"
+                + " INSTRUCTION pong IS turnleft ping END pong"
+                + " BEGIN ping END Test");
+
+        /*
+         * The call
+         */
+        AstExecutor.of(p);
+    }
+
+}
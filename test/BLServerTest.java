@@ -0,0 +1,187 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code BLServer}.
+ */
+public class BLServerTest {
+
+    /**
+     * Source of a program that moves once and halts.
+     */
+    private static final String ONCE = "PROGRAM Once IS\nBEGIN\n  move\n"
+            + "END Once\n";
+
+    /**
+     * Source of a program that turns left forever.
+     */
+    private static final String SPIN = "PROGRAM Spin IS\nBEGIN\n"
+            + "  WHILE true DO\n    turnleft\n  END WHILE\nEND Spin\n";
+
+    /**
+     * Returns a server listening on an ephemeral loopback port.
+     *
+     * @return the server
+     * @throws IOException
+     *             if the server cannot listen
+     */
+    private static BLServer newServer() throws IOException {
+        return new BLServer(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                new ProgramRegistry(1 << 16));
+    }
+
+    /**
+     * Test RUN of a program that halts before the number of steps.
+     *
+     * @throws IOException
+     *             if the server cannot listen
+     */
+    @Test(timeout = 10000)
+    public final void testRunHalts() throws IOException {
+        try (BLServer server = newServer()) {
+            /*
+             * The call
+             */
+            List<String> reply = server.reply("RUN 100000", ONCE);
+
+            /*
+             * Evaluation
+             */
+            assertEquals(2, reply.size());
+            assertEquals("OK " + ProgramRegistry.sourceHash(ONCE),
+                    reply.get(0));
+            assertEquals("move", reply.get(1));
+        }
+    }
+
+    /**
+     * Test RUN of a program that does not halt.
+     *
+     * @throws IOException
+     *             if the server cannot listen
+     */
+    @Test
+    public final void testRunSteps() throws IOException {
+        try (BLServer server = newServer()) {
+            /*
+             * The call
+             */
+            List<String> reply = server.reply("RUN 3", SPIN);
+
+            /*
+             * Evaluation
+             */
+            assertEquals(4, reply.size());
+            assertEquals("turnleft", reply.get(3));
+        }
+    }
+
+    /**
+     * Test RUN with more steps than the server allows.
+     *
+     * @throws IOException
+     *             if the server cannot listen
+     */
+    @Test
+    public final void testRunTooManySteps() throws IOException {
+        try (BLServer server = newServer()) {
+            /*
+             * The call
+             */
+            List<String> reply = server.reply("RUN 999999999", SPIN);
+
+            /*
+             * Evaluation
+             */
+            assertEquals(1, reply.size());
+            assertTrue(reply.get(0).startsWith("ERROR"));
+        }
+    }
+
+    /**
+     * Test that a request failing with an error gets an ERROR reply and
+     * leaves the connection open for the next request.
+     *
+     * @throws IOException
+     *             if the server cannot listen or the connection fails
+     * @throws InterruptedException
+     *             if interrupted while waiting for the server to stop
+     */
+    @Test(timeout = 20000)
+    public final void testErrorReply()
+            throws IOException, InterruptedException {
+        /*
+         * Setup
+         */
+        StringBuilder deep = new StringBuilder("PROGRAM Deep IS\nBEGIN\n");
+        for (int i = 0; i < 20000; i++) {
+            deep.append("IF next-is-empty THEN\n");
+        }
+        deep.append("move\n");
+        for (int i = 0; i < 20000; i++) {
+            deep.append("END IF\n");
+        }
+        deep.append("END Deep\n");
+        List<String> replies = new ArrayList<>();
+        Thread serving;
+        try (BLServer server = newServer()) {
+            serving = new Thread(() -> {
+                try {
+                    server.serve();
+                } catch (IOException e) {
+                    /*
+                     * Closed by the test
+                     */
+                }
+            });
+            serving.start();
+
+            /*
+             * The call
+             */
+            try (SocketChannel c = SocketChannel.open(server.address());
+                    BufferedReader in = new BufferedReader(
+                            new InputStreamReader(Channels.newInputStream(c),
+                                    StandardCharsets.UTF_8));
+                    Writer out = new OutputStreamWriter(
+                            Channels.newOutputStream(c),
+                            StandardCharsets.UTF_8)) {
+                out.write("CHECK\n" + deep + ".\nCHECK\n" + ONCE
+                        + ".\nQUIT\n");
+                out.flush();
+                String line = in.readLine();
+                while (line != null) {
+                    replies.add(line);
+                    line = in.readLine();
+                }
+            }
+        }
+        serving.join();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(4, replies.size());
+        assertTrue(replies.get(0).startsWith("ERROR"));
+        assertEquals(".", replies.get(1));
+        assertEquals("OK " + ProgramRegistry.sourceHash(ONCE), replies.get(2));
+        assertEquals(".", replies.get(3));
+    }
+
+}
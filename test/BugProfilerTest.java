@@ -0,0 +1,161 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.program.Program.Instruction;
+
+/**
+ * Customized JUnit test fixture for {@code BugProfiler}.
+ */
+public class BugProfilerTest {
+
+    /**
+     * Seed of the answers of the worlds the programs run in.
+     */
+    private static final long SEED = 0x5DEECE66DL;
+
+    /**
+     * Number of bugs run.
+     */
+    private static final int BUGS = 30;
+
+    /**
+     * Returns the compiled program with the given source.
+     *
+     * @param source
+     *            the BL source
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String source) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens(source));
+        return p.freeze();
+    }
+
+    /**
+     * Executes {@code code} from {@code pc} like
+     * {@code BugInterpreter.nextAction}, one instruction at a time, adding 1
+     * to {@code hits} at the address of each instruction executed.
+     *
+     * @param code
+     *            the compiled code
+     * @param pc
+     *            the address of the next instruction to execute
+     * @param bug
+     *            the bug
+     * @param world
+     *            the world the bug lives in
+     * @param hits
+     *            the counts
+     * @return the address of the next instruction to execute
+     * @updates world, hits
+     */
+    private static int countingStep(int[] code, int pc, int bug,
+            BugWorld world, long[] hits) {
+        int next = pc;
+        boolean done = false;
+        while (!done) {
+            hits[next]++;
+            Instruction i = BugInterpreter.instruction(code[next]);
+            if (BugInterpreter.length(code[next]) == 1) {
+                next = BugInterpreter.nextAction(code, next, bug, world, 1);
+                done = true;
+            } else if (i == Instruction.JUMP
+                    || !BugInterpreter.test(i, bug, world)) {
+                next = code[next + 1];
+            } else {
+                next += 2;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Test hits and taken against counts computed by hand, for a bug that
+     * walks to the end of a corridor and turns back; the code is
+     * {@code [JUMP_IF_NOT_TRUE 10, JUMP_IF_NOT_NEXT_IS_EMPTY 7, MOVE, JUMP 8,
+     * TURNLEFT, JUMP 0, HALT]}.
+     */
+    @Test
+    public final void testHits() {
+        /*
+         * Setup
+         */
+        BugProfiler profile = new BugProfiler(compile("PROGRAM Test IS"
+                + " BEGIN WHILE true DO IF next-is-empty THEN move"
+                + " ELSE turnleft END IF END WHILE END Test"));
+        LoggingWorld world = new LoggingWorld(true, true, false, false,
+                true);
+        int pc = 0;
+        for (int step = 0; step < 5; step++) {
+            pc = profile.nextAction(pc, 0, world);
+        }
+
+        /*
+         * The call
+         */
+        long[] hits = profile.hits();
+
+        /*
+         * Evaluation
+         */
+        assertArrayEquals(new long[] { 5, 0, 5, 0, 3, 2, 0, 2, 4, 0, 0 },
+                hits);
+        assertEquals(0, profile.taken(0));
+        assertEquals(2, profile.taken(2));
+        assertEquals(2, profile.taken(5));
+        assertEquals(4, profile.taken(8));
+        assertEquals("0 next-is-empty true\n0 move\n"
+                + "0 next-is-empty true\n0 move\n"
+                + "0 next-is-empty false\n0 turnleft\n"
+                + "0 next-is-empty false\n0 turnleft\n"
+                + "0 next-is-empty true\n0 move\n", world.takeLog());
+    }
+
+    /**
+     * Test nextAction and hits against {@code BugInterpreter.nextAction} and
+     * a count of every instruction it executes.
+     */
+    @Test
+    public final void testHitsAgainstInterpreter() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS"
+                + " INSTRUCTION hop IS IF next-is-empty THEN move"
+                + " ELSE IF next-is-enemy THEN infect ELSE turnright END IF"
+                + " END IF END hop"
+                + " BEGIN WHILE true DO IF next-is-wall THEN turnleft"
+                + " ELSE hop END IF WHILE next-is-friend DO turnleft"
+                + " END WHILE END WHILE END Test");
+        int[] code = p.code();
+        BugProfiler profile = new BugProfiler(p);
+        LoggingWorld expected = new LoggingWorld(SEED);
+        LoggingWorld actual = new LoggingWorld(SEED);
+        int[] expectedPcs = new int[BUGS];
+        int[] actualPcs = new int[BUGS];
+        long[] counts = new long[code.length];
+
+        /*
+         * The calls
+         */
+        for (int step = 0; step < 200; step++) {
+            for (int bug = 0; bug < BUGS; bug++) {
+                expectedPcs[bug] = countingStep(code, expectedPcs[bug], bug,
+                        expected, counts);
+                actualPcs[bug] = profile.nextAction(actualPcs[bug], bug,
+                        actual);
+                assertEquals(expected.takeLog(), actual.takeLog());
+                assertEquals(expectedPcs[bug], actualPcs[bug]);
+            }
+        }
+        long[] hits = profile.hits();
+
+        /*
+         * Evaluation
+         */
+        assertArrayEquals(counts, hits);
+    }
+
+}
@@ -0,0 +1,230 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code BugRandom}.
+ */
+public class BugRandomTest {
+
+    /**
+     * Run seed of the tests.
+     */
+    private static final long SEED = 20240601L;
+
+    /**
+     * Number of bugs of the tests.
+     */
+    private static final int BUGS = 16;
+
+    /**
+     * Returns the next 64 values drawn for {@code bug}, one per bit.
+     *
+     * @param r
+     *            the generator
+     * @param bug
+     *            the bug
+     * @return the values, the first one in bit 0
+     */
+    private static long draw64(BugRandom r, int bug) {
+        long bits = 0;
+        for (int i = 0; i < Long.SIZE; i++) {
+            if (r.nextBoolean(bug)) {
+                bits |= 1L << i;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Returns the first 64 values of the stream of each bug of {@code r}, one
+     * bug after the other.
+     *
+     * @param r
+     *            the generator
+     * @return the values of each bug, by bug
+     */
+    private static long[] inOrder(BugRandom r) {
+        long[] bits = new long[r.bugs()];
+        for (int bug = 0; bug < r.bugs(); bug++) {
+            bits[bug] = draw64(r, bug);
+        }
+        return bits;
+    }
+
+    /**
+     * Test that the values of each bug do not depend on the order in which
+     * the bugs draw.
+     */
+    @Test
+    public final void testIndependentOfOrder() {
+        /*
+         * Setup
+         */
+        long[] expected = inOrder(new BugRandom(SEED, BUGS));
+        BugRandom r = new BugRandom(SEED, BUGS);
+        long[] bits = new long[BUGS];
+
+        /*
+         * The calls
+         */
+        for (int i = 0; i < Long.SIZE; i++) {
+            for (int k = 0; k < BUGS; k++) {
+                int bug = (k * 5 + i) % BUGS;
+                if (r.nextBoolean(bug)) {
+                    bits[bug] |= 1L << i;
+                }
+            }
+        }
+
+        /*
+         * Evaluation
+         */
+        for (int bug = 0; bug < BUGS; bug++) {
+            assertEquals(expected[bug], bits[bug]);
+        }
+    }
+
+    /**
+     * Test that the values of each bug are the same when the bugs draw from
+     * several threads at once.
+     *
+     * @throws InterruptedException
+     *             if the test is interrupted
+     */
+    @Test
+    public final void testIndependentOfThreads() throws InterruptedException {
+        /*
+         * Setup
+         */
+        long[] expected = inOrder(new BugRandom(SEED, BUGS));
+        BugRandom r = new BugRandom(SEED, BUGS);
+        long[] bits = new long[BUGS];
+        int threads = 4;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int first = t * BUGS / threads;
+            int last = (t + 1) * BUGS / threads;
+            workers[t] = new Thread(() -> {
+                for (int bug = first; bug < last; bug++) {
+                    bits[bug] = draw64(r, bug);
+                }
+            });
+        }
+
+        /*
+         * The calls
+         */
+        for (Thread w : workers) {
+            w.start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+
+        /*
+         * Evaluation
+         */
+        for (int bug = 0; bug < BUGS; bug++) {
+            assertEquals(expected[bug], bits[bug]);
+        }
+    }
+
+    /**
+     * Test that the stream of a bug depends on the seed and the bug, and not
+     * on the number of bugs.
+     */
+    @Test
+    public final void testSeedAndBug() {
+        /*
+         * Setup
+         */
+        BugRandom r = new BugRandom(SEED, BUGS);
+        BugRandom larger = new BugRandom(SEED, 2 * BUGS);
+        BugRandom other = new BugRandom(SEED + 1, BUGS);
+
+        /*
+         * The calls
+         */
+        long[] bits = inOrder(r);
+        long[] largerBits = inOrder(larger);
+        long[] otherBits = inOrder(other);
+
+        /*
+         * Evaluation
+         */
+        for (int bug = 0; bug < BUGS; bug++) {
+            assertEquals(bits[bug], largerBits[bug]);
+            assertNotEquals(bits[bug], otherBits[bug]);
+            if (bug > 0) {
+                assertNotEquals(bits[bug - 1], bits[bug]);
+            }
+        }
+        assertEquals(SEED, r.seed());
+        assertEquals(BUGS, r.bugs());
+    }
+
+    /**
+     * Test that reset restarts the stream of one bug only.
+     */
+    @Test
+    public final void testReset() {
+        /*
+         * Setup
+         */
+        BugRandom r = new BugRandom(SEED, BUGS);
+        long first = draw64(r, 3);
+        long second = draw64(r, 3);
+        BugRandom fresh = new BugRandom(SEED, BUGS);
+        r.nextBoolean(4);
+        fresh.nextBoolean(4);
+
+        /*
+         * The call
+         */
+        r.reset(3);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(first, draw64(r, 3));
+        assertEquals(second, draw64(r, 3));
+        assertEquals(draw64(fresh, 4), draw64(r, 4));
+    }
+
+    /**
+     * Test that split generators are reproducible and differ from each other
+     * and from the parent.
+     */
+    @Test
+    public final void testSplit() {
+        /*
+         * Setup
+         */
+        BugRandom r = new BugRandom(SEED, BUGS);
+
+        /*
+         * The calls
+         */
+        BugRandom a = r.split(0, BUGS);
+        BugRandom aAgain = r.split(0, BUGS);
+        BugRandom b = r.split(1, BUGS);
+
+        /*
+         * Evaluation
+         */
+        long[] parentBits = inOrder(new BugRandom(SEED, BUGS));
+        long[] aBits = inOrder(a);
+        long[] aAgainBits = inOrder(aAgain);
+        long[] bBits = inOrder(b);
+        assertEquals(BUGS, a.bugs());
+        assertEquals(a.seed(), aAgain.seed());
+        for (int bug = 0; bug < BUGS; bug++) {
+            assertEquals(aBits[bug], aAgainBits[bug]);
+            assertNotEquals(parentBits[bug], aBits[bug]);
+            assertNotEquals(aBits[bug], bBits[bug]);
+        }
+    }
+
+}
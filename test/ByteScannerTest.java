@@ -0,0 +1,201 @@
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import components.queue.Queue;
+import components.statement.StatementKernel.Condition;
+import components.utilities.Tokenizer;
+
+/**
+ * Customized JUnit test fixture for {@code ByteScanner}.
+ */
+public class ByteScannerTest {
+
+    /**
+     * Source of a small BL program.
+     */
+    private static final String SAMPLE = "PROGRAM Sample IS\n"
+            + "  INSTRUCTION hop IS\n    move\n    move\n  END hop\n"
+            + "BEGIN\n  WHILE true DO\n    IF next-is-empty THEN\n"
+            + "      hop\n    ELSE\n      turnleft\n    END IF\n"
+            + "  END WHILE\nEND Sample\n";
+
+    /**
+     * Returns a scanner that has scanned {@code source}.
+     *
+     * @param source
+     *            the source
+     * @return the scanner
+     */
+    private static ByteScanner scan(String source) {
+        ByteScanner scanner = new ByteScanner();
+        byte[] b = source.getBytes(StandardCharsets.US_ASCII);
+        scanner.scan(b, 0, b.length);
+        return scanner;
+    }
+
+    /**
+     * Test that every keyword and condition is recognized as itself, i.e.,
+     * that they all have distinct slots in the perfect hash.
+     */
+    @Test
+    public final void testKeywords() {
+        for (int kind = 0; kind < ByteScanner.IDENTIFIER; kind++) {
+            /*
+             * Setup
+             */
+            String spelling = ByteScanner.spelling(kind);
+
+            /*
+             * The call
+             */
+            ByteScanner scanner = scan(spelling);
+
+            /*
+             * Evaluation
+             */
+            assertEquals(2, scanner.size());
+            assertEquals(spelling, kind, scanner.kind(0));
+            assertEquals(ByteScanner.END_OF_INPUT, scanner.kind(1));
+        }
+    }
+
+    /**
+     * Test the codes of the conditions against their spellings.
+     */
+    @Test
+    public final void testConditions() {
+        for (Condition c : Condition.values()) {
+            /*
+             * The call
+             */
+            int kind = ByteScanner.FIRST_CONDITION + c.ordinal();
+
+            /*
+             * Evaluation
+             */
+            assertEquals(true, ByteScanner.isCondition(kind));
+            assertEquals(c.name().toLowerCase().replace('_', '-'),
+                    ByteScanner.spelling(kind));
+        }
+        assertEquals(false, ByteScanner.isCondition(ByteScanner.DO));
+        assertEquals(false, ByteScanner.isCondition(ByteScanner.IDENTIFIER));
+    }
+
+    /**
+     * Test that tokens close to a keyword or condition are not taken for it.
+     */
+    @Test
+    public final void testNearKeywords() {
+        /*
+         * Setup
+         */
+        String[] identifiers = { "ENDS", "EN", "program", "Is", "next-is-emptY",
+            "next-is-empt", "randoms", "truE", "DONE", "WHILEX", "BEGAN" };
+        String[] errors = { "1move", "-IF", "next_is_wall", "END;" };
+
+        /*
+         * The calls
+         */
+        ByteScanner idScanner = scan(String.join(" ", identifiers));
+        ByteScanner errorScanner = scan(String.join(" ", errors));
+
+        /*
+         * Evaluation
+         */
+        for (int i = 0; i < identifiers.length; i++) {
+            assertEquals(identifiers[i], ByteScanner.IDENTIFIER,
+                    idScanner.kind(i));
+            assertEquals(identifiers[i], idScanner.text(i));
+        }
+        for (int i = 0; i < errors.length; i++) {
+            assertEquals(errors[i], ByteScanner.ERROR, errorScanner.kind(i));
+        }
+    }
+
+    /**
+     * Test scan of a program against {@code SourceTokenizer}.
+     */
+    @Test
+    public final void testTokens() {
+        /*
+         * Setup
+         */
+        Queue<String> expected = SourceTokenizer.tokens(SAMPLE);
+
+        /*
+         * The call
+         */
+        ByteScanner scanner = scan(SAMPLE);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(expected, scanner.tokens());
+        assertEquals(Tokenizer.END_OF_INPUT,
+                scanner.text(scanner.size() - 1));
+        assertEquals(ByteScanner.PROGRAM, scanner.kind(0));
+        assertEquals(ByteScanner.IDENTIFIER, scanner.kind(1));
+        assertEquals("Sample", scanner.name(scanner.id(1)));
+        assertEquals(-1, scanner.id(0));
+        assertEquals(0, scanner.offset(0));
+        assertEquals(7, scanner.length(0));
+    }
+
+    /**
+     * Test that identifiers keep their ids from one scan to the next.
+     */
+    @Test
+    public final void testIdentifierIds() {
+        /*
+         * Setup
+         */
+        ByteScanner scanner = scan("hop move hop");
+        int hop = scanner.id(0);
+        int move = scanner.id(1);
+
+        /*
+         * The call
+         */
+        byte[] b = "jump move hop".getBytes(StandardCharsets.US_ASCII);
+        scanner.scan(b, 0, b.length);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(hop, scanner.id(2));
+        assertEquals(move, scanner.id(1));
+        assertEquals(3, scanner.names());
+        assertEquals("jump", scanner.name(scanner.id(0)));
+    }
+
+    /**
+     * Test scan of a direct buffer, from its position.
+     */
+    @Test
+    public final void testScanDirectBuffer() {
+        /*
+         * Setup
+         */
+        byte[] b = ("xx " + SAMPLE).getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(b.length);
+        buffer.put(b);
+        buffer.position(3);
+        ByteScanner scanner = new ByteScanner();
+
+        /*
+         * The call
+         */
+        scanner.scan(buffer);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(SourceTokenizer.tokens(SAMPLE), scanner.tokens());
+        assertEquals(3, buffer.position());
+    }
+
+}
@@ -0,0 +1,231 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code BytecodeCompiler}.
+ */
+public class BytecodeCompilerTest {
+
+    /**
+     * Number of steps each bug is run for.
+     */
+    private static final int STEPS = 200;
+
+    /**
+     * Returns the compiled program with the given source.
+     *
+     * @param source
+     *            the BL source
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String source) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens(source));
+        return p.freeze();
+    }
+
+    /**
+     * Seed of the answers of the worlds the programs run in.
+     */
+    private static final long SEED = 0x5DEECE66DL;
+
+    /**
+     * Number of bugs run.
+     */
+    private static final int BUGS = 30;
+
+    /**
+     * Runs {@code BUGS} bugs for {@code STEPS} steps each, with
+     * {@code p.nextAction} in one world and {@code compiled.nextAction} in
+     * another world with the same answers, and asserts that each step makes
+     * the same calls on the world and returns the same address.
+     *
+     * @param p
+     *            the program
+     * @param compiled
+     *            the compiled form of p
+     */
+    private static void assertSameRun(FrozenProgram p,
+            BugExecutable compiled) {
+        LoggingWorld expected = new LoggingWorld(SEED);
+        LoggingWorld actual = new LoggingWorld(SEED);
+        int[] pcs = new int[BUGS];
+        for (int step = 0; step < STEPS; step++) {
+            for (int bug = 0; bug < BUGS; bug++) {
+                int next = p.nextAction(pcs[bug], bug, expected);
+                int actualNext = compiled.nextAction(pcs[bug], bug, actual);
+                assertEquals(expected.takeLog(), actual.takeLog());
+                assertEquals(next, actualNext);
+                pcs[bug] = next;
+            }
+        }
+    }
+
+    /**
+     * Test compile on IF statements and a body that reaches HALT.
+     */
+    @Test
+    public final void testIfAndHalt() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS BEGIN"
+                + " IF next-is-empty THEN move END IF"
+                + " IF next-is-wall THEN turnleft END IF"
+                + " IF next-is-friend THEN turnright END IF"
+                + " IF next-is-enemy THEN infect END IF"
+                + " skip move END Test");
+
+        /*
+         * The call
+         */
+        BugExecutable compiled = BytecodeCompiler.compile(p);
+
+        /*
+         * Evaluation
+         */
+        assertFalse(compiled instanceof FusedProgram);
+        assertSameRun(p, compiled);
+        int halt = p.code().length - 1;
+        LoggingWorld world = new LoggingWorld(SEED);
+        assertEquals(halt, compiled.nextAction(halt, 0, world));
+        assertEquals("", world.takeLog());
+    }
+
+    /**
+     * Test compile on IF_ELSE statements in a loop.
+     */
+    @Test
+    public final void testIfElse() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS BEGIN WHILE true DO"
+                + " IF next-is-wall THEN turnright"
+                + " ELSE IF next-is-enemy THEN infect"
+                + " ELSE IF next-is-empty THEN move ELSE turnleft END IF"
+                + " END IF END IF END WHILE END Test");
+
+        /*
+         * The call
+         */
+        BugExecutable compiled = BytecodeCompiler.compile(p);
+
+        /*
+         * Evaluation
+         */
+        assertFalse(compiled instanceof FusedProgram);
+        assertSameRun(p, compiled);
+    }
+
+    /**
+     * Test compile on nested WHILE statements.
+     */
+    @Test
+    public final void testNestedWhile() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS BEGIN WHILE true DO"
+                + " WHILE next-is-empty DO move END WHILE"
+                + " WHILE next-is-friend DO turnleft skip END WHILE"
+                + " WHILE next-is-wall DO WHILE next-is-wall DO turnright"
+                + " END WHILE END WHILE infect END WHILE END Test");
+
+        /*
+         * The call
+         */
+        BugExecutable compiled = BytecodeCompiler.compile(p);
+
+        /*
+         * Evaluation
+         */
+        assertFalse(compiled instanceof FusedProgram);
+        assertSameRun(p, compiled);
+    }
+
+    /**
+     * Test compile on calls of user instructions calling each other.
+     */
+    @Test
+    public final void testCalls() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS"
+                + " INSTRUCTION look IS IF next-is-enemy THEN infect END IF"
+                + " END look"
+                + " INSTRUCTION go IS look IF next-is-empty THEN move"
+                + " ELSE turnleft END IF END go"
+                + " BEGIN WHILE true DO go look go END WHILE END Test");
+
+        /*
+         * The call
+         */
+        BugExecutable compiled = BytecodeCompiler.compile(p);
+
+        /*
+         * Evaluation
+         */
+        assertFalse(compiled instanceof FusedProgram);
+        assertSameRun(p, compiled);
+    }
+
+    /**
+     * Test compile on the condition random.
+     */
+    @Test
+    public final void testRandom() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS BEGIN WHILE true DO"
+                + " IF random THEN move ELSE IF random THEN turnleft"
+                + " ELSE turnright END IF END IF"
+                + " WHILE random DO skip END WHILE END WHILE END Test");
+
+        /*
+         * The call
+         */
+        BugExecutable compiled = BytecodeCompiler.compile(p);
+
+        /*
+         * Evaluation
+         */
+        assertFalse(compiled instanceof FusedProgram);
+        assertSameRun(p, compiled);
+    }
+
+    /**
+     * Test compile on a program too large for one JVM method, which is
+     * interpreted instead.
+     */
+    @Test
+    public final void testTooLarge() {
+        /*
+         * Setup
+         */
+        StringBuilder source = new StringBuilder(
+                "PROGRAM Test IS BEGIN WHILE true DO");
+        for (int i = 0; i < 1000; i++) {
+            source.append(" IF next-is-empty THEN move ELSE turnleft END IF");
+        }
+        source.append(" END WHILE END Test");
+        FrozenProgram p = compile(source.toString());
+
+        /*
+         * The call
+         */
+        BugExecutable compiled = BytecodeCompiler.compile(p);
+
+        /*
+         * Evaluation
+         */
+        assertTrue(compiled instanceof FusedProgram);
+        assertSameRun(p, compiled);
+    }
+
+}
@@ -0,0 +1,56 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code ConformanceTester}.
+ */
+public class ConformanceTesterTest {
+
+    /**
+     * Test check on generated inputs, with a fixed seed.
+     */
+    @Test
+    public final void testGenerated() {
+        for (long i = 0; i < 200; i++) {
+            /*
+             * Setup
+             */
+            String source = ConformanceTester.generate(42, i);
+
+            /*
+             * The call and evaluation
+             */
+            assertNull(source, ConformanceTester.check(source));
+        }
+    }
+
+    /**
+     * Test check on an invalid input.
+     */
+    @Test
+    public final void testInvalid() {
+        /*
+         * Setup
+         */
+        String source = "PROGRAM P IS BEGIN move END Q";
+
+        /*
+         * The call and evaluation
+         */
+        assertNull(source, ConformanceTester.check(source));
+    }
+
+    /**
+     * Test generate with the same seed and index.
+     */
+    @Test
+    public final void testGenerateRepeatable() {
+        for (long i = 0; i < 20; i++) {
+            assertEquals(ConformanceTester.generate(7, i),
+                    ConformanceTester.generate(7, i));
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.program.Program.Instruction;
+import components.statement.StatementKernel.Condition;
+
+/**
+ * Customized JUnit test fixture for {@code ControlFlowGraph}.
+ */
+public class ControlFlowGraphTest {
+
+    /**
+     * Source of a program whose body uses every kind of statement and calls
+     * a user instruction, without {@code random}.
+     */
+    private static final String WANDER = "PROGRAM Wander IS"
+            + " INSTRUCTION hop IS IF next-is-empty THEN move"
+            + " ELSE IF next-is-enemy THEN infect ELSE turnright END IF"
+            + " END IF END hop"
+            + " BEGIN WHILE true DO IF next-is-wall THEN turnleft ELSE hop"
+            + " END IF WHILE next-is-friend DO turnleft END WHILE"
+            + " END WHILE END Wander";
+
+    /**
+     * Returns the compiled program with the given source.
+     *
+     * @param source
+     *            the BL source
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String source) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens(source));
+        return p.freeze();
+    }
+
+    /**
+     * Test of on a WHILE around an IF_ELSE, against blocks computed by hand
+     * from the code {@code [JUMP_IF_NOT_TRUE 10, JUMP_IF_NOT_NEXT_IS_EMPTY 7,
+     * MOVE, JUMP 8, TURNLEFT, JUMP 0, HALT]}.
+     */
+    @Test
+    public final void testOfWhileIfElse() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS BEGIN WHILE true DO"
+                + " IF next-is-empty THEN move ELSE turnleft END IF"
+                + " END WHILE END Test");
+
+        /*
+         * The call
+         */
+        ControlFlowGraph g = ControlFlowGraph.of(p);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(6, g.blocks());
+        int[] starts = new int[g.blocks()];
+        int[] lasts = new int[g.blocks()];
+        int[] nexts = new int[g.blocks()];
+        int[] branches = new int[g.blocks()];
+        int[] predecessors = new int[g.blocks()];
+        for (int b = 0; b < g.blocks(); b++) {
+            starts[b] = g.start(b);
+            lasts[b] = g.last(b);
+            nexts[b] = g.next(b);
+            branches[b] = g.branch(b);
+            predecessors[b] = g.predecessors(b);
+        }
+        assertArrayEquals(new int[] { 0, 4, 5, 7, 8, 10 }, starts);
+        assertArrayEquals(new int[] { 2, 4, 5, 7, 8, 10 }, lasts);
+        assertArrayEquals(new int[] { 1, 2, 4, 4, 0, -1 }, nexts);
+        assertArrayEquals(new int[] { 3, -1, -1, -1, -1, -1 }, branches);
+        assertArrayEquals(new int[] { 1, 1, 1, 1, 2, 0 }, predecessors);
+        assertEquals(2, g.predecessor(4, 0));
+        assertEquals(3, g.predecessor(4, 1));
+        assertEquals(Condition.NEXT_IS_EMPTY, g.condition(0));
+        assertEquals(Instruction.MOVE, g.exit(1));
+        assertEquals(true, g.isAction(3));
+        assertEquals(false, g.isAction(4));
+        assertEquals(Instruction.HALT, g.exit(5));
+        assertEquals(0, g.block(1));
+        assertEquals(4, g.block(9));
+        assertArrayEquals(
+                new boolean[] { true, true, true, true, true, false },
+                g.reachable());
+        assertEquals("B0 [0, 4) JUMP_IF_NOT_NEXT_IS_EMPTY: NEXT_IS_EMPTY"
+                + " -> B1, else -> B3", g.toString().split("\n")[0]);
+    }
+
+    /**
+     * Test of on straight-line code: one block per primitive instruction.
+     */
+    @Test
+    public final void testOfStraightLine() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile(
+                "PROGRAM Test IS BEGIN move turnleft END Test");
+
+        /*
+         * The call
+         */
+        ControlFlowGraph g = ControlFlowGraph.of(p);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(3, g.blocks());
+        assertEquals(1, g.next(0));
+        assertEquals(2, g.next(1));
+        assertEquals(-1, g.next(2));
+        assertEquals(null, g.condition(0));
+    }
+
+    /**
+     * Test that walking the graph from the address of each step predicts
+     * where {@code BugInterpreter.nextAction} stops.
+     */
+    @Test
+    public final void testOfAgainstInterpreter() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile(WANDER);
+        int[] code = p.code();
+        GridWorld world = new GridWorld(12, 12, 40, 1);
+        for (int i = 0; i < 40; i++) {
+            world.addBug(i % 12, i / 12 * 3, i % 4, i % 3);
+        }
+
+        /*
+         * The call
+         */
+        ControlFlowGraph g = ControlFlowGraph.of(p);
+
+        /*
+         * Evaluation
+         */
+        for (int step = 0; step < 200; step++) {
+            for (int bug = 0; bug < world.bugs(); bug++) {
+                int pc = world.pc(bug);
+                int b = g.block(pc);
+                while (!g.isAction(b) && g.exit(b) != Instruction.HALT) {
+                    if (g.condition(b) != null
+                            && !BugInterpreter.test(g.exit(b), bug, world)) {
+                        b = g.branch(b);
+                    } else {
+                        b = g.next(b);
+                    }
+                }
+                int expected = g.last(b);
+                if (g.isAction(b)) {
+                    expected++;
+                }
+                world.setPc(bug,
+                        BugInterpreter.nextAction(code, pc, bug, world));
+                assertEquals(expected, world.pc(bug));
+            }
+        }
+    }
+
+}
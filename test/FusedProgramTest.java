@@ -0,0 +1,206 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code FusedProgram}.
+ */
+public class FusedProgramTest {
+
+    /**
+     * Source of a program with several conditional jumps followed by a
+     * primitive instruction.
+     */
+    private static final String HUNT = "PROGRAM Hunt IS"
+            + " INSTRUCTION look IS IF next-is-enemy THEN infect END IF"
+            + " END look"
+            + " BEGIN WHILE true DO look IF next-is-empty THEN move"
+            + " ELSE IF random THEN turnleft ELSE turnright END IF END IF"
+            + " look IF next-is-wall THEN turnleft END IF"
+            + " WHILE next-is-friend DO turnright END WHILE END WHILE"
+            + " END Hunt";
+
+    /**
+     * Returns the compiled program with the given source.
+     *
+     * @param source
+     *            the BL source
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String source) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens(source));
+        return p.freeze();
+    }
+
+    /**
+     * Returns a world with 30 bugs of 3 species.
+     *
+     * @return the world
+     */
+    private static GridWorld newWorld() {
+        GridWorld world = new GridWorld(10, 10, 30, 7);
+        for (int i = 0; i < 30; i++) {
+            world.addBug(i % 10, i / 10 * 3, i % 4, i % 3);
+        }
+        return world;
+    }
+
+    /**
+     * Asserts that the bugs of {@code expected} and {@code actual} are in
+     * the same state.
+     *
+     * @param expected
+     *            the expected world
+     * @param actual
+     *            the actual world
+     */
+    private static void assertSameBugs(GridWorld expected, GridWorld actual) {
+        for (int bug = 0; bug < expected.bugs(); bug++) {
+            assertEquals(expected.x(bug), actual.x(bug));
+            assertEquals(expected.y(bug), actual.y(bug));
+            assertEquals(expected.direction(bug), actual.direction(bug));
+            assertEquals(expected.species(bug), actual.species(bug));
+            assertEquals(expected.pc(bug), actual.pc(bug));
+        }
+    }
+
+    /**
+     * Test of with a limit on the number of superinstructions.
+     */
+    @Test
+    public final void testOfLimit() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS BEGIN"
+                + " IF next-is-empty THEN move END IF"
+                + " IF next-is-enemy THEN infect END IF"
+                + " IF next-is-empty THEN move END IF END Test");
+
+        /*
+         * The calls
+         */
+        FusedProgram one = FusedProgram.of(p, 1);
+        FusedProgram all = FusedProgram.of(p, 8);
+        FusedProgram none = FusedProgram.of(p, 0);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(Arrays.asList("JUMP_IF_NOT_NEXT_IS_EMPTY+MOVE"),
+                one.superinstructions());
+        assertEquals(2, one.sites());
+        assertEquals(Arrays.asList("JUMP_IF_NOT_NEXT_IS_EMPTY+MOVE",
+                "JUMP_IF_NOT_NEXT_IS_ENEMY+INFECT"), all.superinstructions());
+        assertEquals(3, all.sites());
+        assertEquals(0, none.sites());
+        assertEquals(Arrays.toString(p.code()),
+                Arrays.toString(all.program().code()));
+    }
+
+    /**
+     * Test nextAction against {@code BugInterpreter.nextAction}.
+     */
+    @Test
+    public final void testNextAction() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile(HUNT);
+        FusedProgram fused = FusedProgram.of(p, 8);
+        int[] code = p.code();
+        GridWorld expected = newWorld();
+        GridWorld actual = newWorld();
+
+        /*
+         * The calls
+         */
+        for (int step = 0; step < 300; step++) {
+            for (int bug = 0; bug < expected.bugs(); bug++) {
+                expected.setPc(bug, BugInterpreter.nextAction(code,
+                        expected.pc(bug), bug, expected));
+                actual.setPc(bug,
+                        fused.nextAction(actual.pc(bug), bug, actual));
+            }
+
+            /*
+             * Evaluation
+             */
+            assertSameBugs(expected, actual);
+        }
+        assertEquals(true, fused.sites() > 0);
+    }
+
+    /**
+     * Test nextAction with a budget against the budgeted
+     * {@code BugInterpreter.nextAction}: a fused instruction counts as two.
+     */
+    @Test
+    public final void testNextActionBudget() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile(HUNT);
+        FusedProgram fused = FusedProgram.of(p, 8);
+        int[] code = p.code();
+        GridWorld expected = newWorld();
+        GridWorld actual = newWorld();
+
+        /*
+         * The calls
+         */
+        for (int step = 0; step < 300; step++) {
+            int budget = 1 + step % 4;
+            for (int bug = 0; bug < expected.bugs(); bug++) {
+                int e = BugInterpreter.nextAction(code, expected.pc(bug), bug,
+                        expected, budget);
+                int a = fused.nextAction(actual.pc(bug), bug, actual, budget);
+
+                /*
+                 * Evaluation
+                 */
+                assertEquals(e, a);
+                expected.setPc(bug, e < 0 ? -e - 1 : e);
+                actual.setPc(bug, a < 0 ? -a - 1 : a);
+            }
+            assertSameBugs(expected, actual);
+        }
+    }
+
+    /**
+     * Test of from a profile: the fusions whose conditions held most often
+     * come first.
+     */
+    @Test
+    public final void testOfProfile() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS BEGIN WHILE true DO"
+                + " IF next-is-wall THEN turnleft END IF"
+                + " IF next-is-empty THEN move END IF"
+                + " IF next-is-empty THEN move END IF END WHILE END Test");
+        BugProfiler profile = new BugProfiler(p);
+        GridWorld world = new GridWorld(5, 5, 1, 0);
+        world.addBug(0, 0, GridWorld.EAST, 0);
+        for (int step = 0; step < 100; step++) {
+            world.setPc(0, profile.nextAction(world.pc(0), 0, world));
+        }
+
+        /*
+         * The call
+         */
+        FusedProgram fused = FusedProgram.of(profile, 1);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(Arrays.asList("JUMP_IF_NOT_NEXT_IS_EMPTY+MOVE"),
+                fused.superinstructions());
+        assertEquals(2, fused.sites());
+    }
+
+}
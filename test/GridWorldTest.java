@@ -0,0 +1,277 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code GridWorld}.
+ */
+public class GridWorldTest {
+
+    /**
+     * Asserts that the answers of the queries of {@code bug} are as given.
+     *
+     * @param w
+     *            the world
+     * @param bug
+     *            the bug
+     * @param empty
+     *            the expected next-is-empty
+     * @param wall
+     *            the expected next-is-wall
+     * @param friend
+     *            the expected next-is-friend
+     * @param enemy
+     *            the expected next-is-enemy
+     */
+    private static void assertNext(GridWorld w, int bug, boolean empty,
+            boolean wall, boolean friend, boolean enemy) {
+        assertEquals(empty, w.nextIsEmpty(bug));
+        assertEquals(wall, w.nextIsWall(bug));
+        assertEquals(friend, w.nextIsFriend(bug));
+        assertEquals(enemy, w.nextIsEnemy(bug));
+    }
+
+    /**
+     * Test move into an empty cell.
+     */
+    @Test
+    public final void testMoveEmpty() {
+        /*
+         * Setup
+         */
+        GridWorld w = new GridWorld(5, 5, 4, 1);
+        int bug = w.addBug(2, 2, GridWorld.EAST, 0);
+
+        /*
+         * The call
+         */
+        w.move(bug);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(3, w.x(bug));
+        assertEquals(2, w.y(bug));
+        assertEquals(-1, w.bugAt(2, 2));
+        assertEquals(bug, w.bugAt(3, 2));
+        assertNext(w, bug, true, false, false, false);
+        w.move(bug);
+        assertEquals(4, w.x(bug));
+        assertNext(w, bug, false, true, false, false);
+    }
+
+    /**
+     * Test move into a wall, inside the grid and at its border.
+     */
+    @Test
+    public final void testMoveWall() {
+        /*
+         * Setup
+         */
+        GridWorld w = new GridWorld(5, 5, 4, 1);
+        w.addWall(2, 1);
+        int inside = w.addBug(1, 1, GridWorld.EAST, 0);
+        int border = w.addBug(0, 0, GridWorld.NORTH, 0);
+
+        /*
+         * The calls
+         */
+        w.move(inside);
+        w.move(border);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(1, w.x(inside));
+        assertEquals(1, w.y(inside));
+        assertEquals(0, w.x(border));
+        assertEquals(0, w.y(border));
+        assertTrue(w.isWall(2, 1));
+        assertNext(w, inside, false, true, false, false);
+        assertNext(w, border, false, true, false, false);
+    }
+
+    /**
+     * Test move into a cell holding a bug.
+     */
+    @Test
+    public final void testMoveOccupied() {
+        /*
+         * Setup
+         */
+        GridWorld w = new GridWorld(5, 5, 4, 1);
+        int a = w.addBug(1, 3, GridWorld.SOUTH, 0);
+        int b = w.addBug(1, 4, GridWorld.NORTH, 0);
+
+        /*
+         * The calls
+         */
+        w.move(a);
+        w.move(b);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(3, w.y(a));
+        assertEquals(4, w.y(b));
+        assertEquals(a, w.bugAt(1, 3));
+        assertEquals(b, w.bugAt(1, 4));
+    }
+
+    /**
+     * Test turnright and turnleft through the four directions, in a corner
+     * where two of them face the border.
+     */
+    @Test
+    public final void testTurns() {
+        /*
+         * Setup
+         */
+        GridWorld w = new GridWorld(5, 5, 4, 1);
+        int bug = w.addBug(0, 0, GridWorld.NORTH, 0);
+        int[] right = { GridWorld.EAST, GridWorld.SOUTH, GridWorld.WEST,
+            GridWorld.NORTH };
+        boolean[] wallRight = { false, false, true, true };
+        int[] left = { GridWorld.WEST, GridWorld.SOUTH, GridWorld.EAST,
+            GridWorld.NORTH };
+        boolean[] wallLeft = { true, false, false, true };
+
+        /*
+         * The calls and evaluation
+         */
+        for (int i = 0; i < 4; i++) {
+            w.turnRight(bug);
+            assertEquals(right[i], w.direction(bug));
+            assertNext(w, bug, !wallRight[i], wallRight[i], false, false);
+        }
+        for (int i = 0; i < 4; i++) {
+            w.turnLeft(bug);
+            assertEquals(left[i], w.direction(bug));
+            assertNext(w, bug, !wallLeft[i], wallLeft[i], false, false);
+        }
+        w.turnLeft(bug);
+        w.turnLeft(bug);
+        w.move(bug);
+        assertEquals(0, w.x(bug));
+        assertEquals(1, w.y(bug));
+    }
+
+    /**
+     * Test infect on an enemy and on a friend.
+     */
+    @Test
+    public final void testInfect() {
+        /*
+         * Setup
+         */
+        GridWorld w = new GridWorld(5, 5, 4, 1);
+        int a = w.addBug(2, 2, GridWorld.EAST, 0);
+        int b = w.addBug(3, 2, GridWorld.WEST, 1);
+        int c = w.addBug(2, 3, GridWorld.NORTH, 0);
+        w.setPc(b, 7);
+        w.setPc(a, 5);
+        assertNext(w, a, false, false, false, true);
+
+        /*
+         * The calls
+         */
+        w.infect(a);
+        w.infect(c);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(0, w.species(b));
+        assertEquals(0, w.pc(b));
+        assertEquals(5, w.pc(a));
+        assertEquals(0, w.species(a));
+        assertNext(w, a, false, false, true, false);
+        assertNext(w, b, false, false, true, false);
+        assertNext(w, c, false, false, true, false);
+    }
+
+    /**
+     * Test the queries of bugs at the border, facing out and facing in.
+     */
+    @Test
+    public final void testBorderQueries() {
+        /*
+         * Setup
+         */
+        GridWorld w = new GridWorld(3, 3, 4, 1);
+        int a = w.addBug(2, 1, GridWorld.EAST, 0);
+        int b = w.addBug(2, 2, GridWorld.NORTH, 1);
+        int c = w.addBug(0, 2, GridWorld.SOUTH, 1);
+
+        /*
+         * The calls and evaluation
+         */
+        assertNext(w, a, false, true, false, false);
+        assertNext(w, b, false, false, false, true);
+        assertNext(w, c, false, true, false, false);
+        w.turnLeft(c);
+        assertNext(w, c, true, false, false, false);
+        w.move(c);
+        w.move(c);
+        assertNext(w, c, false, false, true, false);
+    }
+
+    /**
+     * Test copy and copyTo, including the cell each bug faces and the random
+     * streams.
+     */
+    @Test
+    public final void testCopy() {
+        /*
+         * Setup
+         */
+        GridWorld w = new GridWorld(6, 4, 6, 11);
+        for (int i = 0; i < 6; i++) {
+            w.addBug(i, i % 4, i % 4, i % 2);
+        }
+        for (int bug = 0; bug < 6; bug++) {
+            w.move(bug);
+            w.turnRight(bug);
+            w.setPc(bug, bug + 3);
+            w.random(bug);
+        }
+        GridWorld target = new GridWorld(6, 4, 6, 11);
+        target.addBug(5, 3, GridWorld.WEST, 1);
+
+        /*
+         * The calls
+         */
+        GridWorld copy = w.copy();
+        w.copyTo(target);
+
+        /*
+         * Evaluation
+         */
+        for (GridWorld other : new GridWorld[] { copy, target }) {
+            assertEquals(w.bugs(), other.bugs());
+            for (int bug = 0; bug < w.bugs(); bug++) {
+                assertEquals(w.x(bug), other.x(bug));
+                assertEquals(w.y(bug), other.y(bug));
+                assertEquals(w.direction(bug), other.direction(bug));
+                assertEquals(w.species(bug), other.species(bug));
+                assertEquals(w.pc(bug), other.pc(bug));
+                assertNext(other, bug, w.nextIsEmpty(bug),
+                        w.nextIsWall(bug), w.nextIsFriend(bug),
+                        w.nextIsEnemy(bug));
+            }
+        }
+        for (int bug = 0; bug < w.bugs(); bug++) {
+            boolean r = w.random(bug);
+            assertEquals(r, copy.random(bug));
+            assertEquals(r, target.random(bug));
+        }
+        for (int bug = 0; bug < w.bugs(); bug++) {
+            copy.move(bug);
+            target.move(bug);
+            assertEquals(copy.x(bug), target.x(bug));
+            assertEquals(copy.y(bug), target.y(bug));
+        }
+    }
+
+}
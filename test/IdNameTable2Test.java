@@ -0,0 +1,225 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+
+import components.idnametable.IdNameTable;
+import components.idnametable.IdNameTable1;
+
+/**
+ * Customized JUnit test fixture for {@code IdNameTable2}, checked against
+ * {@code IdNameTable1}.
+ */
+public class IdNameTable2Test {
+
+    /**
+     * Adds the pair ({@code id}, {@code name}) to both {@code t} and
+     * {@code ref}.
+     *
+     * @param t
+     *            the table under test
+     * @param ref
+     *            the reference table
+     * @param id
+     *            the id
+     * @param name
+     *            the name
+     */
+    private static void add(IdNameTable t, IdNameTable ref, int id,
+            String name) {
+        t.add(id, name);
+        ref.add(id, name);
+    }
+
+    /**
+     * Asserts that {@code t} maps {@code id} and {@code name} to each other.
+     *
+     * @param t
+     *            the table
+     * @param id
+     *            the id
+     * @param name
+     *            the name
+     */
+    private static void assertPair(IdNameTable t, int id, String name) {
+        assertTrue(t.hasId(id));
+        assertTrue(t.hasName(name));
+        assertEquals(name, t.name(id));
+        assertEquals(id, t.id(name));
+    }
+
+    /**
+     * Test add, name and id on dense, negative and sparse ids.
+     */
+    @Test
+    public final void testAddRoundTrip() {
+        /*
+         * Setup
+         */
+        IdNameTable t = new IdNameTable2();
+        IdNameTable ref = new IdNameTable1();
+
+        /*
+         * The calls
+         */
+        add(t, ref, 0, "move");
+        add(t, ref, 3, "hop");
+        add(t, ref, -7, "negative");
+        add(t, ref, 1_000_000, "sparse");
+
+        /*
+         * Evaluation
+         */
+        assertEquals(ref, t);
+        assertEquals(4, t.size());
+        assertPair(t, 0, "move");
+        assertPair(t, 3, "hop");
+        assertPair(t, -7, "negative");
+        assertPair(t, 1_000_000, "sparse");
+        assertFalse(t.hasId(1));
+        assertFalse(t.hasId(999_999));
+        assertFalse(t.hasName("skip"));
+    }
+
+    /**
+     * Test adding a name again, with another id, after removing it.
+     */
+    @Test
+    public final void testReAddName() {
+        /*
+         * Setup
+         */
+        IdNameTable t = new IdNameTable2();
+        IdNameTable ref = new IdNameTable1();
+        add(t, ref, 3, "hop");
+        add(t, ref, 1_000_000, "sparse");
+
+        /*
+         * The calls
+         */
+        int id = t.removeName("hop");
+        ref.removeName("hop");
+        add(t, ref, 5, "hop");
+        String name = t.removeId(1_000_000);
+        ref.removeId(1_000_000);
+        add(t, ref, 1_000_001, "sparse");
+
+        /*
+         * Evaluation
+         */
+        assertEquals(3, id);
+        assertEquals("sparse", name);
+        assertEquals(ref, t);
+        assertFalse(t.hasId(3));
+        assertFalse(t.hasId(1_000_000));
+        assertPair(t, 5, "hop");
+        assertPair(t, 1_000_001, "sparse");
+    }
+
+    /**
+     * Test add past the initial capacity of the array of names.
+     */
+    @Test
+    public final void testGrowth() {
+        /*
+         * Setup
+         */
+        IdNameTable t = new IdNameTable2();
+        IdNameTable ref = new IdNameTable1();
+        add(t, ref, 100_000, "far");
+
+        /*
+         * The calls
+         */
+        for (int i = 0; i < 200; i++) {
+            add(t, ref, i, "name" + i);
+        }
+
+        /*
+         * Evaluation
+         */
+        assertEquals(ref, t);
+        assertEquals(201, t.size());
+        for (int i = 0; i < 200; i++) {
+            assertPair(t, i, "name" + i);
+        }
+        assertPair(t, 100_000, "far");
+        Set<Integer> ids = new HashSet<>();
+        Iterator<Integer> it = t.idIterator();
+        while (it.hasNext()) {
+            ids.add(it.next());
+        }
+        assertEquals(201, ids.size());
+        assertTrue(ids.contains(100_000));
+    }
+
+    /**
+     * Test clear.
+     */
+    @Test
+    public final void testClear() {
+        /*
+         * Setup
+         */
+        IdNameTable t = new IdNameTable2();
+        for (int i = 0; i < 40; i++) {
+            t.add(i, "name" + i);
+        }
+        t.add(-1, "negative");
+
+        /*
+         * The call
+         */
+        t.clear();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(new IdNameTable1(), t);
+        assertEquals(0, t.size());
+        assertFalse(t.hasId(0));
+        assertFalse(t.hasId(-1));
+        assertFalse(t.hasName("name0"));
+        t.add(0, "again");
+        assertPair(t, 0, "again");
+    }
+
+    /**
+     * Test transferFrom.
+     */
+    @Test
+    public final void testTransferFrom() {
+        /*
+         * Setup
+         */
+        IdNameTable source = new IdNameTable2();
+        IdNameTable t = new IdNameTable2();
+        IdNameTable ref = new IdNameTable1();
+        for (int i = 0; i < 40; i++) {
+            add(source, ref, i, "name" + i);
+        }
+        add(source, ref, -1, "negative");
+        t.add(7, "old");
+
+        /*
+         * The call
+         */
+        t.transferFrom(source);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(ref, t);
+        assertFalse(t.hasName("old"));
+        assertEquals(new IdNameTable1(), source);
+        source.add(7, "new");
+        assertPair(source, 7, "new");
+        assertPair(t, 7, "name7");
+    }
+
+}
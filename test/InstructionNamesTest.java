@@ -0,0 +1,156 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code InstructionNames}.
+ */
+public class InstructionNamesTest {
+
+    /**
+     * Number of names interned by the reclamation tests.
+     */
+    private static final int NAMES = 1000;
+
+    /**
+     * Interns {@code NAMES} fresh names starting with {@code prefix} without
+     * keeping them, and returns their ids.
+     *
+     * @param prefix
+     *            the prefix of the names
+     * @return the ids of the names
+     */
+    private static Set<Integer> internAndDrop(String prefix) {
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < NAMES; i++) {
+            ids.add(InstructionNames.intern(prefix + i).id());
+        }
+        return ids;
+    }
+
+    /**
+     * Collects garbage until at most {@code size} names are in use.
+     *
+     * @param size
+     *            the number of names
+     */
+    private static void collectUntil(int size) {
+        while (InstructionNames.size() > size) {
+            System.gc();
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Test the fixed ids of the primitive instructions.
+     */
+    @Test
+    public final void testPrimitiveIds() {
+        assertEquals(InstructionNames.MOVE, InstructionNames.id("move"));
+        assertEquals(InstructionNames.TURNLEFT,
+                InstructionNames.id("turnleft"));
+        assertEquals(InstructionNames.TURNRIGHT,
+                InstructionNames.id("turnright"));
+        assertEquals(InstructionNames.INFECT, InstructionNames.id("infect"));
+        assertEquals(InstructionNames.SKIP, InstructionNames.id("skip"));
+        assertTrue(InstructionNames.isPrimitive(InstructionNames.SKIP));
+        assertTrue(!InstructionNames.isPrimitive(InstructionNames.SKIP + 1));
+    }
+
+    /**
+     * Test that intern returns the same name while it is held.
+     */
+    @Test
+    public final void testInternCanonical() {
+        /*
+         * Setup
+         */
+        String spelling = new StringBuilder("look-").append("around")
+                .toString();
+
+        /*
+         * The calls
+         */
+        InstructionNames.Name n = InstructionNames.intern(spelling);
+        InstructionNames.Name m = InstructionNames.intern("look-around");
+
+        /*
+         * Evaluation
+         */
+        assertSame(n, m);
+        assertEquals("look-around", n.toString());
+        assertEquals(n.id(), InstructionNames.id("look-around"));
+        assertEquals("look-around", InstructionNames.name(n.id()));
+    }
+
+    /**
+     * Test that the name called by a statement survives garbage collection
+     * with its id.
+     */
+    @Test(timeout = 10000)
+    public final void testHeldByStatement() {
+        /*
+         * Setup
+         */
+        Statement2 s = new Statement2();
+        s.assembleCall("held-by-" + "statement");
+        int id = s.instructionId();
+        int size = InstructionNames.size();
+
+        /*
+         * The calls
+         */
+        internAndDrop("held-garbage-");
+        collectUntil(size);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(id, s.instructionId());
+        assertEquals("held-by-statement", InstructionNames.name(id));
+        assertEquals(id, InstructionNames.id("held-by-statement"));
+        assertEquals("held-by-statement", s.disassembleCall());
+    }
+
+    /**
+     * Test that names no longer held are reclaimed and their ids reused.
+     */
+    @Test(timeout = 10000)
+    public final void testReclaimed() {
+        /*
+         * Setup
+         */
+        int size = InstructionNames.size();
+
+        /*
+         * The calls
+         */
+        Set<Integer> dropped = internAndDrop("dropped-");
+        collectUntil(size);
+        List<InstructionNames.Name> kept = new ArrayList<>();
+        for (int i = 0; i < NAMES; i++) {
+            kept.add(InstructionNames.intern("kept-" + i));
+        }
+
+        /*
+         * Evaluation
+         */
+        assertTrue(InstructionNames.size() <= size + NAMES);
+        int reused = 0;
+        for (InstructionNames.Name n : kept) {
+            if (dropped.contains(n.id())) {
+                reused++;
+            }
+        }
+        assertTrue(reused > 0);
+        assertEquals("kept-0", InstructionNames.name(kept.get(0).id()));
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ * {@code BugWorld} that answers queries from a script and records every
+ * query, with its answer, and every primitive instruction, so that tests can
+ * check that two executors make the same calls in the same order. Primitive
+ * instructions change nothing.
+ */
+final class LoggingWorld implements BugWorld {
+
+    /**
+     * The answers to cycle through, or {@code null} if answers are drawn from
+     * {@code state}.
+     */
+    private final boolean[] answers;
+
+    /**
+     * Index in {@code answers} of the next answer.
+     */
+    private int next;
+
+    /**
+     * State of the xorshift generator the answers are drawn from when
+     * {@code answers} is {@code null}.
+     */
+    private long state;
+
+    /**
+     * The calls made so far, one per line.
+     */
+    private final StringBuilder log = new StringBuilder();
+
+    /**
+     * Constructor resulting in a world whose answers are pseudo-random, and
+     * the same for every world constructed with the same seed.
+     *
+     * @param seed
+     *            the seed of the answers
+     * @requires seed != 0
+     */
+    LoggingWorld(long seed) {
+        assert seed != 0 : "Violation of: seed != 0";
+        this.answers = null;
+        this.state = seed;
+    }
+
+    /**
+     * Constructor resulting in a world that gives {@code answers}, in order
+     * and over again, to the queries of all bugs together.
+     *
+     * @param answers
+     *            the answers
+     * @requires |answers| > 0
+     */
+    LoggingWorld(boolean... answers) {
+        assert answers.length > 0 : "Violation of: |answers| > 0";
+        this.answers = answers.clone();
+    }
+
+    /**
+     * Returns the calls made since the last call of {@code takeLog}, one per
+     * line, and forgets them.
+     *
+     * @return the calls
+     */
+    String takeLog() {
+        String result = this.log.toString();
+        this.log.setLength(0);
+        return result;
+    }
+
+    /**
+     * Records the query {@code name} made for {@code bug} and returns the
+     * next answer.
+     *
+     * @param name
+     *            the query
+     * @param bug
+     *            the bug
+     * @return the answer
+     */
+    private boolean query(String name, int bug) {
+        boolean value;
+        if (this.answers == null) {
+            this.state ^= this.state << 13;
+            this.state ^= this.state >>> 7;
+            this.state ^= this.state << 17;
+            value = this.state < 0;
+        } else {
+            value = this.answers[this.next];
+            this.next = (this.next + 1) % this.answers.length;
+        }
+        this.log.append(bug).append(' ').append(name).append(' ')
+                .append(value).append('\n');
+        return value;
+    }
+
+    /**
+     * Records the primitive instruction {@code name} performed by
+     * {@code bug}.
+     *
+     * @param name
+     *            the primitive instruction
+     * @param bug
+     *            the bug
+     */
+    private void action(String name, int bug) {
+        this.log.append(bug).append(' ').append(name).append('\n');
+    }
+
+    @Override
+    public boolean nextIsEmpty(int bug) {
+        return this.query("next-is-empty", bug);
+    }
+
+    @Override
+    public boolean nextIsWall(int bug) {
+        return this.query("next-is-wall", bug);
+    }
+
+    @Override
+    public boolean nextIsFriend(int bug) {
+        return this.query("next-is-friend", bug);
+    }
+
+    @Override
+    public boolean nextIsEnemy(int bug) {
+        return this.query("next-is-enemy", bug);
+    }
+
+    @Override
+    public boolean random(int bug) {
+        return this.query("random", bug);
+    }
+
+    @Override
+    public void move(int bug) {
+        this.action("move", bug);
+    }
+
+    @Override
+    public void turnLeft(int bug) {
+        this.action("turnleft", bug);
+    }
+
+    @Override
+    public void turnRight(int bug) {
+        this.action("turnright", bug);
+    }
+
+    @Override
+    public void infect(int bug) {
+        this.action("infect", bug);
+    }
+
+    @Override
+    public void skip(int bug) {
+        this.action("skip", bug);
+    }
+
+}
@@ -0,0 +1,135 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import components.statement.Statement;
+import components.statement.Statement1;
+import components.statement.StatementKernel.Condition;
+import components.statement.StatementKernel.Kind;
+
+/**
+ * Customized JUnit test fixture for {@code MemoryReport}.
+ */
+public class MemoryReportTest {
+
+    /**
+     * Returns WHILE next-is-empty DO move turnleft END WHILE.
+     *
+     * @return the statement
+     */
+    private static Statement loop() {
+        Statement s = new Statement1();
+        Statement block = s.newInstance();
+        Statement call = s.newInstance();
+        call.assembleCall("move");
+        block.addToBlock(0, call);
+        call = s.newInstance();
+        call.assembleCall("turnleft");
+        block.addToBlock(1, call);
+        s.assembleWhile(Condition.NEXT_IS_EMPTY, block);
+        return s;
+    }
+
+    /**
+     * Test of on a WHILE statement.
+     */
+    @Test
+    public final void testOfStatement() {
+        /*
+         * Setup
+         */
+        Statement s = loop();
+
+        /*
+         * The call
+         */
+        MemoryReport r = MemoryReport.of(s);
+
+        /*
+         * Evaluation
+         */
+        assertTrue(r.size(MemoryReport.Part.NODES) > 0);
+        assertTrue(r.size(MemoryReport.Part.LABELS) > 0);
+        assertTrue(r.size(MemoryReport.Part.SEQUENCES) > 0);
+        assertEquals(0, r.size(MemoryReport.Part.CONTEXT));
+        assertEquals(1, r.statements(Kind.WHILE));
+        assertEquals(1, r.statements(Kind.BLOCK));
+        assertEquals(2, r.statements(Kind.CALL));
+        assertEquals(0, r.statements(Kind.IF));
+        assertEquals(0, r.statements(Kind.IF_ELSE));
+        assertEquals(4, r.statements());
+        assertEquals(0, r.size(Kind.IF));
+        assertTrue(r.size(Kind.WHILE) > 0);
+        assertTrue(r.size(Kind.CALL) > 0);
+    }
+
+    /**
+     * Test that the sizes of the parts add up to the size, and those of the
+     * kinds to at most the size of the statement parts.
+     */
+    @Test
+    public final void testTotals() {
+        /*
+         * Setup
+         */
+        Statement s = loop();
+        Statement outer = s.newInstance();
+        outer.addToBlock(0, s);
+        Statement call = s.newInstance();
+        call.assembleCall("infect");
+        outer.addToBlock(1, call);
+
+        /*
+         * The call
+         */
+        MemoryReport r = MemoryReport.of(outer);
+
+        /*
+         * Evaluation
+         */
+        long parts = 0;
+        for (MemoryReport.Part p : MemoryReport.Part.values()) {
+            parts += r.size(p);
+        }
+        long kinds = 0;
+        int count = 0;
+        for (Kind k : Kind.values()) {
+            kinds += r.size(k);
+            count += r.statements(k);
+        }
+        assertEquals(r.size(), parts);
+        assertEquals(6, count);
+        assertEquals(r.statements(), count);
+        assertTrue(kinds > 0);
+        assertTrue(kinds <= r.size(MemoryReport.Part.NODES)
+                + r.size(MemoryReport.Part.LABELS)
+                + r.size(MemoryReport.Part.SEQUENCES)
+                + r.size(MemoryReport.Part.STRINGS));
+        assertTrue(r.objects() > count);
+    }
+
+    /**
+     * Test of on the same statement twice.
+     */
+    @Test
+    public final void testOfRepeatable() {
+        /*
+         * Setup
+         */
+        Statement s = loop();
+
+        /*
+         * The calls
+         */
+        MemoryReport first = MemoryReport.of(s);
+        MemoryReport second = MemoryReport.of(s);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(first.size(), second.size());
+        assertEquals(first.objects(), second.objects());
+    }
+
+}
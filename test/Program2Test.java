@@ -1,11 +1,37 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+import components.map.Map;
 import components.program.Program;
 import components.program.Program1;
+import components.queue.Queue;
+import components.queue.Queue1L;
+import components.simplewriter.SimpleWriter;
+import components.simplewriter.SimpleWriter1L;
+import components.statement.Statement;
+import components.utilities.Tokenizer;
 
 /**
  * Customized JUnit test fixture for {@code Program2}.
  */
 public class Program2Test extends ProgramTest {
 
+    /**
+     * Tokens of a small BL program.
+     */
+    private static final String[] SAMPLE_TOKENS = { "PROGRAM", "Sample",
+            "IS", "INSTRUCTION", "hop", "IS", "move", "move", "END", "hop",
+            "BEGIN", "WHILE", "true", "DO", "IF", "next-is-empty", "THEN",
+            "hop", "ELSE", "turnleft", "END", "IF", "END", "WHILE", "END",
+            "Sample", Tokenizer.END_OF_INPUT };
+
     @Override
     protected final Program constructorTest() {
         return new Program2();
@@ -16,4 +42,292 @@ public class Program2Test extends ProgramTest {
         return new Program1();
     }
 
+    /**
+     * Returns a queue of the given tokens.
+     *
+     * @param tokens
+     *            the tokens
+     * @return the queue of tokens
+     */
+    private static Queue<String> queueOf(String... tokens) {
+        Queue<String> q = new Queue1L<>();
+        for (String t : tokens) {
+            q.enqueue(t);
+        }
+        return q;
+    }
+
+    /**
+     * Test freeze.
+     */
+    @Test
+    public final void testFreeze() {
+        /*
+         * Setup
+         */
+        Program2 pTest = new Program2();
+        pTest.parse(queueOf(SAMPLE_TOKENS));
+        Program pRef = this.constructorRef();
+        pRef.parse(queueOf(SAMPLE_TOKENS));
+
+        /*
+         * The call
+         */
+        FrozenProgram frozen = pTest.freeze();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(pRef, pTest);
+        assertEquals(pRef.toString(), frozen.toString());
+        assertEquals(pRef.generatedCode().length(), frozen.codeLength());
+        assertEquals(FrozenProgram.copyOf(pRef), frozen);
+    }
+
+    /**
+     * Test simplify dropping skips outside of loops only.
+     */
+    @Test
+    public final void testSimplifyDropSkips() {
+        /*
+         * Setup
+         */
+        Program2 pTest = new Program2();
+        pTest.parse(SourceTokenizer.tokens("PROGRAM Test IS"
+                + " INSTRUCTION wait IS skip END wait"
+                + " BEGIN skip IF random THEN ELSE wait END IF"
+                + " WHILE true DO skip END WHILE END Test"));
+        Program pRef = this.constructorRef();
+        pRef.parse(SourceTokenizer.tokens("PROGRAM Test IS"
+                + " INSTRUCTION wait IS skip END wait"
+                + " BEGIN IF random THEN wait END IF"
+                + " WHILE true DO skip END WHILE END Test"));
+
+        /*
+         * The call
+         */
+        pTest.simplify(true);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(pRef, pTest);
+    }
+
+    /**
+     * Test swapBody several times in a row, so that the body swapped out by
+     * one call receives the body swapped in by the next.
+     */
+    @Test
+    public final void testSwapBodyRepeated() {
+        /*
+         * Setup
+         */
+        Program2 pTest = new Program2();
+        Statement b1 = pTest.newBody();
+        Statement move = b1.newInstance();
+        move.assembleCall("move");
+        b1.addToBlock(0, move);
+        Statement b2 = pTest.newBody();
+        Statement turn = b2.newInstance();
+        turn.assembleCall("turnleft");
+        b2.addToBlock(0, turn);
+        Statement b3 = pTest.newBody();
+        Statement moveBody = pTest.newBody();
+        Statement moveRef = moveBody.newInstance();
+        moveRef.assembleCall("move");
+        moveBody.addToBlock(0, moveRef);
+
+        /*
+         * The calls
+         */
+        pTest.swapBody(b1);
+        pTest.swapBody(b2);
+        pTest.swapBody(b3);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(0, b1.lengthOfBlock());
+        assertEquals(moveBody, b2);
+        assertEquals("turnleft", b3.removeFromBlock(0).disassembleCall());
+        assertEquals(0, b3.lengthOfBlock());
+        Statement b4 = pTest.newBody();
+        pTest.swapBody(b4);
+        assertEquals(0, b4.lengthOfBlock());
+    }
+
+    /**
+     * Test bodyCost and instructionCost.
+     */
+    @Test
+    public final void testCosts() {
+        /*
+         * Setup
+         */
+        Program2 pTest = new Program2();
+        pTest.parse(queueOf(SAMPLE_TOKENS));
+        Program pRef = this.constructorRef();
+        pRef.parse(queueOf(SAMPLE_TOKENS));
+
+        /*
+         * The calls
+         */
+        StatementCost hop = pTest.instructionCost("hop");
+        StatementCost body = pTest.bodyCost();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(pRef, pTest);
+        assertEquals(2, hop.words());
+        assertEquals(1, hop.maxStraightLine());
+        assertEquals(pRef.generatedCode().length(), body.words() + 1);
+        assertEquals(2, body.depth());
+        assertEquals(5, body.maxStepAsBody());
+    }
+
+    /**
+     * Test that the cached costs survive the secondary methods that swap the
+     * context and the body out and back in.
+     *
+     * @throws IOException
+     *             if the temporary file cannot be created
+     */
+    @Test
+    public final void testCostsKeptBySecondaryMethods() throws IOException {
+        /*
+         * Setup
+         */
+        Program2 pTest = new Program2();
+        pTest.parse(queueOf(SAMPLE_TOKENS));
+        Program pRef = this.constructorRef();
+        pRef.parse(queueOf(SAMPLE_TOKENS));
+        StatementCost hop = pTest.instructionCost("hop");
+        StatementCost body = pTest.bodyCost();
+        Path file = Files.createTempFile("Program2Test", ".bl");
+        file.toFile().deleteOnExit();
+        SimpleWriter out = new SimpleWriter1L(file.toString());
+
+        /*
+         * The calls
+         */
+        pTest.prettyPrint(out);
+        pTest.generatedCode();
+        pTest.toString();
+        pTest.equals(pRef);
+        pTest.freeze();
+        out.close();
+
+        /*
+         * Evaluation
+         */
+        assertSame(hop, pTest.instructionCost("hop"));
+        assertSame(body, pTest.bodyCost());
+    }
+
+    /**
+     * Test that the cached costs are dropped when the body is swapped with a
+     * different one.
+     */
+    @Test
+    public final void testCostsDroppedBySwapBody() {
+        /*
+         * Setup
+         */
+        Program2 pTest = new Program2();
+        pTest.parse(queueOf(SAMPLE_TOKENS));
+        StatementCost body = pTest.bodyCost();
+        Statement b = pTest.newBody();
+        pTest.swapBody(b);
+        Statement move = b.newInstance();
+        move.assembleCall("move");
+        b.addToBlock(0, move);
+
+        /*
+         * The call
+         */
+        pTest.swapBody(b);
+
+        /*
+         * Evaluation
+         */
+        assertNotSame(body, pTest.bodyCost());
+        assertEquals(body.words() + 1, pTest.bodyCost().words());
+    }
+
+    /**
+     * Test that swapping in a context with one instruction changed analyzes
+     * again only that instruction and the body calling it.
+     */
+    @Test
+    public final void testCostsUpdatedIncrementally() {
+        /*
+         * Setup
+         */
+        Program2 pTest = new Program2();
+        pTest.parse(queueOf("PROGRAM", "Sample", "IS", "INSTRUCTION", "hop",
+                "IS", "move", "END", "hop", "INSTRUCTION", "spin", "IS",
+                "turnleft", "END", "spin", "BEGIN", "hop", "END", "Sample",
+                Tokenizer.END_OF_INPUT));
+        StatementCost hop = pTest.instructionCost("hop");
+        StatementCost spin = pTest.instructionCost("spin");
+        StatementCost body = pTest.bodyCost();
+        Map<String, Statement> c = pTest.newContext();
+        pTest.swapContext(c);
+        Statement hopBody = c.value("hop");
+        Statement move = hopBody.newInstance();
+        move.assembleCall("move");
+        hopBody.addToBlock(0, move);
+
+        /*
+         * The call
+         */
+        pTest.swapContext(c);
+
+        /*
+         * Evaluation
+         */
+        assertSame(spin, pTest.instructionCost("spin"));
+        assertNotSame(hop, pTest.instructionCost("hop"));
+        assertEquals(hop.words() + 1, pTest.instructionCost("hop").words());
+        assertNotSame(body, pTest.bodyCost());
+        assertEquals(body.words() + 1, pTest.bodyCost().words());
+    }
+
+    /**
+     * Test parse from integer-coded tokens.
+     */
+    @Test
+    public final void testParseTokenArray() {
+        /*
+         * Setup
+         */
+        StringBuilder source = new StringBuilder();
+        for (String t : SAMPLE_TOKENS) {
+            if (!t.equals(Tokenizer.END_OF_INPUT)) {
+                source.append(t).append('\n');
+            }
+        }
+        byte[] bytes = source.toString().getBytes();
+        ByteScanner scanner = new ByteScanner();
+        scanner.scan(bytes, 0, bytes.length);
+        TokenArray tokens = new TokenArray();
+        tokens.load(scanner);
+        Program2 pTest = new Program2();
+        Program pRef = this.constructorRef();
+        pRef.parse(queueOf(SAMPLE_TOKENS));
+
+        /*
+         * The call
+         */
+        pTest.parse(tokens);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(pRef, pTest);
+        assertEquals(SAMPLE_TOKENS.length - 1, tokens.position());
+    }
+
 }
@@ -0,0 +1,151 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import components.program.Program.Instruction;
+
+/**
+ * Customized JUnit test fixture for {@code ProgramDiff.addressMap}.
+ */
+public class ProgramDiffTest {
+
+    /**
+     * Returns the compiled program with the given source.
+     *
+     * @param source
+     *            the BL source
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String source) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens(source));
+        return p.freeze();
+    }
+
+    /**
+     * Test addressMap of a program with itself.
+     */
+    @Test
+    public final void testAddressMapSame() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS BEGIN"
+                + " WHILE true DO IF next-is-empty THEN move ELSE turnleft"
+                + " END IF END WHILE END Test");
+
+        /*
+         * The call
+         */
+        int[] map = ProgramDiff.addressMap(p, p);
+
+        /*
+         * Evaluation
+         */
+        assertArrayEquals(new int[] { 0, 2, 2, 4, 4, 5, 7, 7, 8, 10, 10 },
+                map);
+        assertEquals(Instruction.HALT.byteCode(), p.codeAt(10));
+    }
+
+    /**
+     * Test addressMap with a primitive instruction added in front.
+     */
+    @Test
+    public final void testAddressMapAdded() {
+        /*
+         * Setup
+         */
+        FrozenProgram older = compile(
+                "PROGRAM Test IS BEGIN move turnleft END Test");
+        FrozenProgram newer = compile(
+                "PROGRAM Test IS BEGIN skip move turnleft END Test");
+
+        /*
+         * The call
+         */
+        int[] map = ProgramDiff.addressMap(older, newer);
+
+        /*
+         * Evaluation
+         */
+        assertArrayEquals(new int[] { 1, 2, 3 }, map);
+    }
+
+    /**
+     * Test addressMap with a primitive instruction removed: its address maps
+     * to that of the next instruction.
+     */
+    @Test
+    public final void testAddressMapRemoved() {
+        /*
+         * Setup
+         */
+        FrozenProgram older = compile(
+                "PROGRAM Test IS BEGIN move turnleft turnright END Test");
+        FrozenProgram newer = compile(
+                "PROGRAM Test IS BEGIN move turnright END Test");
+
+        /*
+         * The call
+         */
+        int[] map = ProgramDiff.addressMap(older, newer);
+
+        /*
+         * Evaluation
+         */
+        assertArrayEquals(new int[] { 0, 1, 1, 2 }, map);
+    }
+
+    /**
+     * Test addressMap with a change inside the body of an inlined user
+     * instruction.
+     */
+    @Test
+    public final void testAddressMapInlined() {
+        /*
+         * Setup
+         */
+        FrozenProgram older = compile("PROGRAM Test IS"
+                + " INSTRUCTION hop IS move move END hop"
+                + " BEGIN hop turnleft hop END Test");
+        FrozenProgram newer = compile("PROGRAM Test IS"
+                + " INSTRUCTION hop IS move turnright move END hop"
+                + " BEGIN hop turnleft hop END Test");
+
+        /*
+         * The call
+         */
+        int[] map = ProgramDiff.addressMap(older, newer);
+
+        /*
+         * Evaluation
+         */
+        assertArrayEquals(new int[] { 0, 2, 3, 4, 6, 7 }, map);
+    }
+
+    /**
+     * Test addressMap with a statement added to the body of a WHILE.
+     */
+    @Test
+    public final void testAddressMapWhile() {
+        /*
+         * Setup
+         */
+        FrozenProgram older = compile("PROGRAM Test IS"
+                + " BEGIN WHILE true DO move END WHILE END Test");
+        FrozenProgram newer = compile("PROGRAM Test IS"
+                + " BEGIN WHILE true DO turnleft move END WHILE END Test");
+
+        /*
+         * The call
+         */
+        int[] map = ProgramDiff.addressMap(older, newer);
+
+        /*
+         * Evaluation
+         */
+        assertArrayEquals(new int[] { 0, 3, 3, 4, 6, 6 }, map);
+    }
+
+}
@@ -0,0 +1,173 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code ProgramRegistry}.
+ */
+public class ProgramRegistryTest {
+
+    /**
+     * Source of a small BL program.
+     */
+    private static final String SAMPLE = "PROGRAM Sample IS\n"
+            + "  INSTRUCTION hop IS\n" + "    move\n" + "    move\n"
+            + "  END hop\n" + "BEGIN\n" + "  WHILE true DO\n"
+            + "    IF next-is-empty THEN\n" + "      hop\n" + "    ELSE\n"
+            + "      turnleft\n" + "    END IF\n" + "  END WHILE\n"
+            + "END Sample\n";
+
+    /**
+     * Returns the source of a program named {@code name} whose body is
+     * {@code depth} nested IF statements around a move.
+     *
+     * @param name
+     *            the program name
+     * @param depth
+     *            the nesting depth
+     * @return the source
+     */
+    private static String nested(String name, int depth) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("PROGRAM ").append(name).append(" IS\nBEGIN\n");
+        for (int i = 0; i < depth; i++) {
+            sb.append("IF next-is-empty THEN\n");
+        }
+        sb.append("move\n");
+        for (int i = 0; i < depth; i++) {
+            sb.append("END IF\n");
+        }
+        sb.append("END ").append(name).append("\n");
+        return sb.toString();
+    }
+
+    /**
+     * Test compile of the same source twice.
+     */
+    @Test
+    public final void testCompileHit() {
+        /*
+         * Setup
+         */
+        ProgramRegistry registry = new ProgramRegistry(1000);
+
+        /*
+         * The call
+         */
+        FrozenProgram first = registry.compile(SAMPLE);
+        FrozenProgram second = registry.compile(SAMPLE);
+
+        /*
+         * Evaluation
+         */
+        assertSame(first, second);
+        assertSame(first, registry.getByName("Sample"));
+        assertEquals(1, registry.size());
+        assertEquals(2, registry.stats().hits());
+        assertEquals(1, registry.stats().misses());
+    }
+
+    /**
+     * Test compile of an invalid source.
+     */
+    @Test
+    public final void testCompileInvalid() {
+        /*
+         * Setup
+         */
+        ProgramRegistry registry = new ProgramRegistry(1000);
+        String source = "PROGRAM Bad IS BEGIN move END Other";
+
+        /*
+         * The call
+         */
+        boolean thrown = false;
+        try {
+            registry.compile(source);
+        } catch (RuntimeException e) {
+            thrown = true;
+        }
+
+        /*
+         * Evaluation
+         */
+        assertTrue(thrown);
+        assertEquals(0, registry.size());
+    }
+
+    /**
+     * Test compile of a source nested too deeply to compile: the failure must
+     * not leave an entry that makes later calls wait forever.
+     */
+    @Test(timeout = 10000)
+    public final void testCompileStackOverflow() {
+        /*
+         * Setup
+         */
+        ProgramRegistry registry = new ProgramRegistry(1000);
+        String source = nested("Deep", 20000);
+
+        /*
+         * The call
+         */
+        int errors = 0;
+        for (int k = 0; k < 2; k++) {
+            try {
+                registry.compile(source);
+            } catch (Error e) {
+                /*
+                 * StackOverflowError, or the AssertionError the library
+                 * statement kernel reports it as
+                 */
+                errors++;
+            }
+        }
+
+        /*
+         * Evaluation
+         */
+        assertEquals(2, errors);
+        assertEquals(0, registry.size());
+        assertEquals(0, registry.weight());
+        assertSame(null,
+                registry.getByHash(ProgramRegistry.sourceHash(source)));
+        assertTrue(registry.compile(SAMPLE).codeLength() > 0);
+    }
+
+    /**
+     * Test eviction of the least recently used programs.
+     */
+    @Test
+    public final void testEviction() {
+        /*
+         * Setup
+         */
+        String a = nested("A", 3);
+        String b = nested("B", 3);
+        String c = nested("C", 3);
+        ProgramRegistry probe = new ProgramRegistry(1000);
+        int length = probe.compile(a).codeLength();
+        ProgramRegistry registry = new ProgramRegistry(2 * length);
+
+        /*
+         * The call
+         */
+        FrozenProgram pA = registry.compile(a);
+        registry.compile(b);
+        registry.compile(a);
+        registry.compile(c);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(2, registry.size());
+        assertEquals(2 * length, registry.weight());
+        assertEquals(1, registry.stats().evictions());
+        assertSame(pA, registry.getByName("A"));
+        assertSame(null, registry.getByName("B"));
+        assertTrue(registry.getByName("C") != null);
+    }
+
+}
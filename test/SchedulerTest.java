@@ -0,0 +1,189 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code Scheduler}.
+ */
+public class SchedulerTest {
+
+    /**
+     * Returns the compiled program with the given body.
+     *
+     * @param body
+     *            the source of the body
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String body) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens(
+                "PROGRAM Test IS BEGIN " + body + " END Test"));
+        return p.freeze();
+    }
+
+    /**
+     * Test that species 0 runs first at the first tick: of two bugs facing
+     * each other, the one of species 0 infects the other.
+     */
+    @Test
+    public final void testTickFirstSpecies() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(5, 5, 2, 0);
+        int a = world.addBug(0, 0, GridWorld.EAST, 1);
+        int b = world.addBug(1, 0, GridWorld.WEST, 0);
+        FrozenProgram infect = compile("infect");
+        Scheduler scheduler = new Scheduler(
+                new Simulation(world, infect, infect), 10);
+
+        /*
+         * The call
+         */
+        scheduler.tick();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(0, world.species(a));
+        assertEquals(0, world.species(b));
+    }
+
+    /**
+     * Test that the species running first rotates: at the second tick,
+     * species 1 runs first and infects the bug of species 0.
+     */
+    @Test
+    public final void testTickRotation() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(5, 5, 2, 0);
+        int a = world.addBug(0, 0, GridWorld.EAST, 0);
+        int b = world.addBug(1, 0, GridWorld.WEST, 1);
+        FrozenProgram infect = compile("skip infect");
+        Scheduler scheduler = new Scheduler(
+                new Simulation(world, infect, infect), 10);
+
+        /*
+         * The calls
+         */
+        scheduler.tick();
+        scheduler.tick();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(1, world.species(a));
+        assertEquals(1, world.species(b));
+        assertEquals(2, scheduler.ticks());
+    }
+
+    /**
+     * Test that bugs are stepped in batches of the same species: bug 2, of
+     * species 0, moves before bug 1, of species 1, and takes the cell both
+     * face.
+     */
+    @Test
+    public final void testTickBatches() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(5, 5, 3, 0);
+        world.addBug(4, 4, GridWorld.NORTH, 0);
+        int b1 = world.addBug(0, 0, GridWorld.EAST, 1);
+        int b2 = world.addBug(2, 0, GridWorld.WEST, 0);
+        FrozenProgram move = compile("move");
+        Scheduler scheduler = new Scheduler(
+                new Simulation(world, move, move), 10);
+
+        /*
+         * The call
+         */
+        scheduler.tick();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(1, world.x(b2));
+        assertEquals(0, world.x(b1));
+    }
+
+    /**
+     * Test the accounting of steps and preemptions, with a species that
+     * never reaches a primitive instruction, one that needs three ticks per
+     * step, and one that completes a step at each tick.
+     */
+    @Test
+    public final void testTickPreemptions() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(6, 6, 6, 0);
+        world.addBug(0, 2, GridWorld.EAST, 0);
+        world.addBug(0, 4, GridWorld.EAST, 0);
+        int slow = world.addBug(0, 0, GridWorld.EAST, 1);
+        world.addBug(5, 1, GridWorld.NORTH, 2);
+        world.addBug(5, 3, GridWorld.NORTH, 2);
+        world.addBug(5, 5, GridWorld.NORTH, 2);
+        Simulation sim = new Simulation(world,
+                compile("WHILE true DO IF next-is-wall THEN move END IF"
+                        + " END WHILE"),
+                compile("IF true THEN IF true THEN IF true THEN"
+                        + " IF true THEN move END IF END IF END IF END IF"),
+                compile("turnleft turnleft turnleft"));
+        Scheduler scheduler = new Scheduler(sim, 2);
+
+        /*
+         * The calls
+         */
+        scheduler.tick();
+        scheduler.tick();
+        int preemptedSecond = scheduler.preempted();
+        scheduler.tick();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(0, scheduler.steps(0));
+        assertEquals(6, scheduler.preemptions(0));
+        assertEquals(1, scheduler.steps(1));
+        assertEquals(2, scheduler.preemptions(1));
+        assertEquals(9, scheduler.steps(2));
+        assertEquals(0, scheduler.preemptions(2));
+        assertEquals(3, preemptedSecond);
+        assertEquals(2, scheduler.preempted());
+        assertEquals(1, world.x(slow));
+        assertEquals(GridWorld.EAST, world.direction(world.bugAt(5, 3)));
+    }
+
+    /**
+     * Test reset.
+     */
+    @Test
+    public final void testReset() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(3, 3, 1, 0);
+        world.addBug(1, 1, GridWorld.NORTH, 0);
+        Scheduler scheduler = new Scheduler(
+                new Simulation(world, compile("turnleft")), 5);
+        scheduler.tick();
+
+        /*
+         * The call
+         */
+        scheduler.reset();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(0, scheduler.ticks());
+        assertEquals(0, scheduler.steps(0));
+        assertEquals(0, scheduler.preemptions(0));
+        assertEquals(0, scheduler.cpuTime(0));
+        assertEquals(0, scheduler.preempted());
+    }
+
+}
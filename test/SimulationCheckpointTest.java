@@ -0,0 +1,297 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code SimulationCheckpoint}.
+ */
+public class SimulationCheckpointTest {
+
+    /**
+     * Size of the header page of a checkpoint file.
+     */
+    private static final int PAGE = 4096;
+
+    /**
+     * Offset in the header of the sequence number of the checkpoint in slot
+     * 0, followed by that of slot 1.
+     */
+    private static final int SEQUENCE = 32;
+
+    /**
+     * A program that uses {@code random}, so that a restored world must also
+     * restore the state of its random source.
+     */
+    private static final FrozenProgram WANDER = compile("PROGRAM Wander IS"
+            + " BEGIN WHILE true DO IF next-is-enemy THEN infect"
+            + " ELSE IF next-is-empty THEN IF random THEN move ELSE"
+            + " turnleft END IF ELSE turnright END IF END IF END WHILE"
+            + " END Wander");
+
+    /**
+     * Returns the compiled program with the given source.
+     *
+     * @param source
+     *            the BL source
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String source) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens(source));
+        return p.freeze();
+    }
+
+    /**
+     * Returns a world with 20 bugs of 2 species, stepped {@code ticks}
+     * times.
+     *
+     * @param ticks
+     *            the number of ticks
+     * @return the world
+     */
+    private static GridWorld newWorld(int ticks) {
+        GridWorld world = new GridWorld(8, 6, 20, 11);
+        for (int i = 0; i < 20; i++) {
+            world.addBug(i % 8, i / 8 * 2, i % 4, i % 2);
+        }
+        step(world, ticks);
+        return world;
+    }
+
+    /**
+     * Steps each bug of {@code world} {@code ticks} times with WANDER.
+     *
+     * @param world
+     *            the world
+     * @param ticks
+     *            the number of ticks
+     * @updates world
+     */
+    private static void step(GridWorld world, int ticks) {
+        for (int t = 0; t < ticks; t++) {
+            for (int bug = 0; bug < world.bugs(); bug++) {
+                world.setPc(bug, WANDER.nextAction(world.pc(bug), bug, world));
+            }
+        }
+    }
+
+    /**
+     * Asserts that {@code expected} and {@code actual} hold the same bugs in
+     * the same cells, and go on the same way when stepped.
+     *
+     * @param expected
+     *            the expected world
+     * @param actual
+     *            the actual world
+     */
+    private static void assertSameWorld(GridWorld expected, GridWorld actual) {
+        for (int k = 0; k < 2; k++) {
+            assertEquals(expected.bugs(), actual.bugs());
+            for (int bug = 0; bug < expected.bugs(); bug++) {
+                assertEquals(expected.x(bug), actual.x(bug));
+                assertEquals(expected.y(bug), actual.y(bug));
+                assertEquals(expected.direction(bug), actual.direction(bug));
+                assertEquals(expected.species(bug), actual.species(bug));
+                assertEquals(expected.pc(bug), actual.pc(bug));
+            }
+            for (int x = 0; x < expected.width(); x++) {
+                for (int y = 0; y < expected.height(); y++) {
+                    assertEquals(expected.bugAt(x, y), actual.bugAt(x, y));
+                }
+            }
+            step(expected, 10);
+            step(actual, 10);
+        }
+    }
+
+    /**
+     * Returns the sequence numbers of the checkpoints in the two slots of
+     * {@code file}, 0 for a slot being written or never written.
+     *
+     * @param file
+     *            the checkpoint file
+     * @return the sequence numbers of slots 0 and 1
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private static long[] slotSequences(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            ByteBuffer h = ch.map(FileChannel.MapMode.READ_ONLY, 0, PAGE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            return new long[] { h.getLong(SEQUENCE), h.getLong(SEQUENCE + 8) };
+        }
+    }
+
+    /**
+     * Returns a new temporary file, deleted when the JVM exits.
+     *
+     * @return the path of the file
+     * @throws IOException
+     *             if the file cannot be created
+     */
+    private static Path newFile() throws IOException {
+        Path file = Files.createTempFile("SimulationCheckpointTest", ".ckpt");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Test checkpoint and restore of a world.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public final void testRoundTrip() throws IOException {
+        /*
+         * Setup
+         */
+        Path file = newFile();
+        GridWorld world = newWorld(25);
+        String[] programs = { "a1b2", "c3d4" };
+
+        /*
+         * The calls
+         */
+        long written;
+        try (SimulationCheckpoint cp = new SimulationCheckpoint(file, world,
+                4)) {
+            written = cp.checkpoint(world, programs).join();
+        }
+        SimulationCheckpoint.Restored restored = SimulationCheckpoint
+                .restore(file);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(true, written > 0);
+        assertEquals(1, restored.sequence());
+        assertArrayEquals(programs, restored.programs());
+        assertSameWorld(world, restored.world());
+    }
+
+    /**
+     * Test that checkpoints alternate between the two slots, and that a
+     * checkpoint interrupted while being written leaves the previous one
+     * restorable.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public final void testSlotAlternation() throws IOException {
+        /*
+         * Setup
+         */
+        Path file = newFile();
+        GridWorld world = newWorld(5);
+        String[] programs = { "p" };
+        long[][] sequences = new long[3][];
+
+        /*
+         * The calls
+         */
+        try (SimulationCheckpoint cp = new SimulationCheckpoint(file, world,
+                1)) {
+            for (int k = 0; k < 3; k++) {
+                cp.checkpoint(world, programs).join();
+                sequences[k] = slotSequences(file);
+                step(world, 5);
+            }
+        }
+        /*
+         * Interrupt a fourth checkpoint, bound for slot 1: its sequence
+         * number is cleared first, and its data is half written.
+         */
+        try (FileChannel ch = FileChannel.open(file,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = (ch.size() - PAGE) / 2;
+            ch.write(ByteBuffer.allocate(8), SEQUENCE + 8);
+            ch.write(ByteBuffer.wrap(new byte[(int) size / 2]), PAGE + size);
+        }
+        SimulationCheckpoint.Restored restored = SimulationCheckpoint
+                .restore(file);
+
+        /*
+         * Evaluation
+         */
+        assertArrayEquals(new long[] { 1, 0 }, sequences[0]);
+        assertArrayEquals(new long[] { 1, 2 }, sequences[1]);
+        assertArrayEquals(new long[] { 3, 2 }, sequences[2]);
+        assertEquals(3, restored.sequence());
+        assertSameWorld(newWorld(15), restored.world());
+    }
+
+    /**
+     * Test reopening a checkpoint file: sequence numbers go on from the last
+     * checkpoint in it.
+     *
+     * @throws IOException
+     *             if the file cannot be written or read
+     */
+    @Test
+    public final void testReopen() throws IOException {
+        /*
+         * Setup
+         */
+        Path file = newFile();
+        GridWorld world = newWorld(5);
+        String[] programs = { "p" };
+        try (SimulationCheckpoint cp = new SimulationCheckpoint(file, world,
+                1)) {
+            cp.checkpoint(world, programs).join();
+            cp.checkpoint(world, programs).join();
+        }
+
+        /*
+         * The calls
+         */
+        long reopened;
+        try (SimulationCheckpoint cp = new SimulationCheckpoint(file, world,
+                1)) {
+            reopened = cp.sequence();
+            step(world, 3);
+            cp.checkpoint(world, programs).join();
+        }
+        SimulationCheckpoint.Restored restored = SimulationCheckpoint
+                .restore(file);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(2, reopened);
+        assertEquals(3, restored.sequence());
+        assertSameWorld(world, restored.world());
+    }
+
+    /**
+     * Test restore of a file that is not a checkpoint file.
+     *
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    @Test(expected = IOException.class)
+    public final void testRestoreNotCheckpoint() throws IOException {
+        /*
+         * Setup
+         */
+        Path file = newFile();
+        Files.write(file, new byte[PAGE]);
+
+        /*
+         * The call
+         */
+        SimulationCheckpoint.restore(file);
+    }
+
+}
@@ -0,0 +1,195 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Customized JUnit test fixture for {@code Simulation}.
+ */
+public class SimulationTest {
+
+    /**
+     * Returns the compiled program with the given body and user instructions.
+     *
+     * @param instructions
+     *            the source of the user instructions
+     * @param body
+     *            the source of the body
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String instructions, String body) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens("PROGRAM Test IS " + instructions
+                + " BEGIN " + body + " END Test"));
+        return p.freeze();
+    }
+
+    /**
+     * Returns the compiled program with the given body.
+     *
+     * @param body
+     *            the source of the body
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String body) {
+        return compile("", body);
+    }
+
+    /**
+     * Test swap between two steps of a bug.
+     */
+    @Test
+    public final void testSwap() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(10, 10, 1, 0);
+        int bug = world.addBug(5, 5, GridWorld.EAST, 0);
+        Simulation sim = new Simulation(world,
+                compile("move turnleft turnright"));
+        sim.step(bug);
+
+        /*
+         * The calls
+         */
+        sim.swap(0, compile("skip move turnleft turnright"));
+        sim.step(bug);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(6, world.x(bug));
+        assertEquals(GridWorld.NORTH, world.direction(bug));
+        assertEquals(3, world.pc(bug));
+    }
+
+    /**
+     * Test two swaps before a bug is stepped again: its address follows both
+     * remaps.
+     */
+    @Test
+    public final void testSwapChained() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(10, 10, 1, 0);
+        int bug = world.addBug(5, 5, GridWorld.EAST, 0);
+        Simulation sim = new Simulation(world,
+                compile("move turnleft turnright"));
+        sim.step(bug);
+
+        /*
+         * The calls
+         */
+        sim.swap(0, compile("skip move turnleft turnright"));
+        sim.swap(0, compile("skip move skip turnleft turnright"));
+        sim.step(bug);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(6, world.x(bug));
+        assertEquals(GridWorld.NORTH, world.direction(bug));
+        assertEquals(4, world.pc(bug));
+    }
+
+    /**
+     * Test swap while a bug is in the body of an inlined user instruction.
+     */
+    @Test
+    public final void testSwapInlined() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(10, 10, 1, 0);
+        int bug = world.addBug(2, 5, GridWorld.EAST, 0);
+        Simulation sim = new Simulation(world, compile(
+                "INSTRUCTION hop IS move move END hop", "hop turnleft"));
+        sim.step(bug);
+
+        /*
+         * The calls
+         */
+        sim.swap(0, compile("INSTRUCTION hop IS move turnright move END hop",
+                "hop turnleft"));
+        sim.step(bug);
+        sim.step(bug);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(4, world.x(bug));
+        assertEquals(GridWorld.NORTH, world.direction(bug));
+        assertEquals(4, world.pc(bug));
+    }
+
+    /**
+     * Test bugs infected between swaps: an infected bug starts the newest
+     * program of its new species, and the infecting bug follows the remaps.
+     */
+    @Test
+    public final void testSwapInfected() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(10, 10, 2, 0);
+        int a = world.addBug(5, 5, GridWorld.EAST, 0);
+        int b = world.addBug(6, 5, GridWorld.WEST, 1);
+        Simulation sim = new Simulation(world, compile("skip infect skip"),
+                compile("turnleft turnleft"));
+        sim.step(a);
+        sim.step(b);
+
+        /*
+         * The calls
+         */
+        sim.swap(0, compile("turnright skip infect skip"));
+        sim.step(a);
+        sim.swap(0, compile("turnright turnright skip infect skip"));
+        sim.step(b);
+        sim.step(a);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(0, world.species(b));
+        assertEquals(GridWorld.WEST, world.direction(b));
+        assertEquals(1, world.pc(b));
+        assertEquals(GridWorld.EAST, world.direction(a));
+        assertEquals(5, world.pc(a));
+    }
+
+    /**
+     * Test swap while a bug is preempted in the middle of a step: it
+     * finishes the step with the version it started it with.
+     */
+    @Test
+    public final void testSwapMidStep() {
+        /*
+         * Setup
+         */
+        GridWorld world = new GridWorld(10, 10, 1, 0);
+        int bug = world.addBug(5, 5, GridWorld.EAST, 0);
+        Simulation sim = new Simulation(world, compile(
+                "IF true THEN IF true THEN move END IF END IF skip"));
+        boolean first = sim.step(bug, 1);
+
+        /*
+         * The calls
+         */
+        sim.swap(0, compile(
+                "IF true THEN IF true THEN turnleft END IF END IF skip"));
+        boolean second = sim.step(bug, 10);
+        boolean third = sim.step(bug, 10);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(false, first);
+        assertEquals(true, second);
+        assertEquals(true, third);
+        assertEquals(6, world.x(bug));
+        assertEquals(GridWorld.EAST, world.direction(bug));
+        assertEquals(6, world.pc(bug));
+    }
+
+}
@@ -0,0 +1,222 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import components.statement.StatementKernel.Kind;
+
+/**
+ * Customized JUnit test fixture for {@code SourceMap}.
+ */
+public class SourceMapTest {
+
+    /**
+     * Source of a program with every kind of statement, one token per line
+     * where it matters.
+     */
+    private static final String SAMPLE = "PROGRAM Test IS\n"
+            + "  INSTRUCTION hop IS\n" // 2
+            + "    move\n" // 3
+            + "    IF next-is-empty THEN\n" // 4
+            + "      move\n" // 5
+            + "    END IF\n" // 6
+            + "  END hop\n" // 7
+            + "BEGIN\n" // 8
+            + "  WHILE true DO\n" // 9
+            + "    hop\n" // 10
+            + "    IF random THEN\n" // 11
+            + "      turnleft\n" // 12
+            + "    ELSE\n" // 13
+            + "      infect\n" // 14
+            + "    END IF\n" // 15
+            + "    skip\n" // 16
+            + "  END WHILE\n" // 17
+            + "  turnright\n" // 18
+            + "END Test\n"; // 19
+
+    /**
+     * Returns the compiled program with the given source.
+     *
+     * @param source
+     *            the BL source
+     * @return the compiled program
+     */
+    private static FrozenProgram compile(String source) {
+        Program2 p = new Program2();
+        p.parse(SourceTokenizer.tokens(source));
+        return p.freeze();
+    }
+
+    /**
+     * Returns the source map of the program with source {@code source}.
+     *
+     * @param source
+     *            the BL source
+     * @return the source map
+     */
+    private static SourceMap map(String source) {
+        return SourceMap.of(compile(source),
+                source.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Asserts that {@code pc} is located at the given place.
+     *
+     * @param map
+     *            the source map
+     * @param pc
+     *            the address
+     * @param address
+     *            the expected address of the instruction
+     * @param owner
+     *            the expected owner
+     * @param path
+     *            the expected path
+     * @param line
+     *            the expected line
+     * @param column
+     *            the expected column
+     */
+    private static void assertLocation(SourceMap map, int pc, int address,
+            String owner, String path, int line, int column) {
+        SourceMap.Location l = map.locate(pc);
+        assertEquals(address, l.address());
+        assertEquals(owner, l.owner());
+        assertEquals(path, l.path());
+        assertEquals(line, l.line());
+        assertEquals(column, l.column());
+    }
+
+    /**
+     * Test locate on each kind of instruction, including the words of the
+     * operands of jumps.
+     */
+    @Test
+    public final void testLocate() {
+        /*
+         * Setup
+         */
+        SourceMap map = map(SAMPLE);
+
+        /*
+         * Evaluation
+         */
+        assertLocation(map, 0, 0, null, "/0", 9, 3);
+        assertLocation(map, 1, 0, null, "/0", 9, 3);
+        assertLocation(map, 2, 2, "hop", "/0", 3, 5);
+        assertLocation(map, 3, 3, "hop", "/1", 4, 5);
+        assertLocation(map, 4, 3, "hop", "/1", 4, 5);
+        assertLocation(map, 5, 5, "hop", "/1/0/0", 5, 7);
+        assertLocation(map, 6, 6, null, "/0/0/1", 11, 5);
+        assertLocation(map, 8, 8, null, "/0/0/1/0/0", 12, 7);
+        assertLocation(map, 9, 9, null, "/0/0/1", 13, 5);
+        assertLocation(map, 10, 9, null, "/0/0/1", 13, 5);
+        assertLocation(map, 11, 11, null, "/0/0/1/1/0", 14, 7);
+        assertLocation(map, 12, 12, null, "/0/0/2", 16, 5);
+        assertLocation(map, 13, 13, null, "/0", 17, 3);
+        assertLocation(map, 14, 13, null, "/0", 17, 3);
+        assertLocation(map, 15, 15, null, "/1", 18, 3);
+        assertLocation(map, 16, 16, null, "/", 19, 1);
+        assertEquals(17, map.program().codeLength());
+        assertEquals(Kind.WHILE, map.locate(13).statement().kind());
+        assertEquals(Kind.IF_ELSE, map.locate(9).statement().kind());
+        assertSame(map.program().body(), map.locate(16).statement());
+        assertEquals("19:1 /", map.locate(16).toString());
+        assertEquals("3:5 hop/0", map.locate(2).toString());
+    }
+
+    /**
+     * Test locate on a program longer than the distance between two
+     * absolute entries.
+     */
+    @Test
+    public final void testLocateLong() {
+        /*
+         * Setup
+         */
+        int n = 100;
+        StringBuilder source = new StringBuilder("PROGRAM Test IS\nBEGIN\n");
+        for (int i = 0; i < n; i++) {
+            if (i % 2 == 0) {
+                source.append("  move\n");
+            } else {
+                source.append("    turnleft\n");
+            }
+        }
+        source.append("END Test\n");
+
+        /*
+         * The call
+         */
+        SourceMap map = map(source.toString());
+
+        /*
+         * Evaluation
+         */
+        for (int pc = n - 1; pc >= 0; pc--) {
+            assertLocation(map, pc, pc, null, "/" + pc, pc + 3,
+                    3 + 2 * (pc % 2));
+        }
+        assertLocation(map, n, n, null, "/", n + 3, 1);
+        assertTrue(map.encodedSize() < 8 * (n + 1));
+        assertNull(map.locate(0).owner());
+    }
+
+    /**
+     * Test of on a source with another condition.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testOtherCondition() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile(SAMPLE);
+        String other = SAMPLE.replace("IF random", "IF next-is-wall");
+
+        /*
+         * The call
+         */
+        SourceMap.of(p, other.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Test of on a source with WHILE in place of IF.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testOtherKeyword() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile("PROGRAM Test IS BEGIN"
+                + " IF next-is-empty THEN move END IF END Test");
+        String other = "PROGRAM Test IS BEGIN"
+                + " WHILE next-is-empty DO move END IF END Test";
+
+        /*
+         * The call
+         */
+        SourceMap.of(p, other.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Test of on a source calling another instruction.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testOtherCall() {
+        /*
+         * Setup
+         */
+        FrozenProgram p = compile(SAMPLE);
+        String other = SAMPLE.replace("    skip\n", "    move\n");
+
+        /*
+         * The call
+         */
+        SourceMap.of(p, other.getBytes(StandardCharsets.US_ASCII));
+    }
+
+}
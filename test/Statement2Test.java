@@ -1,3 +1,7 @@
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
 import components.statement.Statement;
 import components.statement.Statement1;
 
@@ -16,4 +20,175 @@ public class Statement2Test extends StatementTest {
         return new Statement1();
     }
 
+    /**
+     * Creates and returns a BLOCK statement of CALLs to the given instructions,
+     * in order, using the kernel methods of {@code s}'s type.
+     *
+     * @param s
+     *            an empty BLOCK statement to fill in
+     * @param names
+     *            the names of the instructions to call
+     * @return s
+     */
+    private static Statement blockOfCalls(Statement s, String... names) {
+        for (String name : names) {
+            Statement call = s.newInstance();
+            call.assembleCall(name);
+            s.addToBlock(s.lengthOfBlock(), call);
+        }
+        return s;
+    }
+
+    /**
+     * Test removeFromBlock and release with pooling enabled.
+     */
+    @Test
+    public final void testRemoveFromBlockReleaseWithPooling() {
+        Statement2.setPoolingEnabled(true);
+        try {
+            /*
+             * Setup
+             */
+            Statement sTest = blockOfCalls(this.constructorTest(), "move",
+                    "turnleft", "infect");
+            Statement sRef = blockOfCalls(this.constructorRef(), "move",
+                    "turnleft", "infect");
+
+            /*
+             * The calls
+             */
+            Statement removedTest = sTest.removeFromBlock(1);
+            Statement removedRef = sRef.removeFromBlock(1);
+            assertEquals(removedRef, removedTest);
+            Statement2.release(removedTest);
+            Statement againTest = blockOfCalls(this.constructorTest(), "skip",
+                    "turnright");
+            Statement againRef = blockOfCalls(this.constructorRef(), "skip",
+                    "turnright");
+
+            /*
+             * Evaluation
+             */
+            assertEquals(sRef, sTest);
+            assertEquals(againRef, againTest);
+        } finally {
+            Statement2.setPoolingEnabled(false);
+        }
+    }
+
+    /**
+     * Test spliceIntoBlock in the middle of a block.
+     */
+    @Test
+    public final void testSpliceIntoBlockMiddle() {
+        /*
+         * Setup
+         */
+        Statement2 sTest = (Statement2) blockOfCalls(this.constructorTest(),
+                "move", "infect");
+        Statement inserted = blockOfCalls(this.constructorTest(), "turnleft",
+                "skip");
+        Statement sRef = blockOfCalls(this.constructorRef(), "move",
+                "turnleft", "skip", "infect");
+        Statement emptyRef = this.constructorRef();
+
+        /*
+         * The call
+         */
+        sTest.spliceIntoBlock(1, inserted);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+        assertEquals(emptyRef, inserted);
+    }
+
+    /**
+     * Test extractFromBlock of a range in the middle of a block.
+     */
+    @Test
+    public final void testExtractFromBlockMiddle() {
+        /*
+         * Setup
+         */
+        Statement2 sTest = (Statement2) blockOfCalls(this.constructorTest(),
+                "move", "turnleft", "skip", "infect");
+        Statement sRef = blockOfCalls(this.constructorRef(), "move",
+                "infect");
+        Statement extractedRef = blockOfCalls(this.constructorRef(),
+                "turnleft", "skip");
+
+        /*
+         * The call
+         */
+        Statement extractedTest = sTest.extractFromBlock(1, 3);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+        assertEquals(extractedRef, extractedTest);
+    }
+
+    /**
+     * Test simplify on a block with constant conditions, empty bodies and a
+     * call to skip.
+     */
+    @Test
+    public final void testSimplifyFoldsAndFlattens() {
+        /*
+         * Setup
+         */
+        Statement2 sTest = (Statement2) this.constructorTest();
+        sTest.parseBlock(SourceTokenizer.tokens("IF true THEN move skip END IF"
+                + " IF next-is-wall THEN ELSE turnleft END IF"
+                + " IF next-is-empty THEN END IF"
+                + " WHILE true DO infect END WHILE move"));
+        Statement sRef = this.constructorRef();
+        sRef.parseBlock(SourceTokenizer.tokens("move skip"
+                + " IF next-is-not-wall THEN turnleft END IF"
+                + " WHILE true DO infect END WHILE"));
+
+        /*
+         * The call
+         */
+        sTest.simplify(false);
+
+        /*
+         * Evaluation
+         */
+        assertEquals(sRef, sTest);
+    }
+
+    /**
+     * Test instructionId on a call to a primitive and to a user instruction.
+     */
+    @Test
+    public final void testInstructionId() {
+        /*
+         * Setup
+         */
+        Statement2 sTest = (Statement2) this.constructorTest();
+        sTest.assembleCall("skip");
+        Statement2 userTest = (Statement2) this.constructorTest();
+        userTest.assembleCall("turn-around");
+        Statement sRef = this.constructorRef();
+        sRef.assembleCall("skip");
+
+        /*
+         * The calls
+         */
+        int id = sTest.instructionId();
+        int userId = userTest.instructionId();
+
+        /*
+         * Evaluation
+         */
+        assertEquals(InstructionNames.SKIP, id);
+        assertEquals(InstructionNames.id("turn-around"), userId);
+        assertEquals("turn-around", InstructionNames.name(userId));
+        assertEquals(sRef, sTest);
+    }
+
 }